@@ -0,0 +1,271 @@
+package org.red5.logging;
+
+/*
+ * RED5 Open Source Flash Server - http://code.google.com/p/red5/
+ *
+ * Copyright (c) 2006-2011 by respective authors (see below). All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation; either version 2.1 of the License, or (at your option) any later
+ * version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along
+ * with this library; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.Appender;
+import ch.qos.logback.core.UnsynchronizedAppenderBase;
+import ch.qos.logback.core.spi.AppenderAttachable;
+import ch.qos.logback.core.spi.AppenderAttachableImpl;
+
+/**
+ * Logback appender which hands events to a single worker thread through a lock-free queue and
+ * returns immediately, so that logging never blocks the calling I/O thread on a file or console
+ * write. The worker forwards events to the appenders referenced within this appender.
+ *
+ * Once the queue holds <i>queueSize</i> events, events below the discarding threshold (WARN by
+ * default) are dropped and counted instead of being queued. Events at or above the threshold
+ * replace the oldest queued event, so the queue stays bounded without blocking the caller.
+ *
+ *<pre>
+	&lt;appender name="ASYNC" class="org.red5.logging.AsyncAppender"&gt;
+		&lt;queueSize&gt;4096&lt;/queueSize&gt;
+		&lt;appender-ref ref="FILE" /&gt;
+	&lt;/appender&gt;
+ *</pre>
+ *
+ * @author The Red5 Project (red5@osflash.org)
+ */
+public class AsyncAppender extends UnsynchronizedAppenderBase<ILoggingEvent> implements AppenderAttachable<ILoggingEvent> {
+
+	private final AppenderAttachableImpl<ILoggingEvent> appenders = new AppenderAttachableImpl<ILoggingEvent>();
+
+	private final Queue<ILoggingEvent> queue = new ConcurrentLinkedQueue<ILoggingEvent>();
+
+	/**
+	 * Number of queued events, tracked separately as the queue size is not a constant time operation
+	 */
+	private final AtomicInteger queued = new AtomicInteger();
+
+	private final AtomicLong discarded = new AtomicLong();
+
+	/**
+	 * Set while the worker is parked waiting for events
+	 */
+	private final AtomicBoolean waiting = new AtomicBoolean();
+
+	private volatile Thread worker;
+
+	private int queueSize = 1024;
+
+	private int discardingThreshold = Level.WARN_INT;
+
+	private boolean includeCallerData;
+
+	private long maxFlushTime = 1000;
+
+	@Override
+	public void start() {
+		if (!appenders.iteratorForAppenders().hasNext()) {
+			addError("No appenders attached to async appender [" + name + "]");
+			return;
+		}
+		if (queueSize < 1) {
+			addError("Invalid queue size " + queueSize + " for async appender [" + name + "]");
+			return;
+		}
+		super.start();
+		worker = new Thread(new Worker(), "AsyncAppender-" + name);
+		worker.setDaemon(true);
+		worker.start();
+	}
+
+	@Override
+	public void stop() {
+		if (!isStarted()) {
+			return;
+		}
+		super.stop();
+		Thread t = worker;
+		if (t != null) {
+			LockSupport.unpark(t);
+			try {
+				t.join(maxFlushTime);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			if (t.isAlive()) {
+				addWarn("Async appender [" + name + "] stopped with " + queued.get() + " events not flushed");
+			}
+			worker = null;
+		}
+		appenders.detachAndStopAllAppenders();
+	}
+
+	@Override
+	protected void append(ILoggingEvent event) {
+		if (queued.get() >= queueSize) {
+			if (event.getLevel().toInt() < discardingThreshold) {
+				discarded.incrementAndGet();
+				return;
+			}
+			// make room by dropping the oldest event, the worker may have taken it meanwhile
+			if (queue.poll() != null) {
+				queued.decrementAndGet();
+				discarded.incrementAndGet();
+			}
+		}
+		// capture the thread bound values now, they are read on the worker
+		event.prepareForDeferredProcessing();
+		if (includeCallerData) {
+			event.getCallerData();
+		}
+		queue.offer(event);
+		queued.incrementAndGet();
+		if (waiting.get()) {
+			LockSupport.unpark(worker);
+		}
+	}
+
+	/**
+	 * Returns the number of events waiting to be written.
+	 *
+	 * @return queued events
+	 */
+	public int getQueued() {
+		return queued.get();
+	}
+
+	/**
+	 * Returns the number of events discarded or replaced because the queue was full.
+	 *
+	 * @return discarded events
+	 */
+	public long getDiscarded() {
+		return discarded.get();
+	}
+
+	public int getQueueSize() {
+		return queueSize;
+	}
+
+	public void setQueueSize(int queueSize) {
+		this.queueSize = queueSize;
+	}
+
+	public String getDiscardingThreshold() {
+		return Level.toLevel(discardingThreshold).toString();
+	}
+
+	/**
+	 * Sets the level below which events are discarded once the queue is full; events at or above
+	 * it replace the oldest queued event instead. OFF only replaces the oldest events.
+	 *
+	 * @param discardingThreshold level name
+	 */
+	public void setDiscardingThreshold(String discardingThreshold) {
+		this.discardingThreshold = Level.toLevel(discardingThreshold, Level.WARN).toInt();
+	}
+
+	public boolean isIncludeCallerData() {
+		return includeCallerData;
+	}
+
+	public void setIncludeCallerData(boolean includeCallerData) {
+		this.includeCallerData = includeCallerData;
+	}
+
+	public long getMaxFlushTime() {
+		return maxFlushTime;
+	}
+
+	/**
+	 * Sets how long stop waits for queued events to be written, in milliseconds.
+	 *
+	 * @param maxFlushTime flush time
+	 */
+	public void setMaxFlushTime(long maxFlushTime) {
+		this.maxFlushTime = maxFlushTime;
+	}
+
+	/** {@inheritDoc} */
+	public void addAppender(Appender<ILoggingEvent> appender) {
+		appenders.addAppender(appender);
+	}
+
+	/** {@inheritDoc} */
+	public Iterator<Appender<ILoggingEvent>> iteratorForAppenders() {
+		return appenders.iteratorForAppenders();
+	}
+
+	/** {@inheritDoc} */
+	public Appender<ILoggingEvent> getAppender(String name) {
+		return appenders.getAppender(name);
+	}
+
+	/** {@inheritDoc} */
+	public boolean isAttached(Appender<ILoggingEvent> appender) {
+		return appenders.isAttached(appender);
+	}
+
+	/** {@inheritDoc} */
+	public void detachAndStopAllAppenders() {
+		appenders.detachAndStopAllAppenders();
+	}
+
+	/** {@inheritDoc} */
+	public boolean detachAppender(Appender<ILoggingEvent> appender) {
+		return appenders.detachAppender(appender);
+	}
+
+	/** {@inheritDoc} */
+	public boolean detachAppender(String name) {
+		return appenders.detachAppender(name);
+	}
+
+	/**
+	 * Drains the queue into the attached appenders, parking while it is empty.
+	 */
+	private class Worker implements Runnable {
+
+		public void run() {
+			while (isStarted() || !queue.isEmpty()) {
+				ILoggingEvent event = queue.poll();
+				if (event != null) {
+					queued.decrementAndGet();
+					try {
+						appenders.appendLoopOnAppenders(event);
+					} catch (Exception e) {
+						addError("Failed to write event in async appender [" + name + "]", e);
+					}
+				} else {
+					waiting.set(true);
+					// re-check after announcing, an event offered in between unparks us
+					if (queue.isEmpty() && isStarted()) {
+						LockSupport.parkNanos(this, TimeUnit.MILLISECONDS.toNanos(100));
+					}
+					waiting.set(false);
+				}
+			}
+		}
+
+	}
+
+}
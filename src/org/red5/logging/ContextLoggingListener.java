@@ -49,6 +49,7 @@ public class ContextLoggingListener implements ServletContextListener {
 		//System.out.printf("About to detach context named %s\n", contextName);
 		ContextSelector selector = Red5LoggerFactory.getContextSelector();
 		LoggerContext context = selector.detachLoggerContext(contextName);
+		Red5LoggerFactory.removeLoggers(contextName);
 		if (context != null) {
 			Logger logger = context.getLogger(Logger.ROOT_LOGGER_NAME);
 			logger.debug("Shutting down context {}", contextName);
@@ -20,6 +20,8 @@ package org.red5.logging;
  */
 
 import java.lang.reflect.Method;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import org.red5.server.adapter.StatefulScopeWrappingAdapter;
 import org.red5.server.api.IScope;
@@ -32,13 +34,35 @@ import ch.qos.logback.classic.selector.ContextSelector;
 
 /**
  * LoggerFactory to simplify requests for Logger instances within
- * Red5 applications. This class is expected to be run only once per
- * logger request and is optimized as such.
- * 
+ * Red5 applications. Loggers are resolved once per class and logger
+ * context and served from a cache afterwards, so classes which look
+ * up their logger per instance do not pay for the context resolution
+ * each time.
+ *
  * @author Paul Gregoire (mondain@gmail.com)
  */
 public class Red5LoggerFactory {
 
+	/**
+	 * Thread name marker the Launcher uses to route entries to a context
+	 */
+	private static final String LAUNCHER_MARKER = "Launcher:/";
+
+	/**
+	 * Resolved loggers keyed by logger context name and then class name
+	 */
+	private static final ConcurrentMap<String, ConcurrentMap<String, ch.qos.logback.classic.Logger>> loggers = new ConcurrentHashMap<String, ConcurrentMap<String, ch.qos.logback.classic.Logger>>();
+
+	/**
+	 * Accessor for the context selector on the bound StaticLoggerBinder, null when logback is not in use
+	 */
+	private static volatile Method selectorAccessor;
+
+	/**
+	 * Whether the selector accessor lookup has been done
+	 */
+	private static volatile boolean selectorResolved;
+
 	@SuppressWarnings({ "unchecked", "rawtypes" })
 	public static Logger getLogger(Class<?> clazz) {
 		//determine the red5 app name or servlet context name
@@ -62,11 +86,13 @@ public class Red5LoggerFactory {
 			}
 		} else {
 			//route the Launcher entries to the correct context
-			String[] parts = Thread.currentThread().getName().split("Launcher:/");
-			if (parts.length > 1) {
-				contextName = parts[1];
+			String threadName = Thread.currentThread().getName();
+			int idx = threadName.indexOf(LAUNCHER_MARKER);
+			if (idx != -1) {
+				int start = idx + LAUNCHER_MARKER.length();
+				int end = threadName.indexOf(LAUNCHER_MARKER, start);
+				contextName = (end == -1) ? threadName.substring(start) : threadName.substring(start, end);
 			}
-
 		}
 
 		/* TODO: For a future day, the context or application will be determined
@@ -112,36 +138,23 @@ public class Red5LoggerFactory {
 	public static Logger getLogger(Class clazz, String contextName) {
 		Logger logger = null;
 		try {
-			//check for logback
-			Class cs = Class.forName("ch.qos.logback.classic.selector.ContextSelector");
-			//trigger an exception if the class doesn't actually exist
-			cs.getDeclaredMethods();
-			// get the class for static binding
-			cs = Class.forName("org.slf4j.impl.StaticLoggerBinder");
-			// get its declared methods
-			Method[] methods = cs.getDeclaredMethods();
-			for (Method method : methods) {
-				//ensure method exists
-				if (method.getName().equals("getContextSelector")) {
-					//System.out.println("Logger context selector method found");
-					//get the context selector
-					StaticLoggerBinder binder = StaticLoggerBinder.getSingleton();
-					Method m1 = binder.getClass().getMethod("getContextSelector", (Class[]) null);
-					ContextSelector selector = (ContextSelector) m1.invoke(binder, (Object[]) null);
-					//get the context for the given context name or default if null
-					LoggerContext ctx = null;
-					if (contextName != null && contextName.length() > 0) {
-						ctx = selector.getLoggerContext(contextName);
-					}
-					// and if we get here, fall back to the default context
-					if (ctx == null) {
-						ctx = selector.getLoggerContext();
-					}
-					//debug
-					//StatusPrinter.print(ctx);
-					//get the logger from the context or default context
-					logger = ((ctx != null) ? ctx.getLogger(clazz) : selector.getDefaultLoggerContext().getLogger(clazz));					
-					break;
+			ContextSelector selector = getContextSelector();
+			if (selector != null) {
+				//get the context for the given context name or default if null
+				LoggerContext ctx = null;
+				if (contextName != null && contextName.length() > 0) {
+					ctx = selector.getLoggerContext(contextName);
+				}
+				// and if we get here, fall back to the default context
+				if (ctx == null) {
+					ctx = selector.getLoggerContext();
+				}
+				if (ctx == null) {
+					ctx = selector.getDefaultLoggerContext();
+				}
+				//get the logger from the context or default context
+				if (ctx != null) {
+					logger = getLogger(ctx, clazz.getName());
 				}
 			}
 		} catch (Exception e) {
@@ -155,16 +168,73 @@ public class Red5LoggerFactory {
 		return logger;
 	}
 
+	/**
+	 * Returns the cached logger for the given context and name, creating it on first use. A cached logger
+	 * belonging to an older context of the same name is replaced.
+	 *
+	 * @param ctx logger context
+	 * @param name logger name
+	 * @return logger
+	 */
+	private static ch.qos.logback.classic.Logger getLogger(LoggerContext ctx, String name) {
+		ConcurrentMap<String, ch.qos.logback.classic.Logger> contextLoggers = loggers.get(ctx.getName());
+		if (contextLoggers == null) {
+			contextLoggers = new ConcurrentHashMap<String, ch.qos.logback.classic.Logger>();
+			ConcurrentMap<String, ch.qos.logback.classic.Logger> existing = loggers.putIfAbsent(ctx.getName(), contextLoggers);
+			if (existing != null) {
+				contextLoggers = existing;
+			}
+		}
+		ch.qos.logback.classic.Logger logger = contextLoggers.get(name);
+		if (logger == null || logger.getLoggerContext() != ctx) {
+			logger = ctx.getLogger(name);
+			contextLoggers.put(name, logger);
+		}
+		return logger;
+	}
+
+	/**
+	 * Drops the cached loggers of a logger context, called when the context is detached.
+	 *
+	 * @param contextName logger context name
+	 */
+	public static void removeLoggers(String contextName) {
+		if (contextName != null) {
+			loggers.remove(contextName);
+		}
+	}
+
 	public static ContextSelector getContextSelector() {
+		if (!selectorResolved) {
+			resolveSelectorAccessor();
+		}
 		ContextSelector selector = null;
-		StaticLoggerBinder binder = StaticLoggerBinder.getSingleton();
-		try {
-			Method m1 = binder.getClass().getMethod("getContextSelector", (Class[]) null);
-			selector = (ContextSelector) m1.invoke(binder, (Object[]) null);
-		} catch (Exception e) {
-			System.err.printf("Exception %s", e.getMessage());
+		Method accessor = selectorAccessor;
+		if (accessor != null) {
+			try {
+				selector = (ContextSelector) accessor.invoke(StaticLoggerBinder.getSingleton(), (Object[]) null);
+			} catch (Exception e) {
+				System.err.printf("Exception %s", e.getMessage());
+			}
 		}
 		return selector;
 	}
-	
-}
\ No newline at end of file
+
+	/**
+	 * Checks for logback and looks up the context selector accessor of the bound StaticLoggerBinder, once.
+	 */
+	private static synchronized void resolveSelectorAccessor() {
+		if (!selectorResolved) {
+			try {
+				//check for logback, triggers an exception if the class doesn't actually exist
+				Class.forName("ch.qos.logback.classic.selector.ContextSelector").getDeclaredMethods();
+				selectorAccessor = StaticLoggerBinder.class.getMethod("getContextSelector", (Class[]) null);
+			} catch (Throwable t) {
+				//no logback or a binder without a selector, use whatever logger is in-place
+				System.err.printf("Exception %s", t.getMessage());
+			}
+			selectorResolved = true;
+		}
+	}
+
+}
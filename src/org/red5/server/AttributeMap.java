@@ -0,0 +1,383 @@
+package org.red5.server;
+
+/*
+ * RED5 Open Source Flash Server - http://code.google.com/p/red5/
+ *
+ * Copyright (c) 2006-2011 by respective authors (see below). All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation; either version 2.1 of the License, or (at your option) any later
+ * version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along
+ * with this library; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+
+import java.io.Serializable;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+
+/**
+ * Concurrent map for attribute stores, which usually hold only a few attributes. Up to
+ * {@link #THRESHOLD} entries are kept in an immutable array of alternating keys and values which
+ * is replaced on every change using compare-and-set. Once the map grows past the threshold the
+ * entries are moved to a {@link ConcurrentHashMap} which is used from then on.
+ * <br />
+ * Like {@link ConcurrentHashMap} neither keys nor values may be <code>null</code> and iterators
+ * are weakly consistent.
+ * 
+ * @author The Red5 Project (red5@osflash.org)
+ */
+final class AttributeMap extends AbstractMap<String, Object> implements ConcurrentMap<String, Object>, Serializable {
+
+	private static final long serialVersionUID = -2717437262618380375L;
+
+	/**
+	 * Maximum number of entries kept in the array
+	 */
+	static final int THRESHOLD = 8;
+
+	private static final Object[] EMPTY = new Object[0];
+
+	private static final AtomicReferenceFieldUpdater<AttributeMap, Object> updater = AtomicReferenceFieldUpdater
+			.newUpdater(AttributeMap.class, Object.class, "state");
+
+	/**
+	 * Either the array of keys and values or the hash map
+	 */
+	private transient volatile Object state = EMPTY;
+
+	private transient Set<Map.Entry<String, Object>> entrySet;
+
+	/**
+	 * Index of a key in an array of keys and values.
+	 * 
+	 * @param entries keys and values
+	 * @param key key
+	 * @return index or -1
+	 */
+	private static int indexOf(Object[] entries, Object key) {
+		for (int i = 0; i < entries.length; i += 2) {
+			if (key.equals(entries[i])) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	@SuppressWarnings("unchecked")
+	private static ConcurrentMap<String, Object> asMap(Object state) {
+		return (ConcurrentMap<String, Object>) state;
+	}
+
+	private boolean update(Object expect, Object update) {
+		return updater.compareAndSet(this, expect, update);
+	}
+
+	/**
+	 * Stores a value.
+	 * 
+	 * @param key key
+	 * @param value value
+	 * @param onlyIfAbsent keep an existing value
+	 * @param onlyIfPresent don't add a new key
+	 * @return previous value
+	 */
+	private Object doPut(String key, Object value, boolean onlyIfAbsent, boolean onlyIfPresent) {
+		if (key == null || value == null) {
+			throw new NullPointerException();
+		}
+		while (true) {
+			Object current = state;
+			if (!(current instanceof Object[])) {
+				ConcurrentMap<String, Object> map = asMap(current);
+				if (onlyIfAbsent) {
+					return map.putIfAbsent(key, value);
+				}
+				return onlyIfPresent ? map.replace(key, value) : map.put(key, value);
+			}
+			Object[] entries = (Object[]) current;
+			int index = indexOf(entries, key);
+			if (index >= 0) {
+				Object previous = entries[index + 1];
+				if (onlyIfAbsent || previous == value) {
+					return previous;
+				}
+				Object[] copy = entries.clone();
+				copy[index + 1] = value;
+				if (update(current, copy)) {
+					return previous;
+				}
+			} else if (onlyIfPresent) {
+				return null;
+			} else if (entries.length / 2 >= THRESHOLD) {
+				// too large for the array
+				ConcurrentMap<String, Object> map = new ConcurrentHashMap<String, Object>(THRESHOLD * 4);
+				for (int i = 0; i < entries.length; i += 2) {
+					map.put((String) entries[i], entries[i + 1]);
+				}
+				map.put(key, value);
+				if (update(current, map)) {
+					return null;
+				}
+			} else {
+				Object[] copy = new Object[entries.length + 2];
+				System.arraycopy(entries, 0, copy, 0, entries.length);
+				copy[entries.length] = key;
+				copy[entries.length + 1] = value;
+				if (update(current, copy)) {
+					return null;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Removes a key.
+	 * 
+	 * @param key key
+	 * @param value value to remove or null to remove any
+	 * @return previous value, null if nothing was removed
+	 */
+	private Object doRemove(Object key, Object value) {
+		if (key == null) {
+			return null;
+		}
+		while (true) {
+			Object current = state;
+			if (!(current instanceof Object[])) {
+				ConcurrentMap<String, Object> map = asMap(current);
+				if (value == null) {
+					return map.remove(key);
+				}
+				return map.remove(key, value) ? value : null;
+			}
+			Object[] entries = (Object[]) current;
+			int index = indexOf(entries, key);
+			if (index < 0) {
+				return null;
+			}
+			Object previous = entries[index + 1];
+			if (value != null && !value.equals(previous)) {
+				return null;
+			}
+			Object[] copy = EMPTY;
+			if (entries.length > 2) {
+				copy = new Object[entries.length - 2];
+				System.arraycopy(entries, 0, copy, 0, index);
+				System.arraycopy(entries, index + 2, copy, index, entries.length - index - 2);
+			}
+			if (update(current, copy)) {
+				return previous;
+			}
+		}
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public Object get(Object key) {
+		if (key == null) {
+			return null;
+		}
+		Object current = state;
+		if (current instanceof Object[]) {
+			Object[] entries = (Object[]) current;
+			int index = indexOf(entries, key);
+			return index >= 0 ? entries[index + 1] : null;
+		}
+		return asMap(current).get(key);
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public boolean containsKey(Object key) {
+		return get(key) != null;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public int size() {
+		Object current = state;
+		if (current instanceof Object[]) {
+			return ((Object[]) current).length / 2;
+		}
+		return asMap(current).size();
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public boolean isEmpty() {
+		return size() == 0;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public Object put(String key, Object value) {
+		return doPut(key, value, false, false);
+	}
+
+	/** {@inheritDoc} */
+	public Object putIfAbsent(String key, Object value) {
+		return doPut(key, value, true, false);
+	}
+
+	/** {@inheritDoc} */
+	public Object replace(String key, Object value) {
+		return doPut(key, value, false, true);
+	}
+
+	/** {@inheritDoc} */
+	public boolean replace(String key, Object oldValue, Object newValue) {
+		if (key == null || oldValue == null || newValue == null) {
+			throw new NullPointerException();
+		}
+		while (true) {
+			Object current = state;
+			if (!(current instanceof Object[])) {
+				return asMap(current).replace(key, oldValue, newValue);
+			}
+			Object[] entries = (Object[]) current;
+			int index = indexOf(entries, key);
+			if (index < 0 || !oldValue.equals(entries[index + 1])) {
+				return false;
+			}
+			Object[] copy = entries.clone();
+			copy[index + 1] = newValue;
+			if (update(current, copy)) {
+				return true;
+			}
+		}
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public Object remove(Object key) {
+		return doRemove(key, null);
+	}
+
+	/** {@inheritDoc} */
+	public boolean remove(Object key, Object value) {
+		return value != null && doRemove(key, value) != null;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void clear() {
+		while (true) {
+			Object current = state;
+			if (!(current instanceof Object[])) {
+				// once grown the hash map stays, writers may still be using it
+				asMap(current).clear();
+				return;
+			}
+			if (update(current, EMPTY)) {
+				return;
+			}
+		}
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public Set<Map.Entry<String, Object>> entrySet() {
+		if (entrySet == null) {
+			entrySet = new EntrySet();
+		}
+		return entrySet;
+	}
+
+	/**
+	 * Serialized as a plain concurrent hash map.
+	 * 
+	 * @return map to serialize instead
+	 */
+	private Object writeReplace() {
+		return new ConcurrentHashMap<String, Object>(this);
+	}
+
+	/**
+	 * Live view of the entries, iterating over the entries present when the iteration started.
+	 */
+	private final class EntrySet extends AbstractSet<Map.Entry<String, Object>> {
+
+		@Override
+		public Iterator<Map.Entry<String, Object>> iterator() {
+			Object current = state;
+			if (!(current instanceof Object[])) {
+				return asMap(current).entrySet().iterator();
+			}
+			final Object[] entries = (Object[]) current;
+			return new Iterator<Map.Entry<String, Object>>() {
+
+				private int next;
+
+				private Map.Entry<String, Object> last;
+
+				public boolean hasNext() {
+					return next < entries.length;
+				}
+
+				public Map.Entry<String, Object> next() {
+					if (next >= entries.length) {
+						throw new NoSuchElementException();
+					}
+					last = new Entry((String) entries[next], entries[next + 1]);
+					next += 2;
+					return last;
+				}
+
+				public void remove() {
+					if (last == null) {
+						throw new IllegalStateException();
+					}
+					// leave a value stored meanwhile by another thread alone
+					AttributeMap.this.remove(last.getKey(), last.getValue());
+					last = null;
+				}
+			};
+		}
+
+		@Override
+		public int size() {
+			return AttributeMap.this.size();
+		}
+
+		@Override
+		public void clear() {
+			AttributeMap.this.clear();
+		}
+
+	}
+
+	/**
+	 * Entry writing changes through to the map.
+	 */
+	private final class Entry extends AbstractMap.SimpleEntry<String, Object> {
+
+		private static final long serialVersionUID = 4158723629441389542L;
+
+		Entry(String key, Object value) {
+			super(key, value);
+		}
+
+		@Override
+		public Object setValue(Object value) {
+			put(getKey(), value);
+			return super.setValue(value);
+		}
+
+	}
+
+}
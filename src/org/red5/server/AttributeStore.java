@@ -24,7 +24,6 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 
 import org.red5.server.api.IAttributeStore;
@@ -33,9 +32,9 @@ import org.red5.server.api.ICastingAttributeStore;
 public class AttributeStore implements ICastingAttributeStore {
 
     /**
-     * Map for attributes
+     * Map for attributes, kept in a small array until it holds more than a few entries
      */
-    protected ConcurrentMap<String, Object> attributes = new ConcurrentHashMap<String, Object>(1);
+    protected ConcurrentMap<String, Object> attributes = new AttributeMap();
 
     /**
      * Filter <code>null</code> keys and values from given map.
@@ -179,7 +178,14 @@ public class AttributeStore implements ICastingAttributeStore {
      * @param values the attributes to set
      */
     public void setAttributes(Map<String, Object> values) {
-    	attributes.putAll(filterNull(values));
+    	for (Map.Entry<String, Object> entry : values.entrySet()) {
+    		String key = entry.getKey();
+    		Object value = entry.getValue();
+    		// skip null keys and values, see filterNull
+    		if (key != null && value != null) {
+    			attributes.put(key, value);
+    		}
+    	}
     }
 
     /**
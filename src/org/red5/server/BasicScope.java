@@ -20,9 +20,10 @@ package org.red5.server;
  */
 
 import java.beans.ConstructorProperties;
-import java.util.HashSet;
+import java.util.Collections;
 import java.util.Iterator;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.red5.server.api.IBasicScope;
 import org.red5.server.api.IScope;
@@ -49,7 +50,7 @@ public abstract class BasicScope extends PersistableAttributeStore implements IB
 	protected IScope parent;
 
 	/**
-	 * List of event listeners
+	 * Set of event listeners, connections join and leave concurrently
 	 */
 	protected Set<IEventListener> listeners;
 
@@ -89,7 +90,7 @@ public abstract class BasicScope extends PersistableAttributeStore implements IB
 	public BasicScope(IScope parent, String type, String name, boolean persistent) {
 		super(type, name, null, persistent);
 		this.parent = parent;
-		this.listeners = new HashSet<IEventListener>();
+		this.listeners = Collections.newSetFromMap(new ConcurrentHashMap<IEventListener, Boolean>());
 	}
 
 	/**
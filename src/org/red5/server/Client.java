@@ -59,9 +59,9 @@ public class Client extends AttributeStore implements IClient {
 	protected static final String PERMISSIONS = IPersistable.TRANSIENT_PREFIX + "_red5_permissions";
 
 	/**
-	 * Scopes this client connected to
+	 * Scopes this client connected to, sized for the usual one or two connections
 	 */
-	protected ConcurrentMap<IConnection, IScope> connToScope = new ConcurrentHashMap<IConnection, IScope>();
+	protected ConcurrentMap<IConnection, IScope> connToScope = new ConcurrentHashMap<IConnection, IScope>(2, 0.75f, 1);
 
 	/**
 	 * Creation time as Timestamp
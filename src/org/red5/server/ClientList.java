@@ -44,7 +44,12 @@ public class ClientList<E> extends AbstractList<E> {
 
 	@ConstructorProperties({"c"})
 	public ClientList(Collection<E> c) {
-		addAll(0, c);
+		// wrap everything first, adding one by one would copy the backing array for each element
+		List<WeakReference<E>> refs = new ArrayList<WeakReference<E>>(c.size());
+		for (E element : c) {
+			refs.add(new WeakReference<E>(element));
+		}
+		items = new CopyOnWriteArrayList<WeakReference<E>>(refs);
 	}
 
 	public boolean add(E element) {
@@ -19,8 +19,10 @@ package org.red5.server;
  * 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
  */
 
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.List;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -36,6 +38,7 @@ import org.red5.server.exception.ClientRejectedException;
 import org.red5.server.jmx.JMXAgent;
 import org.red5.server.jmx.JMXFactory;
 import org.red5.server.jmx.mxbeans.ClientRegistryMXBean;
+import org.red5.server.util.ConcurrentIntMap;
 
 /**
  * Registry for clients. Associates client with it's id so it's possible to get client by id
@@ -45,9 +48,24 @@ import org.red5.server.jmx.mxbeans.ClientRegistryMXBean;
  */
 public class ClientRegistry implements IClientRegistry, ClientRegistryMXBean {
 	/**
-	 * Clients map
+	 * Clients by numeric id, the registry hands out numeric ids only
 	 */
-	private ConcurrentMap<String, IClient> clients = new ConcurrentHashMap<String, IClient>();
+	private ConcurrentIntMap<IClient> clients = new ConcurrentIntMap<IClient>();
+
+	/**
+	 * Clients registered with an id that is not a number, created on first use
+	 */
+	private volatile ConcurrentMap<String, IClient> namedClients;
+
+	/**
+	 * Incremented whenever a client is added or removed
+	 */
+	private AtomicInteger modifications = new AtomicInteger();
+
+	/**
+	 * Snapshot of the registered clients and the modification count it was taken at
+	 */
+	private volatile Snapshot snapshot;
 
 	/**
 	 *  Next client id
@@ -90,8 +108,15 @@ public class ClientRegistry implements IClientRegistry, ClientRegistryMXBean {
 	 */
 	private void addClient(String id, IClient client) {
 		//check to see if the id already exists first
-		if (!hasClient(id)) {
-			clients.put(id, client);
+		IClient existing;
+		int key = parseId(id);
+		if (key >= 0) {
+			existing = clients.putIfAbsent(key, client);
+		} else {
+			existing = getNamedClients().putIfAbsent(id, client);
+		}
+		if (existing == null) {
+			modifications.incrementAndGet();
 		} else {
 			// DW the Client object is meant to be unifying connections from a remote user. But currently the only case we
 			// specify this currently is when we use a remoting session. So we actually just create an arbitrary id, which means
@@ -106,22 +131,39 @@ public class ClientRegistry implements IClientRegistry, ClientRegistryMXBean {
 	}
 
 	public Client getClient(String id) throws ClientNotFoundException {
-		Client result = (Client) clients.get(id);
+		Client result = (Client) findClient(id);
 		if (result == null) {
 			throw new ClientNotFoundException(id);
 		}
 		return result;
 	}
 
+	/**
+	 * Returns the client with the given numeric id.
+	 *
+	 * @param id         Client id
+	 * @return           Client or null if there is no client with this id
+	 */
+	public IClient getClient(int id) {
+		return clients.get(id);
+	}
+
 	/**
 	 * Returns a list of Clients.
 	 */
+	@SuppressWarnings({ "unchecked", "rawtypes" })
 	public ClientList<Client> getClientList() {
-		ClientList<Client> list = new ClientList<Client>();
-		for (IClient c : clients.values()) {
-			list.add((Client) c);
-		}
-		return list;
+		return new ClientList<Client>((List) Arrays.asList(getSnapshot()));
+	}
+
+	/**
+	 * Returns the number of registered clients.
+	 *
+	 * @return           Client count
+	 */
+	public int getClientCount() {
+		ConcurrentMap<String, IClient> named = namedClients;
+		return clients.size() + (named == null ? 0 : named.size());
 	}
 
 	/**
@@ -130,7 +172,8 @@ public class ClientRegistry implements IClientRegistry, ClientRegistryMXBean {
 	 * @return             <code>True</code> if clients exist, otherwise <code>False</code>
 	 */
 	protected boolean hasClients() {
-		return !clients.isEmpty();
+		ConcurrentMap<String, IClient> named = namedClients;
+		return !clients.isEmpty() || (named != null && !named.isEmpty());
 	}
 
 	/**
@@ -143,7 +186,7 @@ public class ClientRegistry implements IClientRegistry, ClientRegistryMXBean {
 			// Avoid creating new Collection object if no clients exist.
 			return Collections.EMPTY_SET;
 		}
-		return Collections.unmodifiableCollection(clients.values());
+		return Collections.unmodifiableList(Arrays.asList(getSnapshot()));
 	}
 
 	/**
@@ -157,7 +200,7 @@ public class ClientRegistry implements IClientRegistry, ClientRegistryMXBean {
 			// null ids are not supported
 			return false;
 		}
-		return clients.containsKey(id);
+		return findClient(id) != null;
 	}
 
 	/**
@@ -196,7 +239,7 @@ public class ClientRegistry implements IClientRegistry, ClientRegistryMXBean {
 		if (nextId.get() == Integer.MAX_VALUE) {
 			nextId.set(0);
 		}
-		return String.format("%s", nextId.getAndIncrement());
+		return Integer.toString(nextId.getAndIncrement());
 	}
 
 	/**
@@ -204,7 +247,7 @@ public class ClientRegistry implements IClientRegistry, ClientRegistryMXBean {
 	 * @return        Previous client id
 	 */
 	public String previousId() {
-		return String.format("%s", nextId.get());
+		return Integer.toString(nextId.get());
 	}
 
 	/**
@@ -212,7 +255,107 @@ public class ClientRegistry implements IClientRegistry, ClientRegistryMXBean {
 	 * @param client           Client to remove
 	 */
 	protected void removeClient(IClient client) {
-		clients.remove(client.getId());
+		String id = client.getId();
+		if (id == null) {
+			return;
+		}
+		boolean removed;
+		int key = parseId(id);
+		if (key >= 0) {
+			removed = clients.remove(key, client);
+		} else {
+			ConcurrentMap<String, IClient> named = namedClients;
+			removed = named != null && named.remove(id, client);
+		}
+		if (removed) {
+			modifications.incrementAndGet();
+		}
+	}
+
+	/**
+	 * Returns the client registered under the given id.
+	 *
+	 * @param id         Client id
+	 * @return           Client or null
+	 */
+	private IClient findClient(String id) {
+		int key = parseId(id);
+		if (key >= 0) {
+			return clients.get(key);
+		}
+		ConcurrentMap<String, IClient> named = namedClients;
+		return named != null ? named.get(id) : null;
+	}
+
+	private ConcurrentMap<String, IClient> getNamedClients() {
+		ConcurrentMap<String, IClient> named = namedClients;
+		if (named == null) {
+			synchronized (this) {
+				named = namedClients;
+				if (named == null) {
+					named = new ConcurrentHashMap<String, IClient>();
+					namedClients = named;
+				}
+			}
+		}
+		return named;
+	}
+
+	/**
+	 * Returns the registered clients, building a new snapshot if clients were added or removed
+	 * since the last one.
+	 *
+	 * @return           Array of clients, must not be modified
+	 */
+	private IClient[] getSnapshot() {
+		int version = modifications.get();
+		Snapshot current = snapshot;
+		if (current != null && current.version == version) {
+			return current.clients;
+		}
+		List<IClient> list = clients.values();
+		ConcurrentMap<String, IClient> named = namedClients;
+		if (named != null) {
+			list.addAll(named.values());
+		}
+		IClient[] clientArray = list.toArray(new IClient[list.size()]);
+		snapshot = new Snapshot(version, clientArray);
+		return clientArray;
+	}
+
+	/**
+	 * Parses a client id in the form produced by {@link #nextId()}.
+	 *
+	 * @param id         Client id
+	 * @return           Numeric id or -1 if the id is not a plain non-negative number
+	 */
+	static int parseId(String id) {
+		int length = id.length();
+		if (length == 0 || length > 10 || (length > 1 && id.charAt(0) == '0')) {
+			return -1;
+		}
+		long value = 0;
+		for (int i = 0; i < length; i++) {
+			char c = id.charAt(i);
+			if (c < '0' || c > '9') {
+				return -1;
+			}
+			value = value * 10 + (c - '0');
+		}
+		return value > Integer.MAX_VALUE ? -1 : (int) value;
+	}
+
+	private static final class Snapshot {
+
+		final int version;
+
+		final IClient[] clients;
+
+		Snapshot(int version, IClient[] clients) {
+			this.version = version;
+			this.clients = clients;
+		}
+
 	}
 
 }
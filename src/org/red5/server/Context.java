@@ -21,6 +21,7 @@ package org.red5.server;
 
 import java.beans.ConstructorProperties;
 import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.management.openmbean.CompositeData;
 
@@ -42,7 +43,9 @@ import org.springframework.beans.factory.BeanFactory;
 import org.springframework.beans.factory.NoSuchBeanDefinitionException;
 import org.springframework.context.ApplicationContext;
 import org.springframework.context.ApplicationContextAware;
+import org.springframework.context.ApplicationListener;
 import org.springframework.context.access.ContextSingletonBeanFactoryLocator;
+import org.springframework.context.event.ContextRefreshedEvent;
 import org.springframework.core.io.Resource;
 
 /**
@@ -50,7 +53,7 @@ import org.springframework.core.io.Resource;
  * This is basic context implementation used by Red5.
  * </p>
  */
-public class Context implements IContext, ApplicationContextAware, ContextMXBean {
+public class Context implements IContext, ApplicationContextAware, ApplicationListener<ContextRefreshedEvent>, ContextMXBean {
 
 	// Initialize Logging
 	public static Logger logger = LoggerFactory.getLogger(Context.class);
@@ -95,6 +98,11 @@ public class Context implements IContext, ApplicationContextAware, ContextMXBean
 	 */
 	private IPersistenceStore persistanceStore;
 
+	/**
+	 * Incremented whenever the services of this context may have been replaced
+	 */
+	private final AtomicInteger serviceGeneration = new AtomicInteger();
+
 	/**
 	 * Initializes core context bean factory using red5.core bean factory from
 	 * red5.xml context
@@ -231,6 +239,28 @@ public class Context implements IContext, ApplicationContextAware, ContextMXBean
 			logger.info("Setting parent bean factory as core");
 			coreContext = applicationContext.getParentBeanFactory();
 		}
+		serviceGeneration.incrementAndGet();
+	}
+
+	/**
+	 * Services may have been replaced when the application context is refreshed, so cached
+	 * scope service lookups are dropped.
+	 * 
+	 * @param event Context refreshed event
+	 */
+	public void onApplicationEvent(ContextRefreshedEvent event) {
+		logger.debug("Application context refreshed: {}", event.getApplicationContext().getDisplayName());
+		serviceGeneration.incrementAndGet();
+	}
+
+	/**
+	 * Returns the counter of the changes which invalidate cached service lookups of the scopes 
+	 * using this context.
+	 * 
+	 * @return counter
+	 */
+	AtomicInteger getServiceGeneration() {
+		return serviceGeneration;
 	}
 
 	/**
@@ -83,6 +83,15 @@ public class GlobalScope extends Scope implements IGlobalScope {
 		return server;
 	}
 
+	/**
+	 * Stops the scope and the pool of the parallel broadcasts.
+	 */
+	@Override
+	public void stop() {
+		super.stop();
+		ScopeBroadcast.shutdownExecutor();
+	}
+
 	/**
 	 * Register global scope in server instance, then call initialization
 	 */
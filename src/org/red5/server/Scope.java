@@ -29,6 +29,8 @@ import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 
@@ -47,12 +49,15 @@ import org.red5.server.api.IScopeAware;
 import org.red5.server.api.IScopeHandler;
 import org.red5.server.api.IServer;
 import org.red5.server.api.event.IEvent;
+import org.red5.server.api.listeners.IHandlerTimingListener;
 import org.red5.server.api.persistence.PersistenceUtils;
+import org.red5.server.api.so.ISharedObject;
 import org.red5.server.api.statistics.IScopeStatistics;
 import org.red5.server.api.statistics.support.StatisticsCounter;
 import org.red5.server.jmx.JMXAgent;
 import org.red5.server.jmx.JMXFactory;
 import org.red5.server.jmx.mxbeans.ScopeMXBean;
+import org.red5.server.stream.IBroadcastScope;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.core.io.Resource;
@@ -178,6 +183,26 @@ public class Scope extends BasicScope implements IScope, IScopeStatistics, Scope
 	 */
 	protected final StatisticsCounter subscopeStats = new StatisticsCounter();
 
+	/**
+	 * Statistics about broadcast streams in this scope and its sub-scopes.
+	 */
+	protected final StatisticsCounter streamStats = new StatisticsCounter();
+
+	/**
+	 * Statistics about shared objects in this scope and its sub-scopes.
+	 */
+	protected final StatisticsCounter sharedObjectStats = new StatisticsCounter();
+
+	/**
+	 * Bytes read from connections which have left this scope.
+	 */
+	private final AtomicLong closedReadBytes = new AtomicLong();
+
+	/**
+	 * Bytes written to connections which have left this scope.
+	 */
+	private final AtomicLong closedWrittenBytes = new AtomicLong();
+
 	/**
 	 * Scope context
 	 */
@@ -209,11 +234,10 @@ public class Scope extends BasicScope implements IScope, IScopeStatistics, Scope
 	private boolean running;
 
 	/**
-	 * Lock for critical sections, to prevent concurrent modification. 
-	 * A "fairness" policy is used wherein the longest waiting thread
-	 * will be granted access before others.
+	 * Lock for starting and stopping the scope. Child scopes and connections are kept
+	 * in concurrent structures and don't need it.
 	 */
-	protected Lock lock = new ReentrantLock(true);
+	protected Lock lock = new ReentrantLock();
 
 	/**
 	 * Registered service handlers for this scope. The map is created on-demand
@@ -221,6 +245,46 @@ public class Scope extends BasicScope implements IScope, IScopeStatistics, Scope
 	 */
 	private volatile ConcurrentMap<String, Object> serviceHandlers;
 
+	/**
+	 * Cached path resolutions and service lookups
+	 */
+	private final ScopeLookupCache lookupCache = new ScopeLookupCache(this);
+
+	/**
+	 * Whether events are dispatched to the connections in parallel, see {@link #broadcastEvent(IEvent)}
+	 */
+	private boolean parallelDispatch;
+
+	/**
+	 * Maximum number of connections an event is delivered to by one task of a parallel broadcast
+	 */
+	private int broadcastBatchSize = 256;
+
+	/**
+	 * Number of completed parallel broadcasts
+	 */
+	private final AtomicLong broadcastCount = new AtomicLong();
+
+	/**
+	 * Total latency of completed parallel broadcasts in nanoseconds
+	 */
+	private final AtomicLong broadcastLatency = new AtomicLong();
+
+	/**
+	 * Highest latency of a parallel broadcast in nanoseconds
+	 */
+	private final AtomicLong maxBroadcastLatency = new AtomicLong();
+
+	/**
+	 * Number of parallel broadcasts which have not been delivered yet
+	 */
+	private final AtomicInteger pendingBroadcasts = new AtomicInteger();
+
+	/**
+	 * Lanes of the parallel broadcasts, created with the first one
+	 */
+	private volatile ScopeBroadcast.Lane[] broadcastLanes;
+
 	/**
 	 * Mbean object name.
 	 */
@@ -270,6 +334,11 @@ public class Scope extends BasicScope implements IScope, IScopeStatistics, Scope
 			log.warn("Child scope already exists");
 			return false;
 		}
+		if (scope instanceof Scope) {
+			// Child scopes broadcast like their parent
+			((Scope) scope).setParallelDispatch(parallelDispatch);
+			((Scope) scope).setBroadcastBatchSize(broadcastBatchSize);
+		}
 		if (scope.getStore() == null) {
 			// Child scope has no persistence store, use same class as parent.
 			try {
@@ -298,12 +367,11 @@ public class Scope extends BasicScope implements IScope, IScopeStatistics, Scope
 		}
 		log.debug("Add child scope: {} to {}", scope, this);
 		String key = scope.getType() + SEPARATOR + scope.getName();
-		//do a check first
-		if (children.get(key) == null) {
-    		//this happens atomically
-    		children.putIfAbsent(key, scope);
-    		subscopeStats.increment();
+		//this happens atomically, only the first of concurrent additions is counted
+		if (children.putIfAbsent(key, scope) == null) {
+			updateChildStatistics(scope, true);
 		}
+		lookupCache.childrenChanged();
 		return true;
 	}
 
@@ -332,32 +400,51 @@ public class Scope extends BasicScope implements IScope, IScopeStatistics, Scope
 		if (hasParent() && !parent.connect(conn, params)) {
 			return false;
 		}
-		if (hasHandler() && !getHandler().connect(conn, this, params)) {
-			return false;
+		// time spent in the handler is traced separately from connecting to the scope
+		long start = System.nanoTime();
+		try {
+			if (hasHandler() && !getHandler().connect(conn, this, params)) {
+				return false;
+			}
+		} finally {
+			notifyHandlerTime(conn, start);
 		}
 		final IClient client = conn.getClient();
 		if (!conn.isConnected()) {
 			// Timeout while connecting client
 			return false;
 		}
-		//we would not get this far if there is no handler
-		if (hasHandler() && !getHandler().join(client, this)) {
-			return false;
-		}
-		//checking the connection again? why?
-		if (!conn.isConnected()) {
-			// Timeout while connecting client
-			return false;
-		}
-
-		Set<IConnection> conns = clients.get(client);
-		if (conns == null) {
-			conns = new CopyOnWriteArraySet<IConnection>();
-			clients.put(client, conns);
+		while (true) {
+			Set<IConnection> conns = clients.get(client);
+			if (conns == null) {
+				// the client joins with its first connection, its other connections wait for it
+				conns = new CopyOnWriteArraySet<IConnection>();
+				synchronized (conns) {
+					if (clients.putIfAbsent(client, conns) == null) {
+						if (!join(client, conn)) {
+							clients.remove(client, conns);
+							return false;
+						}
+						conns.add(conn);
+						clientStats.increment();
+						break;
+					}
+				}
+				continue;
+			}
+			// only connections of the same client are serialized
+			synchronized (conns) {
+				if (clients.get(client) == conns) {
+					if (!conn.isConnected()) {
+						return false;
+					}
+					conns.add(conn);
+					break;
+				}
+			}
+			// the last connection of the client just left or failed to join, try again
 		}
-		conns.add(conn);
 
-		clientStats.increment();
 		addEventListener(conn);
 		connectionStats.increment();
 
@@ -372,6 +459,79 @@ public class Scope extends BasicScope implements IScope, IScopeStatistics, Scope
 		return true;
 	}
 
+	/**
+	 * Let the handler know a client joins this scope with its first connection.
+	 * 
+	 * @param client client
+	 * @param conn first connection of the client
+	 * @return <code>true</code> if the client has joined, <code>false</code> if it was rejected or
+	 *         the connection has been closed meanwhile
+	 */
+	private boolean join(IClient client, IConnection conn) {
+		if (hasHandler()) {
+			long start = System.nanoTime();
+			try {
+				if (!getHandler().join(client, this)) {
+					return false;
+				}
+			} finally {
+				notifyHandlerTime(conn, start);
+			}
+		}
+		if (!conn.isConnected()) {
+			// Timeout while connecting client
+			leave(client, conn);
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Tells a connection that wants to know how long a handler of this scope took.
+	 * 
+	 * @param conn connection
+	 * @param start start time from {@link System#nanoTime()}
+	 */
+	private void notifyHandlerTime(IConnection conn, long start) {
+		if (conn instanceof IHandlerTimingListener) {
+			((IHandlerTimingListener) conn).notifyHandlerTime(this, System.nanoTime() - start);
+		}
+	}
+
+	/**
+	 * Let the handler know a client has left this scope with its last connection.
+	 * 
+	 * @param client client
+	 * @param conn last connection of the client
+	 */
+	private void leave(IClient client, IConnection conn) {
+		if (hasHandler()) {
+			IScopeHandler handler = getHandler();
+			try {
+				// there may be a timeout here ?
+				handler.leave(client, this);
+			} catch (Exception e) {
+				log.error("Error while executing \"leave\" for client {} on handler {}. {}", new Object[] { conn, handler, e });
+			}
+		}
+	}
+
+	/**
+	 * Let the handler know a connection has been closed.
+	 * 
+	 * @param conn connection
+	 */
+	private void handlerDisconnect(IConnection conn) {
+		if (hasHandler()) {
+			IScopeHandler handler = getHandler();
+			try {
+				handler.disconnect(conn, this);
+			} catch (Exception e) {
+				log.error("Error while executing \"disconnect\" for connection {} on handler {}. {}", new Object[] { conn, handler, e });
+			}
+		}
+	}
+
 	/**
 	 * Create child scope with given name
 	 * 
@@ -422,40 +582,37 @@ public class Scope extends BasicScope implements IScope, IScopeStatistics, Scope
 			// Early bail out
 			removeEventListener(conn);
 			connectionStats.decrement();
+			addClosedBytes(conn);
 			if (hasParent()) {
 				parent.disconnect(conn);
 			}
 			return;
 		}
 		// remove it if it exists
-		final Set<IConnection> conns = clients.remove(client);
+		final Set<IConnection> conns = clients.get(client);
+		boolean removed = false;
+		boolean last = false;
 		if (conns != null) {
-			// decrement if there was a set of connections
-			clientStats.decrement();
-			conns.remove(conn);
-			IScopeHandler handler = null;
-			if (hasHandler()) {
-				handler = getHandler();
-				try {
-					handler.disconnect(conn, this);
-				} catch (Exception e) {
-					log.error("Error while executing \"disconnect\" for connection {} on handler {}. {}", new Object[] {
-							conn, handler, e });
+			synchronized (conns) {
+				removed = conns.remove(conn);
+				if (removed && conns.isEmpty()) {
+					// the client leaves the scope with its last connection, a new connection of 
+					// the client waits until it has left and joins again
+					last = true;
+					handlerDisconnect(conn);
+					leave(client, conn);
+					clients.remove(client, conns);
+					clientStats.decrement();
 				}
 			}
-			if (conns.isEmpty()) {
-				if (handler != null) {
-					try {
-						// there may be a timeout here ?
-						handler.leave(client, this);
-					} catch (Exception e) {
-						log.error("Error while executing \"leave\" for client {} on handler {}. {}", new Object[] {
-								conn, handler, e });
-					}
-				}
+		}
+		if (removed) {
+			if (!last) {
+				handlerDisconnect(conn);
 			}
 			removeEventListener(conn);
 			connectionStats.decrement();
+			addClosedBytes(conn);
 			if (this.equals(conn.getScope())) {
 				final IServer server = getServer();
 				if (server instanceof Server) {
@@ -471,6 +628,11 @@ public class Scope extends BasicScope implements IScope, IScopeStatistics, Scope
 	/** {@inheritDoc} */
 	@Override
 	public void dispatchEvent(IEvent event) {
+		// while broadcasts are pending, later events follow them to keep the order
+		if (parallelDispatch && (connectionStats.getCurrent() > broadcastBatchSize || pendingBroadcasts.get() > 0)) {
+			broadcastEvent(event);
+			return;
+		}
 		Collection<Set<IConnection>> conns = getConnections();
 		for (Set<IConnection> set : conns) {
 			for (IConnection conn : set) {
@@ -483,6 +645,117 @@ public class Scope extends BasicScope implements IScope, IScopeStatistics, Scope
 		}
 	}
 
+	/**
+	 * Dispatches an event to all connections without waiting for the delivery. The connections
+	 * are split into batches of {@link #getBroadcastBatchSize()} which are delivered in parallel
+	 * on a shared pool, each connection receives the events in the order they were broadcast.
+	 * 
+	 * @param event Event to broadcast
+	 * @return completion handle, its result is the number of connections the event was delivered to
+	 */
+	public ScopeBroadcast broadcastEvent(IEvent event) {
+		ScopeBroadcast broadcast = new ScopeBroadcast(this, event);
+		broadcast.start(getConnections(), broadcastBatchSize);
+		return broadcast;
+	}
+
+	/**
+	 * Records the latency of a completed parallel broadcast.
+	 * 
+	 * @param latency latency in nanoseconds
+	 */
+	void recordBroadcast(long latency) {
+		pendingBroadcasts.decrementAndGet();
+		broadcastCount.incrementAndGet();
+		broadcastLatency.addAndGet(latency);
+		long max;
+		while (latency > (max = maxBroadcastLatency.get())) {
+			if (maxBroadcastLatency.compareAndSet(max, latency)) {
+				break;
+			}
+		}
+	}
+
+	/**
+	 * Records the start of a parallel broadcast.
+	 */
+	void broadcastStarted() {
+		pendingBroadcasts.incrementAndGet();
+	}
+
+	/**
+	 * Returns the lanes the connections of this scope are spread over by parallel broadcasts.
+	 * 
+	 * @return lanes
+	 */
+	ScopeBroadcast.Lane[] getBroadcastLanes() {
+		ScopeBroadcast.Lane[] lanes = broadcastLanes;
+		if (lanes == null) {
+			synchronized (this) {
+				lanes = broadcastLanes;
+				if (lanes == null) {
+					lanes = ScopeBroadcast.newLanes();
+					broadcastLanes = lanes;
+				}
+			}
+		}
+		return lanes;
+	}
+
+	/** {@inheritDoc} */
+	public long getBroadcastCount() {
+		return broadcastCount.get();
+	}
+
+	/** {@inheritDoc} */
+	public double getAverageBroadcastLatency() {
+		long count = broadcastCount.get();
+		return count == 0 ? 0 : broadcastLatency.get() / (count * 1000000d);
+	}
+
+	/** {@inheritDoc} */
+	public double getMaxBroadcastLatency() {
+		return maxBroadcastLatency.get() / 1000000d;
+	}
+
+	/**
+	 * Whether events are dispatched to the connections in parallel.
+	 * 
+	 * @return <code>true</code> if parallel dispatch is enabled
+	 */
+	public boolean isParallelDispatch() {
+		return parallelDispatch;
+	}
+
+	/**
+	 * Enables dispatching events to the connections in parallel once the scope has more
+	 * connections than the broadcast batch size. {@link #dispatchEvent(IEvent)} then returns
+	 * before the event has been delivered. Child scopes created afterwards use the same setting.
+	 * 
+	 * @param parallelDispatch <code>true</code> to enable parallel dispatch
+	 */
+	public void setParallelDispatch(boolean parallelDispatch) {
+		this.parallelDispatch = parallelDispatch;
+	}
+
+	/**
+	 * Returns the maximum number of connections delivered to by one task of a parallel broadcast.
+	 * 
+	 * @return batch size
+	 */
+	public int getBroadcastBatchSize() {
+		return broadcastBatchSize;
+	}
+
+	/**
+	 * Sets the maximum number of connections delivered to by one task of a parallel broadcast.
+	 * 
+	 * @param broadcastBatchSize batch size
+	 */
+	public void setBroadcastBatchSize(int broadcastBatchSize) {
+		this.broadcastBatchSize = broadcastBatchSize;
+	}
+
 	/** {@inheritDoc} */
 	public int getActiveClients() {
 		return clients.size();
@@ -636,6 +909,93 @@ public class Scope extends BasicScope implements IScope, IScopeStatistics, Scope
 		return subscopeStats.getMax();
 	}
 
+	/** {@inheritDoc} */
+	public int getActiveStreams() {
+		return streamStats.getCurrent();
+	}
+
+	/** {@inheritDoc} */
+	public int getMaxStreams() {
+		return streamStats.getMax();
+	}
+
+	/** {@inheritDoc} */
+	public int getTotalStreams() {
+		return streamStats.getTotal();
+	}
+
+	/** {@inheritDoc} */
+	public int getActiveSharedObjects() {
+		return sharedObjectStats.getCurrent();
+	}
+
+	/** {@inheritDoc} */
+	public int getMaxSharedObjects() {
+		return sharedObjectStats.getMax();
+	}
+
+	/** {@inheritDoc} */
+	public int getTotalSharedObjects() {
+		return sharedObjectStats.getTotal();
+	}
+
+	/**
+	 * Return the number of bytes read from connections which have left this scope or its sub-scopes.
+	 * 
+	 * @return bytes read
+	 */
+	public long getClosedReadBytes() {
+		return closedReadBytes.get();
+	}
+
+	/**
+	 * Return the number of bytes written to connections which have left this scope or its sub-scopes.
+	 * 
+	 * @return bytes written
+	 */
+	public long getClosedWrittenBytes() {
+		return closedWrittenBytes.get();
+	}
+
+	/**
+	 * Updates the sub-scope counter, or the stream and shared object counters of this scope and
+	 * its parents, when a child scope is added or removed.
+	 * 
+	 * @param scope child scope
+	 * @param added true when the child was added
+	 */
+	private void updateChildStatistics(IBasicScope scope, boolean added) {
+		if (scope instanceof IScope) {
+			updateCounter(subscopeStats, added);
+		} else if (scope instanceof IBroadcastScope || ISharedObject.TYPE.equals(scope.getType())) {
+			boolean stream = scope instanceof IBroadcastScope;
+			// streams and shared objects roll up to the parent scopes
+			for (IScope current = this; current instanceof Scope; current = current.getParent()) {
+				Scope target = (Scope) current;
+				updateCounter(stream ? target.streamStats : target.sharedObjectStats, added);
+			}
+		}
+	}
+
+	private static void updateCounter(StatisticsCounter counter, boolean increment) {
+		if (increment) {
+			counter.increment();
+		} else {
+			counter.decrement();
+		}
+	}
+
+	/**
+	 * Adds the byte counts of a connection leaving this scope. Disconnection walks up the parent
+	 * scopes, so the counts roll up on their own.
+	 * 
+	 * @param conn connection
+	 */
+	private void addClosedBytes(IConnection conn) {
+		closedReadBytes.addAndGet(conn.getReadBytes());
+		closedWrittenBytes.addAndGet(conn.getWrittenBytes());
+	}
+
 	/**
 	 * Return parent scope
 	 * 
@@ -695,19 +1055,7 @@ public class Scope extends BasicScope implements IScope, IScopeStatistics, Scope
 	 * @return Child scope with given name
 	 */
 	public IScope getScope(String name) {
-		// Synchronize removal and retrieval of child scopes
-		IScope scope;
-
-		// Obtain lock
-		lock();
-		try {
-			// Get the scope
-			scope = (IScope) children.get(TYPE + SEPARATOR + name);
-		} finally {
-			unlock();
-		}
-
-		return scope;
+		return (IScope) children.get(TYPE + SEPARATOR + name);
 	}
 
 	/**
@@ -776,6 +1124,25 @@ public class Scope extends BasicScope implements IScope, IScopeStatistics, Scope
 		return serviceHandlers;
 	}
 
+	/**
+	 * Return the cache of path resolutions and service lookups starting at this scope
+	 * 
+	 * @return lookup cache
+	 */
+	public ScopeLookupCache getLookupCache() {
+		return lookupCache;
+	}
+
+	/** {@inheritDoc} */
+	public long getLookupCacheHits() {
+		return lookupCache.getHits();
+	}
+
+	/** {@inheritDoc} */
+	public long getLookupCacheMisses() {
+		return lookupCache.getMisses();
+	}
+
 	/** {@inheritDoc} */
 	public IScopeStatistics getStatistics() {
 		return this;
@@ -815,25 +1182,10 @@ public class Scope extends BasicScope implements IScope, IScopeStatistics, Scope
 	 *         <code>false</code> otherwise
 	 */
 	public boolean hasChildScope(String name) {
-		log.debug("Has child scope? {} in {}", name, this);
-
-		boolean has;
-
-		// Obtain lock
-		lock();
-		try {
-			has = children.containsKey(TYPE + SEPARATOR + name);
-			if (log.isDebugEnabled()) {
-    			if (has) {
-    				log.debug("Child scope exists");
-    			} else {
-    				log.debug("Child scope does not exist");				
-    			}
-			}
-		} finally {
-			unlock();
+		boolean has = children.containsKey(TYPE + SEPARATOR + name);
+		if (log.isDebugEnabled()) {
+			log.debug("Has child scope? {} in {}: {}", new Object[] { name, this, has });
 		}
-
 		return has;
 	}
 
@@ -846,17 +1198,7 @@ public class Scope extends BasicScope implements IScope, IScopeStatistics, Scope
 	 *         type, <code>false</code> otherwise
 	 */
 	public boolean hasChildScope(String type, String name) {
-		boolean has;
-
-		// Obtain lock
-		lock();
-		try {
-			has = children.containsKey(type + SEPARATOR + name);
-		} finally {
-			unlock();
-		}
-
-		return has;
+		return children.containsKey(type + SEPARATOR + name);
 	}
 
 	/**
@@ -996,30 +1338,27 @@ public class Scope extends BasicScope implements IScope, IScopeStatistics, Scope
 	 * @param scope Child scope to remove
 	 */
 	public void removeChildScope(IBasicScope scope) {
-
-		// Obtain lock
-		lock();
-
-		// Synchronize retrieval of the child scope (with removal)
-		try {
-			// Don't remove if reference if we have another one
-			if (hasChildScope(scope.getName()) && getScope(scope.getName()) != scope) {
-				log.warn("Being asked to remove wrong scope reference child scope is {} not {}", new Object[] {
-						getScope(scope.getName()), scope });
-				return;
+		// Don't remove if reference if we have another one, only one caller wins a concurrent removal
+		final String key = scope.getType() + SEPARATOR + scope.getName();
+		if (!children.remove(key, scope)) {
+			IBasicScope current = children.get(key);
+			if (current != null) {
+				log.warn("Being asked to remove wrong scope reference child scope is {} not {}", new Object[] { current,
+						scope });
+			} else {
+				log.debug("Child scope {} already removed", scope);
 			}
+			return;
+		}
+		lookupCache.childrenChanged();
 
-			log.debug("Remove child scope: {} path: {}", scope, scope.getPath());
-			if (scope instanceof IScope) {
-				if (hasHandler()) {
-					getHandler().stop((IScope) scope);
-				}
-				subscopeStats.decrement();
+		log.debug("Remove child scope: {} path: {}", scope, scope.getPath());
+		if (scope instanceof IScope) {
+			if (hasHandler()) {
+				getHandler().stop((IScope) scope);
 			}
-			children.remove(scope.getType() + SEPARATOR + scope.getName());
-		} finally {
-			unlock();
 		}
+		updateChildStatistics(scope, false);
 
 		if (hasHandler()) {
 			log.debug("Remove child scope");
@@ -0,0 +1,305 @@
+package org.red5.server;
+
+/*
+ * RED5 Open Source Flash Server - http://code.google.com/p/red5/
+ *
+ * Copyright (c) 2006-2011 by respective authors (see below). All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation; either version 2.1 of the License, or (at your option) any later
+ * version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along
+ * with this library; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.red5.server.api.IConnection;
+import org.red5.server.api.event.IEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+/**
+ * Delivers an event to all connections of a scope by calling {@link IConnection#dispatchEvent(IEvent)}
+ * on each of them, exactly like a serial dispatch. The connections are split into batches which are
+ * delivered in parallel on a shared pool, so the caller doesn't wait for large rooms.
+ * <br />
+ * Each scope spreads its connections over a fixed number of lanes and the batches of a lane run one
+ * after the other, so every connection receives the events of a scope in the order they were
+ * dispatched. The pool is shut down with the global scope.
+ * <br />
+ * The broadcast itself is the completion handle, its result is the number of connections the
+ * event was delivered to.
+ * 
+ * @author The Red5 Project (red5@osflash.org)
+ */
+public class ScopeBroadcast implements Future<Integer> {
+
+	private static Logger log = LoggerFactory.getLogger(ScopeBroadcast.class);
+
+	/**
+	 * Number of threads of the pool and number of lanes of each scope
+	 */
+	private static final int THREADS = Runtime.getRuntime().availableProcessors();
+
+	/**
+	 * Pool shared by all broadcasts, one thread per processor
+	 */
+	private static volatile ExecutorService executor;
+
+	private final Scope scope;
+
+	private final IEvent event;
+
+	private final long start = System.nanoTime();
+
+	private final CountDownLatch done = new CountDownLatch(1);
+
+	private final AtomicInteger pendingBatches = new AtomicInteger();
+
+	private final AtomicInteger delivered = new AtomicInteger();
+
+	private volatile long latency = -1;
+
+	/**
+	 * Creates a broadcast of an event.
+	 * 
+	 * @param scope scope to record the latency with
+	 * @param event event
+	 */
+	ScopeBroadcast(Scope scope, IEvent event) {
+		this.scope = scope;
+		this.event = event;
+	}
+
+	/**
+	 * Starts delivering the event to the given connections.
+	 * 
+	 * @param connections connections by client
+	 * @param batchSize maximum number of connections per task
+	 */
+	void start(Collection<Set<IConnection>> connections, int batchSize) {
+		scope.broadcastStarted();
+		Lane[] lanes = scope.getBroadcastLanes();
+		List<List<IConnection>> targets = new ArrayList<List<IConnection>>(lanes.length);
+		for (int i = 0; i < lanes.length; i++) {
+			targets.add(new ArrayList<IConnection>());
+		}
+		for (Set<IConnection> set : connections) {
+			for (IConnection conn : set) {
+				// a connection always uses the same lane
+				targets.get((System.identityHashCode(conn) & Integer.MAX_VALUE) % lanes.length).add(conn);
+			}
+		}
+		batchSize = Math.max(1, batchSize);
+		int batches = 0;
+		for (List<IConnection> part : targets) {
+			batches += (part.size() + batchSize - 1) / batchSize;
+		}
+		if (batches == 0) {
+			complete();
+			return;
+		}
+		pendingBatches.set(batches);
+		for (int i = 0; i < lanes.length; i++) {
+			List<IConnection> part = targets.get(i);
+			for (int from = 0; from < part.size(); from += batchSize) {
+				lanes[i].execute(new Batch(part.subList(from, Math.min(part.size(), from + batchSize))));
+			}
+		}
+	}
+
+	private void complete() {
+		latency = System.nanoTime() - start;
+		scope.recordBroadcast(latency);
+		done.countDown();
+	}
+
+	/**
+	 * Returns the time from the start of the broadcast until the event was delivered to all
+	 * connections.
+	 * 
+	 * @return latency in nanoseconds or -1 if the broadcast is not done yet
+	 */
+	public long getLatency() {
+		return latency;
+	}
+
+	/**
+	 * Broadcasts can't be cancelled.
+	 * 
+	 * @return false
+	 */
+	public boolean cancel(boolean mayInterruptIfRunning) {
+		return false;
+	}
+
+	/** {@inheritDoc} */
+	public boolean isCancelled() {
+		return false;
+	}
+
+	/** {@inheritDoc} */
+	public boolean isDone() {
+		return done.getCount() == 0;
+	}
+
+	/** {@inheritDoc} */
+	public Integer get() throws InterruptedException, ExecutionException {
+		done.await();
+		return delivered.get();
+	}
+
+	/** {@inheritDoc} */
+	public Integer get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+		if (!done.await(timeout, unit)) {
+			throw new TimeoutException();
+		}
+		return delivered.get();
+	}
+
+	/**
+	 * Creates the lanes of a scope.
+	 * 
+	 * @return lanes
+	 */
+	static Lane[] newLanes() {
+		Lane[] lanes = new Lane[THREADS];
+		for (int i = 0; i < lanes.length; i++) {
+			lanes[i] = new Lane();
+		}
+		return lanes;
+	}
+
+	/**
+	 * Returns the pool used for all broadcasts, a new one is created after it has been shut down.
+	 * 
+	 * @return executor
+	 */
+	private static ExecutorService getExecutor() {
+		ExecutorService current = executor;
+		if (current == null || current.isShutdown()) {
+			synchronized (ScopeBroadcast.class) {
+				current = executor;
+				if (current == null || current.isShutdown()) {
+					CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("ScopeBroadcast-");
+					threadFactory.setDaemon(true);
+					current = Executors.newFixedThreadPool(THREADS, threadFactory);
+					executor = current;
+				}
+			}
+		}
+		return current;
+	}
+
+	/**
+	 * Shuts the pool down once the batches already handed to it have been delivered.
+	 */
+	static void shutdownExecutor() {
+		synchronized (ScopeBroadcast.class) {
+			if (executor != null) {
+				executor.shutdown();
+				executor = null;
+			}
+		}
+	}
+
+	/**
+	 * Delivers the event to a part of the connections.
+	 */
+	private final class Batch implements Runnable {
+
+		private final List<IConnection> connections;
+
+		Batch(List<IConnection> connections) {
+			this.connections = connections;
+		}
+
+		public void run() {
+			try {
+				for (IConnection conn : connections) {
+					try {
+						conn.dispatchEvent(event);
+						delivered.incrementAndGet();
+					} catch (RuntimeException e) {
+						log.error("Could not dispatch event {} to {}", new Object[] { event, conn, e });
+					}
+				}
+			} finally {
+				if (pendingBatches.decrementAndGet() == 0) {
+					complete();
+				}
+			}
+		}
+
+	}
+
+	/**
+	 * Runs the batches handed to it one after the other on the shared pool.
+	 */
+	static final class Lane implements Runnable {
+
+		private final Queue<Runnable> batches = new ConcurrentLinkedQueue<Runnable>();
+
+		private final AtomicBoolean scheduled = new AtomicBoolean();
+
+		/**
+		 * Runs a batch after the ones handed to this lane before.
+		 * 
+		 * @param batch batch
+		 */
+		void execute(Runnable batch) {
+			batches.add(batch);
+			schedule();
+		}
+
+		private void schedule() {
+			if (!batches.isEmpty() && scheduled.compareAndSet(false, true)) {
+				try {
+					getExecutor().execute(this);
+				} catch (RejectedExecutionException e) {
+					// pool is shutting down
+					run();
+				}
+			}
+		}
+
+		public void run() {
+			try {
+				Runnable batch;
+				while ((batch = batches.poll()) != null) {
+					batch.run();
+				}
+			} finally {
+				scheduled.set(false);
+			}
+			// batches added after the queue was found empty
+			schedule();
+		}
+
+	}
+
+}
@@ -0,0 +1,307 @@
+package org.red5.server;
+
+/*
+ * RED5 Open Source Flash Server - http://code.google.com/p/red5/
+ *
+ * Copyright (c) 2006-2011 by respective authors (see below). All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation; either version 2.1 of the License, or (at your option) any later
+ * version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along
+ * with this library; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.red5.server.api.IContext;
+import org.red5.server.api.IScope;
+import org.red5.server.api.ScopeUtils;
+
+/**
+ * Caches the results of scope path resolution and scope service lookups for a scope.
+ * <br />
+ * Each scope counts the changes of its subtree: adding or removing a child scope increments the
+ * generation of the parent and of all scopes above it. A resolved path is only valid while the
+ * generation of the highest scope its resolution may pass through is unchanged, so a change in
+ * one application does not affect lookups in another. Service lookups are valid until the
+ * application context of the scope is refreshed.
+ * <br />
+ * Only paths resolving to a scope are cached, at most {@link #MAX_SCOPES} per scope. Stale paths
+ * are dropped once the limit is reached, and all paths if none is stale.
+ * 
+ * @author The Red5 Project (red5@osflash.org)
+ */
+public class ScopeLookupCache {
+
+	/**
+	 * Maximum number of resolved paths cached for a scope
+	 */
+	public static final int MAX_SCOPES = Integer.getInteger("red5.scopeLookupCache.size", 256);
+
+	/**
+	 * Scope the lookups start at
+	 */
+	private final Scope scope;
+
+	/**
+	 * Incremented each time a scope is added to or removed from the subtree of the scope
+	 */
+	private final AtomicInteger generation = new AtomicInteger();
+
+	/**
+	 * Resolved scopes by path
+	 */
+	private final ConcurrentMap<String, Entry> scopes = new ConcurrentHashMap<String, Entry>();
+
+	/**
+	 * Services by interface
+	 */
+	private final ConcurrentMap<Class<?>, Entry> services = new ConcurrentHashMap<Class<?>, Entry>();
+
+	private final AtomicLong hits = new AtomicLong();
+
+	private final AtomicLong misses = new AtomicLong();
+
+	/**
+	 * Create the cache of a scope.
+	 * 
+	 * @param scope scope the lookups start at
+	 */
+	public ScopeLookupCache(Scope scope) {
+		this.scope = scope;
+	}
+
+	/**
+	 * Invalidates the resolved paths which may pass through the scope or a scope above it, to be
+	 * called after a child scope has been added or removed.
+	 */
+	public void childrenChanged() {
+		IScope current = scope;
+		while (current != null) {
+			ScopeLookupCache cache = of(current);
+			if (cache != null) {
+				cache.generation.incrementAndGet();
+			}
+			current = current.hasParent() ? current.getParent() : null;
+		}
+	}
+
+	/**
+	 * Returns the scope whose subtree contains every scope the resolution of a path may pass 
+	 * through. Every parent reference could go one level up, so that many levels are counted.
+	 * 
+	 * @param path path relative to the scope
+	 * @return cache of the highest scope
+	 */
+	private ScopeLookupCache getBase(String path) {
+		IScope base = scope;
+		if (path.startsWith("/")) {
+			base = ScopeUtils.findRoot(base);
+		} else {
+			int index = path.indexOf("..");
+			while (index != -1 && base.hasParent()) {
+				base = base.getParent();
+				index = path.indexOf("..", index + 2);
+			}
+		}
+		ScopeLookupCache cache = of(base);
+		return cache != null ? cache : this;
+	}
+
+	/**
+	 * Returns the counter of the changes which may invalidate the service lookups.
+	 * 
+	 * @return counter or null if service lookups can't be cached
+	 */
+	private AtomicInteger getServiceCounter() {
+		IContext context = scope.getContext();
+		return context instanceof Context ? ((Context) context).getServiceGeneration() : null;
+	}
+
+	/**
+	 * Returns the current generation, to be passed when adding an entry for the path which was
+	 * resolved after calling this.
+	 * 
+	 * @param path path relative to the scope
+	 * @return generation
+	 */
+	public int getScopeGeneration(String path) {
+		return getBase(path).generation.get();
+	}
+
+	/**
+	 * Returns the current generation, to be passed when adding a service which was looked up
+	 * after calling this.
+	 * 
+	 * @return generation
+	 */
+	public int getServiceGeneration() {
+		AtomicInteger counter = getServiceCounter();
+		return counter != null ? counter.get() : 0;
+	}
+
+	/**
+	 * Returns the cache of a scope.
+	 * 
+	 * @param scope scope
+	 * @return cache or null if the scope doesn't support caching
+	 */
+	public static ScopeLookupCache of(IScope scope) {
+		return scope instanceof Scope ? ((Scope) scope).getLookupCache() : null;
+	}
+
+	/**
+	 * Returns a cached resolved scope.
+	 * 
+	 * @param path path relative to the scope
+	 * @return entry or null if not cached
+	 */
+	public Entry getScope(String path) {
+		return get(scopes, path);
+	}
+
+	/**
+	 * Caches a resolved scope.
+	 * 
+	 * @param path path relative to the scope
+	 * @param scope resolved scope, paths which don't resolve are not cached
+	 * @param lookupGeneration generation when the lookup started
+	 */
+	public void putScope(String path, IScope scope, int lookupGeneration) {
+		if (scope == null) {
+			return;
+		}
+		if (scopes.size() >= MAX_SCOPES) {
+			for (Map.Entry<String, Entry> entry : scopes.entrySet()) {
+				if (!entry.getValue().isValid()) {
+					scopes.remove(entry.getKey(), entry.getValue());
+				}
+			}
+			if (scopes.size() >= MAX_SCOPES) {
+				scopes.clear();
+			}
+		}
+		put(scopes, path, scope, getBase(path).generation, lookupGeneration);
+	}
+
+	/**
+	 * Returns the number of cached paths.
+	 * 
+	 * @return number of paths
+	 */
+	public int getScopeCount() {
+		return scopes.size();
+	}
+
+	/**
+	 * Returns a cached service.
+	 * 
+	 * @param intf interface of the service
+	 * @return entry or null if not cached
+	 */
+	public Entry getService(Class<?> intf) {
+		return get(services, intf);
+	}
+
+	/**
+	 * Caches a service.
+	 * 
+	 * @param intf interface of the service
+	 * @param service service or null if there is none
+	 * @param lookupGeneration generation when the lookup started
+	 */
+	public void putService(Class<?> intf, Object service, int lookupGeneration) {
+		AtomicInteger counter = getServiceCounter();
+		if (counter != null) {
+			put(services, intf, service, counter, lookupGeneration);
+		}
+	}
+
+	private <K> Entry get(ConcurrentMap<K, Entry> map, K key) {
+		Entry entry = map.get(key);
+		if (entry != null) {
+			if (entry.isValid()) {
+				hits.incrementAndGet();
+				return entry;
+			}
+			// drop the stale entry
+			map.remove(key, entry);
+		}
+		misses.incrementAndGet();
+		return null;
+	}
+
+	private <K> void put(ConcurrentMap<K, Entry> map, K key, Object value, AtomicInteger counter, int lookupGeneration) {
+		if (lookupGeneration == counter.get()) {
+			map.put(key, new Entry(value, counter, lookupGeneration));
+		}
+	}
+
+	/**
+	 * Returns the number of lookups answered from the cache.
+	 * 
+	 * @return hits
+	 */
+	public long getHits() {
+		return hits.get();
+	}
+
+	/**
+	 * Returns the number of lookups which had to be resolved.
+	 * 
+	 * @return misses
+	 */
+	public long getMisses() {
+		return misses.get();
+	}
+
+	/**
+	 * Cached lookup result.
+	 */
+	public static final class Entry {
+
+		private final Object value;
+
+		private final AtomicInteger counter;
+
+		private final int generation;
+
+		Entry(Object value, AtomicInteger counter, int generation) {
+			this.value = value;
+			this.counter = counter;
+			this.generation = generation;
+		}
+
+		/**
+		 * Returns whether nothing has changed since the lookup.
+		 * 
+		 * @return <code>true</code> if the entry may be used
+		 */
+		boolean isValid() {
+			return counter.get() == generation;
+		}
+
+		/**
+		 * Returns the looked up object.
+		 * 
+		 * @return object, null if the lookup found nothing
+		 */
+		public Object getValue() {
+			return value;
+		}
+
+	}
+
+}
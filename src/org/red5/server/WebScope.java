@@ -28,8 +28,13 @@ import javax.servlet.ServletContext;
 import org.red5.server.api.IApplicationContext;
 import org.red5.server.api.IApplicationLoader;
 import org.red5.server.api.IConnection;
+import org.red5.server.api.IContext;
 import org.red5.server.api.IGlobalScope;
 import org.red5.server.api.IServer;
+import org.red5.server.api.service.IServiceInvoker;
+import org.red5.server.service.ConversionUtils;
+import org.red5.server.service.ServiceInvoker;
+import org.red5.server.so.SharedObjectService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.web.context.ServletContextAware;
@@ -246,6 +251,8 @@ public class WebScope extends Scope implements ServletContextAware {
 			log.debug("Application context is null, trying retrieve from loader");
 			getAppContext();		
 		}
+		releaseClasses();
+		SharedObjectService.releaseExecutor(this);
 		//try to stop the app context
 		if (appContext != null) {
 			log.debug("Stopping app context");
@@ -300,6 +307,26 @@ public class WebScope extends Scope implements ServletContextAware {
 		}
 	}	
 	
+	/**
+	 * Drops what the server wide caches hold of the application's classes, which would otherwise
+	 * keep its class loader from being collected after it is undeployed.
+	 */
+	private void releaseClasses() {
+		if (!hasContext()) {
+			return;
+		}
+		IContext context = getContext();
+		ClassLoader classLoader = context.getClassLoader();
+		if (classLoader == null) {
+			return;
+		}
+		IServiceInvoker serviceInvoker = context.getServiceInvoker();
+		if (serviceInvoker instanceof ServiceInvoker) {
+			((ServiceInvoker) serviceInvoker).clearMethodCache(classLoader);
+		}
+		ConversionUtils.clearConverters(classLoader);
+	}
+
 	/**
 	 * Is the scope currently shutting down?
 	 * 
@@ -21,6 +21,7 @@ package org.red5.server.api;
 
 import java.lang.reflect.Field;
 
+import org.red5.server.ScopeLookupCache;
 import org.red5.server.api.persistence.IPersistable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -54,16 +55,54 @@ public class ScopeUtils {
 	 * @return	Resolved scope
 	 */
 	public static IScope resolveScope(IScope from, String path) {
+		ScopeLookupCache cache = ScopeLookupCache.of(from);
+		if (cache == null) {
+			return doResolveScope(from, path);
+		}
+		ScopeLookupCache.Entry entry = cache.getScope(path);
+		if (entry != null) {
+			return (IScope) entry.getValue();
+		}
+		int generation = cache.getScopeGeneration(path);
+		IScope result = doResolveScope(from, path);
+		cache.putScope(path, result, generation);
+		return result;
+	}
+
+	/**
+	 * Walks the scope tree to resolve a path.
+	 *
+	 * @param from Scope to use as context (to start from)
+	 * @param path Path to resolve
+	 * @return	Resolved scope
+	 */
+	private static IScope doResolveScope(IScope from, String path) {
 		IScope current = from;
+		int start = 0;
+		int end = path.length();
 		if (path.startsWith(SLASH)) {
 			current = ScopeUtils.findRoot(current);
-			path = path.substring(1, path.length());
+			start = 1;
+		}
+		if (end > start && path.endsWith(SLASH)) {
+			end--;
+		}
+		// like String.split, ignore any further trailing separators
+		boolean trimmed = false;
+		while (end > start && path.charAt(end - 1) == '/') {
+			end--;
+			trimmed = true;
 		}
-		if (path.endsWith(SLASH)) {
-			path = path.substring(0, path.length() - 1);
+		if (trimmed && end == start) {
+			return current;
 		}
-		String[] parts = path.split(SLASH);
-		for (String part : parts) {
+		while (start <= end) {
+			int next = path.indexOf('/', start);
+			if (next == -1 || next > end) {
+				next = end;
+			}
+			String part = path.substring(start, next);
+			start = next + 1;
 			if (part.equals(".")) {
 				continue;
 			}
@@ -265,10 +304,22 @@ public class ScopeUtils {
 		// We expect an interface
 		assert intf.isInterface();
 
-		String attr = IPersistable.TRANSIENT_PREFIX + SERVICE_CACHE_PREFIX + intf.getCanonicalName();
-		if (scope.hasAttribute(attr)) {
-			// Return cached service
-			return scope.getAttribute(attr);
+		ScopeLookupCache cache = ScopeLookupCache.of(scope);
+		String attr = null;
+		int generation = 0;
+		if (cache != null) {
+			ScopeLookupCache.Entry entry = cache.getService(intf);
+			// a missing service is looked up again if a default class is given
+			if (entry != null && (entry.getValue() != null || defaultClass == null)) {
+				return entry.getValue();
+			}
+			generation = cache.getServiceGeneration();
+		} else {
+			attr = IPersistable.TRANSIENT_PREFIX + SERVICE_CACHE_PREFIX + intf.getCanonicalName();
+			if (scope.hasAttribute(attr)) {
+				// Return cached service
+				return scope.getAttribute(attr);
+			}
 		}
 
 		Object handler = null;
@@ -316,7 +367,11 @@ public class ScopeUtils {
 		}
 
 		// Cache service
-		scope.setAttribute(attr, handler);
+		if (cache != null) {
+			cache.putService(intf, handler, generation);
+		} else {
+			scope.setAttribute(attr, handler);
+		}
 		return handler;
 	}
 
@@ -0,0 +1,40 @@
+package org.red5.server.api.listeners;
+
+/*
+ * RED5 Open Source Flash Server - http://code.google.com/p/red5/
+ *
+ * Copyright (c) 2006-2011 by respective authors (see below). All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation; either version 2.1 of the License, or (at your option) any later
+ * version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along
+ * with this library; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+
+import org.red5.server.api.IScope;
+
+/**
+ * Interface for connections that want to know how long the connect and join handlers of the
+ * application took while they connected to a scope.
+ * 
+ * @author The Red5 Project (red5@osflash.org)
+ */
+public interface IHandlerTimingListener {
+
+	/**
+	 * A handler of a scope returned from connecting this connection or joining its client.
+	 * 
+	 * @param scope the scope whose handler was called
+	 * @param nanos time spent in the handler in nanoseconds
+	 */
+	public void notifyHandlerTime(IScope scope, long nanos);
+
+}
@@ -0,0 +1,46 @@
+package org.red5.server.api.service;
+
+/*
+ * RED5 Open Source Flash Server - http://code.google.com/p/red5/
+ * 
+ * Copyright (c) 2006-2011 by respective authors (see below). All rights reserved.
+ * 
+ * This library is free software; you can redistribute it and/or modify it under the 
+ * terms of the GNU Lesser General Public License as published by the Free Software 
+ * Foundation; either version 2.1 of the License, or (at your option) any later 
+ * version. 
+ * 
+ * This library is distributed in the hope that it will be useful, but WITHOUT ANY 
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A 
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License along 
+ * with this library; if not, write to the Free Software Foundation, Inc., 
+ * 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA 
+ */
+
+/**
+ * Connection able to hand several calls to its transport in a single write.
+ * 
+ * @author The Red5 Project (red5@osflash.org)
+ */
+public interface IServiceBatchCapableConnection extends IServiceCapableConnection {
+
+	/**
+	 * Invokes several calls on the given channel. Calls shared between connections, such as
+	 * broadcast calls, get a pending call of their own for this connection.
+	 * 
+	 * @param calls      Service calls
+	 * @param channel    Channel used
+	 */
+	void invoke(IServiceCall[] calls, int channel);
+
+	/**
+	 * Sends several notifications on the given channel.
+	 * 
+	 * @param calls      Service calls
+	 * @param channel    Channel used
+	 */
+	void notify(IServiceCall[] calls, int channel);
+
+}
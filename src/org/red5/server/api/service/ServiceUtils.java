@@ -28,6 +28,8 @@ import org.red5.server.api.IClient;
 import org.red5.server.api.IConnection;
 import org.red5.server.api.IScope;
 import org.red5.server.api.Red5;
+import org.red5.server.service.BroadcastCall;
+import org.red5.server.service.BroadcastPendingCall;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -186,6 +188,82 @@ public class ServiceUtils {
 	 * @param callback object to notify when result is received
 	 */
 	public static void invokeOnClient(IClient client, IScope scope, String method, Object[] params, IPendingServiceCallback callback) {
+		Set<IConnection> connections = getConnections(client, scope);
+		if (connections.isEmpty()) {
+			return;
+		}
+		// serialized once and shared by all connections, results are kept per connection
+		BroadcastCall call = new BroadcastCall(method, params);
+		for (IConnection conn : connections) {
+			if (conn instanceof IServiceCapableConnection) {
+				BroadcastPendingCall pendingCall = call.newPendingCall();
+				if (callback != null) {
+					pendingCall.registerCallback(callback);
+				}
+				((IServiceCapableConnection) conn).invoke(pendingCall);
+			}
+		}
+		if (client == null) {
+			connections.clear();
+		}
+	}
+
+	/**
+	 * Invoke several methods on all connections to a given scope. Each call is serialized once
+	 * for all connections and connections able to do so receive all calls in a single write.
+	 * Results are not tracked.
+	 * 
+	 * @param scope scope to get connections from
+	 * @param calls calls to invoke, usually {@link BroadcastCall} instances
+	 */
+	public static void invokeOnAllConnections(IScope scope, IServiceCall[] calls) {
+		Set<IConnection> connections = getConnections(null, scope);
+		for (IConnection conn : connections) {
+			if (conn instanceof IServiceBatchCapableConnection) {
+				((IServiceBatchCapableConnection) conn).invoke(calls, 3);
+			} else if (conn instanceof IServiceCapableConnection) {
+				for (IServiceCall call : calls) {
+					if (call instanceof BroadcastCall) {
+						call = ((BroadcastCall) call).newPendingCall();
+					}
+					((IServiceCapableConnection) conn).invoke(call);
+				}
+			}
+		}
+		connections.clear();
+	}
+
+	/**
+	 * Notify several methods on all connections to a given scope. Each call is serialized once
+	 * for all connections and connections able to do so receive all calls in a single write.
+	 * 
+	 * @param scope scope to get connections from
+	 * @param calls calls to notify, usually {@link BroadcastCall} instances
+	 */
+	public static void notifyOnAllConnections(IScope scope, IServiceCall[] calls) {
+		Set<IConnection> connections = getConnections(null, scope);
+		for (IConnection conn : connections) {
+			if (conn instanceof IServiceBatchCapableConnection) {
+				((IServiceBatchCapableConnection) conn).notify(calls, 3);
+			} else if (conn instanceof IServiceCapableConnection) {
+				for (IServiceCall call : calls) {
+					((IServiceCapableConnection) conn).notify(call);
+				}
+			}
+		}
+		connections.clear();
+	}
+
+	/**
+	 * Returns the connections of a client to a scope or all connections to the scope if no
+	 * client is given.
+	 * 
+	 * @param client client or null
+	 * @param scope scope
+	 * @return connections, a new set if client is null
+	 */
+	@SuppressWarnings("unchecked")
+	private static Set<IConnection> getConnections(IClient client, IScope scope) {
 		Set<IConnection> connections;
 		if (client == null) {
 			connections = new HashSet<IConnection>();
@@ -197,22 +275,10 @@ public class ServiceUtils {
 			connections = scope.lookupConnections(client);
 			if (connections == null) {
 				// Client is not connected to the scope
-				return;
+				connections = Collections.EMPTY_SET;
 			}
 		}
-		if (callback == null) {
-			for (IConnection conn : connections) {
-				invokeOnConnection(conn, method, params);
-			}
-		} else {
-			for (IConnection conn : connections) {
-				invokeOnConnection(conn, method, params, callback);
-			}
-		}
-		if (connections != null && client == null) {
-			connections.clear();
-			connections = null;
-		}
+		return connections;
 	}
 
 	/**
@@ -289,24 +355,20 @@ public class ServiceUtils {
 	 * @param method name of the method to notify
 	 * @param params parameters to pass to the method
 	 */
-	@SuppressWarnings("unchecked")
 	public static void notifyOnClient(IClient client, IScope scope, String method, Object[] params) {
-		Set<IConnection> connections = Collections.EMPTY_SET;
-		if (client == null) {
-			connections = new HashSet<IConnection>();
-			Collection<Set<IConnection>> conns = scope.getConnections();
-			for (Set<IConnection> set : conns) {
-				connections.addAll(set);
-			}
-		} else {
-			connections = scope.lookupConnections(client);
+		Set<IConnection> connections = getConnections(client, scope);
+		if (connections.isEmpty()) {
+			return;
 		}
+		// serialized once and shared by all connections
+		BroadcastCall call = new BroadcastCall(method, params);
 		for (IConnection conn : connections) {
-			notifyOnConnection(conn, method, params);
+			if (conn instanceof IServiceCapableConnection) {
+				((IServiceCapableConnection) conn).notify(call);
+			}
 		}
-		if (connections != null) {
+		if (client == null) {
 			connections.clear();
-			connections = null;
 		}
 	}
 
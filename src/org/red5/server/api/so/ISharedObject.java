@@ -57,6 +57,23 @@ public interface ISharedObject extends IBasicScope, ISharedObjectBase, ISharedOb
 	 */
 	public void release();
 
+	/**
+	 * Collect updates for the given time before they are sent to the clients. Changes of the 
+	 * same attribute within that time are merged, so only the last value is sent and the version
+	 * is increased once. Useful for shared objects which are updated very frequently, like game
+	 * states or cursor positions.
+	 * 
+	 * @param interval milliseconds to collect updates, 0 to send every update immediately (default)
+	 */
+	public void setUpdateInterval(long interval);
+
+	/**
+	 * Return the time during which updates are collected before they are sent.
+	 * 
+	 * @return milliseconds to collect updates, 0 if updates are sent immediately
+	 */
+	public long getUpdateInterval();
+
 	/**
 	 * Return statistics about the shared object.
 	 * 
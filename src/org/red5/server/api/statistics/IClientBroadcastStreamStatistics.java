@@ -71,5 +71,28 @@ public interface IClientBroadcastStreamStatistics extends IStreamStatistics {
 	 * @return number of bytes
 	 */
 	public long getBytesReceived();
+
+	/**
+	 * Return the smoothed inter-arrival jitter of the audio and video frames, the deviation of
+	 * the time between two frames arriving from the time between their timestamps.
+	 * 
+	 * @return jitter in milliseconds
+	 */
+	public double getJitter();
+
+	/**
+	 * Return a percentile of the inter-arrival jitter.
+	 * 
+	 * @param percentile percentile between 0 and 100
+	 * @return jitter in milliseconds
+	 */
+	public double getJitterPercentile(double percentile);
+
+	/**
+	 * Return the highest inter-arrival jitter.
+	 * 
+	 * @return jitter in milliseconds
+	 */
+	public double getMaxJitter();
 	
 }
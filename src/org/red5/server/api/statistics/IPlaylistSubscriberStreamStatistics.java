@@ -47,5 +47,29 @@ public interface IPlaylistSubscriberStreamStatistics extends IStreamStatistics {
 	 * @return fill ratio in percent
 	 */
 	public double getEstimatedBufferFill();
+
+	/**
+	 * Return the average delay of live frames from their arrival at the server until they were
+	 * handed to the client connection. The delays are recorded per live stream, so all 
+	 * subscribers of a stream return the same values.
+	 * 
+	 * @return delay in milliseconds
+	 */
+	public double getAverageLiveDelay();
+
+	/**
+	 * Return a percentile of the delay of live frames.
+	 * 
+	 * @param percentile percentile between 0 and 100
+	 * @return delay in milliseconds
+	 */
+	public double getLiveDelayPercentile(double percentile);
+
+	/**
+	 * Return the highest delay of a live frame.
+	 * 
+	 * @return delay in milliseconds
+	 */
+	public double getMaxLiveDelay();
 	
 }
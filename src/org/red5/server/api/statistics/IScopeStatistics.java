@@ -112,5 +112,47 @@ public interface IScopeStatistics extends IStatisticsBase {
 	 * @return number of subscopes
 	 */
 	public int getActiveSubscopes();
+
+	/**
+	 * Return total number of streams published to the scope and its subscopes.
+	 * 
+	 * @return number of streams
+	 */
+	public int getTotalStreams();
+
+	/**
+	 * Return maximum number of streams concurrently published to the scope and its subscopes.
+	 * 
+	 * @return number of streams
+	 */
+	public int getMaxStreams();
+
+	/**
+	 * Return current number of streams published to the scope and its subscopes.
+	 * 
+	 * @return number of streams
+	 */
+	public int getActiveStreams();
+
+	/**
+	 * Return total number of shared objects created in the scope and its subscopes.
+	 * 
+	 * @return number of shared objects
+	 */
+	public int getTotalSharedObjects();
+
+	/**
+	 * Return maximum number of shared objects concurrently existing in the scope and its subscopes.
+	 * 
+	 * @return number of shared objects
+	 */
+	public int getMaxSharedObjects();
+
+	/**
+	 * Return current number of shared objects in the scope and its subscopes.
+	 * 
+	 * @return number of shared objects
+	 */
+	public int getActiveSharedObjects();
 	
 }
@@ -60,4 +60,8 @@ public interface ClientBroadcastStreamMXBean {
 
 	public void setPublishedName(String name);
 
+	public double getJitter();
+
+	public double getMaxJitter();
+
 }
@@ -43,6 +43,8 @@ public interface ClientRegistryMXBean {
 
 	public List<Client> getClientList();
 
+	public int getClientCount();
+
 	public Client getClient(String id) throws ClientNotFoundException;
 
 }
\ No newline at end of file
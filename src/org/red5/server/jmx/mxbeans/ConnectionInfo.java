@@ -0,0 +1,111 @@
+package org.red5.server.jmx.mxbeans;
+
+/*
+ * RED5 Open Source Flash Server - http://code.google.com/p/red5/
+ *
+ * Copyright (c) 2006-2011 by respective authors (see below). All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation; either version 2.1 of the License, or (at your option) any later
+ * version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along
+ * with this library; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+
+import java.beans.ConstructorProperties;
+
+/**
+ * Summary of a connection as returned by connection queries.
+ *
+ * @author The Red5 Project (red5@osflash.org)
+ */
+public class ConnectionInfo {
+
+	private final int clientId;
+
+	private final String type;
+
+	private final String remoteAddress;
+
+	private final int remotePort;
+
+	private final String path;
+
+	private final boolean connected;
+
+	private final long readBytes;
+
+	private final long writtenBytes;
+
+	private final long pendingMessages;
+
+	private final boolean inspected;
+
+	@ConstructorProperties({ "clientId", "type", "remoteAddress", "remotePort", "path", "connected", "readBytes", "writtenBytes", "pendingMessages", "inspected" })
+	public ConnectionInfo(int clientId, String type, String remoteAddress, int remotePort, String path, boolean connected, long readBytes, long writtenBytes,
+			long pendingMessages, boolean inspected) {
+		this.clientId = clientId;
+		this.type = type;
+		this.remoteAddress = remoteAddress;
+		this.remotePort = remotePort;
+		this.path = path;
+		this.connected = connected;
+		this.readBytes = readBytes;
+		this.writtenBytes = writtenBytes;
+		this.pendingMessages = pendingMessages;
+		this.inspected = inspected;
+	}
+
+	public int getClientId() {
+		return clientId;
+	}
+
+	public String getType() {
+		return type;
+	}
+
+	public String getRemoteAddress() {
+		return remoteAddress;
+	}
+
+	public int getRemotePort() {
+		return remotePort;
+	}
+
+	public String getPath() {
+		return path;
+	}
+
+	public boolean isConnected() {
+		return connected;
+	}
+
+	public long getReadBytes() {
+		return readBytes;
+	}
+
+	public long getWrittenBytes() {
+		return writtenBytes;
+	}
+
+	public long getPendingMessages() {
+		return pendingMessages;
+	}
+
+	/**
+	 * Whether the connection has its own mbean.
+	 * 
+	 * @return true if registered for inspection
+	 */
+	public boolean isInspected() {
+		return inspected;
+	}
+
+}
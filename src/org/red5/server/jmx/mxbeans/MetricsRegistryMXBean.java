@@ -0,0 +1,51 @@
+package org.red5.server.jmx.mxbeans;
+
+/*
+ * RED5 Open Source Flash Server - http://code.google.com/p/red5/
+ *
+ * Copyright (c) 2006-2011 by respective authors (see below). All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation; either version 2.1 of the License, or (at your option) any later
+ * version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along
+ * with this library; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+
+import java.util.List;
+import java.util.Map;
+
+import javax.management.MXBean;
+
+import org.red5.server.metrics.HistogramSnapshot;
+
+/**
+ * Timing histograms and counters of the server, durations are in microseconds.
+ *
+ * @author The Red5 Project (red5@osflash.org)
+ */
+@MXBean
+public interface MetricsRegistryMXBean {
+
+	public boolean isEnabled();
+
+	public void setEnabled(boolean enabled);
+
+	public List<String> getHistogramNames();
+
+	public HistogramSnapshot getHistogramSnapshot(String name);
+
+	public List<HistogramSnapshot> getHistogramSnapshots();
+
+	public Map<String, Long> getCounters();
+
+	public void reset();
+
+}
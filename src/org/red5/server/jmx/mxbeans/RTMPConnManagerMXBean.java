@@ -0,0 +1,50 @@
+package org.red5.server.jmx.mxbeans;
+
+/*
+ * RED5 Open Source Flash Server - http://code.google.com/p/red5/
+ *
+ * Copyright (c) 2006-2011 by respective authors (see below). All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation; either version 2.1 of the License, or (at your option) any later
+ * version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along
+ * with this library; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+
+import java.util.List;
+
+import javax.management.MXBean;
+
+/**
+ * Aggregated view of the connections of a connection manager. Queries page through a snapshot
+ * of the connections ordered by client id, a filter matches part of the type, remote address or
+ * path of a connection. Single connections can be registered as mbeans for closer inspection.
+ *
+ * @author The Red5 Project (red5@osflash.org)
+ */
+@MXBean
+public interface RTMPConnManagerMXBean {
+
+	public int getConnectionCount();
+
+	public int countConnections(String filter);
+
+	public List<ConnectionInfo> getConnections(int offset, int limit, String filter);
+
+	public boolean inspectConnection(int clientId);
+
+	public boolean releaseConnection(int clientId);
+
+	public List<Integer> getInspectedConnections();
+
+	public List<String> getFlightRecord(int clientId);
+
+}
@@ -64,6 +64,8 @@ public interface RTMPMinaConnectionMXBean {
 	public long getPendingMessages();
 
 	public long getPendingVideoMessages(int streamId);
+
+	public List<String> getFlightRecord();
 	
     public void invokeMethod(String method);
 
@@ -334,4 +334,67 @@ public interface ScopeMXBean {
 	 */
 	public int getActiveSubscopes();
 
+	/**
+	 * Return current number of streams published to the scope and its subscopes.
+	 * 
+	 * @return number of streams
+	 */
+	public int getActiveStreams();
+
+	/**
+	 * Return current number of shared objects in the scope and its subscopes.
+	 * 
+	 * @return number of shared objects
+	 */
+	public int getActiveSharedObjects();
+
+	/**
+	 * Return number of bytes read from connections which have left the scope.
+	 * 
+	 * @return bytes read
+	 */
+	public long getClosedReadBytes();
+
+	/**
+	 * Return number of bytes written to connections which have left the scope.
+	 * 
+	 * @return bytes written
+	 */
+	public long getClosedWrittenBytes();
+
+	/**
+	 * Return number of path resolutions and service lookups answered from the cache.
+	 * 
+	 * @return number of cache hits
+	 */
+	public long getLookupCacheHits();
+
+	/**
+	 * Return number of path resolutions and service lookups which had to be resolved.
+	 * 
+	 * @return number of cache misses
+	 */
+	public long getLookupCacheMisses();
+
+	/**
+	 * Return number of completed parallel broadcasts.
+	 * 
+	 * @return number of broadcasts
+	 */
+	public long getBroadcastCount();
+
+	/**
+	 * Return average time until a parallel broadcast reached all connections.
+	 * 
+	 * @return latency in milliseconds
+	 */
+	public double getAverageBroadcastLatency();
+
+	/**
+	 * Return longest time until a parallel broadcast reached all connections.
+	 * 
+	 * @return latency in milliseconds
+	 */
+	public double getMaxBroadcastLatency();
+
 }
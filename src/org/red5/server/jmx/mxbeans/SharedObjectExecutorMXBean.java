@@ -0,0 +1,50 @@
+package org.red5.server.jmx.mxbeans;
+
+/*
+ * RED5 Open Source Flash Server - http://code.google.com/p/red5/
+ *
+ * Copyright (c) 2006-2011 by respective authors (see below). All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation; either version 2.1 of the License, or (at your option) any later
+ * version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along
+ * with this library; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+
+import javax.management.MXBean;
+
+/**
+ * Statistics of the executor delivering the shared object updates of an application.
+ *
+ * @author The Red5 Project (red5@osflash.org)
+ */
+@MXBean
+public interface SharedObjectExecutorMXBean {
+
+	public String getApplication();
+
+	public int getShardCount();
+
+	public int getQueueDepth();
+
+	public int getMaxShardQueueDepth();
+
+	public long getSubmittedTasks();
+
+	public long getCompletedTasks();
+
+	public double getAverageTaskLatency();
+
+	public long getMaxTaskLatency();
+
+	public void resetStatistics();
+
+}
@@ -0,0 +1,232 @@
+package org.red5.server.metrics;
+
+/*
+ * RED5 Open Source Flash Server - http://code.google.com/p/red5/
+ *
+ * Copyright (c) 2006-2011 by respective authors (see below). All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation; either version 2.1 of the License, or (at your option) any later
+ * version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along
+ * with this library; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free histogram of durations in nanoseconds. Values are counted in buckets which grow
+ * exponentially, every power of two is split into eight linear buckets, so a percentile is
+ * never more than 12.5% above the recorded value. Recording a value costs two or three atomic
+ * updates and doesn't allocate, the buckets take about 4KB and are only allocated with the first
+ * value.
+ * 
+ * @author The Red5 Project (red5@osflash.org)
+ */
+public class Histogram {
+
+	private static final int SUB_BUCKET_BITS = 3;
+
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+	private static final int BUCKETS = (64 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+	private final String name;
+
+	private volatile AtomicLongArray counts;
+
+	private final AtomicLong total = new AtomicLong();
+
+	private final AtomicLong max = new AtomicLong();
+
+	public Histogram(String name) {
+		this.name = name;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * Records a duration.
+	 * 
+	 * @param nanos duration in nanoseconds, negative values are counted as 0
+	 */
+	public void record(long nanos) {
+		if (nanos < 0) {
+			nanos = 0;
+		}
+		AtomicLongArray buckets = counts;
+		if (buckets == null) {
+			buckets = allocate();
+		}
+		buckets.incrementAndGet(bucket(nanos));
+		total.addAndGet(nanos);
+		long current;
+		while (nanos > (current = max.get())) {
+			if (max.compareAndSet(current, nanos)) {
+				break;
+			}
+		}
+	}
+
+	/**
+	 * Records the time passed since a start time taken with {@link MetricsRegistry#start()}.
+	 * Nothing is recorded if metrics were disabled at the start.
+	 * 
+	 * @param start start time
+	 */
+	public void recordSince(long start) {
+		if (start != 0) {
+			record(System.nanoTime() - start);
+		}
+	}
+
+	/**
+	 * Returns the statistics of the values recorded so far.
+	 * 
+	 * @return snapshot
+	 */
+	public HistogramSnapshot getSnapshot() {
+		long[] snapshot = new long[BUCKETS];
+		long count = copy(snapshot);
+		double mean = count == 0 ? 0 : total.get() / (double) count;
+		return new HistogramSnapshot(name, count, toMicros(mean), percentile(snapshot, count, 0.5), percentile(snapshot, count, 0.9), percentile(snapshot, count, 0.99),
+				percentile(snapshot, count, 0.999), toMicros(max.get()));
+	}
+
+	/**
+	 * Returns the number of recorded values.
+	 * 
+	 * @return count
+	 */
+	public long getCount() {
+		AtomicLongArray buckets = counts;
+		long count = 0;
+		if (buckets != null) {
+			for (int i = 0; i < BUCKETS; i++) {
+				count += buckets.get(i);
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Returns the average of the recorded values.
+	 * 
+	 * @return mean in microseconds
+	 */
+	public double getMean() {
+		long count = getCount();
+		return count == 0 ? 0 : toMicros(total.get() / (double) count);
+	}
+
+	/**
+	 * Returns the value below which the given share of recorded values lies.
+	 * 
+	 * @param percentile percentile between 0 and 100
+	 * @return value in microseconds
+	 */
+	public double getPercentile(double percentile) {
+		long[] snapshot = new long[BUCKETS];
+		long count = copy(snapshot);
+		return percentile(snapshot, count, percentile / 100);
+	}
+
+	/**
+	 * Returns the highest recorded value.
+	 * 
+	 * @return maximum in microseconds
+	 */
+	public double getMax() {
+		return toMicros(max.get());
+	}
+
+	/**
+	 * Removes all recorded values.
+	 */
+	public void reset() {
+		AtomicLongArray buckets = counts;
+		if (buckets != null) {
+			for (int i = 0; i < BUCKETS; i++) {
+				buckets.set(i, 0);
+			}
+		}
+		total.set(0);
+		max.set(0);
+	}
+
+	private synchronized AtomicLongArray allocate() {
+		if (counts == null) {
+			counts = new AtomicLongArray(BUCKETS);
+		}
+		return counts;
+	}
+
+	/**
+	 * Copies the bucket counts.
+	 * 
+	 * @param snapshot array to copy to
+	 * @return number of recorded values
+	 */
+	private long copy(long[] snapshot) {
+		AtomicLongArray buckets = counts;
+		long count = 0;
+		if (buckets != null) {
+			for (int i = 0; i < BUCKETS; i++) {
+				snapshot[i] = buckets.get(i);
+				count += snapshot[i];
+			}
+		}
+		return count;
+	}
+
+	private static double percentile(long[] snapshot, long count, double fraction) {
+		if (count == 0) {
+			return 0;
+		}
+		long rank = Math.max(1, (long) Math.ceil(count * fraction));
+		long seen = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			seen += snapshot[i];
+			if (seen >= rank) {
+				return toMicros(highestValue(i));
+			}
+		}
+		return toMicros(highestValue(BUCKETS - 1));
+	}
+
+	private static double toMicros(double nanos) {
+		return nanos / 1000d;
+	}
+
+	static int bucket(long value) {
+		if (value < SUB_BUCKETS) {
+			return (int) value;
+		}
+		int exponent = 63 - Long.numberOfLeadingZeros(value);
+		int sub = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+		return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + sub;
+	}
+
+	/**
+	 * Returns the highest value counted in a bucket.
+	 */
+	static long highestValue(int bucket) {
+		if (bucket < SUB_BUCKETS) {
+			return bucket;
+		}
+		int shift = bucket / SUB_BUCKETS - 1;
+		long lowest = (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << shift;
+		return lowest + (1L << shift) - 1;
+	}
+
+}
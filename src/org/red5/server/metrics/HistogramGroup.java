@@ -0,0 +1,72 @@
+package org.red5.server.metrics;
+
+/*
+ * RED5 Open Source Flash Server - http://code.google.com/p/red5/
+ *
+ * Copyright (c) 2006-2011 by respective authors (see below). All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation; either version 2.1 of the License, or (at your option) any later
+ * version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along
+ * with this library; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Histograms of one measurement split by a key, such as the method name of a service call. The
+ * number of keys is limited, further keys are recorded together under "other" so that clients
+ * calling arbitrary names can't grow the registry without bounds.
+ * 
+ * @author The Red5 Project (red5@osflash.org)
+ */
+public class HistogramGroup {
+
+	private final MetricsRegistry registry;
+
+	private final String prefix;
+
+	private final int maxKeys;
+
+	private final ConcurrentMap<String, Histogram> histograms = new ConcurrentHashMap<String, Histogram>();
+
+	private volatile Histogram other;
+
+	HistogramGroup(MetricsRegistry registry, String prefix, int maxKeys) {
+		this.registry = registry;
+		this.prefix = prefix;
+		this.maxKeys = maxKeys;
+	}
+
+	/**
+	 * Returns the histogram for a key.
+	 * 
+	 * @param key key
+	 * @return histogram
+	 */
+	public Histogram get(String key) {
+		Histogram histogram = histograms.get(key);
+		if (histogram == null) {
+			if (histograms.size() >= maxKeys) {
+				histogram = other;
+				if (histogram == null) {
+					histogram = other = registry.getHistogram(prefix + ".other");
+				}
+			} else {
+				histogram = registry.getHistogram(prefix + '.' + key);
+				histograms.putIfAbsent(key, histogram);
+			}
+		}
+		return histogram;
+	}
+
+}
@@ -0,0 +1,96 @@
+package org.red5.server.metrics;
+
+/*
+ * RED5 Open Source Flash Server - http://code.google.com/p/red5/
+ *
+ * Copyright (c) 2006-2011 by respective authors (see below). All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation; either version 2.1 of the License, or (at your option) any later
+ * version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along
+ * with this library; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+
+import java.beans.ConstructorProperties;
+
+/**
+ * Statistics of a histogram at one point in time, durations are in microseconds.
+ * 
+ * @author The Red5 Project (red5@osflash.org)
+ */
+public class HistogramSnapshot {
+
+	private final String name;
+
+	private final long count;
+
+	private final double mean;
+
+	private final double median;
+
+	private final double percentile90;
+
+	private final double percentile99;
+
+	private final double percentile999;
+
+	private final double max;
+
+	@ConstructorProperties({ "name", "count", "mean", "median", "percentile90", "percentile99", "percentile999", "max" })
+	public HistogramSnapshot(String name, long count, double mean, double median, double percentile90, double percentile99, double percentile999, double max) {
+		this.name = name;
+		this.count = count;
+		this.mean = mean;
+		this.median = median;
+		this.percentile90 = percentile90;
+		this.percentile99 = percentile99;
+		this.percentile999 = percentile999;
+		this.max = max;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public long getCount() {
+		return count;
+	}
+
+	public double getMean() {
+		return mean;
+	}
+
+	public double getMedian() {
+		return median;
+	}
+
+	public double getPercentile90() {
+		return percentile90;
+	}
+
+	public double getPercentile99() {
+		return percentile99;
+	}
+
+	public double getPercentile999() {
+		return percentile999;
+	}
+
+	public double getMax() {
+		return max;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%s count=%d mean=%.1f p50=%.1f p90=%.1f p99=%.1f p99.9=%.1f max=%.1f", name, count, mean, median, percentile90, percentile99, percentile999, max);
+	}
+
+}
@@ -0,0 +1,175 @@
+package org.red5.server.metrics;
+
+/*
+ * RED5 Open Source Flash Server - http://code.google.com/p/red5/
+ *
+ * Copyright (c) 2006-2011 by respective authors (see below). All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation; either version 2.1 of the License, or (at your option) any later
+ * version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along
+ * with this library; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.red5.server.jmx.JMXAgent;
+import org.red5.server.jmx.mxbeans.MetricsRegistryMXBean;
+
+/**
+ * Registry of the server's timing histograms and counters. Instrumented code looks up its
+ * metrics once and keeps them, the measurement itself is a call to {@link #start()} and one to
+ * {@link Histogram#recordSince(long)}:
+ * 
+ * <pre>
+ * private static final Histogram sendTimes = MetricsRegistry.getInstance().getHistogram(&quot;stream.play.send&quot;);
+ * ...
+ * long start = MetricsRegistry.start();
+ * send(message);
+ * sendTimes.recordSince(start);
+ * </pre>
+ * 
+ * The registry is exported over JMX and by the MetricsServlet.
+ * 
+ * @author The Red5 Project (red5@osflash.org)
+ */
+public class MetricsRegistry implements MetricsRegistryMXBean {
+
+	private static final MetricsRegistry instance = new MetricsRegistry();
+
+	private static volatile boolean enabled = true;
+
+	private final ConcurrentMap<String, Histogram> histograms = new ConcurrentHashMap<String, Histogram>();
+
+	private final ConcurrentMap<String, Counter> counters = new ConcurrentHashMap<String, Counter>();
+
+	private MetricsRegistry() {
+		JMXAgent.registerMBean(this, getClass().getName(), MetricsRegistryMXBean.class);
+	}
+
+	public static MetricsRegistry getInstance() {
+		return instance;
+	}
+
+	/**
+	 * Returns the start time of a measurement.
+	 * 
+	 * @return current nano time or 0 if metrics are disabled
+	 */
+	public static long start() {
+		return enabled ? System.nanoTime() : 0;
+	}
+
+	/**
+	 * Returns a histogram, creating it if it doesn't exist.
+	 * 
+	 * @param name histogram name
+	 * @return histogram
+	 */
+	public Histogram getHistogram(String name) {
+		Histogram histogram = histograms.get(name);
+		if (histogram == null) {
+			histogram = new Histogram(name);
+			Histogram existing = histograms.putIfAbsent(name, histogram);
+			if (existing != null) {
+				histogram = existing;
+			}
+		}
+		return histogram;
+	}
+
+	/**
+	 * Returns a group of histograms named by the prefix and a key.
+	 * 
+	 * @param prefix name prefix
+	 * @param maxKeys number of keys with their own histogram
+	 * @return histogram group
+	 */
+	public HistogramGroup getHistogramGroup(String prefix, int maxKeys) {
+		return new HistogramGroup(this, prefix, maxKeys);
+	}
+
+	/**
+	 * Returns a counter, creating it if it doesn't exist.
+	 * 
+	 * @param name counter name
+	 * @return counter
+	 */
+	public Counter getCounter(String name) {
+		Counter counter = counters.get(name);
+		if (counter == null) {
+			counter = new Counter(name);
+			Counter existing = counters.putIfAbsent(name, counter);
+			if (existing != null) {
+				counter = existing;
+			}
+		}
+		return counter;
+	}
+
+	/** {@inheritDoc} */
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	/** {@inheritDoc} */
+	public void setEnabled(boolean enabled) {
+		MetricsRegistry.enabled = enabled;
+	}
+
+	/** {@inheritDoc} */
+	public List<String> getHistogramNames() {
+		List<String> names = new ArrayList<String>(histograms.keySet());
+		Collections.sort(names);
+		return names;
+	}
+
+	/** {@inheritDoc} */
+	public HistogramSnapshot getHistogramSnapshot(String name) {
+		Histogram histogram = histograms.get(name);
+		return histogram != null ? histogram.getSnapshot() : null;
+	}
+
+	/** {@inheritDoc} */
+	public List<HistogramSnapshot> getHistogramSnapshots() {
+		List<HistogramSnapshot> result = new ArrayList<HistogramSnapshot>();
+		for (String name : getHistogramNames()) {
+			result.add(histograms.get(name).getSnapshot());
+		}
+		return result;
+	}
+
+	/** {@inheritDoc} */
+	public Map<String, Long> getCounters() {
+		Map<String, Long> result = new TreeMap<String, Long>();
+		for (Counter counter : counters.values()) {
+			result.put(counter.getName(), counter.get());
+		}
+		return result;
+	}
+
+	/** {@inheritDoc} */
+	public void reset() {
+		for (Histogram histogram : histograms.values()) {
+			histogram.reset();
+		}
+		for (Counter counter : counters.values()) {
+			counter.reset();
+		}
+	}
+
+}
@@ -112,7 +112,13 @@ public class EdgeRTMPHandler extends RTMPHandler {
 			return;
 		}
 		// Increase number of sent messages
-		conn.messageSent((Packet) message);
+		if (message instanceof Packet[]) {
+			for (Packet packet : (Packet[]) message) {
+				conn.messageSent(packet);
+			}
+		} else {
+			conn.messageSent((Packet) message);
+		}
 	}
 
 	/**
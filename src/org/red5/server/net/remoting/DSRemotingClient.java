@@ -21,6 +21,7 @@ package org.red5.server.net.remoting;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
 import java.util.Map;
 
 import org.apache.http.HttpEntity;
@@ -334,6 +335,24 @@ public class DSRemotingClient extends RemotingClient {
 		return null;
 	}
 
+	/**
+	 * Sends the queued calls one after another, since the messaging responses are decoded 
+	 * one at a time.
+	 * 
+	 * @param calls Queued calls
+	 */
+	@Override
+	protected void invokeBatch(List<QueuedCall> calls) {
+		for (QueuedCall call : calls) {
+			try {
+				Object result = invokeMethod(call.method, call.params);
+				call.callback.resultReceived(this, call.method, call.params, result);
+			} catch (Exception err) {
+				call.callback.errorReceived(this, call.method, call.params, err);
+			}
+		}
+	}
+
 	/**
 	 * Used for debugging byte stream.
 	 * 
@@ -19,19 +19,29 @@ package org.red5.server.net.remoting;
  * 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
  */
 
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Queue;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.http.HttpEntity;
 import org.apache.http.HttpResponse;
 import org.apache.http.client.methods.HttpPost;
 import org.apache.http.entity.InputStreamEntity;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
 import org.apache.http.impl.client.DefaultHttpClient;
+import org.apache.http.impl.conn.tsccm.ThreadSafeClientConnManager;
 import org.apache.http.params.CoreConnectionPNames;
+import org.apache.http.protocol.HttpContext;
 import org.apache.http.util.EntityUtils;
 import org.apache.mina.core.buffer.IoBuffer;
 import org.red5.io.amf.Input;
@@ -42,16 +52,22 @@ import org.red5.io.object.Serializer;
 import org.red5.server.util.HttpConnectionUtil;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
 import org.springframework.beans.factory.InitializingBean;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
 
 /**
  * Client interface for remoting calls.
+ * <br />
+ * Every client owns a pool of keep-alive HTTP connections. Asynchronous calls are queued and sent
+ * by at most <i>poolSize</i> dispatchers, each of which may pack up to <i>batchSize</i> queued calls 
+ * into a single AMF packet, so outstanding calls don't each hold on to a thread.
  * 
  * @author The Red5 Project (red5@osflash.org)
  * @author Joachim Bauch (jojo@struktur.de)
  * @author Paul Gregoire (mondain@gmail.com)
  */
-public class RemotingClient implements InitializingBean {
+public class RemotingClient implements InitializingBean, DisposableBean {
 
 	protected static Logger log = LoggerFactory.getLogger(RemotingClient.class);
 
@@ -64,6 +80,9 @@ public class RemotingClient implements InitializingBean {
 	/** HTTP client for remoting calls. */
 	protected DefaultHttpClient client;
 
+	/** Pooled connections used by the HTTP client. */
+	protected ThreadSafeClientConnManager connectionManager;
+
 	/** Url to connect to. */
 	protected String url;
 
@@ -74,15 +93,34 @@ public class RemotingClient implements InitializingBean {
 	protected Map<String, RemotingHeader> headers = new ConcurrentHashMap<String, RemotingHeader>();
 
 	/** Thread pool to use for asynchronous requests. */
-	protected static ExecutorService executor;
+	protected ExecutorService executor;
 
 	/** Maximum pool threads */
 	protected int poolSize = 1;
 
+	/** Maximum number of pooled connections */
+	protected int maxConnections = 40;
+
+	/** Maximum number of pooled connections to a single host */
+	protected int maxConnectionsPerRoute = 8;
+
+	/** Milliseconds to keep an idle connection open, unless the server sends its own keep-alive timeout */
+	protected long keepAliveTimeout = 15000;
+
+	/** Maximum number of queued calls to send in one request */
+	protected int batchSize = 1;
+
+	/** Asynchronous calls waiting to be sent */
+	protected final Queue<QueuedCall> queue = new ConcurrentLinkedQueue<QueuedCall>();
+
+	/** Number of dispatchers currently sending queued calls */
+	private final AtomicInteger activeDispatchers = new AtomicInteger();
+
 	/**
 	 * Dummy constructor used by the spring configuration.
 	 */
 	public RemotingClient() {
+		createClient(DEFAULT_TIMEOUT);
 		log.debug("RemotingClient created");
 	}
 
@@ -103,14 +141,54 @@ public class RemotingClient implements InitializingBean {
 	 * @param timeout Timeout for one request in milliseconds
 	 */
 	public RemotingClient(String url, int timeout) {
-		client = HttpConnectionUtil.getClient();
-		client.getParams().setParameter(CoreConnectionPNames.SO_TIMEOUT, timeout);
+		createClient(timeout);
 		this.url = url;
 		log.debug("RemotingClient created  - url: {} timeout: {}", url, timeout);
 	}
 
+	/**
+	 * Creates the HTTP client and its connection pool.
+	 * 
+	 * @param timeout Timeout for one request in milliseconds
+	 */
+	private void createClient(int timeout) {
+		connectionManager = new ThreadSafeClientConnManager();
+		connectionManager.setMaxTotal(maxConnections);
+		connectionManager.setDefaultMaxPerRoute(maxConnectionsPerRoute);
+		client = HttpConnectionUtil.getClient(connectionManager);
+		client.getParams().setParameter(CoreConnectionPNames.SO_TIMEOUT, timeout);
+		client.setKeepAliveStrategy(new DefaultConnectionKeepAliveStrategy() {
+			@Override
+			public long getKeepAliveDuration(HttpResponse response, HttpContext context) {
+				long duration = super.getKeepAliveDuration(response, context);
+				return duration > 0 ? duration : keepAliveTimeout;
+			}
+		});
+	}
+
 	public void afterPropertiesSet() throws Exception {
-		executor = Executors.newFixedThreadPool(poolSize);
+		getExecutor();
+	}
+
+	public void destroy() throws Exception {
+		if (executor != null) {
+			executor.shutdown();
+		}
+		connectionManager.shutdown();
+	}
+
+	/**
+	 * Returns the executor running the dispatchers, creating it if needed.
+	 * 
+	 * @return executor
+	 */
+	protected synchronized ExecutorService getExecutor() {
+		if (executor == null) {
+			CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("RemotingClientExecutor-");
+			threadFactory.setDaemon(true);
+			executor = Executors.newFixedThreadPool(poolSize, threadFactory);
+		}
+		return executor;
 	}
 
 	public int getPoolSize() {
@@ -121,6 +199,55 @@ public class RemotingClient implements InitializingBean {
 		this.poolSize = poolSize;
 	}
 
+	public int getMaxConnections() {
+		return maxConnections;
+	}
+
+	public void setMaxConnections(int maxConnections) {
+		this.maxConnections = maxConnections;
+		connectionManager.setMaxTotal(maxConnections);
+	}
+
+	public int getMaxConnectionsPerRoute() {
+		return maxConnectionsPerRoute;
+	}
+
+	public void setMaxConnectionsPerRoute(int maxConnectionsPerRoute) {
+		this.maxConnectionsPerRoute = maxConnectionsPerRoute;
+		connectionManager.setDefaultMaxPerRoute(maxConnectionsPerRoute);
+	}
+
+	public long getKeepAliveTimeout() {
+		return keepAliveTimeout;
+	}
+
+	public void setKeepAliveTimeout(long keepAliveTimeout) {
+		this.keepAliveTimeout = keepAliveTimeout;
+	}
+
+	public int getBatchSize() {
+		return batchSize;
+	}
+
+	/**
+	 * Sets the maximum number of queued asynchronous calls that are sent together in one 
+	 * AMF packet. A value of 1 (the default) sends every call in its own request.
+	 * 
+	 * @param batchSize calls per request
+	 */
+	public void setBatchSize(int batchSize) {
+		this.batchSize = Math.max(1, batchSize);
+	}
+
+	/**
+	 * Returns the number of asynchronous calls which have not been sent yet.
+	 * 
+	 * @return queued calls
+	 */
+	public int getQueuedCalls() {
+		return queue.size();
+	}
+
 	/**
 	 * Encode the method call.
 	 * 
@@ -134,7 +261,44 @@ public class RemotingClient implements InitializingBean {
 		log.debug("RemotingClient encodeInvoke - method: {} params: {}", method, params);
 		IoBuffer result = IoBuffer.allocate(1024);
 		result.setAutoExpand(true);
+		encodeHeaders(result);
+		// One body
+		result.putShort((short) 1);
+		// Client callback for response
+		encodeBody(result, method, "", params);
+		result.flip();
+		return result;
+	}
 
+	/**
+	 * Encode several method calls into one packet. Each call gets its position (starting at 1) as 
+	 * response uri, so the results can be matched up again.
+	 * 
+	 * @param calls
+	 *            Queued calls
+	 * @return Byte buffer with data to perform remoting calls
+	 */
+	private IoBuffer encodeInvoke(List<QueuedCall> calls) {
+		log.debug("RemotingClient encodeInvoke - calls: {}", calls.size());
+		IoBuffer result = IoBuffer.allocate(1024);
+		result.setAutoExpand(true);
+		encodeHeaders(result);
+		result.putShort((short) calls.size());
+		for (int i = 0; i < calls.size(); i++) {
+			QueuedCall call = calls.get(i);
+			encodeBody(result, call.method, "/" + (i + 1), call.params);
+		}
+		result.flip();
+		return result;
+	}
+
+	/**
+	 * Encode the version and the headers to send.
+	 * 
+	 * @param result
+	 *            Byte buffer to write to
+	 */
+	private void encodeHeaders(IoBuffer result) {
 		// XXX: which is the correct version?
 		result.putShort((short) 0);
 		// Headers
@@ -157,14 +321,26 @@ public class RemotingClient implements InitializingBean {
 			tmp.free();
 			tmp = null;
 		}
-		// One body
-		result.putShort((short) 1);
+	}
 
+	/**
+	 * Encode a single call.
+	 * 
+	 * @param result
+	 *            Byte buffer to write to
+	 * @param method
+	 *            Remote method being called
+	 * @param responseUri
+	 *            Uri the server uses to send the result back
+	 * @param params
+	 *            Method parameters
+	 */
+	private void encodeBody(IoBuffer result, String method, String responseUri, Object[] params) {
 		// Method name
 		Output.putString(result, method);
 
 		// Client callback for response
-		Output.putString(result, "");
+		Output.putString(result, responseUri);
 
 		// Serialize parameters
 		IoBuffer tmp = IoBuffer.allocate(1024);
@@ -185,9 +361,6 @@ public class RemotingClient implements InitializingBean {
 		result.put(tmp);
 		tmp.free();
 		tmp = null;
-
-		result.flip();
-		return result;
 	}
 
 	/**
@@ -256,16 +429,71 @@ public class RemotingClient implements InitializingBean {
 		if (count != 1) {
 			throw new RuntimeException("Expected exactly one result but got " + count);
 		}
+		return decodeBody(data, new Input(data), new Deserializer())[1];
+	}
 
-		Input input = new Input(data);
+	/**
+	 * Decode a single result body.
+	 * 
+	 * @param data
+	 *            Result data to decode
+	 * @param input
+	 *            Input reading from the data
+	 * @param deserializer
+	 *            Deserializer to use
+	 * @return target of the body (ie. "/1/onResult") and the deserialized value
+	 */
+	private Object[] decodeBody(IoBuffer data, Input input, Deserializer deserializer) {
 		String target = input.getString(); // expect "/onResult"
 		log.debug("Target: {}", target);
 		String nullString = input.getString(); // expect "null"
 		log.debug("Null string: {}", nullString);
-
+		// Body length, usually -1
+		int length = data.getInt();
+		log.debug("Length: {}", length);
 		// Read return value
-		Deserializer deserializer = new Deserializer();
-		return deserializer.deserialize(input, Object.class);
+		Object result = deserializer.deserialize(input, Object.class);
+		if (result instanceof RecordSet) {
+			// Make sure we can retrieve paged results
+			((RecordSet) result).setRemotingClient(this);
+		}
+		return new Object[] { target, result };
+	}
+
+	/**
+	 * Posts the encoded request to the remoting server and returns the response data.
+	 * 
+	 * @param data
+	 *            Encoded request
+	 * @return response data or null if the server didn't send any
+	 * @throws IOException
+	 *             on transport errors
+	 */
+	protected IoBuffer post(IoBuffer data) throws IOException {
+		HttpPost post = new HttpPost(url + appendToUrl);
+		try {
+			post.addHeader("Content-Type", CONTENT_TYPE);
+			post.setEntity(new InputStreamEntity(data.asInputStream(), data.limit()));
+			// execute the method
+			HttpResponse response = client.execute(post);
+			int code = response.getStatusLine().getStatusCode();
+			log.debug("HTTP response code: {}", code);
+			if (code / 100 != 2) {
+				throw new RuntimeException("Didn't receive success from remoting server");
+			}
+			HttpEntity entity = response.getEntity();
+			if (entity != null) {
+				// get the response as bytes, this also releases the connection back to the pool
+				return IoBuffer.wrap(EntityUtils.toByteArray(entity));
+			}
+			return null;
+		} catch (IOException e) {
+			post.abort();
+			throw e;
+		} catch (RuntimeException e) {
+			post.abort();
+			throw e;
+		}
 	}
 
 	/**
@@ -321,41 +549,13 @@ public class RemotingClient implements InitializingBean {
 		log.debug("invokeMethod url: {}", (url + appendToUrl));
 		IoBuffer resultBuffer = null;
 		IoBuffer data = encodeInvoke(method, params);
-		//setup POST
-		HttpPost post = null;
 		try {
-			post = new HttpPost(url + appendToUrl);
-			post.addHeader("Content-Type", CONTENT_TYPE);
-			post.setEntity(new InputStreamEntity(data.asInputStream(), data.limit()));
-			// execute the method
-			HttpResponse response = client.execute(post);
-			int code = response.getStatusLine().getStatusCode();
-			log.debug("HTTP response code: {}", code);
-			if (code / 100 != 2) {
-				throw new RuntimeException("Didn't receive success from remoting server");
-			} else {
-				HttpEntity entity = response.getEntity();
-				if (entity != null) {
-					//fix for Trac #676
-					int contentLength = (int) entity.getContentLength();
-					//default the content length to 16 if post doesn't contain a good value
-					if (contentLength < 1) {
-						contentLength = 16;
-					}
-					// get the response as bytes
-					byte[] bytes = EntityUtils.toByteArray(entity);
-					resultBuffer = IoBuffer.wrap(bytes);
-					Object result = decodeResult(resultBuffer);
-					if (result instanceof RecordSet) {
-						// Make sure we can retrieve paged results
-						((RecordSet) result).setRemotingClient(this);
-					}
-					return result;			
-				}			
-			}			
+			resultBuffer = post(data);
+			if (resultBuffer != null) {
+				return decodeResult(resultBuffer);
+			}
 		} catch (Exception ex) {
 			log.error("Error while invoking remoting method.", ex);
-			post.abort();
 		} finally {
 			if (resultBuffer != null) {
 				resultBuffer.free();
@@ -368,19 +568,157 @@ public class RemotingClient implements InitializingBean {
 	}
 
 	/**
-	 * Invoke a method asynchronously on the remoting server.
+	 * Invoke a method asynchronously on the remoting server. The call is queued and sent as soon as
+	 * a dispatcher is available, possibly together with other queued calls.
 	 * 
 	 * @param method Method name
 	 * @param methodParams Parameters passed to method
 	 * @param callback Callback
 	 */
 	public void invokeMethod(String method, Object[] methodParams, IRemotingCallback callback) {
+		queue.offer(new QueuedCall(method, methodParams, callback));
+		dispatch();
+	}
+
+	/**
+	 * Starts another dispatcher if there are queued calls and less than <i>poolSize</i> dispatchers
+	 * are running.
+	 */
+	private void dispatch() {
+		while (!queue.isEmpty()) {
+			int active = activeDispatchers.get();
+			if (active >= poolSize) {
+				// a running dispatcher will pick up the call
+				return;
+			}
+			if (activeDispatchers.compareAndSet(active, active + 1)) {
+				try {
+					getExecutor().execute(new RemotingDispatcher());
+				} catch (RejectedExecutionException e) {
+					activeDispatchers.decrementAndGet();
+					log.warn("Remoting dispatcher rejected, failing queued calls", e);
+					QueuedCall call;
+					while ((call = queue.poll()) != null) {
+						call.callback.errorReceived(this, call.method, call.params, e);
+					}
+				}
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Sends the given calls in one request and delivers the results to their callbacks.
+	 * 
+	 * @param calls Queued calls
+	 */
+	protected void invokeBatch(List<QueuedCall> calls) {
+		if (calls.size() == 1) {
+			QueuedCall call = calls.get(0);
+			try {
+				Object result = invokeMethod(call.method, call.params);
+				call.callback.resultReceived(this, call.method, call.params, result);
+			} catch (Exception err) {
+				call.callback.errorReceived(this, call.method, call.params, err);
+			}
+			return;
+		}
+		log.debug("invokeBatch url: {} calls: {}", (url + appendToUrl), calls.size());
+		Object[] results = new Object[calls.size()];
+		boolean[] received = new boolean[calls.size()];
+		IoBuffer resultBuffer = null;
+		IoBuffer data = encodeInvoke(calls);
 		try {
-			RemotingWorker worker = new RemotingWorker(this, method, methodParams, callback);
-			executor.execute(worker);
-		} catch (Exception err) {
-			log.warn("Exception invoking method: {}", method, err);
+			resultBuffer = post(data);
+			if (resultBuffer != null) {
+				processHeaders(resultBuffer);
+				int count = resultBuffer.getUnsignedShort();
+				Input input = new Input(resultBuffer);
+				Deserializer deserializer = new Deserializer();
+				for (int i = 0; i < count; i++) {
+					Object[] body = decodeBody(resultBuffer, input, deserializer);
+					// target is "/<index>/onResult" or "/<index>/onStatus"
+					String[] parts = ((String) body[0]).split("/");
+					int index = parts.length > 1 ? Integer.parseInt(parts[1]) - 1 : -1;
+					if (index >= 0 && index < results.length) {
+						results[index] = body[1];
+						received[index] = true;
+					} else {
+						log.warn("Unexpected result target: {}", body[0]);
+					}
+				}
+			}
+		} catch (Exception ex) {
+			log.error("Error while invoking remoting methods.", ex);
+			for (QueuedCall call : calls) {
+				call.callback.errorReceived(this, call.method, call.params, ex);
+			}
+			return;
+		} finally {
+			if (resultBuffer != null) {
+				resultBuffer.free();
+				resultBuffer = null;
+			}
+			data.free();
+			data = null;
+		}
+		for (int i = 0; i < results.length; i++) {
+			QueuedCall call = calls.get(i);
+			if (received[i]) {
+				call.callback.resultReceived(this, call.method, call.params, results[i]);
+			} else {
+				call.callback.errorReceived(this, call.method, call.params, new RuntimeException("No result received for " + call.method));
+			}
+		}
+	}
+
+	/**
+	 * Asynchronous call waiting to be sent.
+	 */
+	protected final static class QueuedCall {
+
+		final String method;
+
+		final Object[] params;
+
+		final IRemotingCallback callback;
+
+		QueuedCall(String method, Object[] params, IRemotingCallback callback) {
+			this.method = method;
+			this.params = params;
+			this.callback = callback;
 		}
+
+	}
+
+	/**
+	 * Sends queued calls until the queue is empty.
+	 */
+	private final class RemotingDispatcher implements Runnable {
+
+		public void run() {
+			List<QueuedCall> batch = new ArrayList<QueuedCall>(batchSize);
+			try {
+				do {
+					batch.clear();
+					QueuedCall call;
+					while (batch.size() < batchSize && (call = queue.poll()) != null) {
+						batch.add(call);
+					}
+					if (!batch.isEmpty()) {
+						invokeBatch(batch);
+					}
+				} while (!batch.isEmpty());
+			} catch (Throwable t) {
+				log.warn("Exception in remoting dispatcher", t);
+			} finally {
+				activeDispatchers.decrementAndGet();
+				// a call may have been queued while we were on our way out
+				dispatch();
+				connectionManager.closeExpiredConnections();
+			}
+		}
+
 	}
 
 	/**
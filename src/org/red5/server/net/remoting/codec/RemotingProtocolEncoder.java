@@ -71,6 +71,27 @@ public class RemotingProtocolEncoder {
 		RemotingPacket resp = (RemotingPacket) message;
 		IoBuffer buf = IoBuffer.allocate(1024);
 		buf.setAutoExpand(true);
+		encodeHeaders(buf, resp);
+		for (RemotingCall call: resp.getCalls()) {
+			encodeCall(buf, call);
+		}
+		buf.flip();
+		if (log.isDebugEnabled()) {
+			log.debug(">>{}", buf.getHexDump());
+		}
+		return buf;
+
+	}
+
+	/**
+	 * Encodes everything preceding the call results: the encoding, the headers of the current
+	 * remoting connection and the number of bodies. Used together with
+	 * {@link #encodeCall(IoBuffer, RemotingCall)} to write a response in parts.
+	 * 
+	 * @param buf buffer to write to
+	 * @param resp response packet
+	 */
+	public void encodeHeaders(IoBuffer buf, RemotingPacket resp) {
 		Output output;
 		if (resp.getEncoding() == Encoding.AMF0) {
 			buf.putShort((short) 0);  // encoded using AMF0
@@ -100,47 +121,49 @@ public class RemotingProtocolEncoder {
 		}
 		
 		buf.putShort((short) resp.getCalls().size()); // write the number of bodies
-		for (RemotingCall call: resp.getCalls()) {
-			log.debug("Call");
-			Output.putString(buf, call.getClientResponse());
-			if (!call.isMessaging) {
-				Output.putString(buf, "null");
-			} else {
-				Output.putString(buf, "");
-			}
-			buf.putInt(-1);
-			log.info("result: {}", call.getResult());
-			if (call.isAMF3) {
-				output = new org.red5.io.amf3.Output(buf);
-			} else {
-				output = new Output(buf);
-			}
-			Object result = call.getClientResult();
-			if (!call.isSuccess()) {
-				if (call.isMessaging && !(result instanceof ErrorMessage)) {
-					// Generate proper error result for the Flex messaging client
-					AbstractMessage request = (AbstractMessage) call.getArguments()[0];
-					if (result instanceof ServiceNotFoundException) {
-						ServiceNotFoundException ex = (ServiceNotFoundException) result;
-						result = FlexMessagingService.returnError(request, "serviceNotAvailable", "Flex messaging not activated", ex.getMessage());
-					} else if (result instanceof Throwable) {
-						result = FlexMessagingService.returnError(request, "Server.Invoke.Error", ((Throwable) result).getMessage(), (Throwable) result);
-					} else {
-						result = FlexMessagingService.returnError(request, "Server.Invoke.Error", result.toString(), "");
-					}
-				} else if (!call.isMessaging) {
-					// Generate proper error object to return
-					result = generateErrorResult(StatusCodes.NC_CALL_FAILED, call.getException());
+	}
+
+	/**
+	 * Encodes the result of a single call as a response body.
+	 * 
+	 * @param buf buffer to write to
+	 * @param call executed call
+	 */
+	public void encodeCall(IoBuffer buf, RemotingCall call) {
+		Output output;
+		log.debug("Call");
+		Output.putString(buf, call.getClientResponse());
+		if (!call.isMessaging) {
+			Output.putString(buf, "null");
+		} else {
+			Output.putString(buf, "");
+		}
+		buf.putInt(-1);
+		log.info("result: {}", call.getResult());
+		if (call.isAMF3) {
+			output = new org.red5.io.amf3.Output(buf);
+		} else {
+			output = new Output(buf);
+		}
+		Object result = call.getClientResult();
+		if (!call.isSuccess()) {
+			if (call.isMessaging && !(result instanceof ErrorMessage)) {
+				// Generate proper error result for the Flex messaging client
+				AbstractMessage request = (AbstractMessage) call.getArguments()[0];
+				if (result instanceof ServiceNotFoundException) {
+					ServiceNotFoundException ex = (ServiceNotFoundException) result;
+					result = FlexMessagingService.returnError(request, "serviceNotAvailable", "Flex messaging not activated", ex.getMessage());
+				} else if (result instanceof Throwable) {
+					result = FlexMessagingService.returnError(request, "Server.Invoke.Error", ((Throwable) result).getMessage(), (Throwable) result);
+				} else {
+					result = FlexMessagingService.returnError(request, "Server.Invoke.Error", result.toString(), "");
 				}
+			} else if (!call.isMessaging) {
+				// Generate proper error object to return
+				result = generateErrorResult(StatusCodes.NC_CALL_FAILED, call.getException());
 			}
-			serializer.serialize(output, result);
 		}
-		buf.flip();
-		if (log.isDebugEnabled()) {
-			log.debug(">>{}", buf.getHexDump());
-		}
-		return buf;
-
+		serializer.serialize(output, result);
 	}
 
 	/**
@@ -39,10 +39,13 @@ import org.red5.server.api.stream.IClientStream;
 import org.red5.server.messaging.IMessage;
 import org.red5.server.net.rtmp.codec.RTMP;
 import org.red5.server.net.rtmp.codec.RTMPCodecFactory;
+import org.red5.server.net.rtmp.event.AudioData;
 import org.red5.server.net.rtmp.event.ChunkSize;
+import org.red5.server.net.rtmp.event.IRTMPEvent;
 import org.red5.server.net.rtmp.event.Invoke;
 import org.red5.server.net.rtmp.event.Notify;
 import org.red5.server.net.rtmp.event.Ping;
+import org.red5.server.net.rtmp.event.VideoData;
 import org.red5.server.net.rtmp.message.Header;
 import org.red5.server.service.Call;
 import org.red5.server.service.MethodNotFoundException;
@@ -53,6 +56,7 @@ import org.red5.server.so.SharedObjectMessage;
 import org.red5.server.stream.AbstractClientStream;
 import org.red5.server.stream.OutputStream;
 import org.red5.server.stream.consumer.ConnectionConsumer;
+import org.red5.server.stream.message.RTMPMessage;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -446,7 +450,15 @@ public abstract class BaseRTMPClientHandler extends BaseRTMPHandler {
 		log.debug("publishStreamData - stream data map: {}", streamDataMap);
 		if (streamData != null) {
 			if (streamData.connConsumer != null) {
-				streamData.connConsumer.pushMessage(null, message);
+				// the connection consumer writes stream data events as they are, the caller keeps its event
+				IRTMPEvent copy = copyStreamData(message);
+				try {
+					streamData.connConsumer.pushMessage(null, copy != null ? RTMPMessage.build(copy) : message);
+				} finally {
+					if (copy != null) {
+						copy.release();
+					}
+				}
 			} else {
 				log.warn("Connection consumer was not found for stream id: {}", streamId);
 			}
@@ -455,6 +467,31 @@ public abstract class BaseRTMPClientHandler extends BaseRTMPHandler {
 		}
 	}
 
+	/**
+	 * Copies audio or video data of a message; the copy shares the payload of the original.
+	 * 
+	 * @param message message to publish
+	 * @return copy or null if the message holds no audio or video data
+	 */
+	private IRTMPEvent copyStreamData(IMessage message) {
+		if (message instanceof RTMPMessage) {
+			IRTMPEvent body = ((RTMPMessage) message).getBody();
+			IRTMPEvent copy = null;
+			if (body instanceof AudioData && ((AudioData) body).getPayload() != null) {
+				copy = new AudioData(((AudioData) body).getPayload().retain());
+			} else if (body instanceof VideoData && ((VideoData) body).getPayload() != null) {
+				copy = new VideoData(((VideoData) body).getPayload().retain());
+			}
+			if (copy != null) {
+				copy.setTimestamp(body.getTimestamp());
+				copy.setSourceType(body.getSourceType());
+				copy.setReceivedTime(body.getReceivedTime());
+			}
+			return copy;
+		}
+		return null;
+	}
+
 	public void play(int streamId, String name, int start, int length) {
 		log.debug("play stream {}, name: {}, start {}, length {}", new Object[] { streamId, name, start, length });
 		if (conn != null) {
@@ -122,6 +122,7 @@ public abstract class BaseRTMPHandler implements IRTMPHandler, Constants, Status
 			BaseRTMPHandler.setStreamId(header.getStreamId());
 			// increase number of received messages
 			conn.messageReceived();
+			conn.getFlightRecorder().record(FlightRecorder.RECEIVED, header.getDataType(), header.getSize(), header.getTimer(), header.getStreamId());
 			// set the source of the message
 			message.setSource(conn);
 			// process based on data type
@@ -205,7 +206,13 @@ public abstract class BaseRTMPHandler implements IRTMPHandler, Constants, Status
 			return;
 		}
 		// Increase number of sent messages
-		conn.messageSent((Packet) message);
+		if (message instanceof Packet[]) {
+			for (Packet packet : (Packet[]) message) {
+				conn.messageSent(packet);
+			}
+		} else {
+			conn.messageSent((Packet) message);
+		}
 	}
 
 	/** {@inheritDoc} */
@@ -106,6 +106,8 @@ public class Channel {
 		final IClientStream stream = connection.getStreamByChannelId(id);
 		if (id > 3 && stream == null) {
 			log.info("Stream doesn't exist any longer, discarding message {}", event);
+			// the encoder would have released it
+			event.release();
 			return;
 		}
 		final int streamId = (stream == null) ? 0 : stream.getStreamId();
@@ -133,6 +135,35 @@ public class Channel {
 		connection.write(packet);
 	}
 
+    /**
+     * Writes packets from several events to RTMP connection in a single write.
+	 *
+     * @param events          Event data
+     */
+    public void write(IRTMPEvent[] events) {
+        if (connection == null) {
+            return;
+        }
+        
+		final IClientStream stream = connection.getStreamByChannelId(id);
+		if (id > 3 && stream == null) {
+			log.info("Stream doesn't exist any longer, discarding {} messages", events.length);
+			return;
+		}
+		final int streamId = (stream == null) ? 0 : stream.getStreamId();
+		final Packet[] packets = new Packet[events.length];
+		for (int i = 0; i < events.length; i++) {
+			final IRTMPEvent event = events[i];
+			final Header header = new Header();
+			header.setChannelId(id);
+			header.setTimer(event.getTimestamp());
+			header.setStreamId(streamId);
+			header.setDataType(event.getDataType());
+			packets[i] = new Packet(header, event);
+		}
+		connection.write(packets);
+	}
+
     /**
      * Sends status notification.
 	 *
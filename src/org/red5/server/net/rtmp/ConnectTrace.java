@@ -0,0 +1,233 @@
+package org.red5.server.net.rtmp;
+
+/*
+ * RED5 Open Source Flash Server - http://code.google.com/p/red5/
+ *
+ * Copyright (c) 2006-2011 by respective authors (see below). All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation; either version 2.1 of the License, or (at your option) any later
+ * version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along
+ * with this library; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.red5.server.api.IConnection;
+import org.red5.server.metrics.Counter;
+import org.red5.server.metrics.Histogram;
+import org.red5.server.metrics.MetricsRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Timing of the phases a connection goes through until its connect call is answered. The phases
+ * follow each other, a mark attributes the time since the previous mark to the phase it closes.
+ * Time spent in the application's handlers is reported by the scopes to the connection, which adds
+ * it to its trace and leaves it out of the phase around it.
+ * <br />
+ * Once the connect is answered the phase times are recorded in the "connect.*" histograms of the
+ * {@link MetricsRegistry}. Connects slower than a threshold are logged with their breakdown, at
+ * most one per second, so a reconnect storm does not flood the log.
+ * 
+ * @author The Red5 Project (red5@osflash.org)
+ */
+public final class ConnectTrace {
+
+	private static final Logger log = LoggerFactory.getLogger(ConnectTrace.class);
+
+	/** From accepting the connection until the server's handshake reply is written */
+	public static final int HANDSHAKE = 0;
+
+	/** Until the connect call arrives, includes the end of the handshake */
+	public static final int REQUEST = 1;
+
+	/** Looking up the global scope and resolving the scope to connect to */
+	public static final int LOOKUP = 2;
+
+	/** Connecting to the scope and its parents, without the application's handlers */
+	public static final int SCOPE = 3;
+
+	/** Connect and join handlers of the application, such as appConnect and roomConnect */
+	public static final int APP = 4;
+
+	/** Writing the server and client bandwidth messages */
+	public static final int BANDWIDTH = 5;
+
+	/** Starting bandwidth detection for the client */
+	public static final int BANDWIDTH_CHECK = 6;
+
+	/** Building and writing the result of the connect call */
+	public static final int RESULT = 7;
+
+	private static final String[] NAMES = { "handshake", "request", "lookup", "scope", "app", "bandwidth", "bandwidthCheck", "result" };
+
+	private static final Histogram[] phaseTimes = new Histogram[NAMES.length];
+
+	private static final Histogram totalTimes = MetricsRegistry.getInstance().getHistogram("connect.total");
+
+	private static final Counter slowConnects = MetricsRegistry.getInstance().getCounter("connect.slow");
+
+	static {
+		for (int i = 0; i < NAMES.length; i++) {
+			phaseTimes[i] = MetricsRegistry.getInstance().getHistogram("connect." + NAMES[i]);
+		}
+	}
+
+	/**
+	 * Connects taking longer are logged, in milliseconds
+	 */
+	private static volatile long threshold = Long.getLong("red5.connectTrace.threshold", 1000);
+
+	/**
+	 * Earliest time the next slow connect is logged
+	 */
+	private static final AtomicLong nextLog = new AtomicLong();
+
+	/**
+	 * Slow connects since the last one logged
+	 */
+	private static final AtomicLong unlogged = new AtomicLong();
+
+	private final long created = System.nanoTime();
+
+	private final long[] times = new long[NAMES.length];
+
+	/**
+	 * End of the last phase
+	 */
+	private long last = created;
+
+	/**
+	 * Time added to nested phases since the last mark
+	 */
+	private long nested;
+
+	private boolean finished;
+
+	/**
+	 * Ends a phase.
+	 * 
+	 * @param phase phase that ends now
+	 */
+	public synchronized void mark(int phase) {
+		if (!finished) {
+			long now = System.nanoTime();
+			times[phase] += now - last - nested;
+			last = now;
+			nested = 0;
+		}
+	}
+
+	/**
+	 * Adds time to a phase that runs within the current one.
+	 * 
+	 * @param phase nested phase
+	 * @param nanos time in nanoseconds
+	 */
+	public synchronized void add(int phase, long nanos) {
+		if (!finished) {
+			times[phase] += nanos;
+			nested += nanos;
+		}
+	}
+
+	/**
+	 * Ends the trace after the connect call was answered, records the phase times and logs the
+	 * trace if the connect was slow. Later marks are ignored.
+	 * 
+	 * @param accepted whether the connection was accepted
+	 * @param conn connection
+	 */
+	public void finish(boolean accepted, IConnection conn) {
+		synchronized (this) {
+			if (finished) {
+				return;
+			}
+			finished = true;
+		}
+		for (int i = 0; i < NAMES.length; i++) {
+			phaseTimes[i].record(times[i]);
+		}
+		long total = getTotal();
+		totalTimes.record(total);
+		if (total >= threshold * 1000000L) {
+			slowConnects.increment();
+			long now = System.currentTimeMillis();
+			long next = nextLog.get();
+			if (now >= next && nextLog.compareAndSet(next, now + 1000)) {
+				if (log.isInfoEnabled()) {
+					log.info("Slow connect of {} to {} ({}, {} more since last logged): {}", new Object[] { conn.getRemoteAddress(), conn.getPath(),
+							accepted ? "accepted" : "rejected", unlogged.getAndSet(0), this });
+				}
+			} else {
+				unlogged.incrementAndGet();
+			}
+		}
+	}
+
+	/**
+	 * Whether the trace has ended.
+	 * 
+	 * @return true once the connect call was answered
+	 */
+	public synchronized boolean isFinished() {
+		return finished;
+	}
+
+	/**
+	 * Returns the time of a phase.
+	 * 
+	 * @param phase phase
+	 * @return time in nanoseconds
+	 */
+	public synchronized long getTime(int phase) {
+		return times[phase];
+	}
+
+	/**
+	 * Returns the time from accepting the connection until the end of the last phase.
+	 * 
+	 * @return time in nanoseconds
+	 */
+	public synchronized long getTotal() {
+		return last - created;
+	}
+
+	@Override
+	public synchronized String toString() {
+		StringBuilder sb = new StringBuilder();
+		sb.append(String.format("total=%.1fms", (last - created) / 1000000.0));
+		for (int i = 0; i < NAMES.length; i++) {
+			sb.append(String.format(" %s=%.1fms", NAMES[i], times[i] / 1000000.0));
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Returns the time above which connects are logged.
+	 * 
+	 * @return threshold in milliseconds
+	 */
+	public static long getThreshold() {
+		return threshold;
+	}
+
+	/**
+	 * Sets the time above which connects are logged.
+	 * 
+	 * @param threshold threshold in milliseconds
+	 */
+	public static void setThreshold(long threshold) {
+		ConnectTrace.threshold = threshold;
+	}
+
+}
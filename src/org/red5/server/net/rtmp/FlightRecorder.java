@@ -0,0 +1,199 @@
+package org.red5.server.net.rtmp;
+
+/*
+ * RED5 Open Source Flash Server - http://code.google.com/p/red5/
+ *
+ * Copyright (c) 2006-2011 by respective authors (see below). All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation; either version 2.1 of the License, or (at your option) any later
+ * version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along
+ * with this library; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+
+/**
+ * Ring buffer of the most recent protocol events of a connection, kept so a stall can be
+ * diagnosed after the fact without debug logging. Recording writes a few primitives into
+ * arrays allocated with the first event; concurrent writers claim distinct slots, a dump taken
+ * while they write may show a partly written entry.
+ * <br />
+ * Recording is switched off for all connections with red5.flightRecorder.enabled=false or
+ * {@link #setEnabled(boolean)}.
+ * 
+ * @author The Red5 Project (red5@osflash.org)
+ */
+public final class FlightRecorder {
+
+	/** Message decoded from the client, detail is the stream id */
+	public static final byte RECEIVED = 1;
+
+	/** Message handed to the transport, detail is the number of messages waiting to be written */
+	public static final byte QUEUED = 2;
+
+	/** Message written to the socket, detail is the stream id */
+	public static final byte SENT = 3;
+
+	/** Frame dropped while the subscriber is paused */
+	public static final byte DROPPED_PAUSED = 4;
+
+	/** Frame dropped because the subscriber disabled audio or video */
+	public static final byte DROPPED_DISABLED = 5;
+
+	/** Frame dropped by the frame dropper as it depends on a dropped frame, detail is the number of pending video messages */
+	public static final byte DROPPED_DEPENDENCY = 6;
+
+	/** Frame dropped for insufficient bandwidth, detail is the number of pending video messages */
+	public static final byte DROPPED_BANDWIDTH = 7;
+
+	/** Client did not answer pings, detail is the time since the last answer in milliseconds */
+	public static final byte PING_TIMEOUT = 8;
+
+	/** Exception on the connection */
+	public static final byte EXCEPTION = 9;
+
+	private static final String[] NAMES = { "?", "RECEIVED", "QUEUED", "SENT", "DROPPED_PAUSED", "DROPPED_DISABLED", "DROPPED_DEPENDENCY", "DROPPED_BANDWIDTH",
+			"PING_TIMEOUT", "EXCEPTION" };
+
+	/**
+	 * Number of events kept, rounded up to a power of two
+	 */
+	public static final int CAPACITY = Integer.highestOneBit(Math.max(1, Integer.getInteger("red5.flightRecorder.capacity", 256) * 2 - 1));
+
+	private static volatile boolean enabled = Boolean.parseBoolean(System.getProperty("red5.flightRecorder.enabled", "true"));
+
+	private final AtomicInteger cursor = new AtomicInteger();
+
+	/**
+	 * Events, null until the first one is recorded
+	 */
+	private volatile Ring ring;
+
+	public static boolean isEnabled() {
+		return enabled;
+	}
+
+	/**
+	 * Switches recording on or off for all connections; events kept so far stay available.
+	 * 
+	 * @param enabled true to record events
+	 */
+	public static void setEnabled(boolean enabled) {
+		FlightRecorder.enabled = enabled;
+	}
+
+	/**
+	 * Records an event.
+	 * 
+	 * @param kind event kind
+	 * @param dataType RTMP message type
+	 * @param size message size in bytes
+	 * @param timestamp message timestamp
+	 * @param detail kind specific value
+	 */
+	public void record(byte kind, byte dataType, int size, int timestamp, int detail) {
+		if (!enabled) {
+			return;
+		}
+		Ring events = ring;
+		if (events == null) {
+			events = allocate();
+		}
+		int slot = cursor.getAndIncrement() & (CAPACITY - 1);
+		events.times[slot] = System.currentTimeMillis();
+		events.dataTypes[slot] = dataType;
+		events.sizes[slot] = size;
+		events.timestamps[slot] = timestamp;
+		events.details[slot] = detail;
+		events.kinds[slot] = kind;
+	}
+
+	private synchronized Ring allocate() {
+		if (ring == null) {
+			ring = new Ring();
+		}
+		return ring;
+	}
+
+	/**
+	 * Returns the number of events recorded so far, including those already overwritten.
+	 * 
+	 * @return event count
+	 */
+	public int getRecorded() {
+		return cursor.get();
+	}
+
+	/**
+	 * Formats the kept events, oldest first; times are relative to the newest event.
+	 * 
+	 * @return one line per event
+	 */
+	public List<String> dump() {
+		Ring events = ring;
+		int end = cursor.get();
+		int count = events != null ? Math.min(end, CAPACITY) : 0;
+		List<String> lines = new ArrayList<String>(count);
+		if (count == 0) {
+			return lines;
+		}
+		long newest = events.times[(end - 1) & (CAPACITY - 1)];
+		for (int i = end - count; i < end; i++) {
+			int slot = i & (CAPACITY - 1);
+			int kind = events.kinds[slot];
+			lines.add(String.format("%6d ms %-18s type=%d size=%d ts=%d detail=%d", events.times[slot] - newest, NAMES[kind < NAMES.length ? kind : 0],
+					events.dataTypes[slot], events.sizes[slot], events.timestamps[slot], events.details[slot]));
+		}
+		return lines;
+	}
+
+	/**
+	 * Writes the kept events to a log.
+	 * 
+	 * @param log logger
+	 * @param reason why the events are dumped
+	 * @param connection connection description
+	 */
+	public void dump(Logger log, String reason, Object connection) {
+		if (log.isWarnEnabled()) {
+			StringBuilder sb = new StringBuilder();
+			for (String line : dump()) {
+				sb.append("\n  ").append(line);
+			}
+			log.warn("Flight recorder of {} on {}:{}", new Object[] { connection, reason, sb });
+		}
+	}
+
+	/**
+	 * Slots of the kept events.
+	 */
+	private static final class Ring {
+
+		final long[] times = new long[CAPACITY];
+
+		final byte[] kinds = new byte[CAPACITY];
+
+		final byte[] dataTypes = new byte[CAPACITY];
+
+		final int[] sizes = new int[CAPACITY];
+
+		final int[] timestamps = new int[CAPACITY];
+
+		final int[] details = new int[CAPACITY];
+
+	}
+
+}
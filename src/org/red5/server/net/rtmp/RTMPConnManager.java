@@ -20,29 +20,54 @@ package org.red5.server.net.rtmp;
  */
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentMap;
-import java.util.concurrent.locks.ReadWriteLock;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
 
 import org.red5.server.BaseConnection;
 import org.red5.server.api.scheduling.ISchedulingService;
+import org.red5.server.jmx.JMXAgent;
+import org.red5.server.jmx.JMXFactory;
+import org.red5.server.jmx.mxbeans.ConnectionInfo;
+import org.red5.server.jmx.mxbeans.RTMPConnManagerMXBean;
 import org.red5.server.net.mrtmp.EdgeRTMPMinaConnection;
 import org.red5.server.net.rtmpt.RTMPTConnection;
+import org.red5.server.util.ConcurrentIntMap;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.BeansException;
+import org.springframework.beans.factory.BeanNameAware;
 import org.springframework.context.ApplicationContext;
 import org.springframework.context.ApplicationContextAware;
 
-public class RTMPConnManager implements IRTMPConnManager, ApplicationContextAware {
+public class RTMPConnManager implements IRTMPConnManager, RTMPConnManagerMXBean, ApplicationContextAware, BeanNameAware {
 
 	private static final Logger log = LoggerFactory.getLogger(RTMPConnManager.class);
 
-	private ConcurrentMap<Integer, RTMPConnection> connMap = new ConcurrentHashMap<Integer, RTMPConnection>();
+	/**
+	 * Connections by client id, keyed by the primitive id so that resolving the connection of a
+	 * packet doesn't box
+	 */
+	private ConcurrentIntMap<RTMPConnection> connMap = new ConcurrentIntMap<RTMPConnection>();
+
+	/**
+	 * How long a snapshot of the connections is used for queries, so that paging through the
+	 * connections sees one consistent list
+	 */
+	private static final long SNAPSHOT_MAX_AGE = 1000;
+
+	private static final Comparator<RTMPConnection> ID_ORDER = new Comparator<RTMPConnection>() {
+		public int compare(RTMPConnection c1, RTMPConnection c2) {
+			return c1.getId() < c2.getId() ? -1 : (c1.getId() == c2.getId() ? 0 : 1);
+		}
+	};
 
-	private ReadWriteLock lock = new ReentrantReadWriteLock();
+	private volatile Snapshot snapshot;
 
 	private ApplicationContext appCtx;
 
@@ -52,15 +77,10 @@ public class RTMPConnManager implements IRTMPConnManager, ApplicationContextAwar
 		}
 		try {
 			RTMPConnection conn = createConnectionInstance(connCls);
-			lock.writeLock().lock();
-			try {
-				int clientId = BaseConnection.getNextClientId();
-				conn.setId(clientId);
-				connMap.put(clientId, conn);
-				log.debug("Connection created, id: {}", conn.getId());
-			} finally {
-				lock.writeLock().unlock();
-			}
+			int clientId = BaseConnection.getNextClientId();
+			conn.setId(clientId);
+			connMap.put(clientId, conn);
+			log.debug("Connection created, id: {}", clientId);
 			return conn;
 		} catch (Exception e) {
 			return null;
@@ -68,39 +88,146 @@ public class RTMPConnManager implements IRTMPConnManager, ApplicationContextAwar
 	}
 
 	public RTMPConnection getConnection(int clientId) {
-		lock.readLock().lock();
-		try {
-			return connMap.get(clientId);
-		} finally {
-			lock.readLock().unlock();
-		}
+		return connMap.get(clientId);
 	}
 
 	public RTMPConnection removeConnection(int clientId) {
-		lock.writeLock().lock();
-		try {
-			log.debug("Removing connection with id: {}", clientId);
-			return connMap.remove(clientId);
-		} finally {
-			lock.writeLock().unlock();
-		}
+		log.debug("Removing connection with id: {}", clientId);
+		return connMap.remove(clientId);
 	}
 
 	public Collection<RTMPConnection> removeConnections() {
-		ArrayList<RTMPConnection> list = new ArrayList<RTMPConnection>(connMap.size());
-		lock.writeLock().lock();
-		try {
-			list.addAll(connMap.values());
-			return list;
-		} finally {
-			lock.writeLock().unlock();
-		}
+		return connMap.values();
 	}
 
 	public void setApplicationContext(ApplicationContext appCtx) throws BeansException {
 		this.appCtx = appCtx;
 	}
 
+	/**
+	 * Registers the manager with JMX under its bean name.
+	 */
+	public void setBeanName(String name) {
+		try {
+			String className = JMXAgent.trimClassName(getClass().getName());
+			ObjectName oName = new ObjectName(String.format("%s:type=%s,name=%s", JMXFactory.getDefaultDomain(), className, name));
+			JMXAgent.registerMBean(this, getClass().getName(), RTMPConnManagerMXBean.class, oName);
+		} catch (MalformedObjectNameException e) {
+			log.warn("Invalid object name for {}", name, e);
+		}
+	}
+
+	/** {@inheritDoc} */
+	public int getConnectionCount() {
+		return connMap.size();
+	}
+
+	/** {@inheritDoc} */
+	public int countConnections(String filter) {
+		RTMPConnection[] conns = getSnapshot();
+		if (filter == null || filter.length() == 0) {
+			return conns.length;
+		}
+		int count = 0;
+		for (RTMPConnection conn : conns) {
+			if (matches(conn, filter)) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	/** {@inheritDoc} */
+	public List<ConnectionInfo> getConnections(int offset, int limit, String filter) {
+		RTMPConnection[] conns = getSnapshot();
+		List<ConnectionInfo> result = new ArrayList<ConnectionInfo>(Math.max(0, Math.min(limit, conns.length)));
+		boolean all = filter == null || filter.length() == 0;
+		int skipped = 0;
+		for (int i = 0; i < conns.length && result.size() < limit; i++) {
+			RTMPConnection conn = conns[i];
+			if (all || matches(conn, filter)) {
+				if (skipped < offset) {
+					skipped++;
+				} else {
+					result.add(new ConnectionInfo(conn.getId(), conn.getType(), conn.getRemoteAddress(), conn.getRemotePort(), conn.getPath(), conn.isConnected(),
+							conn.getReadBytes(), conn.getWrittenBytes(), conn.getPendingMessages(), isInspected(conn)));
+				}
+			}
+		}
+		return result;
+	}
+
+	/** {@inheritDoc} */
+	public boolean inspectConnection(int clientId) {
+		RTMPConnection conn = connMap.get(clientId);
+		if (conn instanceof RTMPMinaConnection) {
+			return ((RTMPMinaConnection) conn).registerMBean();
+		}
+		return false;
+	}
+
+	/** {@inheritDoc} */
+	public List<String> getFlightRecord(int clientId) {
+		RTMPConnection conn = connMap.get(clientId);
+		if (conn != null) {
+			return conn.getFlightRecord();
+		}
+		return Collections.emptyList();
+	}
+
+	/** {@inheritDoc} */
+	public boolean releaseConnection(int clientId) {
+		RTMPConnection conn = connMap.get(clientId);
+		if (isInspected(conn)) {
+			((RTMPMinaConnection) conn).unregisterMBean();
+			return true;
+		}
+		return false;
+	}
+
+	/** {@inheritDoc} */
+	public List<Integer> getInspectedConnections() {
+		List<Integer> result = new ArrayList<Integer>();
+		for (RTMPConnection conn : connMap.values()) {
+			if (isInspected(conn)) {
+				result.add(conn.getId());
+			}
+		}
+		Collections.sort(result);
+		return result;
+	}
+
+	private static boolean isInspected(RTMPConnection conn) {
+		return conn instanceof RTMPMinaConnection && ((RTMPMinaConnection) conn).isMBeanRegistered();
+	}
+
+	private static boolean matches(RTMPConnection conn, String filter) {
+		return contains(conn.getType(), filter) || contains(conn.getRemoteAddress(), filter) || contains(conn.getPath(), filter);
+	}
+
+	private static boolean contains(String value, String filter) {
+		return value != null && value.indexOf(filter) != -1;
+	}
+
+	/**
+	 * Returns the connections ordered by id, taking a new snapshot once the current one is too
+	 * old.
+	 * 
+	 * @return connections, must not be modified
+	 */
+	private RTMPConnection[] getSnapshot() {
+		long now = System.currentTimeMillis();
+		Snapshot current = snapshot;
+		if (current == null || now - current.created > SNAPSHOT_MAX_AGE) {
+			List<RTMPConnection> conns = connMap.values();
+			RTMPConnection[] connArray = conns.toArray(new RTMPConnection[conns.size()]);
+			Arrays.sort(connArray, ID_ORDER);
+			current = new Snapshot(now, connArray);
+			snapshot = current;
+		}
+		return current.connections;
+	}
+
 	public RTMPConnection createConnectionInstance(Class<?> cls) throws Exception {
 		RTMPConnection conn = null;
 		if (cls == RTMPMinaConnection.class) {
@@ -116,4 +243,18 @@ public class RTMPConnManager implements IRTMPConnManager, ApplicationContextAwar
 		conn.setSchedulingService((ISchedulingService) appCtx.getBean(ISchedulingService.BEAN_NAME));
 		return conn;
 	}
+
+	private static final class Snapshot {
+
+		final long created;
+
+		final RTMPConnection[] connections;
+
+		Snapshot(long created, RTMPConnection[] connections) {
+			this.created = created;
+			this.connections = connections;
+		}
+
+	}
+
 }
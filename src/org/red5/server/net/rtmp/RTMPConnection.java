@@ -25,6 +25,7 @@ import java.beans.ConstructorProperties;
 import java.util.BitSet;
 import java.util.Collection;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
@@ -37,12 +38,13 @@ import org.apache.mina.core.buffer.IoBuffer;
 import org.red5.server.BaseConnection;
 import org.red5.server.api.IScope;
 import org.red5.server.api.Red5;
+import org.red5.server.api.listeners.IHandlerTimingListener;
 import org.red5.server.api.scheduling.IScheduledJob;
 import org.red5.server.api.scheduling.ISchedulingService;
 import org.red5.server.api.service.IPendingServiceCall;
 import org.red5.server.api.service.IPendingServiceCallback;
+import org.red5.server.api.service.IServiceBatchCapableConnection;
 import org.red5.server.api.service.IServiceCall;
-import org.red5.server.api.service.IServiceCapableConnection;
 import org.red5.server.api.stream.IClientBroadcastStream;
 import org.red5.server.api.stream.IClientStream;
 import org.red5.server.api.stream.IPlaylistSubscriberStream;
@@ -59,9 +61,12 @@ import org.red5.server.net.rtmp.event.Ping;
 import org.red5.server.net.rtmp.event.ServerBW;
 import org.red5.server.net.rtmp.event.VideoData;
 import org.red5.server.net.rtmp.message.Packet;
+import org.red5.server.service.BroadcastCall;
 import org.red5.server.service.Call;
 import org.red5.server.service.PendingCall;
+import org.red5.server.so.BroadcastSharedObjectMessage;
 import org.red5.server.stream.ClientBroadcastStream;
+import org.red5.server.stream.IStreamData;
 import org.red5.server.stream.OutputStream;
 import org.red5.server.stream.PlaylistSubscriberStream;
 import org.red5.server.stream.SingleItemSubscriberStream;
@@ -75,7 +80,7 @@ import org.slf4j.LoggerFactory;
  * (AMF0/AMF3), connection state (is alive, last ping time and ping result) and
  * session.
  */
-public abstract class RTMPConnection extends BaseConnection implements IStreamCapableConnection, IServiceCapableConnection {
+public abstract class RTMPConnection extends BaseConnection implements IStreamCapableConnection, IServiceBatchCapableConnection, IHandlerTimingListener {
 
 	private static Logger log = LoggerFactory.getLogger(RTMPConnection.class);
 
@@ -186,6 +191,16 @@ public abstract class RTMPConnection extends BaseConnection implements IStreamCa
 	 */
 	private ConcurrentMap<Integer, AtomicInteger> pendingVideos = new ConcurrentHashMap<Integer, AtomicInteger>();
 
+	/**
+	 * Recent protocol events of this connection.
+	 */
+	private final FlightRecorder flightRecorder = new FlightRecorder();
+
+	/**
+	 * Timing of the connect of this connection.
+	 */
+	private final ConnectTrace connectTrace = new ConnectTrace();
+
 	/**
 	 * Number of streams used.
 	 */
@@ -284,6 +299,8 @@ public abstract class RTMPConnection extends BaseConnection implements IStreamCa
 			log.info("Client rejected, unscheduling waitForHandshakeJob. Reason: " + ((reason != null) ? reason : "None"));
 			unscheduleWaitForHandshakeJob();
 			throw e;
+		} finally {
+			connectTrace.mark(ConnectTrace.SCOPE);
 		}
 	}
 
@@ -747,6 +764,18 @@ public abstract class RTMPConnection extends BaseConnection implements IStreamCa
 	 */
 	public abstract void write(Packet out);
 
+	/**
+	 * Writes several packets. Transports able to send them with a single write override this,
+	 * the default writes them one after another.
+	 * 
+	 * @param packets Packets to write
+	 */
+	public void write(Packet[] packets) {
+		for (Packet packet : packets) {
+			write(packet);
+		}
+	}
+
 	/**
 	 * Update number of bytes to read next value.
 	 */
@@ -772,7 +801,9 @@ public abstract class RTMPConnection extends BaseConnection implements IStreamCa
 	public void receivedBytesRead(int bytes) {
 		getWriteLock().lock();
 		try {
-			log.debug("Client received {} bytes, written {} bytes, {} messages pending", new Object[] { bytes, getWrittenBytes(), getPendingMessages() });
+			if (log.isDebugEnabled()) {
+				log.debug("Client received {} bytes, written {} bytes, {} messages pending", new Object[] { bytes, getWrittenBytes(), getPendingMessages() });
+			}
 			clientBytesRead = bytes;
 		} finally {
 			getWriteLock().unlock();
@@ -829,6 +860,31 @@ public abstract class RTMPConnection extends BaseConnection implements IStreamCa
 		getChannel(channel).write(invoke);
 	}
 
+	/**
+	 * Invokes several calls, which are handed to the transport in a single write. Broadcast calls
+	 * are given a pending call of their own for this connection.
+	 * 
+	 * @param calls service calls
+	 * @param channel channel id
+	 */
+	public void invoke(IServiceCall[] calls, int channel) {
+		Invoke[] invokes = new Invoke[calls.length];
+		for (int i = 0; i < calls.length; i++) {
+			IServiceCall call = calls[i];
+			if (call instanceof BroadcastCall) {
+				call = ((BroadcastCall) call).newPendingCall();
+			}
+			Invoke invoke = new Invoke();
+			invoke.setCall(call);
+			invoke.setInvokeId(getInvokeId());
+			if (call instanceof IPendingServiceCall) {
+				registerPendingCall(invoke.getInvokeId(), (IPendingServiceCall) call);
+			}
+			invokes[i] = invoke;
+		}
+		getChannel(channel).write(invokes);
+	}
+
 	/** {@inheritDoc} */
 	public void invoke(String method) {
 		invoke(method, null, null);
@@ -865,6 +921,22 @@ public abstract class RTMPConnection extends BaseConnection implements IStreamCa
 		getChannel(channel).write(notify);
 	}
 
+	/**
+	 * Sends several notifications, which are handed to the transport in a single write.
+	 * 
+	 * @param calls service calls
+	 * @param channel channel id
+	 */
+	public void notify(IServiceCall[] calls, int channel) {
+		Notify[] notifies = new Notify[calls.length];
+		for (int i = 0; i < calls.length; i++) {
+			Notify notify = new Notify();
+			notify.setCall(calls[i]);
+			notifies[i] = notify;
+		}
+		getChannel(channel).write(notifies);
+	}
+
 	/** {@inheritDoc} */
 	public void notify(String method) {
 		notify(method, null);
@@ -926,14 +998,21 @@ public abstract class RTMPConnection extends BaseConnection implements IStreamCa
 	 *            Message to mark
 	 */
 	protected void writingMessage(Packet message) {
+		// the pending count walks the queue of some transports, only take it for the recorder
+		if (FlightRecorder.isEnabled()) {
+			flightRecorder.record(FlightRecorder.QUEUED, message.getHeader().getDataType(), sizeOf(message), message.getHeader().getTimer(), (int) getPendingMessages());
+		}
 		if (message.getMessage() instanceof VideoData) {
 			int streamId = message.getHeader().getStreamId();
-			final AtomicInteger value = new AtomicInteger();
-			AtomicInteger old = pendingVideos.putIfAbsent(streamId, value);
-			if (old == null) {
-				old = value;
+			AtomicInteger pending = pendingVideos.get(streamId);
+			if (pending == null) {
+				final AtomicInteger value = new AtomicInteger();
+				pending = pendingVideos.putIfAbsent(streamId, value);
+				if (pending == null) {
+					pending = value;
+				}
 			}
-			old.incrementAndGet();
+			pending.incrementAndGet();
 		}
 	}
 
@@ -953,16 +1032,70 @@ public abstract class RTMPConnection extends BaseConnection implements IStreamCa
 	 *            Message to mark
 	 */
 	public void messageSent(Packet message) {
+		if (FlightRecorder.isEnabled()) {
+			flightRecorder.record(FlightRecorder.SENT, message.getHeader().getDataType(), sizeOf(message), message.getHeader().getTimer(), message.getHeader().getStreamId());
+		}
 		if (message.getMessage() instanceof VideoData) {
 			int streamId = message.getHeader().getStreamId();
 			AtomicInteger pending = pendingVideos.get(streamId);
 			if (pending != null) {
 				pending.decrementAndGet();
 			}
+		} else if (message.getMessage() instanceof BroadcastSharedObjectMessage) {
+			// shared sync messages are referenced by every connection they are written to
+			message.getMessage().release();
 		}
 		writtenMessages.incrementAndGet();
 	}
 
+	/**
+	 * Returns the size of a packet; stream data is measured before it is encoded.
+	 * 
+	 * @param message packet
+	 * @return size in bytes
+	 */
+	private static int sizeOf(Packet message) {
+		if (message.getMessage() instanceof IStreamData) {
+			IoBuffer data = ((IStreamData<?>) message.getMessage()).getData();
+			if (data != null) {
+				return data.limit();
+			}
+		}
+		return message.getHeader().getSize();
+	}
+
+	/**
+	 * Returns the recorder of recent protocol events.
+	 * 
+	 * @return flight recorder
+	 */
+	public FlightRecorder getFlightRecorder() {
+		return flightRecorder;
+	}
+
+	/**
+	 * Returns the timing of the connect of this connection.
+	 * 
+	 * @return connect trace
+	 */
+	public ConnectTrace getConnectTrace() {
+		return connectTrace;
+	}
+
+	/** {@inheritDoc} */
+	public void notifyHandlerTime(IScope scope, long nanos) {
+		connectTrace.add(ConnectTrace.APP, nanos);
+	}
+
+	/**
+	 * Returns the recent protocol events, oldest first.
+	 * 
+	 * @return one line per event
+	 */
+	public List<String> getFlightRecord() {
+		return flightRecorder.dump();
+	}
+
 	/**
 	 * Increases number of dropped messages.
 	 */
@@ -1209,6 +1342,8 @@ public abstract class RTMPConnection extends BaseConnection implements IStreamCa
 						// Add the following line to (hopefully) deal with a very common support request
 						// on the Red5 list
 						log.warn("This often happens if YOUR Red5 application generated an exception on start-up. Check earlier in the log for that exception first!");
+						flightRecorder.record(FlightRecorder.PING_TIMEOUT, (byte) 0, 0, 0, (int) (lastPingTime - lastPongTime));
+						flightRecorder.dump(log, "ping timeout", RTMPConnection.this);
 						onInactive();
 					}
 					// send ping command to client to trigger sending of data
@@ -197,12 +197,16 @@ public class RTMPHandler extends BaseRTMPHandler {
 			return;
 		}
 		boolean disconnectOnReturn = false;
+		// timing of the connect, when this is one
+		ConnectTrace connectTrace = null;
 		// If this is not a service call then handle connection...
 		if (call.getServiceName() == null) {
 			log.debug("call: {}", call);
 			if (!conn.isConnected() && StreamAction.CONNECT.equals(action)) {
 				// Handle connection
 				log.debug("connect");
+				connectTrace = conn.getConnectTrace();
+				connectTrace.mark(ConnectTrace.REQUEST);
 				// Get parameters passed from client to
 				// NetConnection#connection
 				final Map<String, Object> params = invoke.getConnectionParams();
@@ -261,6 +265,7 @@ public class RTMPHandler extends BaseRTMPHandler {
 							log.info("Application at {} currently shutting down on {}", path, host);
 							disconnectOnReturn = true;
 						}
+						connectTrace.mark(ConnectTrace.LOOKUP);
 						if (scope != null) {
 							log.info("Connecting to: {}", scope);
 							boolean okayToConnect;
@@ -431,6 +436,10 @@ public class RTMPHandler extends BaseRTMPHandler {
 				reply.setCall(call);
 				reply.setInvokeId(invoke.getInvokeId());
 				channel.write(reply);
+				if (connectTrace != null) {
+					connectTrace.mark(ConnectTrace.RESULT);
+					connectTrace.finish(!disconnectOnReturn, conn);
+				}
 				if (disconnectOnReturn) {
 					conn.close();
 				}
@@ -59,7 +59,8 @@ public class RTMPMinaConnection extends RTMPConnection implements RTMPMinaConnec
 	private volatile IoSession ioSession;
 
 	/**
-	 * MBean object name used for de/registration purposes.
+	 * MBean object name used for de/registration purposes, only set while an operator inspects
+	 * this connection.
 	 */
 	private volatile ObjectName oName;
 
@@ -111,11 +112,7 @@ public class RTMPMinaConnection extends RTMPConnection implements RTMPMinaConnec
 			//}
 		}
 		//de-register with JMX
-		try {
-			JMXAgent.unregisterMBean(oName);
-		} catch (Exception e) {
-			//sometimes the client is not registered in jmx
-		}
+		unregisterMBean();
 	}
 
 	@SuppressWarnings("cast")
@@ -128,30 +125,12 @@ public class RTMPMinaConnection extends RTMPConnection implements RTMPMinaConnec
 			getChannel(2).write(new ServerBW(defaultServerBandwidth));
 			// second param is the limit type (0=hard,1=soft,2=dynamic)
 			getChannel(2).write(new ClientBW(defaultClientBandwidth, (byte) limitType));
-			//if the client is null for some reason, skip the jmx registration
+			getConnectTrace().mark(ConnectTrace.BANDWIDTH);
 			if (client != null) {
 				// perform bandwidth detection
 				if (bandwidthDetection && !client.isBandwidthChecked()) {
 					client.checkBandwidth();
-				}
-				// register with jmx
-				try {
-					String cName = this.getClass().getName();
-					if (cName.indexOf('.') != -1) {
-						cName = cName.substring(cName.lastIndexOf('.')).replaceFirst("[\\.]", "");
-					}
-					String hostStr = host;
-					int port = 1935;
-					if (host != null && host.indexOf(":") > -1) {
-						String[] arr = host.split(":");
-						hostStr = arr[0];
-						port = Integer.parseInt(arr[1]);
-					}
-					// Create a new mbean for this instance
-					oName = JMXFactory.createObjectName("type", cName, "connectionType", type, "host", hostStr, "port", port + "", "clientId", client.getId());
-					JMXAgent.registerMBean(this, this.getClass().getName(), RTMPMinaConnectionMXBean.class, oName);
-				} catch (Exception e) {
-					log.warn("Exception registering mbean", e);
+					getConnectTrace().mark(ConnectTrace.BANDWIDTH_CHECK);
 				}
 			} else {
 				log.warn("Client was null");
@@ -160,6 +139,59 @@ public class RTMPMinaConnection extends RTMPConnection implements RTMPMinaConnec
 		return success;
 	}
 
+	/**
+	 * Registers an mbean for this connection. Connections are not registered by default, the
+	 * connection manager registers the ones an operator wants to inspect.
+	 * 
+	 * @return true if the connection is registered
+	 */
+	boolean registerMBean() {
+		if (oName != null) {
+			return true;
+		}
+		if (client == null) {
+			return false;
+		}
+		try {
+			String cName = JMXAgent.trimClassName(getClass().getName());
+			String hostStr = host;
+			String port = "1935";
+			int colon = host != null ? host.indexOf(':') : -1;
+			if (colon != -1) {
+				hostStr = host.substring(0, colon);
+				port = host.substring(colon + 1);
+			}
+			// Create a new mbean for this instance
+			ObjectName name = JMXFactory.createObjectName("type", cName, "connectionType", type, "host", hostStr, "port", port, "clientId", client.getId());
+			if (JMXAgent.registerMBean(this, getClass().getName(), RTMPMinaConnectionMXBean.class, name)) {
+				oName = name;
+			}
+		} catch (Exception e) {
+			log.warn("Exception registering mbean", e);
+		}
+		return oName != null;
+	}
+
+	/**
+	 * Removes the mbean of this connection if there is one.
+	 */
+	void unregisterMBean() {
+		ObjectName name = oName;
+		if (name != null) {
+			oName = null;
+			JMXAgent.unregisterMBean(name);
+		}
+	}
+
+	/**
+	 * Whether this connection has an mbean.
+	 * 
+	 * @return true if registered
+	 */
+	boolean isMBeanRegistered() {
+		return oName != null;
+	}
+
 	/**
 	 * Return MINA I/O session.
 	 *
@@ -306,4 +338,15 @@ public class RTMPMinaConnection extends RTMPConnection implements RTMPMinaConnec
 		}
 	}
 
+	/** {@inheritDoc} */
+	@Override
+	public void write(Packet[] packets) {
+		if (ioSession != null) {
+			for (Packet packet : packets) {
+				writingMessage(packet);
+			}
+			ioSession.write(packets);
+		}
+	}
+
 }
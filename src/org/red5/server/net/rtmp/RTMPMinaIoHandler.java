@@ -178,6 +178,9 @@ public class RTMPMinaIoHandler extends IoHandlerAdapter implements ApplicationCo
 				if (out != null) {
 					log.debug("Output: {}", out);
 					session.write(out);
+					if (rtmp.getMode() == RTMP.MODE_SERVER) {
+						conn.getConnectTrace().mark(ConnectTrace.HANDSHAKE);
+					}
 					//if we are connected and doing encryption, add the ciphers
 					if (rtmp.getState() == RTMP.STATE_CONNECTED) {
 						// remove handshake from session now that we are connected
@@ -231,6 +234,11 @@ public class RTMPMinaIoHandler extends IoHandlerAdapter implements ApplicationCo
 		if (log.isDebugEnabled()) {
 			log.error("Exception detail", cause);
 		}
+		RTMPConnection conn = (RTMPConnection) session.getAttribute(RTMPConnection.RTMP_CONNECTION_KEY);
+		if (conn != null) {
+			conn.getFlightRecorder().record(FlightRecorder.EXCEPTION, (byte) 0, 0, 0, 0);
+			conn.getFlightRecorder().dump(log, cause.toString(), conn);
+		}
 	}
 
 	/**
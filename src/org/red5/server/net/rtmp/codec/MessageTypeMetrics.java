@@ -0,0 +1,70 @@
+package org.red5.server.net.rtmp.codec;
+
+/*
+ * RED5 Open Source Flash Server - http://code.google.com/p/red5/
+ *
+ * Copyright (c) 2006-2011 by respective authors (see below). All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation; either version 2.1 of the License, or (at your option) any later
+ * version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along
+ * with this library; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+
+import org.red5.server.metrics.Histogram;
+import org.red5.server.metrics.MetricsRegistry;
+import org.red5.server.net.rtmp.message.Constants;
+
+/**
+ * Histograms indexed by RTMP message type, so the codecs find the histogram of a message
+ * without a map lookup.
+ * 
+ * @author The Red5 Project (red5@osflash.org)
+ */
+final class MessageTypeMetrics implements Constants {
+
+	private MessageTypeMetrics() {
+	}
+
+	/**
+	 * Returns histograms for all message types, types without a name share one histogram.
+	 * 
+	 * @param prefix name prefix
+	 * @return array of 256 histograms indexed by the unsigned type
+	 */
+	static Histogram[] create(String prefix) {
+		MetricsRegistry registry = MetricsRegistry.getInstance();
+		Histogram[] histograms = new Histogram[256];
+		histograms[TYPE_CHUNK_SIZE] = registry.getHistogram(prefix + ".chunkSize");
+		histograms[TYPE_ABORT] = registry.getHistogram(prefix + ".abort");
+		histograms[TYPE_BYTES_READ] = registry.getHistogram(prefix + ".bytesRead");
+		histograms[TYPE_PING] = registry.getHistogram(prefix + ".ping");
+		histograms[TYPE_SERVER_BANDWIDTH] = registry.getHistogram(prefix + ".serverBandwidth");
+		histograms[TYPE_CLIENT_BANDWIDTH] = registry.getHistogram(prefix + ".clientBandwidth");
+		histograms[TYPE_AUDIO_DATA] = registry.getHistogram(prefix + ".audio");
+		histograms[TYPE_VIDEO_DATA] = registry.getHistogram(prefix + ".video");
+		histograms[TYPE_FLEX_STREAM_SEND] = registry.getHistogram(prefix + ".flexStreamSend");
+		histograms[TYPE_FLEX_SHARED_OBJECT] = registry.getHistogram(prefix + ".flexSharedObject");
+		histograms[TYPE_FLEX_MESSAGE] = registry.getHistogram(prefix + ".flexMessage");
+		histograms[TYPE_NOTIFY] = registry.getHistogram(prefix + ".notify");
+		histograms[TYPE_SHARED_OBJECT] = registry.getHistogram(prefix + ".sharedObject");
+		histograms[TYPE_INVOKE] = registry.getHistogram(prefix + ".invoke");
+		histograms[TYPE_AGGREGATE] = registry.getHistogram(prefix + ".aggregate");
+		Histogram other = registry.getHistogram(prefix + ".other");
+		for (int i = 0; i < histograms.length; i++) {
+			if (histograms[i] == null) {
+				histograms[i] = other;
+			}
+		}
+		return histograms;
+	}
+
+}
@@ -37,6 +37,8 @@ import org.red5.io.utils.BufferUtils;
 import org.red5.server.api.IConnection;
 import org.red5.server.api.IConnection.Encoding;
 import org.red5.server.api.Red5;
+import org.red5.server.metrics.Histogram;
+import org.red5.server.metrics.MetricsRegistry;
 import org.red5.server.net.protocol.HandshakeFailedException;
 import org.red5.server.net.protocol.ProtocolException;
 import org.red5.server.net.protocol.ProtocolState;
@@ -67,6 +69,7 @@ import org.red5.server.so.FlexSharedObjectMessage;
 import org.red5.server.so.ISharedObjectEvent;
 import org.red5.server.so.ISharedObjectMessage;
 import org.red5.server.so.SharedObjectMessage;
+import org.red5.server.stream.StreamPayload;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -80,6 +83,11 @@ public class RTMPProtocolDecoder implements Constants, IEventDecoder {
 	 */
 	protected static Logger log = LoggerFactory.getLogger(RTMPProtocolDecoder.class);
 
+	/**
+	 * Decoding time by message type
+	 */
+	private static final Histogram[] decodeTimes = MessageTypeMetrics.create("rtmp.decode");
+
 	/**
 	 * Deserializer
 	 */
@@ -348,7 +356,9 @@ public class RTMPProtocolDecoder implements Constants, IEventDecoder {
 		buf.flip();
 
 		try {
+			final long start = MetricsRegistry.start();
 			final IRTMPEvent message = decodeMessage(rtmp, packet.getHeader(), buf);
+			decodeTimes[header.getDataType() & 0xff].recordSince(start);
 			message.setHeader(packet.getHeader());
 			// Unfortunately flash will, especially when resetting a video stream with a new key frame, sometime 
 			// send an earlier time stamp.  To avoid dropping it, we just give it the minimal increment since the 
@@ -356,8 +366,10 @@ public class RTMPProtocolDecoder implements Constants, IEventDecoder {
 			final Header lastReadHeader = rtmp.getLastReadPacketHeader(channelId);
 			if (lastReadHeader != null && (message instanceof AudioData || message instanceof VideoData)
 					&& RTMPUtils.compareTimestamps(lastReadHeader.getTimer(), packet.getHeader().getTimer()) >= 0) {
-				log.trace("Non-monotonically increasing timestamps; type: {}; adjusting to {}; ts: {}; last: {}", new Object[] { header.getDataType(),
-						lastReadHeader.getTimer() + 1, header.getTimer(), lastReadHeader.getTimer() });
+				if (log.isTraceEnabled()) {
+					log.trace("Non-monotonically increasing timestamps; type: {}; adjusting to {}; ts: {}; last: {}", new Object[] { header.getDataType(),
+							lastReadHeader.getTimer() + 1, header.getTimer(), lastReadHeader.getTimer() });
+				}
 				message.setTimestamp(lastReadHeader.getTimer() + 1);
 			} else {
 				message.setTimestamp(header.getTimer());
@@ -365,6 +377,10 @@ public class RTMPProtocolDecoder implements Constants, IEventDecoder {
 			rtmp.setLastReadPacketHeader(channelId, packet.getHeader());
 
 			packet.setMessage(message);
+			if (message instanceof AudioData || message instanceof VideoData) {
+				// the payload of the event owns the packet data now
+				packet.setData(null);
+			}
 
 			if (message instanceof ChunkSize) {
 				ChunkSize chunkSizeMsg = (ChunkSize) message;
@@ -380,6 +396,7 @@ public class RTMPProtocolDecoder implements Constants, IEventDecoder {
 			if (packet != null && packet.getHeader().isGarbage()) {
 				// discard this packet; this gets rid of the garbage audio data FP inserts
 				log.trace("Dropping garbage packet: {}, {}", packet, packet.getHeader());
+				message.release();
 				packet = null;
 			} else {
 				// collapse the time stamps on the last packet so that it works
@@ -456,8 +473,10 @@ public class RTMPProtocolDecoder implements Constants, IEventDecoder {
 					header.setExtendedTimestamp(timeValue);
 				} else if (timeValue == 0 && header.getDataType() == TYPE_AUDIO_DATA) {
 					header.setIsGarbage(true);
-					log.trace("Audio with zero delta; setting to garbage; ChannelId: {}; DataType: {}; HeaderSize: {}", new Object[] { header.getChannelId(), header.getDataType(),
-							headerSize });
+					if (log.isTraceEnabled()) {
+						log.trace("Audio with zero delta; setting to garbage; ChannelId: {}; DataType: {}; HeaderSize: {}", new Object[] { header.getChannelId(),
+								header.getDataType(), headerSize });
+					}
 				}
 				header.setTimerBase(lastHeader.getTimerBase());
 				header.setTimerDelta(timeValue);
@@ -474,8 +493,10 @@ public class RTMPProtocolDecoder implements Constants, IEventDecoder {
 					header.setExtendedTimestamp(timeValue);
 				} else if (timeValue == 0 && header.getDataType() == TYPE_AUDIO_DATA) {
 					header.setIsGarbage(true);
-					log.trace("Audio with zero delta; setting to garbage; ChannelId: {}; DataType: {}; HeaderSize: {}", new Object[] { header.getChannelId(), header.getDataType(),
-							headerSize });
+					if (log.isTraceEnabled()) {
+						log.trace("Audio with zero delta; setting to garbage; ChannelId: {}; DataType: {}; HeaderSize: {}", new Object[] { header.getChannelId(),
+								header.getDataType(), headerSize });
+					}
 				}
 				header.setTimerBase(lastHeader.getTimerBase());
 				header.setTimerDelta(timeValue);
@@ -914,12 +935,12 @@ public class RTMPProtocolDecoder implements Constants, IEventDecoder {
 
 	/** {@inheritDoc} */
 	public AudioData decodeAudioData(IoBuffer in) {
-		return new AudioData(in.asReadOnlyBuffer());
+		return new AudioData(StreamPayload.wrap(in));
 	}
 
 	/** {@inheritDoc} */
 	public VideoData decodeVideoData(IoBuffer in) {
-		return new VideoData(in.asReadOnlyBuffer());
+		return new VideoData(StreamPayload.wrap(in));
 	}
 
 	/**
@@ -24,6 +24,7 @@ import java.util.List;
 import java.util.Map;
 
 import org.apache.mina.core.buffer.IoBuffer;
+import org.red5.io.amf.AMF;
 import org.red5.io.object.Output;
 import org.red5.io.object.Serializer;
 import org.red5.io.utils.BufferUtils;
@@ -34,6 +35,8 @@ import org.red5.server.api.service.IPendingServiceCall;
 import org.red5.server.api.service.IServiceCall;
 import org.red5.server.api.stream.IClientStream;
 import org.red5.server.exception.ClientDetailsException;
+import org.red5.server.metrics.Histogram;
+import org.red5.server.metrics.MetricsRegistry;
 import org.red5.server.net.protocol.ProtocolState;
 import org.red5.server.net.rtmp.RTMPConnection;
 import org.red5.server.net.rtmp.RTMPUtils;
@@ -60,9 +63,12 @@ import org.red5.server.net.rtmp.message.SharedObjectTypeMapping;
 import org.red5.server.net.rtmp.status.Status;
 import org.red5.server.net.rtmp.status.StatusCodes;
 import org.red5.server.net.rtmp.status.StatusObject;
+import org.red5.server.service.BroadcastCall;
 import org.red5.server.service.Call;
+import org.red5.server.so.BroadcastSharedObjectMessage;
 import org.red5.server.so.ISharedObjectEvent;
 import org.red5.server.so.ISharedObjectMessage;
+import org.red5.server.stream.IStreamData;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -73,6 +79,11 @@ public class RTMPProtocolEncoder implements Constants, IEventEncoder {
 
 	protected static Logger log = LoggerFactory.getLogger(RTMPProtocolEncoder.class);
 
+	/**
+	 * Encoding time by message type
+	 */
+	private static final Histogram[] encodeTimes = MessageTypeMetrics.create("rtmp.encode");
+
 	/**
 	 * Serializer object.
 	 */
@@ -115,6 +126,8 @@ public class RTMPProtocolEncoder implements Constants, IEventEncoder {
 			final RTMP rtmp = (RTMP) state;
 			if (message instanceof IoBuffer) {
 				return (IoBuffer) message;
+			} else if (message instanceof Packet[]) {
+				return encodePackets(rtmp, (Packet[]) message);
 			} else {
 				return encodePacket(rtmp, (Packet) message);
 			}
@@ -124,6 +137,36 @@ public class RTMPProtocolEncoder implements Constants, IEventEncoder {
 		return null;
 	}
 
+	/**
+	 * Encode several packets into a single buffer, so they are handed to the socket in one write.
+	 *
+	 * @param rtmp        RTMP protocol state
+	 * @param packets     RTMP packets
+	 * @return            Encoded data or null if every packet was dropped
+	 */
+	public IoBuffer encodePackets(RTMP rtmp, Packet[] packets) {
+		IoBuffer[] encoded = new IoBuffer[packets.length];
+		int size = 0;
+		for (int i = 0; i < packets.length; i++) {
+			encoded[i] = encodePacket(rtmp, packets[i]);
+			if (encoded[i] != null) {
+				size += encoded[i].remaining();
+			}
+		}
+		if (size == 0) {
+			return null;
+		}
+		IoBuffer out = IoBuffer.allocate(size, false);
+		for (IoBuffer buf : encoded) {
+			if (buf != null) {
+				out.put(buf);
+				buf.free();
+			}
+		}
+		out.flip();
+		return out;
+	}
+
 	/**
 	 * Encode packet.
 	 *
@@ -136,7 +179,9 @@ public class RTMPProtocolEncoder implements Constants, IEventEncoder {
 		IoBuffer data = null;
 		final Header header = packet.getHeader();
 		final int channelId = header.getChannelId();
-		log.debug("Channel id: {}", channelId);
+		if (log.isDebugEnabled()) {
+			log.debug("Channel id: {}", channelId);
+		}
 		final IRTMPEvent message = packet.getMessage();
 		if (message instanceof ChunkSize) {
 			ChunkSize chunkSizeMsg = (ChunkSize) message;
@@ -144,7 +189,9 @@ public class RTMPProtocolEncoder implements Constants, IEventEncoder {
 		}
 		//normally the message is expected not to be dropped
 		if (!dropMessage(rtmp, channelId, message)) {
+			long start = MetricsRegistry.start();
 			data = encodeMessage(rtmp, header, message);
+			encodeTimes[header.getDataType() & 0xff].recordSince(start);
 			if (data != null) {
 				if (data.position() != 0) {
 					data.flip();
@@ -184,7 +231,10 @@ public class RTMPProtocolEncoder implements Constants, IEventEncoder {
 					}
 					BufferUtils.put(out, data, dataLen);
 				}
-				data.free();
+				// stream data is freed with the event
+				if (!(message instanceof IStreamData) || data != ((IStreamData<?>) message).getData()) {
+					data.free();
+				}
 				out.flip();
 				data = null;
 			}
@@ -237,13 +287,16 @@ public class RTMPProtocolEncoder implements Constants, IEventEncoder {
 				}
 				//determine working type
 				boolean isLive = message.getSourceType() == Constants.SOURCE_TYPE_LIVE;
+				final boolean debug = log.isDebugEnabled();
 				log.trace("Connection type: {}", (isLive ? "Live" : "VOD"));
 				long timestamp = (message.getTimestamp() & 0xFFFFFFFFL);
 				LiveTimestampMapping mapping = rtmp.getLastTimestampMapping(channelId);
 				// just get the current time ONCE per packet
 				long now = System.currentTimeMillis();
 				if (mapping == null || timestamp < mapping.getLastStreamTime()) {
-					log.debug("Resetting clock time ({}) to stream time ({})", now, timestamp);
+					if (debug) {
+						log.debug("Resetting clock time ({}) to stream time ({})", now, timestamp);
+					}
 					// either first time through, or time stamps were reset
 					mapping = new LiveTimestampMapping(now, timestamp);
 					rtmp.setLastTimestampMapping(channelId, mapping);
@@ -260,7 +313,9 @@ public class RTMPProtocolEncoder implements Constants, IEventEncoder {
 				IConnection conn = Red5.getConnectionLocal();
 				log.debug("Connection: {}", conn);
 				if (conn != null) {
-					log.debug("Last ping time for connection: {}", conn.getLastPingTime());
+					if (debug) {
+						log.debug("Last ping time for connection: {}", conn.getLastPingTime());
+					}
 					tardiness -= conn.getLastPingTime();
 					//subtract the buffer time
 					RTMPConnection rtmpConn = (RTMPConnection) conn;
@@ -276,7 +331,9 @@ public class RTMPProtocolEncoder implements Constants, IEventEncoder {
 								tardiness -= clientBufferDuration;
 							}
 						}
-						log.debug("Client buffer duration: {}", clientBufferDuration);
+						if (debug) {
+							log.debug("Client buffer duration: {}", clientBufferDuration);
+						}
 					}
 				} else {
 					log.debug("Connection is null");
@@ -286,8 +343,10 @@ public class RTMPProtocolEncoder implements Constants, IEventEncoder {
 
 				//TODO: if we are VOD do we "pause" the provider when we are consistently late?
 
-				log.debug("Packet timestamp: {}; tardiness: {}; now: {}; message clock time: {}, dropLiveFuture: {}", new Object[] { timestamp, tardiness, now, clockTimeOfMessage,
-						dropLiveFuture });
+				if (debug) {
+					log.debug("Packet timestamp: {}; tardiness: {}; now: {}; message clock time: {}, dropLiveFuture: {}", new Object[] { timestamp, tardiness, now,
+							clockTimeOfMessage, dropLiveFuture });
+				}
 				//anything coming in less than the base will be allowed to pass, it will not be
 				//dropped or manipulated
 				if (tardiness < baseTolerance) {
@@ -588,6 +647,9 @@ public class RTMPProtocolEncoder implements Constants, IEventEncoder {
 
 	/** {@inheritDoc} */
 	public IoBuffer encodeFlexSharedObject(ISharedObjectMessage so, RTMP rtmp) {
+		if (so instanceof BroadcastSharedObjectMessage) {
+			return encodeBroadcastSharedObject((BroadcastSharedObjectMessage) so, rtmp);
+		}
 		final IoBuffer out = IoBuffer.allocate(128);
 		out.setAutoExpand(true);
 		out.put((byte) 0x00);  // unknown (not AMF version)
@@ -597,12 +659,41 @@ public class RTMPProtocolEncoder implements Constants, IEventEncoder {
 
 	/** {@inheritDoc} */
 	public IoBuffer encodeSharedObject(ISharedObjectMessage so, RTMP rtmp) {
+		if (so instanceof BroadcastSharedObjectMessage) {
+			return encodeBroadcastSharedObject((BroadcastSharedObjectMessage) so, rtmp);
+		}
 		final IoBuffer out = IoBuffer.allocate(128);
 		out.setAutoExpand(true);
 		doEncodeSharedObject(so, rtmp, out);
 		return out;
 	}
 
+	/**
+	 * Encode a shared object sync message shared by many connections. The body is serialized by
+	 * the first connection and reused afterwards.
+	 *
+	 * @param so shared object message
+	 * @param rtmp rtmp
+	 * @return encoded message
+	 */
+	private IoBuffer encodeBroadcastSharedObject(BroadcastSharedObjectMessage so, RTMP rtmp) {
+		byte[] encoded = so.getEncoded();
+		if (encoded == null || so.getEncoding() != rtmp.getEncoding()) {
+			final IoBuffer out = IoBuffer.allocate(128);
+			out.setAutoExpand(true);
+			if (so.getDataType() == TYPE_FLEX_SHARED_OBJECT) {
+				out.put((byte) 0x00);  // unknown (not AMF version)
+			}
+			doEncodeSharedObject(so, rtmp, out);
+			if (so.getEncoding() != rtmp.getEncoding()) {
+				return out;
+			}
+			encoded = toByteArray(out);
+			so.setEncoded(encoded);
+		}
+		return IoBuffer.wrap(encoded);
+	}
+
 	/**
 	 * Perform the actual encoding of the shared object contents.
 	 *
@@ -754,8 +845,14 @@ public class RTMPProtocolEncoder implements Constants, IEventEncoder {
 	protected void encodeNotifyOrInvoke(IoBuffer out, Notify invoke, RTMP rtmp) {
 		// TODO: tidy up here
 		// log.debug("Encode invoke");
-		Output output = new org.red5.io.amf.Output(out);
 		final IServiceCall call = invoke.getCall();
+		final BroadcastCall broadcast = BroadcastCall.getBroadcastCall(call);
+		if (broadcast != null && rtmp.getMode() == RTMP.MODE_SERVER && call.getStatus() == Call.STATUS_PENDING && invoke.getConnectionParams() == null
+				&& invoke.getData() == null) {
+			encodeBroadcastCall(out, invoke, broadcast, rtmp);
+			return;
+		}
+		Output output = new org.red5.io.amf.Output(out);
 		final boolean isPending = (call.getStatus() == Call.STATUS_PENDING);
 		log.debug("Call: {} pending: {}", call, isPending);
 		if (!isPending) {
@@ -776,15 +873,10 @@ public class RTMPProtocolEncoder implements Constants, IEventEncoder {
 			serializer.serialize(output, invoke.getConnectionParams());
 		}
 
-		if (call.getServiceName() == null && "connect".equals(call.getServiceMethodName())) {
-			// Response to initial connect, always use AMF0
-			output = new org.red5.io.amf.Output(out);
+		if (getArgumentEncoding(call, rtmp) == Encoding.AMF3) {
+			output = new org.red5.io.amf3.Output(out);
 		} else {
-			if (rtmp.getEncoding() == Encoding.AMF3) {
-				output = new org.red5.io.amf3.Output(out);
-			} else {
-				output = new org.red5.io.amf.Output(out);
-			}
+			output = new org.red5.io.amf.Output(out);
 		}
 
 		if (!isPending && (invoke instanceof Invoke)) {
@@ -812,6 +904,83 @@ public class RTMPProtocolEncoder implements Constants, IEventEncoder {
 		}
 	}
 
+	/**
+	 * Encode a request which is part of a broadcast. The action and the arguments are taken from
+	 * the broadcast call and serialized only by the first connection needing them in a given
+	 * encoding; only the invoke id is written per connection.
+	 *
+	 * @param out               Byte buffer to fill
+	 * @param invoke            Notification or invocation event
+	 * @param broadcast         Broadcast call holding the shared serialized form
+	 * @param rtmp              RTMP protocol state
+	 */
+	protected void encodeBroadcastCall(IoBuffer out, Notify invoke, BroadcastCall broadcast, RTMP rtmp) {
+		byte[] action = broadcast.getEncodedAction();
+		if (action == null) {
+			IoBuffer buf = IoBuffer.allocate(64);
+			buf.setAutoExpand(true);
+			final String name = (broadcast.getServiceName() == null) ? broadcast.getServiceMethodName() : broadcast.getServiceName() + '.' + broadcast.getServiceMethodName();
+			serializer.serialize(new org.red5.io.amf.Output(buf), name);
+			action = toByteArray(buf);
+			broadcast.setEncodedAction(action);
+		}
+		out.put(action);
+		if (invoke instanceof Invoke) {
+			// same as serializing the invoke id and the null connection parameters with AMF0
+			out.put(AMF.TYPE_NUMBER);
+			out.putDouble(invoke.getInvokeId());
+			out.put(AMF.TYPE_NULL);
+		}
+		final Encoding encoding = getArgumentEncoding(broadcast, rtmp);
+		byte[] args = broadcast.getEncodedArguments(encoding);
+		if (args == null) {
+			log.debug("Serializing broadcast arguments with {}", encoding);
+			IoBuffer buf = IoBuffer.allocate(1024);
+			buf.setAutoExpand(true);
+			Output output = (encoding == Encoding.AMF3) ? new org.red5.io.amf3.Output(buf) : new org.red5.io.amf.Output(buf);
+			final Object[] arguments = broadcast.getArguments();
+			if (arguments != null) {
+				for (Object element : arguments) {
+					serializer.serialize(output, element);
+				}
+			}
+			args = toByteArray(buf);
+			broadcast.setEncodedArguments(encoding, args);
+		}
+		out.put(args);
+	}
+
+	/**
+	 * Returns the encoding of the arguments or result of a call sent to a connection: the
+	 * response to the initial connect always uses AMF0, everything else the encoding the
+	 * connection was connected with.
+	 *
+	 * @param call              Service call
+	 * @param rtmp              RTMP protocol state of the connection
+	 * @return                  Encoding
+	 */
+	private static Encoding getArgumentEncoding(IServiceCall call, RTMP rtmp) {
+		if (call.getServiceName() == null && "connect".equals(call.getServiceMethodName())) {
+			// Response to initial connect, always use AMF0
+			return Encoding.AMF0;
+		}
+		return rtmp.getEncoding();
+	}
+
+	/**
+	 * Copies the written part of a buffer into a byte array and frees the buffer.
+	 *
+	 * @param buf buffer
+	 * @return written bytes
+	 */
+	private static byte[] toByteArray(IoBuffer buf) {
+		buf.flip();
+		byte[] bytes = new byte[buf.limit()];
+		buf.get(bytes);
+		buf.free();
+		return bytes;
+	}
+
 	/** {@inheritDoc} */
 	public IoBuffer encodePing(Ping ping) {
 		int len = 6;
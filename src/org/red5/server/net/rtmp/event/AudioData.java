@@ -30,6 +30,7 @@ import java.io.ObjectOutputStream;
 import org.apache.mina.core.buffer.IoBuffer;
 import org.red5.server.api.stream.IStreamPacket;
 import org.red5.server.stream.IStreamData;
+import org.red5.server.stream.StreamPayload;
 
 public class AudioData extends BaseEvent implements IStreamData<AudioData>, IStreamPacket {
 
@@ -37,6 +38,11 @@ public class AudioData extends BaseEvent implements IStreamData<AudioData>, IStr
 
 	protected IoBuffer data;
 
+	/**
+	 * Reference counted owner of the data
+	 */
+	protected StreamPayload payload;
+
 	/**
 	 * Data type
 	 */
@@ -52,6 +58,16 @@ public class AudioData extends BaseEvent implements IStreamData<AudioData>, IStr
 		setData(data);
 	}
 
+	/**
+	 * Create audio data event sharing a payload; the event takes over the given reference.
+	 * @param payload Audio data
+	 */
+	public AudioData(StreamPayload payload) {
+		super(Type.STREAM_DATA);
+		this.payload = payload;
+		this.data = payload.view();
+	}
+
 	/**
 	 * Create audio data event with given data buffer
 	 * @param data Audio data
@@ -86,20 +102,34 @@ public class AudioData extends BaseEvent implements IStreamData<AudioData>, IStr
 	}
 
 	public void setData(IoBuffer data) {
+		if (payload != null) {
+			payload.release();
+		}
+		payload = data != null ? StreamPayload.wrap(data) : null;
 		this.data = data;
 	}
 
 	public void setData(byte[] data) {
-		this.data = IoBuffer.allocate(data.length);
-		this.data.put(data).flip();
+		setData(IoBuffer.allocate(data.length).put(data).flip());
+	}
+
+	/**
+	 * Getter for the payload owning the data
+	 *
+	 * @return  Payload or null once released
+	 */
+	public StreamPayload getPayload() {
+		return payload;
 	}
 
 	/** {@inheritDoc} */
 	@Override
 	protected void releaseInternal() {
-		if (data != null) {
-			data.free();
+		if (payload != null) {
+			final StreamPayload localPayload = payload;
+			payload = null;
 			data = null;
+			localPayload.release();
 		}
 	}
 
@@ -108,9 +138,10 @@ public class AudioData extends BaseEvent implements IStreamData<AudioData>, IStr
 		super.readExternal(in);
 		byte[] byteBuf = (byte[]) in.readObject();
 		if (byteBuf != null) {
-			data = IoBuffer.allocate(0);
-			data.setAutoExpand(true);
-			SerializeUtils.ByteArrayToByteBuffer(byteBuf, data);
+			IoBuffer buf = IoBuffer.allocate(0);
+			buf.setAutoExpand(true);
+			SerializeUtils.ByteArrayToByteBuffer(byteBuf, buf);
+			setData(buf);
 		}
 	}
 
@@ -64,6 +64,11 @@ public abstract class BaseEvent implements Constants, IRTMPEvent, Externalizable
 	 */
 	protected int timestamp;
 
+	/**
+	 * Nano time the event arrived from its publisher, 0 if unknown
+	 */
+	protected long receivedTime;
+
 	/**
 	 * Event RTMP packet header
 	 */
@@ -160,6 +165,16 @@ public abstract class BaseEvent implements Constants, IRTMPEvent, Externalizable
 		this.timestamp = timestamp;
 	}
 
+	/** {@inheritDoc} */
+	public long getReceivedTime() {
+		return receivedTime;
+	}
+
+	/** {@inheritDoc} */
+	public void setReceivedTime(long receivedTime) {
+		this.receivedTime = receivedTime;
+	}
+
 	/** {@inheritDoc} */
 	@SuppressWarnings("all")
 	public void retain() {
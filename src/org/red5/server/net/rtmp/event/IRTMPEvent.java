@@ -80,6 +80,20 @@ public interface IRTMPEvent extends IEvent {
      * @param sourceType 
      */
     public void setSourceType(byte sourceType);
+
+	/**
+     * Getter for the time the event was received from its publisher
+     *
+     * @return  Nano time of arrival or 0 if unknown
+     */
+    public long getReceivedTime();
+
+	/**
+     * Setter for the time the event was received from its publisher
+     *
+     * @param receivedTime  Nano time of arrival
+     */
+    public void setReceivedTime(long receivedTime);
         
     /**
      * Retain event
@@ -31,6 +31,7 @@ import org.apache.mina.core.buffer.IoBuffer;
 import org.red5.io.IoConstants;
 import org.red5.server.api.stream.IStreamPacket;
 import org.red5.server.stream.IStreamData;
+import org.red5.server.stream.StreamPayload;
 
 /**
  * Video data event
@@ -51,6 +52,11 @@ public class VideoData extends BaseEvent implements IoConstants, IStreamData<Vid
 	 */
 	protected IoBuffer data;
 
+	/**
+	 * Reference counted owner of the data
+	 */
+	protected StreamPayload payload;
+
 	/**
 	 * Data type
 	 */
@@ -74,6 +80,16 @@ public class VideoData extends BaseEvent implements IoConstants, IStreamData<Vid
 		super(Type.STREAM_DATA);
 		setData(data);
 	}
+
+	/**
+	 * Create video data event sharing a payload; the event takes over the given reference.
+	 * @param payload Video data
+	 */
+	public VideoData(StreamPayload payload) {
+		super(Type.STREAM_DATA);
+		this.payload = payload;
+		readFrameType(payload.view());
+	}
 	
 	/**
 	 * Create video data event with given data buffer
@@ -109,6 +125,14 @@ public class VideoData extends BaseEvent implements IoConstants, IStreamData<Vid
 	}
 
 	public void setData(IoBuffer data) {
+		if (payload != null) {
+			payload.release();
+		}
+		payload = data != null ? StreamPayload.wrap(data) : null;
+		readFrameType(data);
+	}
+
+	private void readFrameType(IoBuffer data) {
 		this.data = data;
 		if (data != null && data.limit() > 0) {
 			data.mark();
@@ -128,8 +152,16 @@ public class VideoData extends BaseEvent implements IoConstants, IStreamData<Vid
 	}
 
 	public void setData(byte[] data) {
-		this.data = IoBuffer.allocate(data.length);
-		this.data.put(data).flip();
+		setData(IoBuffer.allocate(data.length).put(data).flip());
+	}
+
+	/**
+	 * Getter for the payload owning the data
+	 *
+	 * @return  Payload or null once released
+	 */
+	public StreamPayload getPayload() {
+		return payload;
 	}
 
 	/**
@@ -144,13 +176,13 @@ public class VideoData extends BaseEvent implements IoConstants, IStreamData<Vid
 	/** {@inheritDoc} */
 	@Override
 	protected void releaseInternal() {
-		if (data != null) {
-			final IoBuffer localData = data;
+		if (payload != null) {
+			final StreamPayload localPayload = payload;
 			// null out the data first so we don't accidentally
 			// return a valid reference first
+			payload = null;
 			data = null;
-			localData.clear();
-			localData.free();
+			localPayload.release();
 		}
 	}
 
@@ -160,9 +192,13 @@ public class VideoData extends BaseEvent implements IoConstants, IStreamData<Vid
 		frameType = (FrameType) in.readObject();
 		byte[] byteBuf = (byte[]) in.readObject();
 		if (byteBuf != null) {
+			if (payload != null) {
+				payload.release();
+			}
 			data = IoBuffer.allocate(byteBuf.length);
 			data.setAutoExpand(true);
 			SerializeUtils.ByteArrayToByteBuffer(byteBuf, data);
+			payload = StreamPayload.wrap(data);
 		}
 	}
 
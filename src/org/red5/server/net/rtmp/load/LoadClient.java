@@ -0,0 +1,137 @@
+package org.red5.server.net.rtmp.load;
+
+/*
+ * RED5 Open Source Flash Server - http://code.google.com/p/red5/
+ *
+ * Copyright (c) 2006-2011 by respective authors (see below). All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation; either version 2.1 of the License, or (at your option) any later
+ * version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along
+ * with this library; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+
+import org.red5.io.utils.ObjectMap;
+import org.red5.server.api.service.IPendingServiceCall;
+import org.red5.server.api.service.IPendingServiceCallback;
+import org.red5.server.net.rtmp.ClientExceptionHandler;
+import org.red5.server.net.rtmp.RTMPClient;
+import org.red5.server.net.rtmp.RTMPConnection;
+import org.red5.server.net.rtmp.status.StatusCodes;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Simulated client of a load test: connects, creates a stream and hands it to the subclass.
+ * 
+ * @author The Red5 Project (red5@osflash.org)
+ */
+abstract class LoadClient implements IPendingServiceCallback, ClientExceptionHandler {
+
+	protected static final Logger log = LoggerFactory.getLogger(LoadClient.class);
+
+	protected final LoadGenerator generator;
+
+	protected final RTMPClient client;
+
+	protected final String streamName;
+
+	protected volatile boolean connected;
+
+	protected volatile boolean failed;
+
+	private long connectStart;
+
+	LoadClient(LoadGenerator generator, String streamName, RTMPClient client) {
+		this.generator = generator;
+		this.streamName = streamName;
+		this.client = client;
+		client.setExceptionHandler(this);
+	}
+
+	/**
+	 * Opens the connection; blocks until the socket is connected or the attempt timed out.
+	 * 
+	 * @param application application to connect to
+	 */
+	void connect(String application) {
+		String host = generator.getHost();
+		int port = generator.getPort();
+		connectStart = System.nanoTime();
+		try {
+			client.connect(host, port, client.makeDefaultConnectionParams(host, port, application), this);
+		} catch (Exception e) {
+			handleException(e);
+		}
+	}
+
+	void disconnect() {
+		if (connected) {
+			connected = false;
+			try {
+				client.disconnect();
+			} catch (Exception e) {
+				log.debug("Exception closing {}", streamName, e);
+			}
+		}
+	}
+
+	/** {@inheritDoc} */
+	public void resultReceived(IPendingServiceCall call) {
+		String method = call.getServiceMethodName();
+		if ("connect".equals(method)) {
+			Object result = call.getResult();
+			if (result instanceof ObjectMap<?, ?> && StatusCodes.NC_CONNECT_SUCCESS.equals(((ObjectMap<?, ?>) result).get("code"))) {
+				generator.getConnectLatency().recordSince(connectStart);
+				connected = true;
+				client.createStream(this);
+			} else {
+				log.debug("Connect of {} rejected: {}", streamName, result);
+				failed = true;
+			}
+		} else if ("createStream".equals(method)) {
+			Object result = call.getResult();
+			if (result instanceof Integer) {
+				streamCreated((Integer) result);
+			} else {
+				failed = true;
+				disconnect();
+			}
+		}
+	}
+
+	/** {@inheritDoc} */
+	public void handleException(Throwable throwable) {
+		log.debug("Exception on {}", streamName, throwable);
+		failed = true;
+	}
+
+	/**
+	 * Called once the stream of this client has been created.
+	 * 
+	 * @param streamId stream id
+	 */
+	protected abstract void streamCreated(int streamId);
+
+	boolean isConnected() {
+		return connected;
+	}
+
+	boolean isFailed() {
+		return failed;
+	}
+
+	long getBytesReceived() {
+		RTMPConnection conn = client.getConnection();
+		return conn != null ? conn.getReadBytes() : 0;
+	}
+
+}
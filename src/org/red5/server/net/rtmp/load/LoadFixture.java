@@ -0,0 +1,116 @@
+package org.red5.server.net.rtmp.load;
+
+/*
+ * RED5 Open Source Flash Server - http://code.google.com/p/red5/
+ *
+ * Copyright (c) 2006-2011 by respective authors (see below). All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation; either version 2.1 of the License, or (at your option) any later
+ * version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along
+ * with this library; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.red5.io.ITag;
+import org.red5.io.flv.impl.FLVReader;
+import org.red5.server.net.rtmp.event.AudioData;
+import org.red5.server.net.rtmp.event.IRTMPEvent;
+import org.red5.server.net.rtmp.event.VideoData;
+import org.red5.server.net.rtmp.message.Constants;
+import org.red5.server.stream.StreamPayload;
+
+/**
+ * Audio and video tags of an FLV file, read once and shared by all publishers of a load test.
+ * 
+ * @author The Red5 Project (red5@osflash.org)
+ */
+public class LoadFixture {
+
+	private final List<ITag> tags = new ArrayList<ITag>();
+
+	private final List<StreamPayload> payloads = new ArrayList<StreamPayload>();
+
+	private final int duration;
+
+	public LoadFixture(File file) throws IOException {
+		FLVReader reader = new FLVReader(file);
+		try {
+			while (reader.hasMoreTags()) {
+				ITag tag = reader.readTag();
+				if (tag != null && tag.getBody() != null && (tag.getDataType() == Constants.TYPE_AUDIO_DATA || tag.getDataType() == Constants.TYPE_VIDEO_DATA)) {
+					tags.add(tag);
+					payloads.add(StreamPayload.wrap(tag.getBody()));
+				}
+			}
+		} finally {
+			reader.close();
+		}
+		if (tags.isEmpty()) {
+			throw new IOException("No audio or video tags in " + file);
+		}
+		// leave one frame interval between the end of the file and its repetition
+		int last = tags.get(tags.size() - 1).getTimestamp();
+		duration = last + Math.max(1, last / tags.size());
+	}
+
+	/**
+	 * Returns the number of audio and video tags.
+	 * 
+	 * @return tag count
+	 */
+	public int size() {
+		return tags.size();
+	}
+
+	/**
+	 * Returns the length of one pass through the file.
+	 * 
+	 * @return duration in milliseconds
+	 */
+	public int getDuration() {
+		return duration;
+	}
+
+	/**
+	 * Returns the timestamp of a tag.
+	 * 
+	 * @param index tag index
+	 * @return timestamp in milliseconds
+	 */
+	public int getTimestamp(int index) {
+		return tags.get(index).getTimestamp();
+	}
+
+	/**
+	 * Creates the event for a tag; the body is shared between all events of the tag.
+	 * 
+	 * @param index tag index
+	 * @param timestamp timestamp of the event
+	 * @return audio or video event
+	 */
+	public IRTMPEvent createEvent(int index, int timestamp) {
+		StreamPayload payload = payloads.get(index).retain();
+		IRTMPEvent event;
+		if (tags.get(index).getDataType() == Constants.TYPE_AUDIO_DATA) {
+			event = new AudioData(payload);
+		} else {
+			event = new VideoData(payload);
+		}
+		event.setTimestamp(timestamp);
+		return event;
+	}
+
+}
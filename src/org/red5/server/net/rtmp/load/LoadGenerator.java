@@ -0,0 +1,294 @@
+package org.red5.server.net.rtmp.load;
+
+/*
+ * RED5 Open Source Flash Server - http://code.google.com/p/red5/
+ *
+ * Copyright (c) 2006-2011 by respective authors (see below). All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation; either version 2.1 of the License, or (at your option) any later
+ * version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along
+ * with this library; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+import javax.management.MBeanServerConnection;
+import javax.management.remote.JMXConnector;
+import javax.management.remote.JMXConnectorFactory;
+import javax.management.remote.JMXServiceURL;
+
+import org.red5.server.metrics.Histogram;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.BeanWrapperImpl;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+/**
+ * Headless load test for a Red5 server. Connects publishers which push an FLV fixture in a loop
+ * at its recorded rate, or once with a duration of 0, and subscribers which play those live streams or a file from the server,
+ * ramping the connections up one by one. The report covers connect latency, throughput, dropped
+ * live frames and the cpu and garbage collection figures of the server JVM.
+ * <br />
+ * Properties are passed as name=value arguments, for example:
+ * <pre>
+ * java org.red5.server.net.rtmp.load.LoadGenerator fixture=streams/test.flv publishers=10 liveSubscribers=500 duration=120
+ * </pre>
+ * Without a jmxUrl the figures of the local JVM are reported, which are those of the server when
+ * it is embedded with the generator.
+ * 
+ * @author The Red5 Project (red5@osflash.org)
+ */
+public class LoadGenerator {
+
+	private static final Logger log = LoggerFactory.getLogger(LoadGenerator.class);
+
+	private String host = "localhost";
+
+	private int port = 1935;
+
+	private String application = "live";
+
+	private String vodApplication = "vod";
+
+	private String vodStreamName = "red5";
+
+	private String fixture;
+
+	private int publishers = 1;
+
+	private int liveSubscribers = 10;
+
+	private int vodSubscribers;
+
+	/** Pause between two connects in milliseconds */
+	private int rampInterval = 50;
+
+	/** Time to run once all clients are connected in seconds, 0 to publish the fixture once */
+	private int duration = 60;
+
+	/** Time for the subscribers to receive the last frames in milliseconds */
+	private int drainTime = 2000;
+
+	private String jmxUrl;
+
+	private final Histogram connectLatency = new Histogram("connect");
+
+	private ScheduledExecutorService executor;
+
+	/**
+	 * Runs the load test and disconnects all clients afterwards.
+	 * 
+	 * @return report
+	 * @throws IOException if the fixture can not be read or the server JVM is not reachable
+	 * @throws InterruptedException if interrupted while the test runs
+	 */
+	public LoadReport run() throws IOException, InterruptedException {
+		LoadFixture frames = new LoadFixture(new File(fixture));
+		JMXConnector connector = null;
+		MBeanServerConnection server;
+		if (jmxUrl != null) {
+			connector = JMXConnectorFactory.connect(new JMXServiceURL(jmxUrl));
+			server = connector.getMBeanServerConnection();
+		} else {
+			server = ManagementFactory.getPlatformMBeanServer();
+		}
+		executor = Executors.newScheduledThreadPool(Runtime.getRuntime().availableProcessors(), new CustomizableThreadFactory("LoadGenerator-"));
+		connectLatency.reset();
+		List<LoadPublisher> publisherList = new ArrayList<LoadPublisher>(publishers);
+		List<LoadSubscriber> subscriberList = new ArrayList<LoadSubscriber>(liveSubscribers + vodSubscribers);
+		ServerSample start = ServerSample.take(server);
+		long startTime = System.currentTimeMillis();
+		try {
+			for (int i = 0; i < publishers; i++) {
+				LoadPublisher publisher = new LoadPublisher(this, "load" + i, frames, duration > 0);
+				publisherList.add(publisher);
+				publisher.connect(application);
+				Thread.sleep(rampInterval);
+			}
+			awaitPublishing(publisherList);
+			for (int i = 0; i < liveSubscribers + vodSubscribers; i++) {
+				LoadSubscriber subscriber;
+				if (i < liveSubscribers && !publisherList.isEmpty()) {
+					LoadPublisher publisher = publisherList.get(i % publisherList.size());
+					subscriber = new LoadSubscriber(this, publisher.streamName, publisher);
+					subscriber.connect(application);
+				} else {
+					subscriber = new LoadSubscriber(this, vodStreamName, null);
+					subscriber.connect(vodApplication);
+				}
+				subscriberList.add(subscriber);
+				Thread.sleep(rampInterval);
+			}
+			awaitConnected(subscriberList);
+			if (duration > 0) {
+				log.info("Ramp up complete, running for {} seconds", duration);
+				Thread.sleep(duration * 1000L);
+			} else {
+				log.info("Ramp up complete, publishing the fixture once");
+				awaitStopped(publisherList, frames.getDuration());
+			}
+			for (LoadPublisher publisher : publisherList) {
+				publisher.stop();
+			}
+			Thread.sleep(drainTime);
+			LoadReport report = new LoadReport(publisherList, subscriberList, connectLatency.getSnapshot(), System.currentTimeMillis() - startTime);
+			report.setServer(start, ServerSample.take(server));
+			return report;
+		} finally {
+			for (LoadSubscriber subscriber : subscriberList) {
+				subscriber.disconnect();
+			}
+			for (LoadPublisher publisher : publisherList) {
+				publisher.disconnect();
+			}
+			executor.shutdownNow();
+			if (connector != null) {
+				connector.close();
+			}
+		}
+	}
+
+	/**
+	 * Waits up to ten seconds for the publishers to start so subscribers find their streams.
+	 */
+	private void awaitPublishing(List<LoadPublisher> publisherList) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + 10000;
+		for (LoadPublisher publisher : publisherList) {
+			while (!publisher.isPublishing() && !publisher.isFailed() && System.currentTimeMillis() < deadline) {
+				Thread.sleep(10);
+			}
+		}
+	}
+
+	/**
+	 * Waits up to ten seconds for the subscribers to connect or fail, a failed connect is reported
+	 * asynchronously.
+	 */
+	private void awaitConnected(List<LoadSubscriber> subscriberList) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + 10000;
+		for (LoadSubscriber subscriber : subscriberList) {
+			while (!subscriber.isConnected() && !subscriber.isFailed() && System.currentTimeMillis() < deadline) {
+				Thread.sleep(10);
+			}
+		}
+	}
+
+	/**
+	 * Waits for publishers sending the fixture once to finish, at most ten seconds longer than the
+	 * fixture lasts.
+	 */
+	private void awaitStopped(List<LoadPublisher> publisherList, int fixtureDuration) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + fixtureDuration + 10000;
+		for (LoadPublisher publisher : publisherList) {
+			while (publisher.isPublishing() && !publisher.isStopped() && !publisher.isFailed() && System.currentTimeMillis() < deadline) {
+				Thread.sleep(10);
+			}
+		}
+	}
+
+	ScheduledExecutorService getExecutor() {
+		return executor;
+	}
+
+	void setExecutor(ScheduledExecutorService executor) {
+		this.executor = executor;
+	}
+
+	Histogram getConnectLatency() {
+		return connectLatency;
+	}
+
+	public String getHost() {
+		return host;
+	}
+
+	public void setHost(String host) {
+		this.host = host;
+	}
+
+	public int getPort() {
+		return port;
+	}
+
+	public void setPort(int port) {
+		this.port = port;
+	}
+
+	public void setApplication(String application) {
+		this.application = application;
+	}
+
+	public void setVodApplication(String vodApplication) {
+		this.vodApplication = vodApplication;
+	}
+
+	public void setVodStreamName(String vodStreamName) {
+		this.vodStreamName = vodStreamName;
+	}
+
+	public void setFixture(String fixture) {
+		this.fixture = fixture;
+	}
+
+	public void setPublishers(int publishers) {
+		this.publishers = publishers;
+	}
+
+	public void setLiveSubscribers(int liveSubscribers) {
+		this.liveSubscribers = liveSubscribers;
+	}
+
+	public void setVodSubscribers(int vodSubscribers) {
+		this.vodSubscribers = vodSubscribers;
+	}
+
+	public void setRampInterval(int rampInterval) {
+		this.rampInterval = rampInterval;
+	}
+
+	public void setDuration(int duration) {
+		if (duration < 0) {
+			throw new IllegalArgumentException("Duration must not be negative: " + duration);
+		}
+		this.duration = duration;
+	}
+
+	public void setDrainTime(int drainTime) {
+		this.drainTime = drainTime;
+	}
+
+	public void setJmxUrl(String jmxUrl) {
+		this.jmxUrl = jmxUrl;
+	}
+
+	public static void main(String[] args) throws Exception {
+		LoadGenerator generator = new LoadGenerator();
+		BeanWrapperImpl wrapper = new BeanWrapperImpl(generator);
+		for (String arg : args) {
+			int eq = arg.indexOf('=');
+			if (eq <= 0) {
+				System.err.println("Arguments are name=value pairs, e.g. fixture=test.flv publishers=2 liveSubscribers=100");
+				System.exit(1);
+			}
+			wrapper.setPropertyValue(arg.substring(0, eq), arg.substring(eq + 1));
+		}
+		System.out.print(generator.run());
+		System.exit(0);
+	}
+
+}
@@ -0,0 +1,139 @@
+package org.red5.server.net.rtmp.load;
+
+/*
+ * RED5 Open Source Flash Server - http://code.google.com/p/red5/
+ *
+ * Copyright (c) 2006-2011 by respective authors (see below). All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation; either version 2.1 of the License, or (at your option) any later
+ * version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along
+ * with this library; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.red5.io.utils.ObjectMap;
+import org.red5.server.net.rtmp.INetStreamEventHandler;
+import org.red5.server.net.rtmp.RTMPClient;
+import org.red5.server.net.rtmp.event.Notify;
+import org.red5.server.net.rtmp.status.StatusCodes;
+import org.red5.server.stream.message.RTMPMessage;
+
+/**
+ * Publishes the fixture at its recorded rate, in a loop or once.
+ * 
+ * @author The Red5 Project (red5@osflash.org)
+ */
+class LoadPublisher extends LoadClient implements INetStreamEventHandler, Runnable {
+
+	private final LoadFixture fixture;
+
+	/**
+	 * Whether to repeat the fixture until stopped instead of publishing it once
+	 */
+	private final boolean loop;
+
+	private final AtomicLong framesSent = new AtomicLong();
+
+	private volatile int streamId;
+
+	private volatile boolean publishing;
+
+	private volatile boolean stopped;
+
+	private long startTime;
+
+	private int index;
+
+	private int offset;
+
+	LoadPublisher(LoadGenerator generator, String streamName, LoadFixture fixture, boolean loop) {
+		this(generator, streamName, fixture, loop, new RTMPClient());
+	}
+
+	LoadPublisher(LoadGenerator generator, String streamName, LoadFixture fixture, boolean loop, RTMPClient client) {
+		super(generator, streamName, client);
+		this.fixture = fixture;
+		this.loop = loop;
+	}
+
+	@Override
+	protected void streamCreated(int streamId) {
+		this.streamId = streamId;
+		client.publish(streamId, streamName, "live", this);
+	}
+
+	/** {@inheritDoc} */
+	public void onStreamEvent(Notify notify) {
+		ObjectMap<?, ?> map = (ObjectMap<?, ?>) notify.getCall().getArguments()[0];
+		String code = (String) map.get("code");
+		log.debug("Publisher {} status: {}", streamName, code);
+		if (StatusCodes.NS_PUBLISH_START.equals(code) && !publishing) {
+			publishing = true;
+			startTime = System.currentTimeMillis();
+			generator.getExecutor().execute(this);
+		} else if (StatusCodes.NS_PUBLISH_BADNAME.equals(code)) {
+			failed = true;
+		}
+	}
+
+	/**
+	 * Sends all frames that are due and schedules itself for the next one. Without looping the
+	 * publisher stops after the last frame of the fixture.
+	 */
+	public void run() {
+		if (stopped || !connected) {
+			return;
+		}
+		long elapsed = System.currentTimeMillis() - startTime;
+		try {
+			while (offset + fixture.getTimestamp(index) <= elapsed) {
+				client.publishStreamData(streamId, RTMPMessage.build(fixture.createEvent(index, offset + fixture.getTimestamp(index))));
+				framesSent.incrementAndGet();
+				if (++index == fixture.size()) {
+					if (!loop) {
+						stopped = true;
+						return;
+					}
+					index = 0;
+					offset += fixture.getDuration();
+				}
+			}
+		} catch (Exception e) {
+			handleException(e);
+			return;
+		}
+		long delay = offset + fixture.getTimestamp(index) - elapsed;
+		generator.getExecutor().schedule(this, delay, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Stops sending frames; the connection stays open so subscribers can drain.
+	 */
+	void stop() {
+		stopped = true;
+	}
+
+	boolean isStopped() {
+		return stopped;
+	}
+
+	boolean isPublishing() {
+		return publishing;
+	}
+
+	long getFramesSent() {
+		return framesSent.get();
+	}
+
+}
@@ -0,0 +1,159 @@
+package org.red5.server.net.rtmp.load;
+
+/*
+ * RED5 Open Source Flash Server - http://code.google.com/p/red5/
+ *
+ * Copyright (c) 2006-2011 by respective authors (see below). All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation; either version 2.1 of the License, or (at your option) any later
+ * version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along
+ * with this library; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+
+import java.util.List;
+
+import org.red5.server.metrics.HistogramSnapshot;
+
+/**
+ * Results of a load test run.
+ * 
+ * @author The Red5 Project (red5@osflash.org)
+ */
+public class LoadReport {
+
+	private int clients;
+
+	private int connected;
+
+	private int failed;
+
+	private HistogramSnapshot connectLatency;
+
+	private long framesSent;
+
+	private long framesReceived;
+
+	private long framesDropped;
+
+	private long bytesReceived;
+
+	private long elapsed;
+
+	private double serverCpu = -1;
+
+	private long serverGcCount;
+
+	private long serverGcTime;
+
+	private long serverHeapUsed;
+
+	LoadReport(List<LoadPublisher> publishers, List<LoadSubscriber> subscribers, HistogramSnapshot connectLatency, long elapsed) {
+		this.connectLatency = connectLatency;
+		this.elapsed = elapsed;
+		for (LoadPublisher publisher : publishers) {
+			count(publisher);
+			framesSent += publisher.getFramesSent();
+		}
+		for (LoadSubscriber subscriber : subscribers) {
+			count(subscriber);
+			framesReceived += subscriber.getFramesReceived();
+			framesDropped += subscriber.getFramesDropped();
+			bytesReceived += subscriber.getBytesReceived();
+		}
+	}
+
+	private void count(LoadClient client) {
+		clients++;
+		if (client.isFailed()) {
+			failed++;
+		} else if (client.isConnected()) {
+			connected++;
+		}
+	}
+
+	void setServer(ServerSample start, ServerSample end) {
+		serverCpu = end.getCpuUsage(start);
+		serverGcCount = end.getGcCount() - start.getGcCount();
+		serverGcTime = end.getGcTime() - start.getGcTime();
+		serverHeapUsed = end.getHeapUsed();
+	}
+
+	public int getClients() {
+		return clients;
+	}
+
+	public int getConnected() {
+		return connected;
+	}
+
+	public int getFailed() {
+		return failed;
+	}
+
+	public HistogramSnapshot getConnectLatency() {
+		return connectLatency;
+	}
+
+	public long getFramesSent() {
+		return framesSent;
+	}
+
+	public long getFramesReceived() {
+		return framesReceived;
+	}
+
+	public long getFramesDropped() {
+		return framesDropped;
+	}
+
+	public long getBytesReceived() {
+		return bytesReceived;
+	}
+
+	/**
+	 * Returns the rate at which the subscribers received data.
+	 * 
+	 * @return throughput in kbit/s
+	 */
+	public double getThroughput() {
+		return elapsed > 0 ? bytesReceived * 8.0 / elapsed : 0;
+	}
+
+	public double getServerCpu() {
+		return serverCpu;
+	}
+
+	public long getServerGcCount() {
+		return serverGcCount;
+	}
+
+	public long getServerGcTime() {
+		return serverGcTime;
+	}
+
+	public long getServerHeapUsed() {
+		return serverHeapUsed;
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder();
+		sb.append(String.format("clients: %d, connected: %d, failed: %d%n", clients, connected, failed));
+		sb.append(String.format("connect latency (ms): mean %.1f, median %.1f, 99th %.1f, max %.1f%n", connectLatency.getMean() / 1000, connectLatency.getMedian() / 1000,
+				connectLatency.getPercentile99() / 1000, connectLatency.getMax() / 1000));
+		sb.append(String.format("frames sent: %d, received: %d, dropped: %d%n", framesSent, framesReceived, framesDropped));
+		sb.append(String.format("received: %d bytes in %d ms, %.1f kbit/s%n", bytesReceived, elapsed, getThroughput()));
+		sb.append(String.format("server cpu: %.1f%%, gc: %d collections in %d ms, heap used: %d KB%n", serverCpu, serverGcCount, serverGcTime, serverHeapUsed / 1024));
+		return sb.toString();
+	}
+
+}
@@ -0,0 +1,98 @@
+package org.red5.server.net.rtmp.load;
+
+/*
+ * RED5 Open Source Flash Server - http://code.google.com/p/red5/
+ *
+ * Copyright (c) 2006-2011 by respective authors (see below). All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation; either version 2.1 of the License, or (at your option) any later
+ * version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along
+ * with this library; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.red5.server.api.event.IEvent;
+import org.red5.server.api.event.IEventDispatcher;
+import org.red5.server.net.rtmp.RTMPClient;
+import org.red5.server.net.rtmp.event.AudioData;
+import org.red5.server.net.rtmp.event.VideoData;
+
+/**
+ * Plays a live stream of one of the publishers or a file of the server.
+ * 
+ * @author The Red5 Project (red5@osflash.org)
+ */
+class LoadSubscriber extends LoadClient implements IEventDispatcher {
+
+	private final LoadPublisher publisher;
+
+	private final AtomicLong framesReceived = new AtomicLong();
+
+	/**
+	 * Frames sent by the publisher before the first one arrived here
+	 */
+	private volatile long baseline = -1;
+
+	/**
+	 * Creates a subscriber.
+	 * 
+	 * @param generator load generator
+	 * @param streamName stream to play
+	 * @param publisher publisher of the live stream or null to play a file
+	 */
+	LoadSubscriber(LoadGenerator generator, String streamName, LoadPublisher publisher) {
+		this(generator, streamName, publisher, new RTMPClient());
+	}
+
+	LoadSubscriber(LoadGenerator generator, String streamName, LoadPublisher publisher, RTMPClient client) {
+		super(generator, streamName, client);
+		this.publisher = publisher;
+		client.setStreamEventDispatcher(this);
+	}
+
+	@Override
+	protected void streamCreated(int streamId) {
+		client.play(streamId, streamName, publisher != null ? -1 : 0, -1);
+	}
+
+	/** {@inheritDoc} */
+	public void dispatchEvent(IEvent event) {
+		if (event instanceof AudioData || event instanceof VideoData) {
+			if (framesReceived.getAndIncrement() == 0 && publisher != null) {
+				baseline = publisher.getFramesSent() - 1;
+			}
+		}
+	}
+
+	boolean isLive() {
+		return publisher != null;
+	}
+
+	long getFramesReceived() {
+		return framesReceived.get();
+	}
+
+	/**
+	 * Returns the frames the publisher sent since this subscriber received its first one
+	 * that did not arrive here.
+	 * 
+	 * @return dropped frames, 0 for files
+	 */
+	long getFramesDropped() {
+		if (publisher == null || baseline < 0) {
+			return 0;
+		}
+		return Math.max(0, publisher.getFramesSent() - baseline - framesReceived.get());
+	}
+
+}
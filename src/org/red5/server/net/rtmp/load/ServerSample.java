@@ -0,0 +1,106 @@
+package org.red5.server.net.rtmp.load;
+
+/*
+ * RED5 Open Source Flash Server - http://code.google.com/p/red5/
+ *
+ * Copyright (c) 2006-2011 by respective authors (see below). All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation; either version 2.1 of the License, or (at your option) any later
+ * version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along
+ * with this library; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+
+import java.lang.management.ManagementFactory;
+
+import javax.management.MBeanServerConnection;
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * CPU, garbage collection and heap figures of the server JVM at one point in time, read through
+ * its platform MBeans.
+ * 
+ * @author The Red5 Project (red5@osflash.org)
+ */
+public class ServerSample {
+
+	private static final Logger log = LoggerFactory.getLogger(ServerSample.class);
+
+	private final long time = System.nanoTime();
+
+	private long cpuTime = -1;
+
+	private int processors = 1;
+
+	private long gcCount;
+
+	private long gcTime;
+
+	private long heapUsed;
+
+	/**
+	 * Reads the figures, missing attributes are left at their defaults.
+	 * 
+	 * @param server server JVM, the local one when the server is embedded
+	 * @return sample
+	 */
+	public static ServerSample take(MBeanServerConnection server) {
+		ServerSample sample = new ServerSample();
+		try {
+			ObjectName os = new ObjectName(ManagementFactory.OPERATING_SYSTEM_MXBEAN_NAME);
+			sample.processors = ((Number) server.getAttribute(os, "AvailableProcessors")).intValue();
+			sample.cpuTime = ((Number) server.getAttribute(os, "ProcessCpuTime")).longValue();
+		} catch (Exception e) {
+			log.debug("Process cpu time not available", e);
+		}
+		try {
+			for (ObjectName gc : server.queryNames(new ObjectName(ManagementFactory.GARBAGE_COLLECTOR_MXBEAN_DOMAIN_TYPE + ",*"), null)) {
+				sample.gcCount += ((Number) server.getAttribute(gc, "CollectionCount")).longValue();
+				sample.gcTime += ((Number) server.getAttribute(gc, "CollectionTime")).longValue();
+			}
+			CompositeData heap = (CompositeData) server.getAttribute(new ObjectName(ManagementFactory.MEMORY_MXBEAN_NAME), "HeapMemoryUsage");
+			sample.heapUsed = ((Number) heap.get("used")).longValue();
+		} catch (Exception e) {
+			log.debug("Memory figures not available", e);
+		}
+		return sample;
+	}
+
+	/**
+	 * Returns the share of all processors the server used since an earlier sample.
+	 * 
+	 * @param start earlier sample
+	 * @return cpu usage in percent or -1 if unknown
+	 */
+	public double getCpuUsage(ServerSample start) {
+		if (cpuTime < 0 || start.cpuTime < 0 || time == start.time) {
+			return -1;
+		}
+		return (cpuTime - start.cpuTime) * 100.0 / ((time - start.time) * (double) processors);
+	}
+
+	public long getGcCount() {
+		return gcCount;
+	}
+
+	public long getGcTime() {
+		return gcTime;
+	}
+
+	public long getHeapUsed() {
+		return heapUsed;
+	}
+
+}
@@ -22,6 +22,7 @@ package org.red5.server.net.rtmpt;
 import org.apache.mina.core.buffer.IoBuffer;
 import org.apache.mina.core.session.IoSession;
 import org.red5.server.net.protocol.ProtocolState;
+import org.red5.server.net.rtmp.ConnectTrace;
 import org.red5.server.net.rtmp.InboundHandshake;
 import org.red5.server.net.rtmp.RTMPConnection;
 import org.red5.server.net.rtmp.RTMPHandler;
@@ -114,6 +115,7 @@ public class RTMPTHandler extends RTMPHandler {
 		RTMPHandshake shake = new InboundHandshake();
 		shake.setHandshakeType(RTMPConnection.RTMP_NON_ENCRYPTED);
 		conn.rawWrite(shake.doHandshake(in));
+		conn.getConnectTrace().mark(ConnectTrace.HANDSHAKE);
 	}
 
 	/** {@inheritDoc} */
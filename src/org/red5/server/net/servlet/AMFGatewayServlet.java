@@ -20,6 +20,20 @@ package org.red5.server.net.servlet;
  */
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.servlet.ServletContext;
 import javax.servlet.ServletException;
@@ -30,6 +44,7 @@ import javax.servlet.http.HttpServletResponse;
 
 import org.apache.mina.core.buffer.IoBuffer;
 import org.red5.logging.Red5LoggerFactory;
+import org.red5.server.api.IConnection;
 import org.red5.server.api.IContext;
 import org.red5.server.api.IGlobalScope;
 import org.red5.server.api.IScope;
@@ -39,14 +54,30 @@ import org.red5.server.api.remoting.IRemotingConnection;
 import org.red5.server.api.service.IServiceInvoker;
 import org.red5.server.net.remoting.RemotingConnection;
 import org.red5.server.net.remoting.codec.RemotingCodecFactory;
+import org.red5.server.net.remoting.codec.RemotingProtocolEncoder;
 import org.red5.server.net.remoting.message.RemotingCall;
 import org.red5.server.net.remoting.message.RemotingPacket;
+import org.red5.server.service.Call;
 import org.slf4j.Logger;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
 import org.springframework.web.context.WebApplicationContext;
 import org.springframework.web.context.support.WebApplicationContextUtils;
 
 /**
  * Servlet that handles remoting requests.
+ * <br />
+ * Init parameters:
+ * <ul>
+ * <li>parallelCallThreads - threads executing the calls of batched requests, calls are executed one
+ * after another on the servlet thread if not set</li>
+ * <li>parallelServices - comma separated services, or service.method names, whose calls do not
+ * depend on other calls of a batch and run in parallel. The other calls of a batch run in order
+ * and stop at the first failed call, as without threads.</li>
+ * <li>callTimeout - maximum time in milliseconds to wait for the calls of a batch run in parallel</li>
+ * </ul>
+ * A batch run one call after another is answered with status 417 if a call failed. A batch with
+ * parallel calls streams its results as they complete, so it is always answered with status 200
+ * and failed calls are only reported in their result bodies.
  * 
  * @author The Red5 Project (red5@osflash.org)
  * @author Luke Hubbard (luke@codegent.com)
@@ -86,9 +117,58 @@ public class AMFGatewayServlet extends HttpServlet {
 	 */
 	private static final String CONNECTION = "red5.remotingConnection";
 
+	/**
+	 * Executor for the calls of batched requests, null when calls are executed one after
+	 * another on the servlet thread
+	 */
+	protected transient ThreadPoolExecutor executor;
+
+	/**
+	 * Maximum time in milliseconds to wait for all calls of a batch executed in parallel
+	 */
+	protected long callTimeout = 30000;
+
+	/**
+	 * Services and service.method names whose calls are independent of the other calls of a batch
+	 */
+	protected Set<String> parallelServices = Collections.emptySet();
+
 	/** {@inheritDoc} */
 	@Override
 	public void init() throws ServletException {
+		// calls of a batch are executed in parallel when a thread count is configured
+		String threads = getInitParameter("parallelCallThreads");
+		if (threads != null && Integer.valueOf(threads) > 0) {
+			int poolSize = Integer.valueOf(threads);
+			// when the queue is full the calls run on the servlet thread
+			executor = new ThreadPoolExecutor(poolSize, poolSize, 60, TimeUnit.SECONDS, new ArrayBlockingQueue<Runnable>(poolSize * 16), new CustomizableThreadFactory(
+					"AMFGatewayExecutor-"), new ThreadPoolExecutor.CallerRunsPolicy());
+			executor.allowCoreThreadTimeOut(true);
+			log.debug("Batched remoting calls will be executed in parallel on {} threads", poolSize);
+		}
+		String services = getInitParameter("parallelServices");
+		if (services != null) {
+			parallelServices = new HashSet<String>();
+			for (String service : services.split(",")) {
+				if (service.trim().length() > 0) {
+					parallelServices.add(service.trim());
+				}
+			}
+		}
+		String timeout = getInitParameter("callTimeout");
+		if (timeout != null) {
+			callTimeout = Long.valueOf(timeout);
+		}
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void destroy() {
+		if (executor != null) {
+			executor.shutdownNow();
+			executor = null;
+		}
+		super.destroy();
 	}
 
 	/** {@inheritDoc} */
@@ -177,6 +257,21 @@ public class AMFGatewayServlet extends HttpServlet {
 			req.setAttribute(CONNECTION, conn);
 			// set thread local reference
 			Red5.setConnectionLocal(conn);
+			if (executor != null && packet.getCalls().size() > 1 && hasIndependentCalls(packet)) {
+				// the connection is cleaned up once the response is sent and no call runs any more
+				ParallelBatch batch = new ParallelBatch((RemotingConnection) conn, packet.getCalls().size());
+				conn = null;
+				try {
+					// results are streamed to the client in call order as the calls complete
+					List<BatchCall> results = submitRemotingCalls(batch, context, scope, packet);
+					resp.setStatus(HttpServletResponse.SC_OK);
+					resp.setContentType(APPLICATION_AMF);
+					sendStreamedResponse(resp, packet, results);
+				} finally {
+					batch.release();
+				}
+				return;
+			}
 			//fixed so that true is not returned for calls that have failed
 			boolean passed = handleRemotingPacket(req, context, scope, packet);
 			if (passed) {
@@ -263,6 +358,261 @@ public class AMFGatewayServlet extends HttpServlet {
 		return result;
 	}
 
+	/**
+	 * Returns whether the call may run in parallel with the other calls of its batch.
+	 * 
+	 * @param call
+	 *            Call
+	 * @return <code>true</code> if the service or method of the call is configured as independent
+	 */
+	protected boolean isIndependent(RemotingCall call) {
+		String service = call.getServiceName();
+		return service != null && (parallelServices.contains(service) || parallelServices.contains(service + '.' + call.getServiceMethodName()));
+	}
+
+	private boolean hasIndependentCalls(RemotingPacket packet) {
+		for (RemotingCall call : packet.getCalls()) {
+			if (isIndependent(call)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Submits the calls of a batch to the executor. Independent calls are submitted one by one and
+	 * run in parallel; all others run one after another in call order, as one task, and those
+	 * following a failed call are not run.
+	 * 
+	 * @param batch
+	 *            Batch the calls belong to
+	 * @param context
+	 *            Context
+	 * @param scope
+	 *            Scope
+	 * @param message
+	 *            Remoting packet
+	 * @return the submitted calls in call order
+	 */
+	protected List<BatchCall> submitRemotingCalls(ParallelBatch batch, IContext context, IScope scope, RemotingPacket message) {
+		log.debug("Submitting {} remoting calls", message.getCalls().size());
+		final IServiceInvoker invoker = context.getServiceInvoker();
+		List<BatchCall> results = new ArrayList<BatchCall>(message.getCalls().size());
+		final List<BatchCall> ordered = new ArrayList<BatchCall>();
+		for (RemotingCall call : message.getCalls()) {
+			BatchCall task = new BatchCall(batch, invoker, scope, call);
+			results.add(task);
+			if (isIndependent(call)) {
+				executor.execute(task);
+			} else {
+				ordered.add(task);
+			}
+		}
+		if (!ordered.isEmpty()) {
+			executor.execute(new Runnable() {
+				public void run() {
+					boolean failed = false;
+					for (BatchCall task : ordered) {
+						if (failed) {
+							task.skipAfterFailure();
+						} else {
+							task.run();
+							failed = !task.succeeded();
+						}
+					}
+				}
+			});
+		}
+		return results;
+	}
+
+	/**
+	 * Sends the response to a batch executed in parallel. The headers are written first and each
+	 * call result as soon as it and all calls before it have completed, reusing one buffer. Failed
+	 * calls are reported in their result bodies.
+	 * <br />
+	 * All calls share one deadline, callTimeout after the batch was submitted. A call which has not
+	 * started by then is skipped. A call still running is left to finish, it is answered with a
+	 * fault encoded from a copy so the running call is never read while it changes.
+	 * 
+	 * @param resp
+	 *            Response
+	 * @param packet
+	 *            Remoting packet
+	 * @param results
+	 *            Submitted calls in call order
+	 * @throws Exception
+	 *             General exception
+	 */
+	protected void sendStreamedResponse(HttpServletResponse resp, RemotingPacket packet, List<BatchCall> results) throws Exception {
+		log.debug("Sending streamed response");
+		final RemotingProtocolEncoder encoder = codecFactory.getRemotingEncoder();
+		final ServletOutputStream out = resp.getOutputStream();
+		final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(callTimeout);
+		IoBuffer buf = IoBuffer.allocate(1024);
+		buf.setAutoExpand(true);
+		try {
+			encoder.encodeHeaders(buf, packet);
+			writeBuffer(buf, out);
+			for (BatchCall result : results) {
+				RemotingCall call = result.getCall();
+				try {
+					if (!result.get(Math.max(deadline - System.nanoTime(), 0), TimeUnit.NANOSECONDS)) {
+						log.warn("Invocation failed to execute: {}", call);
+					}
+				} catch (TimeoutException e) {
+					if (result.skip()) {
+						log.warn("Invocation not started before the batch timed out: {}", call);
+						call.setException(e);
+						call.setStatus(Call.STATUS_GENERAL_EXCEPTION);
+					} else if (!result.isDone()) {
+						log.warn("Invocation timed out: {}", call);
+						call = new RemotingCall(call.getServiceName(), call.getServiceMethodName(), call.getArguments(), call.clientCallback, call.isAMF3, call.isMessaging);
+						call.setException(e);
+						call.setStatus(Call.STATUS_GENERAL_EXCEPTION);
+					}
+				} catch (ExecutionException e) {
+					Throwable cause = e.getCause();
+					call.setException(cause instanceof Exception ? (Exception) cause : e);
+					call.setStatus(Call.STATUS_GENERAL_EXCEPTION);
+				}
+				encoder.encodeCall(buf, call);
+				writeBuffer(buf, out);
+			}
+		} finally {
+			buf.free();
+			out.close();
+		}
+	}
+
+	/**
+	 * Calls of a batched request executed in parallel. The connection of the request is cleaned up
+	 * when the response has been sent and none of the calls runs any more.
+	 */
+	protected static class ParallelBatch {
+
+		private final RemotingConnection conn;
+
+		/**
+		 * One for each call which has not completed or been skipped, one for the servlet thread
+		 */
+		private final AtomicInteger pending;
+
+		public ParallelBatch(RemotingConnection conn, int calls) {
+			this.conn = conn;
+			this.pending = new AtomicInteger(calls + 1);
+		}
+
+		public RemotingConnection getConnection() {
+			return conn;
+		}
+
+		/**
+		 * Called when a call has completed or was skipped and when the response was sent.
+		 */
+		public void release() {
+			if (pending.decrementAndGet() == 0) {
+				conn.cleanup();
+			}
+		}
+
+	}
+
+	/**
+	 * A call of a batch executed on the executor. A call is never interrupted; one which has not
+	 * started yet can be skipped.
+	 */
+	protected static class BatchCall extends FutureTask<Boolean> {
+
+		private final ParallelBatch batch;
+
+		private final RemotingCall call;
+
+		private final AtomicBoolean started = new AtomicBoolean();
+
+		public BatchCall(final ParallelBatch batch, final IServiceInvoker invoker, final IScope scope, final RemotingCall call) {
+			super(new Callable<Boolean>() {
+				public Boolean call() throws Exception {
+					final IConnection prevConn = Red5.getConnectionLocal();
+					Red5.setConnectionLocal(batch.getConnection());
+					try {
+						return invoker.invoke(call, scope);
+					} finally {
+						Red5.setConnectionLocal(prevConn);
+					}
+				}
+			});
+			this.batch = batch;
+			this.call = call;
+		}
+
+		public RemotingCall getCall() {
+			return call;
+		}
+
+		@Override
+		public void run() {
+			if (started.compareAndSet(false, true)) {
+				super.run();
+			}
+		}
+
+		/**
+		 * Makes sure the call never runs, unless it has started already.
+		 * 
+		 * @return true if the call was skipped
+		 */
+		public boolean skip() {
+			return started.compareAndSet(false, true) && cancel(false);
+		}
+
+		/**
+		 * Completes the call as failed without running it, unless it has started already.
+		 */
+		public void skipAfterFailure() {
+			if (started.compareAndSet(false, true)) {
+				set(Boolean.FALSE);
+			}
+		}
+
+		/**
+		 * Whether the call has run and succeeded.
+		 * 
+		 * @return true if the invocation returned true
+		 */
+		public boolean succeeded() {
+			try {
+				return isDone() && !isCancelled() && get();
+			} catch (Exception e) {
+				return false;
+			}
+		}
+
+		@Override
+		protected void done() {
+			batch.release();
+		}
+
+	}
+
+	/**
+	 * Writes the content of the buffer to the stream and clears the buffer for reuse.
+	 * 
+	 * @param buf buffer
+	 * @param out stream
+	 * @throws IOException on write error
+	 */
+	private void writeBuffer(IoBuffer buf, ServletOutputStream out) throws IOException {
+		buf.flip();
+		if (buf.hasArray()) {
+			out.write(buf.array(), buf.arrayOffset(), buf.limit());
+		} else {
+			ServletUtils.copy(buf.asInputStream(), out);
+		}
+		out.flush();
+		buf.clear();
+	}
+
 	/**
 	 * Sends response to client
 	 * 
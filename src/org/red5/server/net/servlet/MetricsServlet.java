@@ -0,0 +1,69 @@
+package org.red5.server.net.servlet;
+
+/*
+ * RED5 Open Source Flash Server - http://code.google.com/p/red5/
+ *
+ * Copyright (c) 2006-2011 by respective authors (see below). All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation; either version 2.1 of the License, or (at your option) any later
+ * version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along
+ * with this library; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Map;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.red5.server.metrics.HistogramSnapshot;
+import org.red5.server.metrics.MetricsRegistry;
+
+/**
+ * Servlet that prints the timing histograms and counters of the server as plain text, one
+ * metric per line. Durations are in microseconds. The optional "prefix" parameter limits the
+ * output to metrics whose name starts with it.
+ * 
+ * @author The Red5 Project (red5@osflash.org)
+ */
+public class MetricsServlet extends HttpServlet {
+
+	private static final long serialVersionUID = -3183785839623212514L;
+
+	/** {@inheritDoc} */
+	@Override
+	protected void doGet(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException {
+		String prefix = request.getParameter("prefix");
+		MetricsRegistry registry = MetricsRegistry.getInstance();
+		response.setContentType("text/plain");
+		response.setCharacterEncoding("UTF-8");
+		response.setHeader("Cache-Control", "no-cache");
+		PrintWriter out = response.getWriter();
+		for (HistogramSnapshot snapshot : registry.getHistogramSnapshots()) {
+			if (prefix == null || snapshot.getName().startsWith(prefix)) {
+				out.println(snapshot);
+			}
+		}
+		for (Map.Entry<String, Long> counter : registry.getCounters().entrySet()) {
+			if (prefix == null || counter.getKey().startsWith(prefix)) {
+				out.print(counter.getKey());
+				out.print(" value=");
+				out.println(counter.getValue());
+			}
+		}
+		out.flush();
+	}
+
+}
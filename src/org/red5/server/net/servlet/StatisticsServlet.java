@@ -29,6 +29,7 @@ import javax.servlet.http.HttpServletResponse;
 
 import org.apache.xmlrpc.XmlRpcServer;
 import org.red5.server.api.IContext;
+import org.red5.server.statistics.StatisticsEngine;
 import org.red5.server.statistics.XmlRpcScopeStatistics;
 import org.springframework.web.context.WebApplicationContext;
 import org.springframework.web.context.support.WebApplicationContextUtils;
@@ -62,8 +63,14 @@ public class StatisticsServlet extends HttpServlet {
 
 		webContext = (IContext) webAppCtx.getBean("web.context");
 
-		// Register handlers in XML-RPC server
-		server.addHandler("scopes", new XmlRpcScopeStatistics(webContext.getGlobalScope()));
+		// Register handlers in XML-RPC server, sharing the snapshots of the global statistics engine if there is one
+		XmlRpcScopeStatistics statistics;
+		if (webAppCtx.containsBean("global.statisticsEngine")) {
+			statistics = new XmlRpcScopeStatistics((StatisticsEngine) webAppCtx.getBean("global.statisticsEngine"));
+		} else {
+			statistics = new XmlRpcScopeStatistics(webContext.getGlobalScope());
+		}
+		server.addHandler("scopes", statistics);
 	}
 
 	/** {@inheritDoc} */
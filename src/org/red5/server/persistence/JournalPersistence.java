@@ -0,0 +1,667 @@
+package org.red5.server.persistence;
+
+/*
+ * RED5 Open Source Flash Server - http://code.google.com/p/red5/
+ *
+ * Copyright (c) 2006-2011 by respective authors (see below). All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation; either version 2.1 of the License, or (at your option) any later
+ * version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along
+ * with this library; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.apache.mina.core.buffer.IoBuffer;
+import org.red5.io.amf.Input;
+import org.red5.io.amf.Output;
+import org.red5.io.object.Deserializer;
+import org.red5.io.object.Serializer;
+import org.red5.server.api.IScope;
+import org.red5.server.api.persistence.IPersistable;
+import org.red5.server.so.SharedObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.io.support.ResourcePatternResolver;
+
+/**
+ * Write-behind persistence which appends changes to a log per scope instead of rewriting whole
+ * objects. Modified objects are collected and written by the {@link JournalPersistenceThread},
+ * so an object changed many times between two flushes is written only once. For shared objects 
+ * only the attributes changed since the last flush are logged.
+ * <br />
+ * Once the log grows beyond the compaction threshold, the current state of all objects is written
+ * to a binary snapshot and the log is started over. On startup the snapshot is loaded and the
+ * log is replayed on top of it.
+ * 
+ * @author The Red5 Project (red5@osflash.org)
+ */
+public class JournalPersistence extends RamPersistence {
+
+	/**
+	 * Logger
+	 */
+	private Logger log = LoggerFactory.getLogger(JournalPersistence.class);
+
+	/**
+	 * Marks the start of a snapshot file
+	 */
+	private static final int SNAPSHOT_MAGIC = 0x52354a31;
+
+	/**
+	 * Complete state of an object serialized by the object itself
+	 */
+	private static final byte RECORD_OBJECT = 1;
+
+	/**
+	 * Changed and removed attributes of a shared object
+	 */
+	private static final byte RECORD_ATTRIBUTES = 2;
+
+	/**
+	 * Removed object
+	 */
+	private static final byte RECORD_REMOVE = 3;
+
+	/**
+	 * Files path
+	 */
+	private String path = "persistence";
+
+	/**
+	 * Directory of this store
+	 */
+	private File directory;
+
+	/**
+	 * Log of changes since the last snapshot
+	 */
+	private File logFile;
+
+	/**
+	 * State of all objects at the time the log was started
+	 */
+	private File snapshotFile;
+
+	/**
+	 * Channel appending to the log
+	 */
+	private FileChannel logChannel;
+
+	/**
+	 * Size of the last snapshot
+	 */
+	private long snapshotSize;
+
+	/**
+	 * Length of the log up to its last complete record while a failed write left part of a record
+	 * behind it, -1 otherwise
+	 */
+	private long validLength = -1;
+
+	/**
+	 * Objects with changes that have not been written yet
+	 */
+	private final ConcurrentMap<String, IPersistable> dirty = new ConcurrentHashMap<String, IPersistable>();
+
+	/**
+	 * Objects removed since the last flush
+	 */
+	private final ConcurrentMap<String, Boolean> removed = new ConcurrentHashMap<String, Boolean>();
+
+	/**
+	 * Attributes of the shared objects as they have been written to the log, only accessed 
+	 * while holding the flush lock
+	 */
+	private final Map<String, Map<String, Object>> written = new HashMap<String, Map<String, Object>>();
+
+	/**
+	 * Makes sure only one thread writes to the log
+	 */
+	private final ReentrantLock flushLock = new ReentrantLock();
+
+	/**
+	 * Thread to flush the changes.
+	 */
+	private JournalPersistenceThread storeThread;
+
+	/**
+	 * Whether the store has been closed
+	 */
+	private boolean closed;
+
+	/**
+	 * Create journal persistence object from given resource pattern resolver
+	 * @param resolver            Resource pattern resolver and loader
+	 */
+	public JournalPersistence(ResourcePatternResolver resolver) {
+		super(resolver);
+		open(resolver instanceof IScope ? ((IScope) resolver).getContextPath() : "");
+	}
+
+	/**
+	 * Create journal persistence object for given scope
+	 * @param scope               Scope
+	 */
+	public JournalPersistence(IScope scope) {
+		super(scope);
+		open(scope.getContextPath());
+	}
+
+	/**
+	 * Recover the stored objects and open the log.
+	 * 
+	 * @param scopePath context path of the scope owning the store
+	 */
+	private void open(String scopePath) {
+		try {
+			File root = resources.getResource(path).getFile();
+			directory = new File(root, "journal" + scopePath);
+			if (!directory.isDirectory() && !directory.mkdirs()) {
+				throw new IOException("Could not create directory " + directory.getAbsolutePath());
+			}
+			log.debug("Journal directory: {}", directory);
+			logFile = new File(directory, "store.log");
+			snapshotFile = new File(directory, "store.snapshot");
+			long valid = recover();
+			logChannel = new RandomAccessFile(logFile, "rw").getChannel();
+			if (logChannel.size() > valid) {
+				log.warn("Discarding {} bytes of incomplete records at the end of {}", logChannel.size() - valid, logFile);
+				logChannel.truncate(valid);
+			}
+			logChannel.position(logChannel.size());
+		} catch (IOException err) {
+			log.error("I/O exception thrown when opening journal in " + path);
+			throw (new RuntimeException(err));
+		}
+		storeThread = JournalPersistenceThread.getInstance();
+		storeThread.register(this);
+	}
+
+	/**
+	 * Load the snapshot and replay the log.
+	 * 
+	 * @return size of the complete records in the log
+	 * @throws IOException on read errors
+	 */
+	@SuppressWarnings("unchecked")
+	private long recover() throws IOException {
+		// id -> object or attributes of a shared object
+		Map<String, Object> state = new LinkedHashMap<String, Object>();
+		if (snapshotFile.exists()) {
+			IoBuffer buf = readFile(snapshotFile);
+			if (buf.remaining() >= 4 && buf.getInt() == SNAPSHOT_MAGIC) {
+				replay(buf, state);
+			} else {
+				log.error("Ignoring invalid snapshot {}", snapshotFile);
+			}
+			snapshotSize = snapshotFile.length();
+		}
+		long valid = 0;
+		if (logFile.exists()) {
+			valid = replay(readFile(logFile), state);
+		}
+		for (Map.Entry<String, Object> entry : state.entrySet()) {
+			String id = entry.getKey();
+			String name = getObjectName(id);
+			IPersistable object;
+			if (entry.getValue() instanceof Map) {
+				Map<String, Object> attributes = (Map<String, Object>) entry.getValue();
+				object = new SharedObject(attributes, name, getObjectPath(id, name), true);
+				written.put(id, new HashMap<String, Object>(attributes));
+			} else {
+				object = (IPersistable) entry.getValue();
+				object.setName(name);
+				object.setPath(getObjectPath(id, name));
+			}
+			object.setStore(this);
+			objects.put(id, object);
+		}
+		log.debug("Recovered {} objects from {}", state.size(), directory);
+		return valid;
+	}
+
+	/**
+	 * Apply all complete records in the buffer.
+	 * 
+	 * @param buf records
+	 * @param state current state of the objects
+	 * @return position after the last complete record
+	 */
+	private int replay(IoBuffer buf, Map<String, Object> state) {
+		int valid = buf.position();
+		while (buf.remaining() >= 4) {
+			int length = buf.getInt();
+			if (length < 1 || length > buf.remaining()) {
+				break;
+			}
+			IoBuffer record = buf.getSlice(length);
+			try {
+				apply(record, state);
+			} catch (Exception e) {
+				log.error("Skipping unreadable record in {}", directory, e);
+			}
+			valid = buf.position();
+		}
+		return valid;
+	}
+
+	/**
+	 * Apply a single record.
+	 * 
+	 * @param record record
+	 * @param state current state of the objects
+	 * @throws Exception if the object can't be created
+	 */
+	@SuppressWarnings("unchecked")
+	private void apply(IoBuffer record, Map<String, Object> state) throws Exception {
+		byte type = record.get();
+		String id = Input.getString(record);
+		Input in = new Input(record);
+		Deserializer deserializer = new Deserializer();
+		switch (type) {
+			case RECORD_OBJECT:
+				String className = Input.getString(record);
+				IPersistable object = Class.forName(className).asSubclass(IPersistable.class).getConstructor().newInstance();
+				object.deserialize(in);
+				state.put(id, object);
+				break;
+			case RECORD_ATTRIBUTES:
+				boolean reset = record.get() == 1;
+				Object previous = state.get(id);
+				Map<String, Object> attributes = (!reset && previous instanceof Map) ? (Map<String, Object>) previous : new HashMap<String, Object>();
+				int count = record.getInt();
+				for (int i = 0; i < count; i++) {
+					String key = Input.getString(record);
+					attributes.put(key, deserializer.deserialize(in, Object.class));
+				}
+				count = record.getInt();
+				for (int i = 0; i < count; i++) {
+					attributes.remove(Input.getString(record));
+				}
+				state.put(id, attributes);
+				break;
+			case RECORD_REMOVE:
+				state.remove(id);
+				break;
+			default:
+				log.warn("Unknown record type {} for {}", type, id);
+		}
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public boolean save(IPersistable object) {
+		if (!super.save(object)) {
+			return false;
+		}
+		String id = getObjectId(object);
+		removed.remove(id);
+		dirty.put(id, object);
+		return true;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public boolean remove(String name) {
+		boolean result = super.remove(name);
+		dirty.remove(name);
+		removed.put(name, Boolean.TRUE);
+		return result;
+	}
+
+	/**
+	 * Returns whether there are changes which have not been written yet.
+	 * 
+	 * @return <code>true</code> if a flush is needed
+	 */
+	public boolean isDirty() {
+		return !dirty.isEmpty() || !removed.isEmpty();
+	}
+
+	/**
+	 * Append the pending changes to the log and compact it if it has grown too large.
+	 */
+	public void flush() {
+		flushLock.lock();
+		try {
+			writePending();
+		} finally {
+			flushLock.unlock();
+		}
+	}
+
+	/**
+	 * Append the pending changes to the log unless another thread is already writing this store.
+	 * 
+	 * @return <code>true</code> if the changes were written, <code>false</code> if the store was busy
+	 */
+	public boolean tryFlush() {
+		if (!flushLock.tryLock()) {
+			return false;
+		}
+		try {
+			writePending();
+			return true;
+		} finally {
+			flushLock.unlock();
+		}
+	}
+
+	/**
+	 * Append the pending changes to the log and compact it if it has grown too large. Must be 
+	 * called while holding the flush lock.
+	 */
+	private void writePending() {
+		try {
+			if (closed || !isDirty()) {
+				return;
+			}
+			if (validLength >= 0) {
+				discardIncomplete();
+			}
+			List<IPersistable> flushed = new ArrayList<IPersistable>();
+			List<String> flushedRemovals = new ArrayList<String>();
+			long start = logChannel.position();
+			IoBuffer buf = IoBuffer.allocate(4096);
+			buf.setAutoExpand(true);
+			try {
+				for (String id : removed.keySet()) {
+					removed.remove(id);
+					flushedRemovals.add(id);
+					written.remove(id);
+					writeRemove(buf, id);
+				}
+				for (Map.Entry<String, IPersistable> entry : dirty.entrySet()) {
+					String id = entry.getKey();
+					IPersistable object = entry.getValue();
+					// changes made from now on mark the object again
+					dirty.remove(id, object);
+					flushed.add(object);
+					if (object instanceof SharedObject) {
+						writeChangedAttributes(buf, id, (SharedObject) object);
+					} else {
+						writeObject(buf, id, object);
+					}
+				}
+				buf.flip();
+				writeLog(buf.buf());
+				logChannel.force(false);
+				log.debug("Wrote {} objects to {}", flushed.size(), logFile);
+			} catch (IOException e) {
+				log.error("Could not write to {}", logFile, e);
+				for (String id : flushedRemovals) {
+					removed.put(id, Boolean.TRUE);
+				}
+				for (IPersistable object : flushed) {
+					String id = getObjectId(object);
+					// the log may miss changes the failed records held, so write the objects completely
+					written.remove(id);
+					dirty.putIfAbsent(id, object);
+				}
+				// drop the partly written records, the next flush appends after the last complete one
+				validLength = start;
+				discardIncomplete();
+				// the snapshot would miss these changes
+				return;
+			} finally {
+				buf.free();
+			}
+			long size = logChannel.size();
+			if (size > storeThread.getCompactionThreshold() && size > snapshotSize) {
+				compact();
+			}
+		} catch (IOException e) {
+			log.error("Could not update {}", logFile, e);
+		}
+	}
+
+	/**
+	 * Cut the log back to its last complete record after a failed write.
+	 * 
+	 * @throws IOException on errors, nothing may be appended to the log then
+	 */
+	private void discardIncomplete() throws IOException {
+		logChannel.truncate(validLength);
+		logChannel.position(validLength);
+		validLength = -1;
+	}
+
+	/**
+	 * Append records to the log.
+	 * 
+	 * @param data records
+	 * @throws IOException on write errors
+	 */
+	protected void writeLog(ByteBuffer data) throws IOException {
+		while (data.hasRemaining()) {
+			logChannel.write(data);
+		}
+	}
+
+	/**
+	 * Write the state of all objects to a new snapshot and start over with an empty log.
+	 * Must be called while holding the flush lock.
+	 * 
+	 * @throws IOException on write errors
+	 */
+	private void compact() throws IOException {
+		log.debug("Compacting {}", logFile);
+		IoBuffer buf = IoBuffer.allocate((int) Math.min(Integer.MAX_VALUE, Math.max(4096, snapshotSize)));
+		buf.setAutoExpand(true);
+		File tmpFile = new File(directory, snapshotFile.getName() + ".tmp");
+		try {
+			buf.putInt(SNAPSHOT_MAGIC);
+			for (Map.Entry<String, Map<String, Object>> entry : written.entrySet()) {
+				writeAttributes(buf, entry.getKey(), true, entry.getValue(), Collections.<String> emptyList());
+			}
+			for (Map.Entry<String, IPersistable> entry : objects.entrySet()) {
+				if (!(entry.getValue() instanceof SharedObject)) {
+					writeObject(buf, entry.getKey(), entry.getValue());
+				}
+			}
+			buf.flip();
+			FileOutputStream output = new FileOutputStream(tmpFile);
+			try {
+				FileChannel channel = output.getChannel();
+				ByteBuffer data = buf.buf();
+				while (data.hasRemaining()) {
+					channel.write(data);
+				}
+				channel.force(true);
+			} finally {
+				output.close();
+			}
+		} finally {
+			buf.free();
+		}
+		// replace the snapshot, deleting it first if the platform can't rename over it
+		if (!tmpFile.renameTo(snapshotFile) && !(snapshotFile.delete() && tmpFile.renameTo(snapshotFile))) {
+			log.error("Could not replace snapshot {}", snapshotFile);
+			return;
+		}
+		snapshotSize = snapshotFile.length();
+		// replaying the old log on the new snapshot leads to the same state, so a crash here is harmless
+		logChannel.truncate(0);
+		log.debug("Wrote snapshot {} with {} bytes", snapshotFile, snapshotSize);
+	}
+
+	/**
+	 * Write the attributes of a shared object which changed since the last flush.
+	 * 
+	 * @param buf buffer
+	 * @param id object id
+	 * @param so shared object
+	 */
+	private void writeChangedAttributes(IoBuffer buf, String id, SharedObject so) {
+		Map<String, Object> current = new HashMap<String, Object>(so.getAttributes());
+		Map<String, Object> previous = written.get(id);
+		if (previous == null) {
+			writeAttributes(buf, id, true, current, Collections.<String> emptyList());
+		} else {
+			Map<String, Object> changed = new HashMap<String, Object>();
+			for (Map.Entry<String, Object> entry : current.entrySet()) {
+				Object value = entry.getValue();
+				Object old = previous.get(entry.getKey());
+				if (old == null || (old != value && !old.equals(value))) {
+					changed.put(entry.getKey(), value);
+				}
+			}
+			List<String> removedNames = new ArrayList<String>();
+			for (String key : previous.keySet()) {
+				if (!current.containsKey(key)) {
+					removedNames.add(key);
+				}
+			}
+			if (changed.isEmpty() && removedNames.isEmpty()) {
+				return;
+			}
+			writeAttributes(buf, id, false, changed, removedNames);
+		}
+		written.put(id, current);
+	}
+
+	/**
+	 * Write an attributes record.
+	 * 
+	 * @param buf buffer
+	 * @param id object id
+	 * @param reset whether the attributes replace all existing ones
+	 * @param changed new or changed attributes
+	 * @param removedNames names of removed attributes
+	 */
+	private void writeAttributes(IoBuffer buf, String id, boolean reset, Map<String, Object> changed, Collection<String> removedNames) {
+		int mark = startRecord(buf, RECORD_ATTRIBUTES, id);
+		buf.put(reset ? (byte) 1 : (byte) 0);
+		Output out = new Output(buf);
+		Serializer serializer = new Serializer();
+		buf.putInt(changed.size());
+		for (Map.Entry<String, Object> entry : changed.entrySet()) {
+			Output.putString(buf, entry.getKey());
+			serializer.serialize(out, entry.getValue());
+		}
+		buf.putInt(removedNames.size());
+		for (String name : removedNames) {
+			Output.putString(buf, name);
+		}
+		endRecord(buf, mark);
+	}
+
+	/**
+	 * Write the complete state of an object.
+	 * 
+	 * @param buf buffer
+	 * @param id object id
+	 * @param object object
+	 * @throws IOException if the object can't be serialized
+	 */
+	private void writeObject(IoBuffer buf, String id, IPersistable object) throws IOException {
+		int mark = startRecord(buf, RECORD_OBJECT, id);
+		Output.putString(buf, object.getClass().getName());
+		object.serialize(new Output(buf));
+		endRecord(buf, mark);
+	}
+
+	/**
+	 * Write a remove record.
+	 * 
+	 * @param buf buffer
+	 * @param id object id
+	 */
+	private void writeRemove(IoBuffer buf, String id) {
+		endRecord(buf, startRecord(buf, RECORD_REMOVE, id));
+	}
+
+	/**
+	 * Start a record, the length is filled in by {@link #endRecord(IoBuffer, int)}.
+	 * 
+	 * @param buf buffer
+	 * @param type record type
+	 * @param id object id
+	 * @return position of the length
+	 */
+	private int startRecord(IoBuffer buf, byte type, String id) {
+		int mark = buf.position();
+		buf.putInt(0);
+		buf.put(type);
+		Output.putString(buf, id);
+		return mark;
+	}
+
+	/**
+	 * Fill in the length of a record.
+	 * 
+	 * @param buf buffer
+	 * @param mark position of the length
+	 */
+	private void endRecord(IoBuffer buf, int mark) {
+		buf.putInt(mark, buf.position() - mark - 4);
+	}
+
+	/**
+	 * Read a complete file.
+	 * 
+	 * @param file file
+	 * @return file contents
+	 * @throws IOException on read errors
+	 */
+	private IoBuffer readFile(File file) throws IOException {
+		RandomAccessFile input = new RandomAccessFile(file, "r");
+		try {
+			byte[] bytes = new byte[(int) input.length()];
+			input.readFully(bytes);
+			return IoBuffer.wrap(bytes);
+		} finally {
+			input.close();
+		}
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void notifyClose() {
+		// Write any pending changes
+		flush();
+		storeThread.unregister(this);
+		flushLock.lock();
+		try {
+			closed = true;
+			logChannel.close();
+		} catch (IOException e) {
+			log.warn("Could not close {}", logFile, e);
+		} finally {
+			flushLock.unlock();
+		}
+		super.notifyClose();
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public String toString() {
+		return "JournalPersistence [" + directory + "]";
+	}
+
+}
@@ -0,0 +1,213 @@
+package org.red5.server.persistence;
+
+/*
+ * RED5 Open Source Flash Server - http://code.google.com/p/red5/
+ *
+ * Copyright (c) 2006-2011 by respective authors (see below). All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation; either version 2.1 of the License, or (at your option) any later
+ * version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along
+ * with this library; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+/**
+ * Writes the pending changes of all journal persistence stores in the background. Stores are 
+ * flushed by a dedicated pool of threads, so several scopes can be written at the same time, but a
+ * single store is never flushed by more than one thread. A store which is busy, for example while
+ * it is being closed, is skipped and picked up again on the next run.
+ * 
+ * @see JournalPersistence
+ * @author The Red5 Project (red5@osflash.org)
+ */
+public class JournalPersistenceThread implements Runnable, InitializingBean, DisposableBean {
+
+	/**
+	 * Logger
+	 */
+	private Logger log = LoggerFactory.getLogger(JournalPersistenceThread.class);
+
+	/**
+	 * Singleton instance.
+	 */
+	private static volatile JournalPersistenceThread instance;
+
+	/**
+	 * Interval to write pending changes in milliseconds.
+	 */
+	private long flushInterval = 1000;
+
+	/**
+	 * Number of stores which may be written at the same time.
+	 */
+	private int threadPoolSize = 2;
+
+	/**
+	 * Size in bytes the log of a store may grow to before it is compacted into a snapshot.
+	 */
+	private long compactionThreshold = 4 * 1024 * 1024;
+
+	/**
+	 * Stores with their own log.
+	 */
+	private final Set<JournalPersistence> stores = new CopyOnWriteArraySet<JournalPersistence>();
+
+	/**
+	 * Runs the periodic check.
+	 */
+	private ScheduledExecutorService scheduler;
+
+	/**
+	 * Runs the flushes.
+	 */
+	private ExecutorService flushExecutor;
+
+	/**
+	 * Stores handed to the flush threads which have not been written yet.
+	 */
+	private final Set<JournalPersistence> queued = Collections.newSetFromMap(new ConcurrentHashMap<JournalPersistence, Boolean>());
+
+	/**
+	 * Return singleton instance of the thread, a default one is started if none has been 
+	 * configured.
+	 * 
+	 * @return singleton instance of thread.
+	 */
+	public static JournalPersistenceThread getInstance() {
+		if (instance == null) {
+			synchronized (JournalPersistenceThread.class) {
+				if (instance == null) {
+					JournalPersistenceThread thread = new JournalPersistenceThread();
+					thread.afterPropertiesSet();
+				}
+			}
+		}
+		return instance;
+	}
+
+	/**
+	 * Create instance of the thread.
+	 */
+	public JournalPersistenceThread() {
+		if (instance != null) {
+			log.error("Instance was not null, this is not a good sign");
+		}
+		instance = this;
+	}
+
+	public void afterPropertiesSet() {
+		CustomizableThreadFactory schedulerFactory = new CustomizableThreadFactory("JournalPersistenceScheduler-");
+		schedulerFactory.setDaemon(true);
+		CustomizableThreadFactory flushFactory = new CustomizableThreadFactory("JournalPersistence-");
+		flushFactory.setDaemon(true);
+		flushExecutor = Executors.newFixedThreadPool(threadPoolSize, flushFactory);
+		scheduler = Executors.newSingleThreadScheduledExecutor(schedulerFactory);
+		scheduler.scheduleWithFixedDelay(this, flushInterval, flushInterval, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Writes the pending changes of all stores and stops the threads.
+	 */
+	public void destroy() throws Exception {
+		scheduler.shutdown();
+		flushExecutor.shutdown();
+		flushExecutor.awaitTermination(flushInterval, TimeUnit.MILLISECONDS);
+		for (JournalPersistence store : stores) {
+			store.flush();
+		}
+		if (instance == this) {
+			instance = null;
+		}
+	}
+
+	/**
+	 * Hand all stores with pending changes to the flush threads.
+	 */
+	public void run() {
+		for (final JournalPersistence store : stores) {
+			// a store still waiting for a flush thread is not queued again
+			if (store.isDirty() && queued.add(store)) {
+				try {
+					flushExecutor.execute(new Runnable() {
+						public void run() {
+							queued.remove(store);
+							if (!store.tryFlush()) {
+								log.debug("Skipped busy store {}", store);
+							}
+						}
+					});
+				} catch (RejectedExecutionException e) {
+					queued.remove(store);
+					log.warn("Could not schedule flush of {}", store);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Add a store to be flushed periodically.
+	 * 
+	 * @param store store
+	 */
+	protected void register(JournalPersistence store) {
+		stores.add(store);
+	}
+
+	/**
+	 * Remove a store, it must write its pending changes itself.
+	 * 
+	 * @param store store
+	 */
+	protected void unregister(JournalPersistence store) {
+		stores.remove(store);
+	}
+
+	public long getFlushInterval() {
+		return flushInterval;
+	}
+
+	public void setFlushInterval(long flushInterval) {
+		this.flushInterval = flushInterval;
+	}
+
+	public int getThreadPoolSize() {
+		return threadPoolSize;
+	}
+
+	public void setThreadPoolSize(int threadPoolSize) {
+		this.threadPoolSize = threadPoolSize;
+	}
+
+	public long getCompactionThreshold() {
+		return compactionThreshold;
+	}
+
+	public void setCompactionThreshold(long compactionThreshold) {
+		this.compactionThreshold = compactionThreshold;
+	}
+
+}
@@ -0,0 +1,823 @@
+package org.red5.server.persistence;
+
+/*
+ * RED5 Open Source Flash Server - http://code.google.com/p/red5/
+ *
+ * Copyright (c) 2006-2011 by respective authors (see below). All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation; either version 2.1 of the License, or (at your option) any later
+ * version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along
+ * with this library; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.ref.WeakReference;
+import java.lang.reflect.Constructor;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.AbstractCollection;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.apache.mina.core.buffer.IoBuffer;
+import org.red5.io.amf.Input;
+import org.red5.io.amf.Output;
+import org.red5.io.object.Deserializer;
+import org.red5.server.api.IScope;
+import org.red5.server.api.persistence.IPersistable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.io.support.ResourcePatternResolver;
+
+/**
+ * Persistence for large numbers of small objects, backed by a single memory-mapped file per scope.
+ * <br />
+ * The file is divided into pages, each object occupies a run of consecutive pages holding its id 
+ * and its serialized form. Pages of removed objects are reused. Objects are looked up through a 
+ * hash index kept in a direct buffer, which is rebuilt by scanning the file when the store is 
+ * opened. Objects are only deserialized when they are loaded and are written through on every 
+ * save, so the heap only holds objects which are referenced elsewhere.
+ * <br />
+ * A saved object is always written to free pages before the pages of its previous version are 
+ * released, so a crash in the middle of a save leaves either the old or the new version. As the 
+ * operating system writes the mapped pages back in any order, this only covers a crash of the 
+ * server process, not of the machine. The file starts small and grows as objects are added, so 
+ * child scopes sharing the persistence class of the application cost little until they store 
+ * something.
+ * <br />
+ * To use it for the scope attributes of an application, set the <i>persistenceClass</i> property
+ * of the web.scope bean in red5-web.xml to <code>org.red5.server.persistence.MappedPersistence</code>.
+ * 
+ * @author The Red5 Project (red5@osflash.org)
+ */
+public class MappedPersistence extends RamPersistence {
+
+	/**
+	 * Logger
+	 */
+	private Logger log = LoggerFactory.getLogger(MappedPersistence.class);
+
+	/**
+	 * Marks the start of a store file
+	 */
+	private static final int FILE_MAGIC = 0x52354d31;
+
+	/**
+	 * Size of a page in bytes
+	 */
+	private static final int PAGE_SIZE = 256;
+
+	/**
+	 * Size of the header of a run: used flag, number of pages, key length and data length
+	 */
+	private static final int RUN_HEADER_SIZE = 16;
+
+	/**
+	 * Run flag of free pages
+	 */
+	private static final int RUN_FREE = 0;
+
+	/**
+	 * Run flag of an object
+	 */
+	private static final int RUN_USED = 1;
+
+	/**
+	 * Run flag of an object which replaces another run with the same id that has not been released yet
+	 */
+	private static final int RUN_PENDING = 2;
+
+	/**
+	 * Initial size of the file, it is doubled whenever it is full
+	 */
+	private static final int INITIAL_SIZE = 16 * PAGE_SIZE;
+
+	/**
+	 * Files path
+	 */
+	private String path = "persistence";
+
+	/**
+	 * Store file
+	 */
+	private File file;
+
+	/**
+	 * Channel of the store file
+	 */
+	private FileChannel channel;
+
+	/**
+	 * Mapped contents of the store file
+	 */
+	private MappedByteBuffer data;
+
+	/**
+	 * First page after the last run
+	 */
+	private int nextPage;
+
+	/**
+	 * Free runs by first page
+	 */
+	private final TreeMap<Integer, Integer> freeRuns = new TreeMap<Integer, Integer>();
+
+	/**
+	 * Maps object ids to their first page
+	 */
+	private volatile Index index;
+
+	/**
+	 * Objects which have been loaded or saved and are still referenced
+	 */
+	private final ConcurrentMap<String, WeakReference<IPersistable>> live = new ConcurrentHashMap<String, WeakReference<IPersistable>>();
+
+	/**
+	 * Guards the file and the index
+	 */
+	private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+	/**
+	 * Scope to resolve the context path from when the file is opened
+	 */
+	private final IScope scope;
+
+	/**
+	 * Create mapped persistence object from given resource pattern resolver
+	 * @param resolver            Resource pattern resolver and loader
+	 */
+	public MappedPersistence(ResourcePatternResolver resolver) {
+		super(resolver);
+		scope = resolver instanceof IScope ? (IScope) resolver : null;
+	}
+
+	/**
+	 * Create mapped persistence object for given scope
+	 * @param scope               Scope
+	 */
+	public MappedPersistence(IScope scope) {
+		super(scope);
+		this.scope = scope;
+	}
+
+	/**
+	 * Open the file and build the index, this is done on first access as the scope may not be 
+	 * completely configured when the store is created.
+	 */
+	private void open() {
+		if (index != null) {
+			return;
+		}
+		lock.writeLock().lock();
+		try {
+			if (index != null) {
+				return;
+			}
+			String contextPath = scope != null ? scope.getContextPath() : "";
+			File root = resources.getResource(path).getFile();
+			File directory = new File(root, "mapped" + contextPath);
+			if (!directory.isDirectory() && !directory.mkdirs()) {
+				throw new IOException("Could not create directory " + directory.getAbsolutePath());
+			}
+			file = new File(directory, "store.dat");
+			boolean exists = file.exists() && file.length() >= PAGE_SIZE;
+			channel = new RandomAccessFile(file, "rw").getChannel();
+			map(Math.max(INITIAL_SIZE, channel.size()));
+			Index newIndex = new Index(1024);
+			if (exists && data.getInt(0) == FILE_MAGIC) {
+				scan(newIndex);
+			} else {
+				if (exists) {
+					log.error("Invalid store file {}, starting empty", file);
+				}
+				data.putInt(0, FILE_MAGIC);
+				data.putInt(4, PAGE_SIZE);
+				nextPage = 1;
+			}
+			index = newIndex;
+			log.debug("Opened {} with {} objects", file, index.size());
+		} catch (IOException err) {
+			log.error("I/O exception thrown when opening store in " + path);
+			throw (new RuntimeException(err));
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Map the file with at least the given size.
+	 * 
+	 * @param size minimum size
+	 * @throws IOException on mapping errors
+	 */
+	private void map(long size) throws IOException {
+		if (size > Integer.MAX_VALUE) {
+			throw new IOException("Store file " + file + " is full");
+		}
+		data = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+	}
+
+	/**
+	 * Read all runs of the file, adding used ones to the index and remembering the free ones.
+	 * 
+	 * @param newIndex index to fill
+	 */
+	private void scan(Index newIndex) {
+		int page = 1;
+		int pages = data.capacity() / PAGE_SIZE;
+		while (page < pages) {
+			int offset = page * PAGE_SIZE;
+			int used = data.getInt(offset);
+			int count = data.getInt(offset + 4);
+			if (count <= 0 || page + count > pages) {
+				// end of the runs
+				break;
+			}
+			if (used == RUN_FREE) {
+				freeRuns.put(page, count);
+			} else {
+				String key = readKey(page);
+				int hash = key.hashCode();
+				int other = newIndex.get(hash, key);
+				if (other > 0) {
+					// a replacement was interrupted, the pending run holds the complete new version
+					int stale = (used == RUN_PENDING) ? other : page;
+					int kept = (stale == page) ? other : page;
+					newIndex.remove(hash, key);
+					newIndex.put(hash, kept);
+					data.putInt(kept * PAGE_SIZE, RUN_USED);
+					int staleCount = data.getInt(stale * PAGE_SIZE + 4);
+					writeFreeHeader(stale, staleCount);
+					freeRuns.put(stale, staleCount);
+					log.info("Recovered interrupted save of {} in {}", key, file);
+				} else {
+					newIndex.put(hash, page);
+				}
+			}
+			page += count;
+		}
+		nextPage = page;
+	}
+
+	/**
+	 * Read the object id stored in a run.
+	 * 
+	 * @param page first page of the run
+	 * @return object id
+	 */
+	private String readKey(int page) {
+		int offset = page * PAGE_SIZE;
+		byte[] key = new byte[data.getInt(offset + 8)];
+		ByteBuffer buf = data.duplicate();
+		buf.position(offset + RUN_HEADER_SIZE);
+		buf.get(key);
+		try {
+			return new String(key, "UTF-8");
+		} catch (java.io.UnsupportedEncodingException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	/**
+	 * Read the serialized object stored in a run.
+	 * 
+	 * @param page first page of the run
+	 * @return serialized object
+	 */
+	private byte[] readData(int page) {
+		int offset = page * PAGE_SIZE;
+		int keyLength = data.getInt(offset + 8);
+		byte[] bytes = new byte[data.getInt(offset + 12)];
+		ByteBuffer buf = data.duplicate();
+		buf.position(offset + RUN_HEADER_SIZE + keyLength);
+		buf.get(bytes);
+		return bytes;
+	}
+
+	/**
+	 * Write an object to a new run and release the run of its previous version afterwards, the 
+	 * caller must hold the write lock.
+	 * 
+	 * @param id object id
+	 * @param bytes serialized object
+	 * @throws IOException if the file can't be extended
+	 */
+	private void write(String id, byte[] bytes) throws IOException {
+		byte[] key = id.getBytes("UTF-8");
+		int size = RUN_HEADER_SIZE + key.length + bytes.length;
+		int needed = (size + PAGE_SIZE - 1) / PAGE_SIZE;
+		int hash = id.hashCode();
+		int previous = index.get(hash, id);
+		int page = allocate(needed);
+		int offset = page * PAGE_SIZE;
+		ByteBuffer buf = data.duplicate();
+		buf.position(offset + 4);
+		buf.putInt(needed);
+		buf.putInt(key.length);
+		buf.putInt(bytes.length);
+		buf.put(key);
+		buf.put(bytes);
+		// mark as used after everything else has been written
+		if (previous > 0) {
+			// wins over the previous version when the file is opened after a crash
+			data.putInt(offset, RUN_PENDING);
+			index.remove(hash, id);
+			free(previous, data.getInt(previous * PAGE_SIZE + 4));
+		}
+		index.put(hash, page);
+		data.putInt(offset, RUN_USED);
+	}
+
+	/**
+	 * Find a run of free pages, extending the file if needed.
+	 * 
+	 * @param needed number of pages
+	 * @return first page of the run
+	 * @throws IOException if the file can't be extended
+	 */
+	private int allocate(int needed) throws IOException {
+		for (Map.Entry<Integer, Integer> run : freeRuns.entrySet()) {
+			int count = run.getValue();
+			if (count >= needed) {
+				int page = run.getKey();
+				freeRuns.remove(page);
+				if (count > needed) {
+					// keep the rest as a smaller free run
+					writeFreeHeader(page + needed, count - needed);
+					freeRuns.put(page + needed, count - needed);
+				}
+				return page;
+			}
+		}
+		int page = nextPage;
+		long required = (long) (page + needed + 1) * PAGE_SIZE;
+		if (required > data.capacity()) {
+			map(Math.max(required, Math.min(Integer.MAX_VALUE, (long) data.capacity() * 2)));
+		}
+		nextPage += needed;
+		return page;
+	}
+
+	/**
+	 * Mark a run as free and merge it with free neighbours.
+	 * 
+	 * @param page first page
+	 * @param count number of pages
+	 */
+	private void free(int page, int count) {
+		Integer next = freeRuns.remove(page + count);
+		if (next != null) {
+			count += next;
+		}
+		Map.Entry<Integer, Integer> previous = freeRuns.lowerEntry(page);
+		if (previous != null && previous.getKey() + previous.getValue() == page) {
+			page = previous.getKey();
+			count += previous.getValue();
+		}
+		writeFreeHeader(page, count);
+		freeRuns.put(page, count);
+	}
+
+	/**
+	 * Write the header of a free run.
+	 * 
+	 * @param page first page
+	 * @param count number of pages
+	 */
+	private void writeFreeHeader(int page, int count) {
+		int offset = page * PAGE_SIZE;
+		data.putInt(offset, RUN_FREE);
+		data.putInt(offset + 4, count);
+	}
+
+	/**
+	 * Serialize an object.
+	 * 
+	 * @param object object
+	 * @return serialized object
+	 * @throws IOException on serialization errors
+	 */
+	private byte[] serialize(IPersistable object) throws IOException {
+		IoBuffer buf = IoBuffer.allocate(256);
+		buf.setAutoExpand(true);
+		try {
+			Output out = new Output(buf);
+			out.writeString(object.getClass().getName());
+			object.serialize(out);
+			buf.flip();
+			byte[] bytes = new byte[buf.limit()];
+			buf.get(bytes);
+			return bytes;
+		} finally {
+			buf.free();
+		}
+	}
+
+	/**
+	 * Create an object from its serialized form.
+	 * 
+	 * @param id object id
+	 * @param bytes serialized object
+	 * @return object or null if it can't be created
+	 */
+	private IPersistable deserialize(String id, byte[] bytes) {
+		Input in = new Input(IoBuffer.wrap(bytes));
+		String className = new Deserializer().deserialize(in, String.class);
+		IPersistable result;
+		try {
+			Class<? extends IPersistable> theClass = Class.forName(className).asSubclass(IPersistable.class);
+			Constructor<? extends IPersistable> constructor = null;
+			// Try to create object by calling constructor with Input stream as parameter.
+			for (Class<?> interfaceClass : in.getClass().getInterfaces()) {
+				try {
+					constructor = theClass.getConstructor(interfaceClass);
+					break;
+				} catch (NoSuchMethodException err) {
+					// try the next one
+				}
+			}
+			if (constructor != null) {
+				result = constructor.newInstance(in);
+			} else {
+				result = theClass.getConstructor().newInstance();
+				result.deserialize(in);
+			}
+		} catch (Exception e) {
+			log.error("Could not create {} from class {}", new Object[] { id, className, e });
+			return null;
+		}
+		String name = getObjectName(id);
+		result.setName(name);
+		result.setPath(getObjectPath(id, name));
+		result.setStore(this);
+		return result;
+	}
+
+	/**
+	 * Return a loaded object if it is still referenced.
+	 * 
+	 * @param id object id
+	 * @return object or null
+	 */
+	private IPersistable getLive(String id) {
+		WeakReference<IPersistable> ref = live.get(id);
+		return ref != null ? ref.get() : null;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public boolean save(IPersistable object) {
+		open();
+		String id = getObjectId(object);
+		try {
+			byte[] bytes = serialize(object);
+			lock.writeLock().lock();
+			try {
+				write(id, bytes);
+			} finally {
+				lock.writeLock().unlock();
+			}
+		} catch (IOException e) {
+			log.error("Could not save {} in {}", new Object[] { id, file, e });
+			return false;
+		}
+		if (getLive(id) != object) {
+			live.put(id, new WeakReference<IPersistable>(object));
+		}
+		return true;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public IPersistable load(String name) {
+		IPersistable result = getLive(name);
+		if (result != null) {
+			return result;
+		}
+		byte[] bytes = read(name);
+		if (bytes == null) {
+			return null;
+		}
+		result = deserialize(name, bytes);
+		if (result != null) {
+			// another thread may have loaded it meanwhile
+			WeakReference<IPersistable> ref = new WeakReference<IPersistable>(result);
+			WeakReference<IPersistable> previous = live.putIfAbsent(name, ref);
+			if (previous != null) {
+				IPersistable other = previous.get();
+				if (other != null) {
+					return other;
+				}
+				live.put(name, ref);
+			}
+		}
+		return result;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public boolean load(IPersistable object) {
+		if (object.isPersistent()) {
+			// Already loaded
+			return true;
+		}
+		String id = getObjectId(object);
+		byte[] bytes = read(id);
+		if (bytes == null) {
+			return false;
+		}
+		Input in = new Input(IoBuffer.wrap(bytes));
+		String className = new Deserializer().deserialize(in, String.class);
+		if (!object.getClass().getName().equals(className)) {
+			log.error("The classes differ: {} != {}", object.getClass().getName(), className);
+			return false;
+		}
+		try {
+			object.deserialize(in);
+		} catch (IOException e) {
+			log.error("Could not load {}", id, e);
+			return false;
+		}
+		if (object.getStore() != this) {
+			object.setStore(this);
+		}
+		live.put(id, new WeakReference<IPersistable>(object));
+		return true;
+	}
+
+	/**
+	 * Read the serialized form of an object.
+	 * 
+	 * @param id object id
+	 * @return serialized object or null if it doesn't exist
+	 */
+	private byte[] read(String id) {
+		open();
+		lock.readLock().lock();
+		try {
+			int page = index.get(id.hashCode(), id);
+			return page > 0 ? readData(page) : null;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public boolean remove(String name) {
+		open();
+		live.remove(name);
+		lock.writeLock().lock();
+		try {
+			int hash = name.hashCode();
+			int page = index.get(hash, name);
+			if (page <= 0) {
+				return false;
+			}
+			index.remove(hash, name);
+			free(page, data.getInt(page * PAGE_SIZE + 4));
+			return true;
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public Set<String> getObjectNames() {
+		open();
+		Set<String> result = new HashSet<String>();
+		lock.readLock().lock();
+		try {
+			for (int page : index.pages()) {
+				result.add(readKey(page));
+			}
+		} finally {
+			lock.readLock().unlock();
+		}
+		return result;
+	}
+
+	/**
+	 * Returns all stored objects. The objects are loaded one by one while iterating.
+	 * 
+	 * @return objects
+	 */
+	@Override
+	public Collection<IPersistable> getObjects() {
+		final Set<String> names = getObjectNames();
+		return new AbstractCollection<IPersistable>() {
+
+			@Override
+			public Iterator<IPersistable> iterator() {
+				final Iterator<String> it = names.iterator();
+				return new Iterator<IPersistable>() {
+
+					private IPersistable next;
+
+					public boolean hasNext() {
+						while (next == null && it.hasNext()) {
+							// skip objects removed meanwhile
+							next = load(it.next());
+						}
+						return next != null;
+					}
+
+					public IPersistable next() {
+						if (!hasNext()) {
+							throw new NoSuchElementException();
+						}
+						IPersistable result = next;
+						next = null;
+						return result;
+					}
+
+					public void remove() {
+						throw new UnsupportedOperationException();
+					}
+				};
+			}
+
+			@Override
+			public int size() {
+				return names.size();
+			}
+		};
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void notifyClose() {
+		lock.writeLock().lock();
+		try {
+			if (index != null) {
+				data.force();
+				channel.close();
+				data = null;
+				index = null;
+				freeRuns.clear();
+			}
+		} catch (IOException e) {
+			log.warn("Could not close {}", file, e);
+		} finally {
+			lock.writeLock().unlock();
+		}
+		live.clear();
+		super.notifyClose();
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public String toString() {
+		return "MappedPersistence [" + file + "]";
+	}
+
+	/**
+	 * Open addressing hash table in a direct buffer. Each slot holds the hash of an object id and
+	 * the first page of its run, the id itself is compared by reading it from the file.
+	 */
+	private final class Index {
+
+		/** Slot marker for removed entries */
+		private static final int REMOVED = -1;
+
+		private ByteBuffer slots;
+
+		private int capacity;
+
+		private int size;
+
+		private int removed;
+
+		Index(int capacity) {
+			this.capacity = capacity;
+			slots = ByteBuffer.allocateDirect(capacity * 8);
+		}
+
+		int size() {
+			return size;
+		}
+
+		/**
+		 * Find the page of an object.
+		 * 
+		 * @param hash hash of the id
+		 * @param id object id
+		 * @return first page or 0 if not found
+		 */
+		int get(int hash, String id) {
+			int slot = find(hash, id);
+			return slot >= 0 ? slots.getInt(slot * 8 + 4) : 0;
+		}
+
+		private int find(int hash, String id) {
+			int mask = capacity - 1;
+			for (int i = spread(hash) & mask, n = 0; n < capacity; i = (i + 1) & mask, n++) {
+				int page = slots.getInt(i * 8 + 4);
+				if (page == 0) {
+					return -1;
+				}
+				if (page != REMOVED && slots.getInt(i * 8) == hash && readKey(page).equals(id)) {
+					return i;
+				}
+			}
+			return -1;
+		}
+
+		/**
+		 * Add an object which is not in the index yet.
+		 * 
+		 * @param hash hash of the id
+		 * @param page first page
+		 */
+		void put(int hash, int page) {
+			if ((size + removed + 1) * 4 > capacity * 3) {
+				resize(size * 2 > capacity / 2 ? capacity * 2 : capacity);
+			}
+			int mask = capacity - 1;
+			int i = spread(hash) & mask;
+			while (true) {
+				int current = slots.getInt(i * 8 + 4);
+				if (current == 0 || current == REMOVED) {
+					if (current == REMOVED) {
+						removed--;
+					}
+					slots.putInt(i * 8, hash);
+					slots.putInt(i * 8 + 4, page);
+					size++;
+					return;
+				}
+				i = (i + 1) & mask;
+			}
+		}
+
+		void remove(int hash, String id) {
+			int slot = find(hash, id);
+			if (slot >= 0) {
+				slots.putInt(slot * 8 + 4, REMOVED);
+				size--;
+				removed++;
+			}
+		}
+
+		/**
+		 * Returns the pages of all objects.
+		 * 
+		 * @return first pages
+		 */
+		int[] pages() {
+			int[] result = new int[size];
+			int n = 0;
+			for (int i = 0; i < capacity; i++) {
+				int page = slots.getInt(i * 8 + 4);
+				if (page > 0) {
+					result[n++] = page;
+				}
+			}
+			return result;
+		}
+
+		private void resize(int newCapacity) {
+			ByteBuffer old = slots;
+			int oldCapacity = capacity;
+			capacity = newCapacity;
+			slots = ByteBuffer.allocateDirect(capacity * 8);
+			size = 0;
+			removed = 0;
+			for (int i = 0; i < oldCapacity; i++) {
+				int page = old.getInt(i * 8 + 4);
+				if (page > 0) {
+					put(old.getInt(i * 8), page);
+				}
+			}
+		}
+
+		private int spread(int hash) {
+			hash ^= (hash >>> 20) ^ (hash >>> 12);
+			return hash ^ (hash >>> 7) ^ (hash >>> 4);
+		}
+
+	}
+
+}
@@ -0,0 +1,132 @@
+package org.red5.server.service;
+
+/*
+ * RED5 Open Source Flash Server - http://code.google.com/p/red5/
+ * 
+ * Copyright (c) 2006-2011 by respective authors (see below). All rights reserved.
+ * 
+ * This library is free software; you can redistribute it and/or modify it under the 
+ * terms of the GNU Lesser General Public License as published by the Free Software 
+ * Foundation; either version 2.1 of the License, or (at your option) any later 
+ * version. 
+ * 
+ * This library is distributed in the hope that it will be useful, but WITHOUT ANY 
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A 
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License along 
+ * with this library; if not, write to the Free Software Foundation, Inc., 
+ * 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA 
+ */
+
+import org.red5.server.api.IConnection.Encoding;
+import org.red5.server.api.service.IServiceCall;
+
+/**
+ * Service call sent unchanged to many connections. The method name and the arguments are
+ * serialized once per encoding by the first connection that needs them and the bytes are reused
+ * by all other connections, which only add their own invoke id.
+ * 
+ * @author The Red5 Project (red5@osflash.org)
+ */
+public class BroadcastCall extends Call {
+
+	private static final long serialVersionUID = 7473812745317513926L;
+
+	/**
+	 * Serialized action (method name)
+	 */
+	private transient volatile byte[] encodedAction;
+
+	/**
+	 * Arguments serialized with AMF0
+	 */
+	private transient volatile byte[] encodedArgumentsAMF0;
+
+	/**
+	 * Arguments serialized with AMF3
+	 */
+	private transient volatile byte[] encodedArgumentsAMF3;
+
+	public BroadcastCall() {
+	}
+
+	/**
+	 * Creates broadcast call from method name and array of call parameters
+	 * 
+	 * @param method        Method name
+	 * @param args          Call parameters, must not be modified after creation
+	 */
+	public BroadcastCall(String method, Object[] args) {
+		super(method, args);
+	}
+
+	/**
+	 * Creates a call for a single connection sharing the serialized form of this call. Invokes
+	 * need one per connection as results are tracked per connection; notifications can use this
+	 * call directly.
+	 * 
+	 * @return pending call
+	 */
+	public BroadcastPendingCall newPendingCall() {
+		return new BroadcastPendingCall(this);
+	}
+
+	/**
+	 * Getter for the serialized action.
+	 * 
+	 * @return serialized action or null if not yet serialized
+	 */
+	public byte[] getEncodedAction() {
+		return encodedAction;
+	}
+
+	/**
+	 * Setter for the serialized action.
+	 * 
+	 * @param encodedAction serialized action
+	 */
+	public void setEncodedAction(byte[] encodedAction) {
+		this.encodedAction = encodedAction;
+	}
+
+	/**
+	 * Getter for the arguments serialized with the given encoding.
+	 * 
+	 * @param encoding object encoding
+	 * @return serialized arguments or null if not yet serialized
+	 */
+	public byte[] getEncodedArguments(Encoding encoding) {
+		return encoding == Encoding.AMF3 ? encodedArgumentsAMF3 : encodedArgumentsAMF0;
+	}
+
+	/**
+	 * Setter for the arguments serialized with the given encoding.
+	 * 
+	 * @param encoding object encoding
+	 * @param encodedArguments serialized arguments
+	 */
+	public void setEncodedArguments(Encoding encoding, byte[] encodedArguments) {
+		if (encoding == Encoding.AMF3) {
+			encodedArgumentsAMF3 = encodedArguments;
+		} else {
+			encodedArgumentsAMF0 = encodedArguments;
+		}
+	}
+
+	/**
+	 * Returns the broadcast call the given call belongs to.
+	 * 
+	 * @param call service call
+	 * @return broadcast call or null if the call is not part of a broadcast
+	 */
+	public static BroadcastCall getBroadcastCall(IServiceCall call) {
+		if (call instanceof BroadcastCall) {
+			return (BroadcastCall) call;
+		} else if (call instanceof BroadcastPendingCall) {
+			return ((BroadcastPendingCall) call).getBroadcastCall();
+		}
+		return null;
+	}
+
+}
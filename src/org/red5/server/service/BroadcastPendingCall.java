@@ -0,0 +1,59 @@
+package org.red5.server.service;
+
+/*
+ * RED5 Open Source Flash Server - http://code.google.com/p/red5/
+ * 
+ * Copyright (c) 2006-2011 by respective authors (see below). All rights reserved.
+ * 
+ * This library is free software; you can redistribute it and/or modify it under the 
+ * terms of the GNU Lesser General Public License as published by the Free Software 
+ * Foundation; either version 2.1 of the License, or (at your option) any later 
+ * version. 
+ * 
+ * This library is distributed in the hope that it will be useful, but WITHOUT ANY 
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A 
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License along 
+ * with this library; if not, write to the Free Software Foundation, Inc., 
+ * 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA 
+ */
+
+/**
+ * Pending call for a single connection taking part in a broadcast. The result is kept per
+ * connection, the serialized form is shared through the {@link BroadcastCall}.
+ * 
+ * @author The Red5 Project (red5@osflash.org)
+ */
+public class BroadcastPendingCall extends PendingCall {
+
+	private static final long serialVersionUID = -2406314734569183468L;
+
+	/**
+	 * Shared broadcast call
+	 */
+	private transient BroadcastCall broadcastCall;
+
+	public BroadcastPendingCall() {
+	}
+
+	/**
+	 * Creates pending call for the given broadcast.
+	 * 
+	 * @param broadcastCall shared broadcast call
+	 */
+	public BroadcastPendingCall(BroadcastCall broadcastCall) {
+		super(broadcastCall.getServiceName(), broadcastCall.getServiceMethodName(), broadcastCall.getArguments());
+		this.broadcastCall = broadcastCall;
+	}
+
+	/**
+	 * Getter for the shared broadcast call.
+	 * 
+	 * @return broadcast call
+	 */
+	public BroadcastCall getBroadcastCall() {
+		return broadcastCall;
+	}
+
+}
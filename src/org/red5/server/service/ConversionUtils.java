@@ -19,7 +19,13 @@ package org.red5.server.service;
  * 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA 
  */
 
+import java.beans.BeanInfo;
+import java.beans.IntrospectionException;
+import java.beans.Introspector;
+import java.beans.PropertyDescriptor;
 import java.lang.reflect.Array;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -32,6 +38,9 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.regex.Pattern;
 
 import org.apache.commons.beanutils.BeanMap;
 import org.apache.commons.beanutils.BeanUtils;
@@ -56,7 +65,7 @@ public class ConversionUtils {
 
 	private static final Class<?>[] WRAPPERS = { Boolean.class, Byte.class, Character.class, Short.class, Integer.class, Long.class, Float.class, Double.class };
 
-	private static final String NUMERIC_TYPE = "[-]?\\b\\d+\\b|[-]?\\b[0-9]*\\.?[0-9]+(?:[eE][-+]?[0-9]+)?\\b";
+	private static final Pattern NUMERIC_TYPE = Pattern.compile("[-]?\\b\\d+\\b|[-]?\\b[0-9]*\\.?[0-9]+(?:[eE][-+]?[0-9]+)?\\b");
 
 	/**
 	 * Parameter chains
@@ -77,6 +86,26 @@ public class ConversionUtils {
 	 */
 	private static Map<Class<?>, Class<?>[]> parameterMap = new HashMap<Class<?>, Class<?>[]>();
 
+	/** Compiled converters keyed by source and target class */
+	private static final ConcurrentMap<ConverterKey, TypeConverter> converters = new ConcurrentHashMap<ConverterKey, TypeConverter>();
+
+	/** Compiled map to bean converters keyed by bean class */
+	private static final ConcurrentMap<Class<?>, BeanConverter> beanConverters = new ConcurrentHashMap<Class<?>, BeanConverter>();
+
+	/** Converter returning the source as-is */
+	private static final TypeConverter IDENTITY = new TypeConverter() {
+		public Object convert(Object source) {
+			return source;
+		}
+	};
+
+	/** Converter returning the string representation of the source */
+	private static final TypeConverter TO_STRING = new TypeConverter() {
+		public Object convert(Object source) {
+			return source.toString();
+		}
+	};
+
 	static {
 		for (int i = 0; i < PRIMITIVES.length; i++) {
 			primitiveMap.put(PRIMITIVES[i], WRAPPERS[i]);
@@ -93,7 +122,6 @@ public class ConversionUtils {
 	 * @throws ConversionException           If object can't be converted
 	 *
 	 */
-	@SuppressWarnings({ "unchecked", "rawtypes" })
 	public static Object convert(Object source, Class<?> target) throws ConversionException {
 		if (target == null) {
 			throw new ConversionException("Unable to perform conversion, target was null");
@@ -107,50 +135,178 @@ public class ConversionUtils {
 			// Don't convert NaN values
 			return source;
 		}
+		return getConverter(source.getClass(), target).convert(source);
+	}
 
-		//log.trace("Source: {} Target: {}", source.getClass(), target);
-		if (IConnection.class.isAssignableFrom(source.getClass()) && (!target.equals(IConnection.class) || !target.equals(IRemotingConnection.class))) {
-			throw new ConversionException("IConnection must match exactly");
+	/**
+	 * Returns the converter for the given source and target classes, compiling and caching it on
+	 * first use. The decision of how to convert is taken once per class pair instead of on every
+	 * conversion.
+	 * 
+	 * @param sourceClass class of the values to be converted
+	 * @param target target class
+	 * @return converter
+	 */
+	public static TypeConverter getConverter(Class<?> sourceClass, Class<?> target) {
+		ConverterKey key = new ConverterKey(sourceClass, target);
+		TypeConverter converter = converters.get(key);
+		if (converter == null) {
+			converter = compileConverter(sourceClass, target);
+			if (sourceClass.equals(Float.class) || sourceClass.equals(Double.class)) {
+				converter = new NaNConverter(converter);
+			}
+			TypeConverter existing = converters.putIfAbsent(key, converter);
+			if (existing != null) {
+				converter = existing;
+			}
 		}
-		if (target.isInstance(source)) {
-			return source;
+		return converter;
+	}
+
+	/**
+	 * Decides how values of the source class are converted to the target class.
+	 * 
+	 * @param sourceClass source class
+	 * @param target target class
+	 * @return converter
+	 */
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	private static TypeConverter compileConverter(final Class<?> sourceClass, final Class<?> target) {
+		log.trace("Compiling converter - source: {} target: {}", sourceClass, target);
+		if (IConnection.class.isAssignableFrom(sourceClass)) {
+			return new FailingConverter("IConnection must match exactly");
 		}
-		if (target.isAssignableFrom(source.getClass())) {
-			return source;
+		if (target.isAssignableFrom(sourceClass)) {
+			return IDENTITY;
 		}
 		if (target.isArray()) {
-			return convertToArray(source, target);
+			return new TypeConverter() {
+				public Object convert(Object source) {
+					return convertToArray(source, target);
+				}
+			};
 		}
 		if (target.equals(String.class)) {
-			return source.toString();
-		}
-		if (target.isPrimitive()) {
-			return convertToWrappedPrimitive(source, primitiveMap.get(target));
+			return TO_STRING;
 		}
-		if (wrapperMap.containsKey(target)) {
-			return convertToWrappedPrimitive(source, target);
+		if (target.isPrimitive() || wrapperMap.containsKey(target)) {
+			final Class<?> wrapper = target.isPrimitive() ? primitiveMap.get(target) : target;
+			if (wrapper.isAssignableFrom(sourceClass)) {
+				return IDENTITY;
+			}
+			if (Number.class.isAssignableFrom(sourceClass)) {
+				return compileNumberConverter(wrapper);
+			}
+			return new TypeConverter() {
+				public Object convert(Object source) {
+					return convertToWrappedPrimitive(source, wrapper);
+				}
+			};
 		}
 		if (target.equals(Map.class)) {
-			return convertBeanToMap(source);
+			return new TypeConverter() {
+				public Object convert(Object source) {
+					return convertBeanToMap(source);
+				}
+			};
 		}
 		if (target.equals(List.class) || target.equals(Collection.class)) {
-			if (source.getClass().equals(LinkedHashMap.class)) {
-				return convertMapToList((LinkedHashMap<?, ?>) source);
-			} else if (source.getClass().isArray()) {
-				return convertArrayToList((Object[]) source);
+			if (sourceClass.equals(LinkedHashMap.class)) {
+				return new TypeConverter() {
+					public Object convert(Object source) {
+						return convertMapToList((LinkedHashMap<?, ?>) source);
+					}
+				};
+			} else if (sourceClass.isArray() && !sourceClass.getComponentType().isPrimitive()) {
+				return new TypeConverter() {
+					public Object convert(Object source) {
+						return convertArrayToList((Object[]) source);
+					}
+				};
 			}
 		}
-		if (target.equals(Set.class) && source.getClass().isArray()) {
-			return convertArrayToSet((Object[]) source);
-		}
-		if (target.equals(Set.class) && source instanceof List) {
-			return new HashSet((List) source);
+		if (target.equals(Set.class)) {
+			if (sourceClass.isArray() && !sourceClass.getComponentType().isPrimitive()) {
+				return new TypeConverter() {
+					public Object convert(Object source) {
+						return convertArrayToSet((Object[]) source);
+					}
+				};
+			} else if (List.class.isAssignableFrom(sourceClass)) {
+				return new TypeConverter() {
+					public Object convert(Object source) {
+						return new HashSet((List) source);
+					}
+				};
+			}
 		}
 		//Trac #352
-		if (source instanceof Map) {
-			return convertMapToBean((Map) source, target);
+		if (Map.class.isAssignableFrom(sourceClass)) {
+			final BeanConverter beanConverter = getBeanConverter(target);
+			return new TypeConverter() {
+				public Object convert(Object source) {
+					return beanConverter.populate((Map<?, ?>) source);
+				}
+			};
 		}
-		throw new ConversionException(String.format("Unable to preform conversion from %s to %s", source, target));
+		return new TypeConverter() {
+			public Object convert(Object source) {
+				throw new ConversionException(String.format("Unable to preform conversion from %s to %s", source, target));
+			}
+		};
+	}
+
+	/**
+	 * Compiles a converter from any number to the given primitive wrapper.
+	 * 
+	 * @param wrapper primitive wrapper type
+	 * @return converter
+	 */
+	private static TypeConverter compileNumberConverter(final Class<?> wrapper) {
+		if (wrapper.equals(Boolean.class)) {
+			return new TypeConverter() {
+				public Object convert(Object source) {
+					return Boolean.valueOf(((Number) source).intValue() == 1);
+				}
+			};
+		} else if (wrapper.equals(Double.class)) {
+			return new TypeConverter() {
+				public Object convert(Object source) {
+					return Double.valueOf(((Number) source).doubleValue());
+				}
+			};
+		} else if (wrapper.equals(Long.class)) {
+			return new TypeConverter() {
+				public Object convert(Object source) {
+					return Long.valueOf(((Number) source).longValue());
+				}
+			};
+		} else if (wrapper.equals(Float.class)) {
+			return new TypeConverter() {
+				public Object convert(Object source) {
+					return Float.valueOf(((Number) source).floatValue());
+				}
+			};
+		} else if (wrapper.equals(Integer.class)) {
+			return new TypeConverter() {
+				public Object convert(Object source) {
+					return Integer.valueOf(((Number) source).intValue());
+				}
+			};
+		} else if (wrapper.equals(Short.class)) {
+			return new TypeConverter() {
+				public Object convert(Object source) {
+					return Short.valueOf(((Number) source).shortValue());
+				}
+			};
+		} else if (wrapper.equals(Byte.class)) {
+			return new TypeConverter() {
+				public Object convert(Object source) {
+					return Byte.valueOf(((Number) source).byteValue());
+				}
+			};
+		}
+		return new FailingConverter(String.format("Unable to convert number to: %s", wrapper));
 	}
 
 	/**
@@ -215,7 +371,7 @@ public class ConversionUtils {
 			//NumberFormatException
 			if (Number.class.isAssignableFrom(wrapper)) {
 				//test for int or fp number
-				if (!source.toString().matches(NUMERIC_TYPE)) {
+				if (!NUMERIC_TYPE.matcher(source.toString()).matches()) {
 					throw new ConversionException(String.format("Unable to convert string %s its not a number type: %s", source, wrapper));
 				}
 			}
@@ -382,20 +538,25 @@ public class ConversionUtils {
 	 * @throws ConversionException on failure
 	 */
 	public static Object convertMapToBean(Map<?, ?> source, Class<?> target) throws ConversionException {
-		Object bean = newInstance(target.getClass().getName());
-		if (bean == null) {
-			//try with just the target name as specified in Trac #352
-			bean = newInstance(target.getName());
-			if (bean == null) {
-				throw new ConversionException("Unable to create bean using empty constructor");
+		return getBeanConverter(target).populate(source);
+	}
+
+	/**
+	 * Returns the compiled map to bean converter for the given class.
+	 * 
+	 * @param target bean class
+	 * @return converter
+	 */
+	private static BeanConverter getBeanConverter(Class<?> target) {
+		BeanConverter converter = beanConverters.get(target);
+		if (converter == null) {
+			converter = new BeanConverter(target);
+			BeanConverter existing = beanConverters.putIfAbsent(target, converter);
+			if (existing != null) {
+				converter = existing;
 			}
 		}
-		try {
-			BeanUtils.populate(bean, source);
-		} catch (Exception e) {
-			throw new ConversionException("Error populating bean", e);
-		}
-		return bean;
+		return converter;
 	}
 
 	/**
@@ -438,4 +599,209 @@ public class ConversionUtils {
 		return instance;
 	}
 
+	/**
+	 * Removes all compiled converters. Should be called when classes used as conversion targets
+	 * are reloaded.
+	 */
+	public static void clearConverters() {
+		converters.clear();
+		beanConverters.clear();
+	}
+
+	/**
+	 * Removes the compiled converters from or to classes loaded by the given class loader or one
+	 * of its children, so they do not keep an undeployed application's classes.
+	 * 
+	 * @param classLoader class loader of the application
+	 */
+	public static void clearConverters(ClassLoader classLoader) {
+		Iterator<ConverterKey> keys = converters.keySet().iterator();
+		while (keys.hasNext()) {
+			ConverterKey key = keys.next();
+			if (isLoadedBy(key.source, classLoader) || isLoadedBy(key.target, classLoader)) {
+				keys.remove();
+			}
+		}
+		Iterator<Class<?>> targets = beanConverters.keySet().iterator();
+		while (targets.hasNext()) {
+			if (isLoadedBy(targets.next(), classLoader)) {
+				targets.remove();
+			}
+		}
+	}
+
+	/**
+	 * Checks whether a class was loaded by the given class loader or one of its children.
+	 * 
+	 * @param clazz class
+	 * @param classLoader class loader
+	 * @return true if the class loader is the class's loader or one of its parents
+	 */
+	static boolean isLoadedBy(Class<?> clazz, ClassLoader classLoader) {
+		for (ClassLoader cl = clazz.getClassLoader(); cl != null; cl = cl.getParent()) {
+			if (cl == classLoader) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Registry key for a source and target class pair.
+	 */
+	private static final class ConverterKey {
+
+		private final Class<?> source;
+
+		private final Class<?> target;
+
+		ConverterKey(Class<?> source, Class<?> target) {
+			this.source = source;
+			this.target = target;
+		}
+
+		@Override
+		public int hashCode() {
+			return 31 * source.hashCode() + target.hashCode();
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof ConverterKey)) {
+				return false;
+			}
+			ConverterKey other = (ConverterKey) obj;
+			return source == other.source && target == other.target;
+		}
+
+	}
+
+	/**
+	 * Converter which always fails with the same message.
+	 */
+	private static final class FailingConverter implements TypeConverter {
+
+		private final String message;
+
+		FailingConverter(String message) {
+			this.message = message;
+		}
+
+		public Object convert(Object source) {
+			throw new ConversionException(message);
+		}
+
+	}
+
+	/**
+	 * Passes NaN values through unconverted, as values that are not a number have no meaning in
+	 * any target type.
+	 */
+	private static final class NaNConverter implements TypeConverter {
+
+		private final TypeConverter delegate;
+
+		NaNConverter(TypeConverter delegate) {
+			this.delegate = delegate;
+		}
+
+		public Object convert(Object source) {
+			if ((source instanceof Float && ((Float) source).isNaN()) || (source instanceof Double && ((Double) source).isNaN())) {
+				return source;
+			}
+			return delegate.convert(source);
+		}
+
+	}
+
+	/**
+	 * Populates new instances of a bean class from maps. The constructor and the writable
+	 * properties of the class are looked up once; nested property names fall back to beanutils.
+	 */
+	private static final class BeanConverter {
+
+		private final Class<?> target;
+
+		private final Constructor<?> constructor;
+
+		private final Map<String, PropertyDescriptor> properties = new HashMap<String, PropertyDescriptor>();
+
+		BeanConverter(Class<?> target) {
+			this.target = target;
+			Constructor<?> ctor = null;
+			try {
+				ctor = target.getDeclaredConstructor();
+				ctor.setAccessible(true);
+			} catch (Exception e) {
+				log.debug("No empty constructor found for {}", target);
+			}
+			this.constructor = ctor;
+			try {
+				BeanInfo info = Introspector.getBeanInfo(target);
+				for (PropertyDescriptor descriptor : info.getPropertyDescriptors()) {
+					if (descriptor.getWriteMethod() != null) {
+						properties.put(descriptor.getName(), descriptor);
+					}
+				}
+			} catch (IntrospectionException e) {
+				log.warn("Unable to introspect bean class: {}", target, e);
+			}
+		}
+
+		Object populate(Map<?, ?> source) throws ConversionException {
+			Object bean = newBean();
+			try {
+				for (Map.Entry<?, ?> entry : source.entrySet()) {
+					if (entry.getKey() == null) {
+						continue;
+					}
+					String name = entry.getKey().toString();
+					Object value = entry.getValue();
+					PropertyDescriptor descriptor = properties.get(name);
+					if (descriptor == null) {
+						if (name.indexOf('.') != -1 || name.indexOf('[') != -1 || name.indexOf('(') != -1) {
+							// nested, indexed or mapped property
+							BeanUtils.setProperty(bean, name, value);
+						}
+						continue;
+					}
+					Class<?> type = descriptor.getPropertyType();
+					if (value == null) {
+						if (type.isPrimitive()) {
+							continue;
+						}
+					} else if (!type.isInstance(value)) {
+						value = convert(value, type);
+					}
+					descriptor.getWriteMethod().invoke(bean, value);
+				}
+			} catch (ConversionException e) {
+				throw new ConversionException("Error populating bean", e);
+			} catch (InvocationTargetException e) {
+				throw new ConversionException("Error populating bean", e.getCause());
+			} catch (Exception e) {
+				throw new ConversionException("Error populating bean", e);
+			}
+			return bean;
+		}
+
+		private Object newBean() throws ConversionException {
+			if (constructor != null) {
+				try {
+					return constructor.newInstance();
+				} catch (Exception e) {
+					log.error("Error creating instance of: {}", target, e);
+				}
+			} else {
+				//try with just the target name as specified in Trac #352
+				Object bean = newInstance(target.getName());
+				if (bean != null) {
+					return bean;
+				}
+			}
+			throw new ConversionException("Unable to create bean using empty constructor");
+		}
+
+	}
+
 }
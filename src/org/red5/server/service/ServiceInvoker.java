@@ -21,10 +21,18 @@ package org.red5.server.service;
 
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.red5.annotations.DeclarePrivate;
 import org.red5.annotations.DeclareProtected;
@@ -34,7 +42,11 @@ import org.red5.server.api.Red5;
 import org.red5.server.api.service.IPendingServiceCall;
 import org.red5.server.api.service.IServiceCall;
 import org.red5.server.api.service.IServiceInvoker;
+import org.apache.commons.beanutils.ConversionException;
 import org.red5.server.exception.ClientDetailsException;
+import org.red5.server.metrics.Counter;
+import org.red5.server.metrics.HistogramGroup;
+import org.red5.server.metrics.MetricsRegistry;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -51,6 +63,16 @@ public class ServiceInvoker implements IServiceInvoker {
 	 */
 	private static final Logger log = LoggerFactory.getLogger(ServiceInvoker.class);
 
+	/**
+	 * Call latency by method name
+	 */
+	private static final HistogramGroup callTimes = MetricsRegistry.getInstance().getHistogramGroup("service.invoke", 256);
+
+	/**
+	 * Calls that failed after the method was found
+	 */
+	private static final Counter callFailures = MetricsRegistry.getInstance().getCounter("service.invoke.failures");
+
 	/**
 	 * Service name
 	 */
@@ -61,6 +83,36 @@ public class ServiceInvoker implements IServiceInvoker {
 	 */
 	private Set<IServiceResolver> serviceResolvers = new HashSet<IServiceResolver>();
 
+	/**
+	 * Resolved methods, keyed by service class, method name and argument types
+	 */
+	private final ConcurrentMap<InvocationKey, ResolvedMethod> methodCache = new ConcurrentHashMap<InvocationKey, ResolvedMethod>();
+
+	/**
+	 * Number of cached resolutions by service class and method name
+	 */
+	private final ConcurrentMap<InvocationKey, AtomicInteger> signatureCounts = new ConcurrentHashMap<InvocationKey, AtomicInteger>();
+
+	/**
+	 * Maximum number of resolved methods to keep, zero disables the cache
+	 */
+	private int methodCacheSize = 4096;
+
+	/**
+	 * Maximum number of argument type signatures to keep for one method of a service class
+	 */
+	private int methodSignatureLimit = 16;
+
+	/**
+	 * Method cache hit count
+	 */
+	private final AtomicLong cacheHits = new AtomicLong();
+
+	/**
+	 * Method cache miss count
+	 */
+	private final AtomicLong cacheMisses = new AtomicLong();
+
 	/**
 	 * Setter for service resolvers.
 	 * 
@@ -116,11 +168,125 @@ public class ServiceInvoker implements IServiceInvoker {
 		return invoke(call, service);
 	}
 
+	/**
+	 * Sets the maximum number of resolved methods to cache. Zero disables caching. The cache is
+	 * emptied when it is full.
+	 * 
+	 * @param methodCacheSize maximum number of cached resolutions
+	 */
+	public void setMethodCacheSize(int methodCacheSize) {
+		this.methodCacheSize = methodCacheSize;
+		if (methodCacheSize <= 0) {
+			clearMethodCache();
+		}
+	}
+
+	/**
+	 * Sets the maximum number of argument type signatures cached for one method, further
+	 * signatures are resolved on every call. As the types come from the clients, this keeps
+	 * them from flooding the cache.
+	 * 
+	 * @param methodSignatureLimit maximum number of cached resolutions per method
+	 */
+	public void setMethodSignatureLimit(int methodSignatureLimit) {
+		this.methodSignatureLimit = methodSignatureLimit;
+	}
+
+	/**
+	 * @return maximum number of cached resolutions per method
+	 */
+	public int getMethodSignatureLimit() {
+		return methodSignatureLimit;
+	}
+
+	/**
+	 * @return maximum number of cached resolutions
+	 */
+	public int getMethodCacheSize() {
+		return methodCacheSize;
+	}
+
+	/**
+	 * @return number of invocations served from the method cache
+	 */
+	public long getCacheHits() {
+		return cacheHits.get();
+	}
+
+	/**
+	 * @return number of invocations which required a method lookup
+	 */
+	public long getCacheMisses() {
+		return cacheMisses.get();
+	}
+
+	/**
+	 * Removes all cached method resolutions. Should be called when service classes are reloaded
+	 * or applications are undeployed.
+	 */
+	public void clearMethodCache() {
+		methodCache.clear();
+		signatureCounts.clear();
+	}
+
+	/**
+	 * Removes the cached method resolutions involving classes loaded by the given class loader or
+	 * one of its children, so the invoker does not keep an undeployed application's classes.
+	 *
+	 * @param classLoader class loader of the application
+	 */
+	public void clearMethodCache(ClassLoader classLoader) {
+		Iterator<InvocationKey> keys = methodCache.keySet().iterator();
+		while (keys.hasNext()) {
+			InvocationKey key = keys.next();
+			if (key.isLoadedBy(classLoader)) {
+				keys.remove();
+				AtomicInteger count = signatureCounts.get(key.getMethodKey());
+				if (count != null) {
+					count.decrementAndGet();
+				}
+			}
+		}
+		keys = signatureCounts.keySet().iterator();
+		while (keys.hasNext()) {
+			if (keys.next().isLoadedBy(classLoader)) {
+				keys.remove();
+			}
+		}
+	}
+
+	/**
+	 * Caches a method resolution unless its method has reached the signature limit.
+	 * 
+	 * @param key service class, method name and argument types
+	 * @param resolved resolution
+	 */
+	private void cacheMethod(InvocationKey key, ResolvedMethod resolved) {
+		if (methodCache.size() >= methodCacheSize) {
+			// start over rather than never admit another resolution
+			clearMethodCache();
+		}
+		InvocationKey methodKey = key.getMethodKey();
+		AtomicInteger count = signatureCounts.get(methodKey);
+		if (count == null) {
+			count = new AtomicInteger();
+			AtomicInteger existing = signatureCounts.putIfAbsent(methodKey, count);
+			if (existing != null) {
+				count = existing;
+			}
+		}
+		if (count.incrementAndGet() > methodSignatureLimit || methodCache.putIfAbsent(key, resolved) != null) {
+			count.decrementAndGet();
+		}
+	}
+
 	/** {@inheritDoc} */
 	public boolean invoke(IServiceCall call, Object service) {
 		IConnection conn = Red5.getConnectionLocal();
 		String methodName = call.getServiceMethodName();
-		log.debug("Service: {} name: {} method: {}", new Object[] { service, call.getServiceName(), methodName });
+		if (log.isDebugEnabled()) {
+			log.debug("Service: {} name: {} method: {}", new Object[] { service, call.getServiceName(), methodName });
+		}
 		//pull off the prefixes since java doesnt allow this on a method name
 		if (methodName.charAt(0) == '@') {
 			log.debug("Method name contained an illegal prefix, it will be removed: {}", methodName);
@@ -132,67 +298,92 @@ public class ServiceInvoker implements IServiceInvoker {
 		if (args != null) {
 			argsWithConnection = new Object[args.length + 1];
 			argsWithConnection[0] = conn;
-			for (int i = 0; i < args.length; i++) {
-				log.debug("{} => {}", i, args[i]);
-                if (args[i] != null) {
-    				log.trace("Arg type: {}", args[i].getClass().getName());
-                }
-				argsWithConnection[i + 1] = args[i];
-			}
+			System.arraycopy(args, 0, argsWithConnection, 1, args.length);
 		} else {
 			argsWithConnection = new Object[] { conn };
 		}
-		// find the method
-		Object[] methodResult = null;
-		// First, search for method with the connection as first parameter.
-		methodResult = ServiceUtils.findMethodWithExactParameters(service, methodName, argsWithConnection);
-		if (methodResult.length == 0 || methodResult[0] == null) {
-			// Second, search for method without the connection as first parameter.
-			methodResult = ServiceUtils.findMethodWithExactParameters(service, methodName, args);
+		// look for a previous resolution of the same method with the same argument types
+		InvocationKey key = null;
+		ResolvedMethod resolved = null;
+		Object[] params = null;
+		if (methodCacheSize > 0) {
+			key = new InvocationKey(service.getClass(), methodName, ConversionUtils.convertParams(argsWithConnection));
+			resolved = methodCache.get(key);
+			if (resolved != null) {
+				try {
+					params = resolved.prepareParameters(args, argsWithConnection);
+					cacheHits.incrementAndGet();
+				} catch (ConversionException e) {
+					// same types but the values could not be converted, do a full lookup
+					log.debug("Cached method {} could not convert parameters, resolving again", resolved.method);
+					resolved = null;
+				}
+			}
+		}
+		if (resolved == null) {
+			cacheMisses.incrementAndGet();
+			// find the method
+			Object[] methodResult = null;
+			int mode = ResolvedMethod.EXACT_WITH_CONNECTION;
+			// First, search for method with the connection as first parameter.
+			methodResult = ServiceUtils.findMethodWithExactParameters(service, methodName, argsWithConnection);
 			if (methodResult.length == 0 || methodResult[0] == null) {
-				// Third, search for method with the connection as first parameter in a list argument.
-				methodResult = ServiceUtils.findMethodWithListParameters(service, methodName, argsWithConnection);
+				// Second, search for method without the connection as first parameter.
+				mode = ResolvedMethod.EXACT;
+				methodResult = ServiceUtils.findMethodWithExactParameters(service, methodName, args);
 				if (methodResult.length == 0 || methodResult[0] == null) {
-					// Fourth, search for method without the connection as first parameter in a list argument.
-					methodResult = ServiceUtils.findMethodWithListParameters(service, methodName, args);
+					// Third, search for method with the connection as first parameter in a list argument.
+					mode = ResolvedMethod.LIST_WITH_CONNECTION;
+					methodResult = ServiceUtils.findMethodWithListParameters(service, methodName, argsWithConnection);
 					if (methodResult.length == 0 || methodResult[0] == null) {
-						log.error("Method {} with parameters {} not found in {}",
-								new Object[] { methodName, (args == null ? Collections.EMPTY_LIST : Arrays.asList(args)), service });
-						call.setStatus(Call.STATUS_METHOD_NOT_FOUND);
-						if (args != null && args.length > 0) {
-							call.setException(new MethodNotFoundException(methodName, args));
-						} else {
-							call.setException(new MethodNotFoundException(methodName));
+						// Fourth, search for method without the connection as first parameter in a list argument.
+						mode = ResolvedMethod.LIST;
+						methodResult = ServiceUtils.findMethodWithListParameters(service, methodName, args);
+						if (methodResult.length == 0 || methodResult[0] == null) {
+							log.error("Method {} with parameters {} not found in {}",
+									new Object[] { methodName, (args == null ? Collections.EMPTY_LIST : Arrays.asList(args)), service });
+							call.setStatus(Call.STATUS_METHOD_NOT_FOUND);
+							if (args != null && args.length > 0) {
+								call.setException(new MethodNotFoundException(methodName, args));
+							} else {
+								call.setException(new MethodNotFoundException(methodName));
+							}
+							return false;
 						}
-						return false;
 					}
 				}
 			}
+			resolved = new ResolvedMethod((Method) methodResult[0], mode, key != null ? key.argTypes : null);
+			params = (Object[]) methodResult[1];
+			if (key != null) {
+				cacheMethod(key, resolved);
+			}
 		}
 
 		Object result = null;
-		Method method = (Method) methodResult[0];
-		Object[] params = (Object[]) methodResult[1];
+		Method method = resolved.method;
 
+		long start = MetricsRegistry.start();
 		try {
-			if (method.isAnnotationPresent(DeclarePrivate.class)) {
+			if (resolved.declaredPrivate) {
 				// Method may not be called by clients.
 				log.debug("Method {} is declared private.", method);
 				throw new NotAllowedException("you are not allowed to execute this method");
 			}
 
-			final DeclareProtected annotation = method.getAnnotation(DeclareProtected.class);
-			if (annotation != null) {
-				if (!conn.getClient().hasPermission(conn, annotation.permission())) {
+			if (resolved.permission != null) {
+				if (!conn.getClient().hasPermission(conn, resolved.permission)) {
 					// Client doesn't have required permission
-					log.debug("Client {} doesn't have required permission {} to call {}", new Object[] { conn.getClient(), annotation.permission(), method });
+					if (log.isDebugEnabled()) {
+						log.debug("Client {} doesn't have required permission {} to call {}", new Object[] { conn.getClient(), resolved.permission, method });
+					}
 					throw new NotAllowedException("you are not allowed to execute this method");
 				}
 			}
 
-			log.debug("Invoking method: {}", method.toString());
+			log.debug("Invoking method: {}", method);
 
-			if (method.getReturnType() == Void.class) {
+			if (resolved.returnsVoid) {
 				method.invoke(service, params);
 				call.setStatus(Call.STATUS_SUCCESS_VOID);
 			} else {
@@ -228,8 +419,210 @@ public class ServiceInvoker implements IServiceInvoker {
 			log.error("Error executing call: {}", call);
 			log.error("Service invocation error", ex);
 			return false;
+		} finally {
+			if (start != 0) {
+				callTimes.get(methodName).recordSince(start);
+				if (!call.isSuccess()) {
+					callFailures.increment();
+				}
+			}
 		}
 		return true;
 	}
 
+	/**
+	 * Cache key for a method resolution; the service class, the method name and the types of the
+	 * arguments (including the connection) as produced by {@link ConversionUtils#convertParams(Object[])}.
+	 */
+	private static final class InvocationKey {
+
+		private final Class<?> serviceClass;
+
+		private final String methodName;
+
+		private final Class<?>[] argTypes;
+
+		private final int hash;
+
+		InvocationKey(Class<?> serviceClass, String methodName, Class<?>[] argTypes) {
+			this.serviceClass = serviceClass;
+			this.methodName = methodName;
+			this.argTypes = argTypes;
+			int h = serviceClass.hashCode();
+			h = 31 * h + methodName.hashCode();
+			h = 31 * h + Arrays.hashCode(argTypes);
+			this.hash = h;
+		}
+
+		/**
+		 * Returns the key of the method regardless of the argument types.
+		 * 
+		 * @return key without argument types
+		 */
+		InvocationKey getMethodKey() {
+			return new InvocationKey(serviceClass, methodName, null);
+		}
+
+		boolean isLoadedBy(ClassLoader classLoader) {
+			if (ConversionUtils.isLoadedBy(serviceClass, classLoader)) {
+				return true;
+			}
+			if (argTypes != null) {
+				for (Class<?> argType : argTypes) {
+					if (argType != null && ConversionUtils.isLoadedBy(argType, classLoader)) {
+						return true;
+					}
+				}
+			}
+			return false;
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj) {
+				return true;
+			}
+			if (!(obj instanceof InvocationKey)) {
+				return false;
+			}
+			InvocationKey other = (InvocationKey) obj;
+			return hash == other.hash && serviceClass == other.serviceClass && methodName.equals(other.methodName) && Arrays.equals(argTypes, other.argTypes);
+		}
+
+	}
+
+	/**
+	 * Result of a method lookup: the method, how the arguments are to be shaped for it, the
+	 * converters for the argument types it was resolved with and the access decision taken from
+	 * its annotations.
+	 */
+	private static final class ResolvedMethod {
+
+		/** Arguments prefixed with the connection */
+		static final int EXACT_WITH_CONNECTION = 0;
+
+		/** Arguments as received */
+		static final int EXACT = 1;
+
+		/** Arguments prefixed with the connection, wrapped in a single list */
+		static final int LIST_WITH_CONNECTION = 2;
+
+		/** Arguments wrapped in a single list */
+		static final int LIST = 3;
+
+		final Method method;
+
+		final int mode;
+
+		final Class<?>[] parameterTypes;
+
+		final TypeConverter[] converters;
+
+		final boolean declaredPrivate;
+
+		final String permission;
+
+		final boolean returnsVoid;
+
+		ResolvedMethod(Method method, int mode, Class<?>[] argTypes) {
+			this.method = method;
+			this.mode = mode;
+			this.parameterTypes = method.getParameterTypes();
+			this.converters = new TypeConverter[parameterTypes.length];
+			if (argTypes != null) {
+				for (int i = 0; i < parameterTypes.length; i++) {
+					Class<?> argType;
+					switch (mode) {
+						case EXACT_WITH_CONNECTION:
+							argType = argTypes[i];
+							break;
+						case EXACT:
+							argType = argTypes[i + 1];
+							break;
+						default:
+							argType = ArrayList.class;
+					}
+					if (argType != null && argType != IConnection.class) {
+						converters[i] = ConversionUtils.getConverter(argType, parameterTypes[i]);
+					}
+				}
+			}
+			this.declaredPrivate = method.isAnnotationPresent(DeclarePrivate.class);
+			DeclareProtected annotation = method.getAnnotation(DeclareProtected.class);
+			this.permission = annotation != null ? annotation.permission() : null;
+			this.returnsVoid = method.getReturnType() == Void.class;
+			// skip the per call access checks when the method is reachable anyway
+			if (Modifier.isPublic(method.getDeclaringClass().getModifiers())) {
+				try {
+					method.setAccessible(true);
+				} catch (SecurityException e) {
+					log.debug("Access checks could not be suppressed for {}", method);
+				}
+			}
+		}
+
+		/**
+		 * Shapes and converts the call arguments for the resolved method.
+		 * 
+		 * @param args arguments of the call
+		 * @param argsWithConnection arguments prefixed with the connection
+		 * @return parameters for the method
+		 * @throws ConversionException if an argument cannot be converted
+		 */
+		Object[] prepareParameters(Object[] args, Object[] argsWithConnection) throws ConversionException {
+			Object[] source;
+			switch (mode) {
+				case EXACT_WITH_CONNECTION:
+					source = argsWithConnection;
+					break;
+				case EXACT:
+					if (args == null) {
+						return null;
+					}
+					source = args;
+					break;
+				case LIST_WITH_CONNECTION:
+					source = new Object[] { toList(argsWithConnection) };
+					break;
+				default:
+					source = new Object[] { toList(args) };
+			}
+			Object[] params = null;
+			for (int i = 0; i < parameterTypes.length; i++) {
+				Object arg = source[i];
+				if (arg == null || parameterTypes[i].isInstance(arg)) {
+					if (arg == null && parameterTypes[i].isPrimitive()) {
+						throw new ConversionException("Unable to convert null to primitive value");
+					}
+					if (params != null) {
+						params[i] = arg;
+					}
+					continue;
+				}
+				if (params == null) {
+					// copy on first conversion so the call arguments stay untouched
+					params = new Object[source.length];
+					System.arraycopy(source, 0, params, 0, source.length);
+				}
+				TypeConverter converter = converters[i];
+				params[i] = converter != null ? converter.convert(arg) : ConversionUtils.convert(arg, parameterTypes[i]);
+			}
+			return params != null ? params : source;
+		}
+
+		private static List<Object> toList(Object[] args) {
+			List<Object> list = new ArrayList<Object>();
+			if (args != null) {
+				list.addAll(Arrays.asList(args));
+			}
+			return list;
+		}
+
+	}
+
 }
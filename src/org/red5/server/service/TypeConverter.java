@@ -0,0 +1,42 @@
+package org.red5.server.service;
+
+/*
+ * RED5 Open Source Flash Server - http://code.google.com/p/red5/
+ * 
+ * Copyright (c) 2006-2011 by respective authors (see below). All rights reserved.
+ * 
+ * This library is free software; you can redistribute it and/or modify it under the 
+ * terms of the GNU Lesser General Public License as published by the Free Software 
+ * Foundation; either version 2.1 of the License, or (at your option) any later 
+ * version. 
+ * 
+ * This library is distributed in the hope that it will be useful, but WITHOUT ANY 
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A 
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License along 
+ * with this library; if not, write to the Free Software Foundation, Inc., 
+ * 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA 
+ */
+
+import org.apache.commons.beanutils.ConversionException;
+
+/**
+ * Converts instances of one source class to a target class. Converters are compiled once per
+ * (source class, target class) pair by {@link ConversionUtils#getConverter(Class, Class)} and
+ * reused for every following conversion of that pair.
+ * 
+ * @author The Red5 Project (red5@osflash.org)
+ */
+public interface TypeConverter {
+
+	/**
+	 * Convert the given object.
+	 * 
+	 * @param source non-null instance of the source class the converter was compiled for
+	 * @return converted object
+	 * @throws ConversionException if the value cannot be converted
+	 */
+	Object convert(Object source) throws ConversionException;
+
+}
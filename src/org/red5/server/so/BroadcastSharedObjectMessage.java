@@ -0,0 +1,118 @@
+package org.red5.server.so;
+
+/*
+ * RED5 Open Source Flash Server - http://code.google.com/p/red5/
+ * 
+ * Copyright (c) 2006-2011 by respective authors (see below). All rights reserved.
+ * 
+ * This library is free software; you can redistribute it and/or modify it under the 
+ * terms of the GNU Lesser General Public License as published by the Free Software 
+ * Foundation; either version 2.1 of the License, or (at your option) any later 
+ * version. 
+ * 
+ * This library is distributed in the hope that it will be useful, but WITHOUT ANY 
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A 
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License along 
+ * with this library; if not, write to the Free Software Foundation, Inc., 
+ * 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA 
+ */
+
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+
+import org.red5.server.api.IConnection.Encoding;
+
+/**
+ * Shared object sync message sent unchanged to all listeners using the same encoding. The body
+ * is serialized once by the first connection writing it and the bytes are reused by the others.
+ * <br />
+ * Every connection the message is written to holds a reference, which is given up once the 
+ * message has been sent. When the last reference is released the serialized body is dropped.
+ * 
+ * @author The Red5 Project (red5@osflash.org)
+ */
+public class BroadcastSharedObjectMessage extends SharedObjectMessage {
+
+	private static final long serialVersionUID = -1728519540317498523L;
+
+	/**
+	 * Encoding of the listeners receiving this message
+	 */
+	private Encoding encoding;
+
+	/**
+	 * Serialized message body
+	 */
+	private transient volatile byte[] encoded;
+
+	public BroadcastSharedObjectMessage() {
+	}
+
+	/**
+	 * Creates sync message for listeners using the given encoding.
+	 * 
+	 * @param name          SO name
+	 * @param version       SO version
+	 * @param persistent    SO persistence flag
+	 * @param encoding      Encoding of the listeners
+	 */
+	public BroadcastSharedObjectMessage(String name, int version, boolean persistent, Encoding encoding) {
+		super(null, name, version, persistent);
+		this.encoding = encoding;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public byte getDataType() {
+		return encoding == Encoding.AMF3 ? TYPE_FLEX_SHARED_OBJECT : TYPE_SHARED_OBJECT;
+	}
+
+	/**
+	 * Getter for the encoding of the listeners.
+	 * 
+	 * @return encoding
+	 */
+	public Encoding getEncoding() {
+		return encoding;
+	}
+
+	/**
+	 * Getter for the serialized body.
+	 * 
+	 * @return serialized body or null if not yet serialized
+	 */
+	public byte[] getEncoded() {
+		return encoded;
+	}
+
+	/**
+	 * Setter for the serialized body.
+	 * 
+	 * @param encoded serialized body
+	 */
+	public void setEncoded(byte[] encoded) {
+		this.encoded = encoded;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	protected void releaseInternal() {
+		encoded = null;
+	}
+
+	@Override
+	public void readExternal(ObjectInput in) throws IOException, ClassNotFoundException {
+		super.readExternal(in);
+		encoding = (Encoding) in.readObject();
+	}
+
+	@Override
+	public void writeExternal(ObjectOutput out) throws IOException {
+		super.writeExternal(out);
+		out.writeObject(encoding);
+	}
+
+}
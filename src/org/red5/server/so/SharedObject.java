@@ -22,12 +22,19 @@ package org.red5.server.so;
 import static org.red5.server.api.so.ISharedObject.TYPE;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
 
 import org.red5.io.object.Deserializer;
 import org.red5.io.object.Input;
@@ -41,6 +48,8 @@ import org.red5.server.api.persistence.IPersistable;
 import org.red5.server.api.persistence.IPersistenceStore;
 import org.red5.server.api.statistics.ISharedObjectStatistics;
 import org.red5.server.api.statistics.support.StatisticsCounter;
+import org.red5.server.metrics.Histogram;
+import org.red5.server.metrics.MetricsRegistry;
 import org.red5.server.net.rtmp.Channel;
 import org.red5.server.net.rtmp.RTMPConnection;
 import org.red5.server.net.rtmp.message.Constants;
@@ -74,6 +83,11 @@ public class SharedObject extends AttributeStore implements ISharedObjectStatist
 	 */
 	protected static Logger log = LoggerFactory.getLogger(SharedObject.class);
 
+	/**
+	 * Time taken to hand a sync to all listeners
+	 */
+	private static final Histogram syncTimes = MetricsRegistry.getInstance().getHistogram("so.sync.fanout");
+
 	/**
 	 * Shared Object name (identifier)
 	 */
@@ -165,6 +179,37 @@ public class SharedObject extends AttributeStore implements ISharedObjectStatist
 	 */
 	protected AtomicInteger sendStats = new AtomicInteger();
 
+	/**
+	 * Milliseconds during which updates are collected before they are sent as one sync, 0 sends
+	 * every update immediately.
+	 */
+	protected volatile long updateInterval;
+
+	/**
+	 * Changes made since the last coalesced sync was sent
+	 */
+	private final AtomicBoolean pendingModified = new AtomicBoolean();
+
+	/**
+	 * Whether a coalesced sync is scheduled
+	 */
+	private final AtomicBoolean flushScheduled = new AtomicBoolean();
+
+	/**
+	 * Lock held while the shared object is updated, shared with the scope wrapping it
+	 */
+	private volatile Lock updateLock = new ReentrantLock();
+
+	/**
+	 * Runs the syncs of shared objects which don't belong to a scope on the calling thread
+	 */
+	private static final SharedObjectExecutor CALLER_EXECUTOR = new SharedObjectExecutor("", null, 1);
+
+	/**
+	 * Executor of the application writing the syncs to the listeners
+	 */
+	private volatile SharedObjectExecutor executor = CALLER_EXECUTOR;
+
 	/** Constructs a new SharedObject. */
 	public SharedObject() {
 		// This is used by the persistence framework
@@ -262,6 +307,20 @@ public class SharedObject extends AttributeStore implements ISharedObjectStatist
 	 */
 	protected void sendUpdates() {
 		log.debug("sendUpdates");
+		sendOwnerUpdates();
+		//get all current sync events 
+		List<ISharedObjectEvent> events = new ArrayList<ISharedObjectEvent>();
+		ISharedObjectEvent soe;
+		while ((soe = syncEvents.poll()) != null) {
+			events.add(soe);
+		}
+		sendSyncEvents(events, getVersion(), source);
+	}
+
+	/**
+	 * Send the pending owner events to the connection that issued the current update.
+	 */
+	protected void sendOwnerUpdates() {
 		//get the current version
 		int currentVersion = getVersion();
 		//get the name
@@ -302,56 +361,80 @@ public class SharedObject extends AttributeStore implements ISharedObjectStatist
 				}
 			}
 		}
-		//clear owner events
-		events.clear();
-		//get all current sync events 
-		do {
-			ISharedObjectEvent soe = syncEvents.poll();
-			if (soe != null) {
-				events.add(soe);
-			}
-		} while (!syncEvents.isEmpty());
+	}
+
+	/**
+	 * Send sync events to all listeners except the given one.
+	 * 
+	 * @param events sync events
+	 * @param currentVersion version to send
+	 * @param skip listener which already knows about the changes, may be null
+	 */
+	protected void sendSyncEvents(List<ISharedObjectEvent> events, int currentVersion, IEventListener skip) {
+		//get the name
+		String name = getName();
 		//tell all the listeners
 		if (!events.isEmpty()) {
-			//dont create the executor until we need it
+			long start = MetricsRegistry.start();
 			//get the listeners
 			Set<IEventListener> listeners = getListeners();
+			//one sync message per encoding, serialized only once for all listeners using it
+			BroadcastSharedObjectMessage syncAMF0 = null;
+			BroadcastSharedObjectMessage syncAMF3 = null;
+			//listeners are grouped by the shard of the application executor which writes to them,
+			//so the syncs of a connection are always written in order
+			SharedObjectExecutor executor = this.executor;
+			SyncDelivery[] deliveries = new SyncDelivery[executor.getShardCount()];
 			//updates all registered clients of this shared object
 			for (IEventListener listener : listeners) {
-				if (listener != source) {
+				if (listener != skip) {
 					if (listener instanceof RTMPConnection) {
+						RTMPConnection conn = (RTMPConnection) listener;
 						//get the channel for so updates
-						final Channel channel = ((RTMPConnection) listener).getChannel((byte) 3);
-						//create a new sync message for every client to avoid
-						//concurrent access through multiple threads
-						final SharedObjectMessage syncMessage = ((RTMPConnection) listener).getEncoding() == Encoding.AMF3 ?
-								new FlexSharedObjectMessage(null, name, currentVersion, persistent) : 
-								new SharedObjectMessage(null, name, currentVersion, persistent);
-						syncMessage.addEvents(events);
-						//create a worker
-						Runnable worker = new Runnable() {
-							public void run() {
-								log.debug("Send to {}", channel);
-								try {
-									channel.write(syncMessage);
-								} catch (Exception e) {
-									log.warn("Exception sending shared object sync", e);
-								}
+						Channel channel = conn.getChannel((byte) 3);
+						BroadcastSharedObjectMessage syncMessage;
+						if (conn.getEncoding() == Encoding.AMF3) {
+							if (syncAMF3 == null) {
+								syncAMF3 = new BroadcastSharedObjectMessage(name, currentVersion, persistent, Encoding.AMF3);
+								syncAMF3.addEvents(events);
 							}
-						};
-						SharedObjectService.SHAREDOBJECT_EXECUTOR.execute(worker);
+							syncMessage = syncAMF3;
+						} else {
+							if (syncAMF0 == null) {
+								syncAMF0 = new BroadcastSharedObjectMessage(name, currentVersion, persistent, Encoding.AMF0);
+								syncAMF0.addEvents(events);
+							}
+							syncMessage = syncAMF0;
+						}
+						//released by the connection once the message has been sent
+						syncMessage.retain();
+						int group = executor.getShard(conn.getId());
+						if (deliveries[group] == null) {
+							deliveries[group] = new SyncDelivery();
+						}
+						deliveries[group].add(channel, syncMessage);
 					} else {
 						log.warn("Can't send sync message to unknown connection {}", listener);
 					}
 				} else {
 					// Don't re-send update to active client
-					log.debug("Skipped {}", source);
+					log.debug("Skipped {}", skip);
 				}
 			}
-
+			for (int group = 0; group < deliveries.length; group++) {
+				if (deliveries[group] != null) {
+					executor.executeOnShard(group, deliveries[group]);
+				}
+			}
+			//give up our own references
+			if (syncAMF0 != null) {
+				syncAMF0.release();
+			}
+			if (syncAMF3 != null) {
+				syncAMF3.release();
+			}
+			syncTimes.recordSince(start);
 		}
-		//clear events
-		events.clear();
 	}
 
 	/**
@@ -360,6 +443,18 @@ public class SharedObject extends AttributeStore implements ISharedObjectStatist
 	protected void notifyModified() {
 		log.debug("notifyModified");
 		if (updateCounter.get() == 0) {
+			if (updateInterval > 0 && SharedObjectService.SHAREDOBJECT_SCHEDULER != null) {
+				// the owner gets its acknowledgements now, everything else is sent once per interval
+				if (modified) {
+					pendingModified.set(true);
+				}
+				sendOwnerUpdates();
+				modified = false;
+				if (!syncEvents.isEmpty() || pendingModified.get()) {
+					scheduleFlush();
+				}
+				return;
+			}
 			if (modified) {
 				// The client sent at least one update -> increase version of SO
 				updateVersion();
@@ -380,6 +475,101 @@ public class SharedObject extends AttributeStore implements ISharedObjectStatist
 		}
 	}
 
+	/**
+	 * Schedules sending of the collected updates unless it has already been scheduled.
+	 */
+	private void scheduleFlush() {
+		if (flushScheduled.compareAndSet(false, true)) {
+			try {
+				SharedObjectService.SHAREDOBJECT_SCHEDULER.schedule(new Runnable() {
+					public void run() {
+						flushUpdates();
+					}
+				}, updateInterval, TimeUnit.MILLISECONDS);
+			} catch (RejectedExecutionException e) {
+				flushScheduled.set(false);
+				log.warn("Could not schedule shared object sync", e);
+			}
+		}
+	}
+
+	/**
+	 * Sends the updates collected during the current interval to all listeners. Only the last
+	 * change of each attribute is sent and the version is increased once.
+	 */
+	protected void flushUpdates() {
+		log.debug("flushUpdates");
+		// an update in progress is completed before its changes are saved and sent
+		final Lock lock = updateLock;
+		lock.lock();
+		try {
+			flushScheduled.set(false);
+			if (pendingModified.getAndSet(false)) {
+				updateVersion();
+				lastModified = System.currentTimeMillis();
+				if (storage != null) {
+					if (!storage.save(this)) {
+						log.error("Could not store shared object.");
+					}
+				}
+			}
+			// changes of a single attribute replace each other, anything else keeps its position
+			Map<Object, ISharedObjectEvent> coalesced = new LinkedHashMap<Object, ISharedObjectEvent>();
+			ISharedObjectEvent soe;
+			while ((soe = syncEvents.poll()) != null) {
+				Type type = soe.getType();
+				if ((type == Type.CLIENT_UPDATE_DATA || type == Type.CLIENT_DELETE_DATA) && soe.getKey() != null) {
+					coalesced.remove(soe.getKey());
+					coalesced.put(soe.getKey(), soe);
+				} else {
+					coalesced.put(new Object(), soe);
+				}
+			}
+			// everybody gets the sync, including the clients that made the changes
+			sendSyncEvents(new ArrayList<ISharedObjectEvent>(coalesced.values()), getVersion(), null);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Sets the lock the update paths hold while changing the shared object, so the coalesced
+	 * syncs are never sent or saved in the middle of an update.
+	 * 
+	 * @param updateLock lock held during updates
+	 */
+	void setUpdateLock(Lock updateLock) {
+		this.updateLock = updateLock;
+	}
+
+	/**
+	 * Sets the executor of the application the shared object belongs to.
+	 * 
+	 * @param executor executor writing the syncs to the listeners
+	 */
+	void setExecutor(SharedObjectExecutor executor) {
+		this.executor = executor;
+	}
+
+	/**
+	 * Getter for the update interval.
+	 * 
+	 * @return milliseconds during which updates are collected, 0 if updates are sent immediately
+	 */
+	public long getUpdateInterval() {
+		return updateInterval;
+	}
+
+	/**
+	 * Setter for the update interval. When set, changes are collected for the given time and
+	 * then sent to the listeners as one sync with a single version increase.
+	 * 
+	 * @param updateInterval milliseconds during which updates are collected, 0 to send every update immediately
+	 */
+	public void setUpdateInterval(long updateInterval) {
+		this.updateInterval = updateInterval;
+	}
+
 	/**
 	 * Return an error message to the client.
 	 * 
@@ -780,4 +970,39 @@ public class SharedObject extends AttributeStore implements ISharedObjectStatist
 		return sendStats.intValue();
 	}
 
+	/**
+	 * Writes a sync message to a group of connections.
+	 */
+	private final static class SyncDelivery implements Runnable {
+
+		private final List<Channel> channels = new ArrayList<Channel>();
+
+		private final List<BroadcastSharedObjectMessage> messages = new ArrayList<BroadcastSharedObjectMessage>();
+
+		void add(Channel channel, BroadcastSharedObjectMessage message) {
+			channels.add(channel);
+			messages.add(message);
+		}
+
+		public void run() {
+			for (int i = 0; i < channels.size(); i++) {
+				Channel channel = channels.get(i);
+				BroadcastSharedObjectMessage message = messages.get(i);
+				if (channel != null) {
+					log.debug("Send to {}", channel);
+					try {
+						channel.write(message);
+						continue;
+					} catch (Exception e) {
+						log.warn("Exception sending shared object sync", e);
+					}
+				} else {
+					log.warn("No channel found for sync message");
+				}
+				message.release();
+			}
+		}
+
+	}
+
 }
@@ -0,0 +1,308 @@
+package org.red5.server.so;
+
+/*
+ * RED5 Open Source Flash Server - http://code.google.com/p/red5/
+ *
+ * Copyright (c) 2006-2011 by respective authors (see below). All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation; either version 2.1 of the License, or (at your option) any later
+ * version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along
+ * with this library; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
+
+import org.red5.server.jmx.JMXAgent;
+import org.red5.server.jmx.JMXFactory;
+import org.red5.server.jmx.mxbeans.SharedObjectExecutorMXBean;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Runs the shared object deliveries of one application. Tasks are sharded by connection id and
+ * every shard runs its tasks one after another, so the updates of a connection are written in
+ * the order they were made. The shards share the worker threads of all applications but give
+ * up their thread after a few tasks, so a busy application can't hold back the others.
+ * 
+ * @author The Red5 Project (red5@osflash.org)
+ */
+public class SharedObjectExecutor implements SharedObjectExecutorMXBean {
+
+	private static final Logger log = LoggerFactory.getLogger(SharedObjectExecutor.class);
+
+	/**
+	 * Tasks a shard runs before it lets other shards have the thread
+	 */
+	private static final int BATCH_SIZE = 32;
+
+	private final String application;
+
+	private final Executor workers;
+
+	private final Shard[] shards;
+
+	private final AtomicInteger queueDepth = new AtomicInteger();
+
+	private final AtomicLong submitted = new AtomicLong();
+
+	private final AtomicLong completed = new AtomicLong();
+
+	private final AtomicLong totalLatency = new AtomicLong();
+
+	private final AtomicLong maxLatency = new AtomicLong();
+
+	private ObjectName oName;
+
+	private volatile boolean shutdown;
+
+	/**
+	 * Creates an executor.
+	 * 
+	 * @param application path of the application
+	 * @param workers threads running the shards, tasks run on the submitting thread if null
+	 * @param shardCount number of shards
+	 */
+	public SharedObjectExecutor(String application, Executor workers, int shardCount) {
+		this.application = application;
+		this.workers = workers;
+		shards = new Shard[Math.max(1, shardCount)];
+		for (int i = 0; i < shards.length; i++) {
+			shards[i] = new Shard();
+		}
+	}
+
+	/**
+	 * Returns the shard handling a connection.
+	 * 
+	 * @param connectionId connection id
+	 * @return shard index
+	 */
+	public int getShard(int connectionId) {
+		return (connectionId & Integer.MAX_VALUE) % shards.length;
+	}
+
+	/**
+	 * Runs a task after the tasks submitted before for the same connection.
+	 * 
+	 * @param connectionId connection id
+	 * @param task task
+	 */
+	public void execute(int connectionId, Runnable task) {
+		executeOnShard(getShard(connectionId), task);
+	}
+
+	/**
+	 * Runs a task after the tasks submitted before to the same shard.
+	 * 
+	 * @param shard shard index
+	 * @param task task
+	 */
+	public void executeOnShard(int shard, Runnable task) {
+		if (shutdown) {
+			log.debug("Dropped task of stopped application {}", application);
+			return;
+		}
+		submitted.incrementAndGet();
+		queueDepth.incrementAndGet();
+		shards[shard].add(new Task(task));
+	}
+
+	/**
+	 * Registers the executor with JMX.
+	 */
+	public void register() {
+		try {
+			String className = JMXAgent.trimClassName(getClass().getName());
+			oName = new ObjectName(String.format("%s:type=%s,name=%s", JMXFactory.getDefaultDomain(), className, ObjectName.quote(application)));
+			JMXAgent.registerMBean(this, getClass().getName(), SharedObjectExecutorMXBean.class, oName);
+		} catch (MalformedObjectNameException e) {
+			log.warn("Invalid object name for application {}", application, e);
+		}
+	}
+
+	/**
+	 * Removes the executor from JMX.
+	 */
+	public void unregister() {
+		if (oName != null) {
+			JMXAgent.unregisterMBean(oName);
+			oName = null;
+		}
+	}
+
+	/**
+	 * Stops accepting tasks and removes the executor from JMX, tasks already queued are still run.
+	 */
+	public void shutdown() {
+		shutdown = true;
+		unregister();
+	}
+
+	/**
+	 * Returns whether the executor has been shut down.
+	 * 
+	 * @return <code>true</code> if tasks are no longer accepted
+	 */
+	public boolean isShutdown() {
+		return shutdown;
+	}
+
+	/** {@inheritDoc} */
+	public String getApplication() {
+		return application;
+	}
+
+	/** {@inheritDoc} */
+	public int getShardCount() {
+		return shards.length;
+	}
+
+	/** {@inheritDoc} */
+	public int getQueueDepth() {
+		return queueDepth.get();
+	}
+
+	/** {@inheritDoc} */
+	public int getMaxShardQueueDepth() {
+		int max = 0;
+		for (Shard shard : shards) {
+			max = Math.max(max, shard.depth.get());
+		}
+		return max;
+	}
+
+	/** {@inheritDoc} */
+	public long getSubmittedTasks() {
+		return submitted.get();
+	}
+
+	/** {@inheritDoc} */
+	public long getCompletedTasks() {
+		return completed.get();
+	}
+
+	/**
+	 * Returns the average time from submitting a task to its completion.
+	 * 
+	 * @return average latency in milliseconds
+	 */
+	public double getAverageTaskLatency() {
+		long count = completed.get();
+		return count == 0 ? 0 : totalLatency.get() / (count * 1000000d);
+	}
+
+	/**
+	 * Returns the longest time from submitting a task to its completion.
+	 * 
+	 * @return maximum latency in milliseconds
+	 */
+	public long getMaxTaskLatency() {
+		return maxLatency.get() / 1000000;
+	}
+
+	/** {@inheritDoc} */
+	public void resetStatistics() {
+		submitted.set(queueDepth.get());
+		completed.set(0);
+		totalLatency.set(0);
+		maxLatency.set(0);
+	}
+
+	private void completed(Task task) {
+		long latency = System.nanoTime() - task.queued;
+		completed.incrementAndGet();
+		totalLatency.addAndGet(latency);
+		long max;
+		while (latency > (max = maxLatency.get())) {
+			if (maxLatency.compareAndSet(max, latency)) {
+				break;
+			}
+		}
+	}
+
+	private static final class Task {
+
+		final Runnable runnable;
+
+		final long queued = System.nanoTime();
+
+		Task(Runnable runnable) {
+			this.runnable = runnable;
+		}
+
+	}
+
+	/**
+	 * Queue of tasks run one after another on the worker threads.
+	 */
+	private final class Shard implements Runnable {
+
+		private final Queue<Task> queue = new ConcurrentLinkedQueue<Task>();
+
+		private final AtomicInteger depth = new AtomicInteger();
+
+		private final AtomicBoolean scheduled = new AtomicBoolean();
+
+		void add(Task task) {
+			depth.incrementAndGet();
+			queue.offer(task);
+			schedule();
+		}
+
+		private void schedule() {
+			if (scheduled.compareAndSet(false, true)) {
+				if (workers != null) {
+					try {
+						workers.execute(this);
+						return;
+					} catch (RejectedExecutionException e) {
+						log.debug("Workers rejected shard of {}, running on caller", application);
+					}
+				}
+				run();
+			}
+		}
+
+		public void run() {
+			for (int i = 0; i < BATCH_SIZE; i++) {
+				Task task = queue.poll();
+				if (task == null) {
+					break;
+				}
+				depth.decrementAndGet();
+				queueDepth.decrementAndGet();
+				try {
+					task.runnable.run();
+				} catch (Throwable t) {
+					log.warn("Exception in shared object task of {}", application, t);
+				}
+				completed(task);
+			}
+			scheduled.set(false);
+			// tasks added while the flag was still set, or left over from the batch
+			if (!queue.isEmpty()) {
+				schedule();
+			}
+		}
+
+	}
+
+}
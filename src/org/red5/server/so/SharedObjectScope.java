@@ -108,6 +108,9 @@ public class SharedObjectScope extends BasicScope implements ISharedObject, Stat
 			so.setName(name);
 			so.setPath(path);
 		}
+		// coalesced syncs are flushed under the same lock as updates
+		so.setUpdateLock(lock);
+		so.setExecutor(SharedObjectService.getExecutor(parent));
 	}
 
 	/** {@inheritDoc} */
@@ -753,6 +756,16 @@ public class SharedObjectScope extends BasicScope implements ISharedObject, Stat
 		so.release();
 	}
 
+	/** {@inheritDoc} */
+	public void setUpdateInterval(long interval) {
+		so.setUpdateInterval(interval);
+	}
+
+	/** {@inheritDoc} */
+	public long getUpdateInterval() {
+		return so.getUpdateInterval();
+	}
+
 	/** {@inheritDoc} */
 	public ISharedObjectStatistics getStatistics() {
 		return so;
@@ -27,6 +27,7 @@ import java.util.Set;
 
 import org.red5.server.api.IBasicScope;
 import org.red5.server.api.IScope;
+import org.red5.server.api.ScopeUtils;
 import org.red5.server.api.persistence.IPersistable;
 import org.red5.server.api.persistence.IPersistenceStore;
 import org.red5.server.api.persistence.PersistenceUtils;
@@ -36,8 +37,12 @@ import org.red5.server.persistence.RamPersistence;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
 import org.springframework.beans.factory.DisposableBean;
@@ -50,6 +55,13 @@ public class SharedObjectService implements ISharedObjectService, InitializingBe
         
         public static ExecutorService SHAREDOBJECT_EXECUTOR;
 
+        public static ScheduledExecutorService SHAREDOBJECT_SCHEDULER;
+
+	/**
+	 * Delivery executors by application scope, sharing the threads of the executor above
+	 */
+	private static final ConcurrentMap<IScope, SharedObjectExecutor> executors = new ConcurrentHashMap<IScope, SharedObjectExecutor>();
+
 	/**
 	 * Logger
 	 */
@@ -76,8 +88,61 @@ public class SharedObjectService implements ISharedObjectService, InitializingBe
 		executorThreadPoolSize = value;
 	}
 
+	/**
+	 * Returns the number of threads delivering shared object updates, taken from the executor
+	 * rather than from a service's configuration.
+	 * 
+	 * @return number of executor threads
+	 */
+	private static int getWorkerCount() {
+		if (SHAREDOBJECT_EXECUTOR instanceof ThreadPoolExecutor) {
+			return ((ThreadPoolExecutor) SHAREDOBJECT_EXECUTOR).getMaximumPoolSize();
+		}
+		return 1;
+	}
+
+	/**
+	 * Returns the executor delivering the updates of shared objects in the application the
+	 * given scope belongs to.
+	 * 
+	 * @param scope scope of the shared objects
+	 * @return executor of the application
+	 */
+	public static SharedObjectExecutor getExecutor(IScope scope) {
+		IScope application = ScopeUtils.findApplication(scope);
+		SharedObjectExecutor executor = executors.get(application);
+		if (executor == null) {
+			// applications of the same name may run in different hosts, so name it by its path
+			String path = application.getPath() + '/' + application.getName();
+			executor = new SharedObjectExecutor(path, SHAREDOBJECT_EXECUTOR, getWorkerCount());
+			SharedObjectExecutor existing = executors.putIfAbsent(application, executor);
+			if (existing == null) {
+				executor.register();
+			} else {
+				executor = existing;
+			}
+		}
+		return executor;
+	}
+
+	/**
+	 * Shuts down the executor of the application the given scope belongs to, to be called when
+	 * the application stops.
+	 * 
+	 * @param scope scope of the application
+	 */
+	public static void releaseExecutor(IScope scope) {
+		IScope application = ScopeUtils.findApplication(scope);
+		SharedObjectExecutor executor = executors.remove(application);
+		if (executor != null) {
+			executor.shutdown();
+		}
+	}
+
 	public void afterPropertiesSet() throws Exception {
 		SHAREDOBJECT_EXECUTOR = Executors.newFixedThreadPool(executorThreadPoolSize, new CustomizableThreadFactory("SharedObjectExecutor-"));
+		// sends the updates of shared objects with an update interval
+		SHAREDOBJECT_SCHEDULER = Executors.newSingleThreadScheduledExecutor(new CustomizableThreadFactory("SharedObjectScheduler-"));
 	}
 
 	/**
@@ -193,7 +258,12 @@ public class SharedObjectService implements ISharedObjectService, InitializingBe
 
 	public void destroy() throws Exception {
 		//disable new tasks from being submitted
+		SHAREDOBJECT_SCHEDULER.shutdown();
 		SHAREDOBJECT_EXECUTOR.shutdown(); 
+		for (SharedObjectExecutor executor : executors.values()) {
+			executor.shutdown();
+		}
+		executors.clear();
 		try {
 			//wait a while for existing tasks to terminate
 			if (!SHAREDOBJECT_EXECUTOR.awaitTermination(3, TimeUnit.SECONDS)) {
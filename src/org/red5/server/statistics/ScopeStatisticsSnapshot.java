@@ -0,0 +1,313 @@
+package org.red5.server.statistics;
+
+/*
+ * RED5 Open Source Flash Server - http://code.google.com/p/red5/
+ *
+ * Copyright (c) 2006-2011 by respective authors (see below). All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation; either version 2.1 of the License, or (at your option) any later
+ * version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along
+ * with this library; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import org.red5.server.api.statistics.IScopeStatistics;
+
+/**
+ * Immutable copy of the statistics of a scope and its subscopes, taken by the {@link StatisticsEngine}.
+ * Stream, shared object and byte counts include the subscopes.
+ *
+ * @author The Red5 Project (red5@osflash.org)
+ */
+public final class ScopeStatisticsSnapshot implements IScopeStatistics {
+
+	private final String name;
+
+	private final String path;
+
+	private final int depth;
+
+	private final long creationTime;
+
+	private final int totalConnections;
+
+	private final int maxConnections;
+
+	private final int activeConnections;
+
+	private final int totalClients;
+
+	private final int maxClients;
+
+	private final int activeClients;
+
+	private final int totalSubscopes;
+
+	private final int maxSubscopes;
+
+	private final int activeSubscopes;
+
+	private final int totalStreams;
+
+	private final int maxStreams;
+
+	private final int activeStreams;
+
+	private final int totalSharedObjects;
+
+	private final int maxSharedObjects;
+
+	private final int activeSharedObjects;
+
+	private final long readBytes;
+
+	private final long writtenBytes;
+
+	private final long timestamp;
+
+	private final Map<String, ScopeStatisticsSnapshot> children;
+
+	private final Map<String, SharedObjectStatisticsSnapshot> sharedObjects;
+
+	ScopeStatisticsSnapshot(IScopeStatistics stats, long readBytes, long writtenBytes, Map<String, ScopeStatisticsSnapshot> children,
+			Map<String, SharedObjectStatisticsSnapshot> sharedObjects, long timestamp) {
+		name = stats.getName();
+		path = stats.getPath();
+		depth = stats.getDepth();
+		creationTime = stats.getCreationTime();
+		totalConnections = stats.getTotalConnections();
+		maxConnections = stats.getMaxConnections();
+		activeConnections = stats.getActiveConnections();
+		totalClients = stats.getTotalClients();
+		maxClients = stats.getMaxClients();
+		activeClients = stats.getActiveClients();
+		totalSubscopes = stats.getTotalSubscopes();
+		maxSubscopes = stats.getMaxSubscopes();
+		activeSubscopes = stats.getActiveSubscopes();
+		totalStreams = stats.getTotalStreams();
+		maxStreams = stats.getMaxStreams();
+		activeStreams = stats.getActiveStreams();
+		totalSharedObjects = stats.getTotalSharedObjects();
+		maxSharedObjects = stats.getMaxSharedObjects();
+		activeSharedObjects = stats.getActiveSharedObjects();
+		this.readBytes = readBytes;
+		this.writtenBytes = writtenBytes;
+		this.children = Collections.unmodifiableMap(children);
+		this.sharedObjects = Collections.unmodifiableMap(sharedObjects);
+		this.timestamp = timestamp;
+	}
+
+	/** {@inheritDoc} */
+	public String getName() {
+		return name;
+	}
+
+	/** {@inheritDoc} */
+	public String getPath() {
+		return path;
+	}
+
+	/** {@inheritDoc} */
+	public int getDepth() {
+		return depth;
+	}
+
+	/** {@inheritDoc} */
+	public long getCreationTime() {
+		return creationTime;
+	}
+
+	/** {@inheritDoc} */
+	public int getTotalConnections() {
+		return totalConnections;
+	}
+
+	/** {@inheritDoc} */
+	public int getMaxConnections() {
+		return maxConnections;
+	}
+
+	/** {@inheritDoc} */
+	public int getActiveConnections() {
+		return activeConnections;
+	}
+
+	/** {@inheritDoc} */
+	public int getTotalClients() {
+		return totalClients;
+	}
+
+	/** {@inheritDoc} */
+	public int getMaxClients() {
+		return maxClients;
+	}
+
+	/** {@inheritDoc} */
+	public int getActiveClients() {
+		return activeClients;
+	}
+
+	/** {@inheritDoc} */
+	public int getTotalSubscopes() {
+		return totalSubscopes;
+	}
+
+	/** {@inheritDoc} */
+	public int getMaxSubscopes() {
+		return maxSubscopes;
+	}
+
+	/** {@inheritDoc} */
+	public int getActiveSubscopes() {
+		return activeSubscopes;
+	}
+
+	/** {@inheritDoc} */
+	public int getTotalStreams() {
+		return totalStreams;
+	}
+
+	/** {@inheritDoc} */
+	public int getMaxStreams() {
+		return maxStreams;
+	}
+
+	/** {@inheritDoc} */
+	public int getActiveStreams() {
+		return activeStreams;
+	}
+
+	/** {@inheritDoc} */
+	public int getTotalSharedObjects() {
+		return totalSharedObjects;
+	}
+
+	/** {@inheritDoc} */
+	public int getMaxSharedObjects() {
+		return maxSharedObjects;
+	}
+
+	/** {@inheritDoc} */
+	public int getActiveSharedObjects() {
+		return activeSharedObjects;
+	}
+
+	/**
+	 * Return the number of bytes read from connections of the scope and its subscopes, including
+	 * connections which have left.
+	 *
+	 * @return bytes read
+	 */
+	public long getReadBytes() {
+		return readBytes;
+	}
+
+	/**
+	 * Return the number of bytes written to connections of the scope and its subscopes, including
+	 * connections which have left.
+	 *
+	 * @return bytes written
+	 */
+	public long getWrittenBytes() {
+		return writtenBytes;
+	}
+
+	/**
+	 * Return the time this snapshot was taken.
+	 *
+	 * @return time in milliseconds
+	 */
+	public long getTimestamp() {
+		return timestamp;
+	}
+
+	/**
+	 * Return the names of the subscopes.
+	 *
+	 * @return subscope names
+	 */
+	public Set<String> getChildNames() {
+		return children.keySet();
+	}
+
+	/**
+	 * Return the snapshot of a subscope.
+	 *
+	 * @param name subscope name
+	 * @return snapshot or null if there is no such subscope
+	 */
+	public ScopeStatisticsSnapshot getChild(String name) {
+		return children.get(name);
+	}
+
+	/**
+	 * Return the snapshots of the subscopes.
+	 *
+	 * @return subscope snapshots
+	 */
+	public Collection<ScopeStatisticsSnapshot> getChildren() {
+		return children.values();
+	}
+
+	/**
+	 * Return the statistics of the shared objects of this scope, keyed by name.
+	 *
+	 * @return shared object statistics
+	 */
+	public Map<String, SharedObjectStatisticsSnapshot> getSharedObjects() {
+		return sharedObjects;
+	}
+
+	/**
+	 * Return the values of this snapshot as a map of statistic name to value.
+	 *
+	 * @return statistics
+	 */
+	public Map<String, Object> toMap() {
+		Map<String, Object> map = new LinkedHashMap<String, Object>();
+		map.put("name", name);
+		map.put("path", path);
+		map.put("depth", depth);
+		map.put("creationTime", creationTime);
+		map.put("totalConnections", totalConnections);
+		map.put("maxConnections", maxConnections);
+		map.put("activeConnections", activeConnections);
+		map.put("totalClients", totalClients);
+		map.put("maxClients", maxClients);
+		map.put("activeClients", activeClients);
+		map.put("totalSubscopes", totalSubscopes);
+		map.put("maxSubscopes", maxSubscopes);
+		map.put("activeSubscopes", activeSubscopes);
+		map.put("totalStreams", totalStreams);
+		map.put("maxStreams", maxStreams);
+		map.put("activeStreams", activeStreams);
+		map.put("totalSharedObjects", totalSharedObjects);
+		map.put("maxSharedObjects", maxSharedObjects);
+		map.put("activeSharedObjects", activeSharedObjects);
+		map.put("readBytes", readBytes);
+		map.put("writtenBytes", writtenBytes);
+		map.put("timestamp", timestamp);
+		return map;
+	}
+
+	@Override
+	public String toString() {
+		return "ScopeStatisticsSnapshot [path=" + path + ", name=" + name + ", activeConnections=" + activeConnections + ", activeStreams=" + activeStreams
+				+ ", activeSharedObjects=" + activeSharedObjects + "]";
+	}
+
+}
@@ -0,0 +1,142 @@
+package org.red5.server.statistics;
+
+/*
+ * RED5 Open Source Flash Server - http://code.google.com/p/red5/
+ *
+ * Copyright (c) 2006-2011 by respective authors (see below). All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation; either version 2.1 of the License, or (at your option) any later
+ * version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along
+ * with this library; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.red5.server.api.statistics.ISharedObjectStatistics;
+
+/**
+ * Immutable copy of the statistics of a shared object, taken by the {@link StatisticsEngine}.
+ *
+ * @author The Red5 Project (red5@osflash.org)
+ */
+public final class SharedObjectStatisticsSnapshot implements ISharedObjectStatistics {
+
+	private final String name;
+
+	private final boolean persistent;
+
+	private final long creationTime;
+
+	private final int version;
+
+	private final int totalListeners;
+
+	private final int maxListeners;
+
+	private final int activeListeners;
+
+	private final int totalChanges;
+
+	private final int totalDeletes;
+
+	private final int totalSends;
+
+	/**
+	 * Copies the current values of the given statistics.
+	 *
+	 * @param stats shared object statistics
+	 */
+	public SharedObjectStatisticsSnapshot(ISharedObjectStatistics stats) {
+		name = stats.getName();
+		persistent = stats.isPersistent();
+		creationTime = stats.getCreationTime();
+		version = stats.getVersion();
+		totalListeners = stats.getTotalListeners();
+		maxListeners = stats.getMaxListeners();
+		activeListeners = stats.getActiveListeners();
+		totalChanges = stats.getTotalChanges();
+		totalDeletes = stats.getTotalDeletes();
+		totalSends = stats.getTotalSends();
+	}
+
+	/** {@inheritDoc} */
+	public String getName() {
+		return name;
+	}
+
+	/** {@inheritDoc} */
+	public boolean isPersistent() {
+		return persistent;
+	}
+
+	/** {@inheritDoc} */
+	public long getCreationTime() {
+		return creationTime;
+	}
+
+	/** {@inheritDoc} */
+	public int getVersion() {
+		return version;
+	}
+
+	/** {@inheritDoc} */
+	public int getTotalListeners() {
+		return totalListeners;
+	}
+
+	/** {@inheritDoc} */
+	public int getMaxListeners() {
+		return maxListeners;
+	}
+
+	/** {@inheritDoc} */
+	public int getActiveListeners() {
+		return activeListeners;
+	}
+
+	/** {@inheritDoc} */
+	public int getTotalChanges() {
+		return totalChanges;
+	}
+
+	/** {@inheritDoc} */
+	public int getTotalDeletes() {
+		return totalDeletes;
+	}
+
+	/** {@inheritDoc} */
+	public int getTotalSends() {
+		return totalSends;
+	}
+
+	/**
+	 * Return the values of this snapshot as a map of statistic name to value.
+	 *
+	 * @return statistics
+	 */
+	public Map<String, Object> toMap() {
+		Map<String, Object> map = new LinkedHashMap<String, Object>();
+		map.put("name", name);
+		map.put("persistent", persistent);
+		map.put("creationTime", creationTime);
+		map.put("version", version);
+		map.put("totalListeners", totalListeners);
+		map.put("maxListeners", maxListeners);
+		map.put("activeListeners", activeListeners);
+		map.put("totalChanges", totalChanges);
+		map.put("totalDeletes", totalDeletes);
+		map.put("totalSends", totalSends);
+		return map;
+	}
+
+}
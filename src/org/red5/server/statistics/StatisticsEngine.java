@@ -0,0 +1,202 @@
+package org.red5.server.statistics;
+
+/*
+ * RED5 Open Source Flash Server - http://code.google.com/p/red5/
+ *
+ * Copyright (c) 2006-2011 by respective authors (see below). All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation; either version 2.1 of the License, or (at your option) any later
+ * version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along
+ * with this library; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import org.red5.server.Scope;
+import org.red5.server.api.IBasicScope;
+import org.red5.server.api.IConnection;
+import org.red5.server.api.IScope;
+import org.red5.server.api.so.ISharedObject;
+import org.red5.server.exception.ScopeNotFoundException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Serves immutable statistics snapshots of a scope tree. The scopes keep their connection, stream and
+ * shared object counters up to date as connections come and go and as streams and shared objects are
+ * created; the engine copies them into a new snapshot tree when one is read and the latest is older
+ * than the maximum age. Readers polling more often than that share one snapshot, and nothing walks
+ * the scopes while nobody reads the statistics.
+ *
+ * @author The Red5 Project (red5@osflash.org)
+ */
+public class StatisticsEngine {
+
+	private static Logger log = LoggerFactory.getLogger(StatisticsEngine.class);
+
+	/**
+	 * Global scope
+	 */
+	private IScope globalScope;
+
+	/**
+	 * Age in milliseconds after which a snapshot is replaced on the next read
+	 */
+	private long maxAge = 5000;
+
+	/**
+	 * Latest snapshot of the global scope
+	 */
+	private volatile ScopeStatisticsSnapshot snapshot;
+
+	/** Constructs a new StatisticsEngine. */
+	public StatisticsEngine() {
+
+	}
+
+	/**
+	 * Create new statistics engine.
+	 *
+	 * @param globalScope        Global scope ref
+	 */
+	public StatisticsEngine(IScope globalScope) {
+		this.globalScope = globalScope;
+	}
+
+	/**
+	 * Replaces the current snapshot with a new one taken from the scopes.
+	 */
+	public synchronized void refresh() {
+		long start = System.nanoTime();
+		snapshot = build(globalScope, System.currentTimeMillis());
+		log.trace("Statistics snapshot took {} ns", (System.nanoTime() - start));
+	}
+
+	/**
+	 * Return the snapshot of the global scope, taking a new one if the latest is older than the
+	 * maximum age.
+	 *
+	 * @return snapshot
+	 */
+	public ScopeStatisticsSnapshot getSnapshot() {
+		ScopeStatisticsSnapshot current = snapshot;
+		if (isExpired(current)) {
+			synchronized (this) {
+				// another reader may have refreshed it meanwhile
+				if (isExpired(snapshot)) {
+					refresh();
+				}
+				current = snapshot;
+			}
+		}
+		return current;
+	}
+
+	private boolean isExpired(ScopeStatisticsSnapshot current) {
+		return current == null || System.currentTimeMillis() - current.getTimestamp() >= maxAge;
+	}
+
+	/**
+	 * Return the snapshot of the scope at the given path, relative to the global scope.
+	 *
+	 * @param path	Path of the scope, null or empty for the global scope
+	 * @return		The snapshot for the given path
+	 *
+	 * @throws ScopeNotFoundException	Thrown when the latest snapshot has no scope with the given path
+	 */
+	public ScopeStatisticsSnapshot getSnapshot(String path) throws ScopeNotFoundException {
+		ScopeStatisticsSnapshot current = getSnapshot();
+		if (path != null) {
+			for (String name : path.split("/")) {
+				if (name.length() > 0) {
+					current = current.getChild(name);
+					if (current == null) {
+						throw new ScopeNotFoundException(globalScope, path);
+					}
+				}
+			}
+		}
+		return current;
+	}
+
+	/**
+	 * Copies the statistics of a scope and its subscopes.
+	 *
+	 * @param scope scope
+	 * @param timestamp snapshot time
+	 * @return snapshot
+	 */
+	private ScopeStatisticsSnapshot build(IScope scope, long timestamp) {
+		Map<String, ScopeStatisticsSnapshot> children = new TreeMap<String, ScopeStatisticsSnapshot>();
+		Iterator<String> names = scope.getScopeNames();
+		while (names.hasNext()) {
+			String name = names.next();
+			IScope child = scope.getScope(name);
+			if (child != null) {
+				children.put(name, build(child, timestamp));
+			}
+		}
+		Map<String, SharedObjectStatisticsSnapshot> sharedObjects = new TreeMap<String, SharedObjectStatisticsSnapshot>();
+		names = scope.getBasicScopeNames(ISharedObject.TYPE);
+		while (names.hasNext()) {
+			String name = names.next();
+			IBasicScope so = scope.getBasicScope(ISharedObject.TYPE, name);
+			if (so instanceof ISharedObject) {
+				sharedObjects.put(name, new SharedObjectStatisticsSnapshot(((ISharedObject) so).getStatistics()));
+			}
+		}
+		long readBytes = 0;
+		long writtenBytes = 0;
+		if (scope instanceof Scope) {
+			readBytes = ((Scope) scope).getClosedReadBytes();
+			writtenBytes = ((Scope) scope).getClosedWrittenBytes();
+		}
+		// connections are registered with every scope up to the global scope, so these include the subscopes
+		for (Set<IConnection> conns : scope.getConnections()) {
+			for (IConnection conn : conns) {
+				readBytes += conn.getReadBytes();
+				writtenBytes += conn.getWrittenBytes();
+			}
+		}
+		return new ScopeStatisticsSnapshot(scope.getStatistics(), readBytes, writtenBytes, children, sharedObjects, timestamp);
+	}
+
+	public IScope getGlobalScope() {
+		return globalScope;
+	}
+
+	/**
+	 * Setter for global scope.
+	 *
+	 * @param scope Value to set for property 'globalScope'.
+	 */
+	public void setGlobalScope(IScope scope) {
+		globalScope = scope;
+	}
+
+	public long getMaxAge() {
+		return maxAge;
+	}
+
+	/**
+	 * Sets how old a snapshot may get before a read replaces it.
+	 *
+	 * @param maxAge age in milliseconds
+	 */
+	public void setMaxAge(long maxAge) {
+		this.maxAge = maxAge;
+	}
+
+}
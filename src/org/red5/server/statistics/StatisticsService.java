@@ -34,7 +34,8 @@ import org.red5.server.exception.ScopeNotFoundException;
 import org.red5.server.exception.SharedObjectException;
 
 /**
- * Implementation of the statistics service.
+ * Implementation of the statistics service. When a {@link StatisticsEngine} is set, scope names and
+ * shared object statistics are served from its snapshots.
  * 
  * @author The Red5 Project (red5@osflash.org)
  * @author Joachim Bauch (jojo@struktur.de)
@@ -46,9 +47,15 @@ public class StatisticsService implements IStatisticsService {
 	
 	private IScope globalScope;
 
+	private StatisticsEngine statisticsEngine;
+
 	public void setGlobalScope(IScope scope) {
 		globalScope = scope;
 	}
+
+	public void setStatisticsEngine(StatisticsEngine statisticsEngine) {
+		this.statisticsEngine = statisticsEngine;
+	}
 	
 	public ISharedObject getScopeStatisticsSO(IScope scope) {
 		ISharedObjectService soService = (ISharedObjectService) ScopeUtils.getScopeService(scope, ISharedObjectService.class, false);
@@ -75,6 +82,9 @@ public class StatisticsService implements IStatisticsService {
 	}
 
 	public Set<String> getScopes(String path) throws ScopeNotFoundException {
+		if (statisticsEngine != null) {
+			return new HashSet<String>(statisticsEngine.getSnapshot(path).getChildNames());
+		}
 		IScope scope = getScope(path);
 		Set<String> result = new HashSet<String>();
 		Iterator<String> iter = scope.getScopeNames();
@@ -91,6 +101,9 @@ public class StatisticsService implements IStatisticsService {
 	}
 
 	public Set<ISharedObjectStatistics> getSharedObjects(String path) {
+		if (statisticsEngine != null) {
+			return new HashSet<ISharedObjectStatistics>(statisticsEngine.getSnapshot(path).getSharedObjects().values());
+		}
 		IScope scope = getScope(path);
 		ISharedObjectService soService = (ISharedObjectService) ScopeUtils.getScopeService(scope, ISharedObjectService.class, false);
 		Set<ISharedObjectStatistics> result = new HashSet<ISharedObjectStatistics>();
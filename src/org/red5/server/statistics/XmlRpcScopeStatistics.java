@@ -36,7 +36,9 @@ import org.red5.server.api.so.ISharedObjectService;
 import org.red5.server.exception.ScopeNotFoundException;
 
 /**
- * Public methods for XML-RPC scope statistics service.
+ * Public methods for XML-RPC scope statistics service. Scope and shared object statistics are
+ * read from the snapshots of a {@link StatisticsEngine}, attributes and shared object data from
+ * the live scopes.
  * 
  * @author The Red5 Project (red5@osflash.org)
  * @author Joachim Bauch (jojo@struktur.de)
@@ -47,6 +49,11 @@ public class XmlRpcScopeStatistics {
 	 */
 	private IScope globalScope;
 
+	/**
+	 * Statistics engine, created for the global scope when none is set
+	 */
+	private StatisticsEngine engine;
+
 	/** Constructs a new XmlScopeStatistics. */
 	public XmlRpcScopeStatistics() {
 
@@ -61,6 +68,16 @@ public class XmlRpcScopeStatistics {
 		this.globalScope = globalScope;
 	}
 
+	/**
+	 * Create new scope statistic sharing the snapshots of an engine.
+	 *
+	 * @param engine        Statistics engine
+	 */
+	public XmlRpcScopeStatistics(StatisticsEngine engine) {
+		this.globalScope = engine.getGlobalScope();
+		this.engine = engine;
+	}
+
 	/**
 	 * Setter for global scope.
 	 *
@@ -70,6 +87,22 @@ public class XmlRpcScopeStatistics {
 		globalScope = scope;
 	}
 
+	/**
+	 * Setter for the statistics engine.
+	 *
+	 * @param engine Value to set for property 'statisticsEngine'.
+	 */
+	public void setStatisticsEngine(StatisticsEngine engine) {
+		this.engine = engine;
+	}
+
+	private synchronized StatisticsEngine getEngine() {
+		if (engine == null) {
+			engine = new StatisticsEngine(globalScope);
+		}
+		return engine;
+	}
+
 	/**
 	 * Resolve path to scope.
 	 * 
@@ -128,6 +161,47 @@ public class XmlRpcScopeStatistics {
 		return getScopeAttributes(null);
 	}
 
+	/**
+	 * Return statistics of the global scope.
+	 * 
+	 * @return The scope's statistics
+	 */
+	public Map<String, Object> getScopeStatistics() {
+		return getScopeStatistics(null);
+	}
+
+	/**
+	 * Return statistics of a given scope, such as its connection, stream and shared object counts.
+	 * 
+	 * @param path	Path of scope to return statistics of
+	 * @return		The scope's statistics
+	 */
+	public Map<String, Object> getScopeStatistics(String path) {
+		return toXMLRPCMap(getEngine().getSnapshot(path).toMap());
+	}
+
+	/**
+	 * Return statistics of the shared objects of a given scope.
+	 * 
+	 * @param path	Path of scope to return shared objects for
+	 * @return		A mapping containing the shared object name -> (persistent, statistics)
+	 */
+	public Map<String, Object> getSharedObjectStatistics(String path) {
+		Map<String, Object> result = new Hashtable<String, Object>();
+		for (SharedObjectStatisticsSnapshot so : getEngine().getSnapshot(path).getSharedObjects().values()) {
+			result.put(so.getName(), new Object[] { so.isPersistent(), toXMLRPCMap(so.toMap()) });
+		}
+		return result;
+	}
+
+	private Map<String, Object> toXMLRPCMap(Map<String, Object> values) {
+		Map<String, Object> result = new Hashtable<String, Object>();
+		for (Map.Entry<String, Object> entry : values.entrySet()) {
+			result.put(entry.getKey(), getXMLRPCValue(entry.getValue()));
+		}
+		return result;
+	}
+
 	/**
 	 * Return an object that can be serialized through XML-RPC.
 	 * Inspired by "Reflective XML-RPC" by "Stephan Maier".
@@ -51,6 +51,8 @@ import org.red5.server.api.stream.ResourceExistException;
 import org.red5.server.api.stream.ResourceNotFoundException;
 import org.red5.server.jmx.mxbeans.ClientBroadcastStreamMXBean;
 import org.red5.server.messaging.AbstractPipe;
+import org.red5.server.metrics.Histogram;
+import org.red5.server.metrics.MetricsRegistry;
 import org.red5.server.messaging.IConsumer;
 import org.red5.server.messaging.IFilter;
 import org.red5.server.messaging.IMessage;
@@ -98,6 +100,11 @@ public class ClientBroadcastStream extends AbstractClientStream implements IClie
 
 	private static final Logger log = LoggerFactory.getLogger(ClientBroadcastStream.class);
 
+	/**
+	 * Inter-arrival jitter of all publishers
+	 */
+	private static final Histogram allJitter = MetricsRegistry.getInstance().getHistogram("stream.live.jitter");
+
 	/**
 	 * Whether or not to automatically record the associated stream.
 	 */
@@ -108,6 +115,29 @@ public class ClientBroadcastStream extends AbstractClientStream implements IClie
 	 */
 	protected long bytesReceived;
 
+	/**
+	 * Inter-arrival jitter of the audio and video frames
+	 */
+	protected final Histogram jitterTimes = new Histogram("jitter");
+
+	/**
+	 * Delay of the frames from their arrival until they were handed to a subscriber, shared by
+	 * all subscribers
+	 */
+	protected final Histogram liveDelay = new Histogram("liveDelay");
+
+	/**
+	 * Smoothed jitter in nanoseconds
+	 */
+	protected volatile double jitter;
+
+	/**
+	 * Arrival time and timestamp of the previous audio or video frame
+	 */
+	private long lastArrival;
+
+	private int lastArrivalTimestamp;
+
 	/**
 	 * Is there need to check video codec?
 	 */
@@ -336,6 +366,9 @@ public class ClientBroadcastStream extends AbstractClientStream implements IClie
 					if (eventTime > latestTimeStamp) {
 						latestTimeStamp = eventTime;
 					}
+					if (rtmpEvent instanceof AudioData || rtmpEvent instanceof VideoData) {
+						recordArrival(rtmpEvent, eventTime);
+					}
 					// notify event listeners
 					checkSendNotifications(event);
 					// note this timestamp is set in event/body but not in the associated header
@@ -430,6 +463,54 @@ public class ClientBroadcastStream extends AbstractClientStream implements IClie
 		return bytesReceived;
 	}
 
+	/**
+	 * Stamps a frame with its arrival time and records the jitter relative to the previous
+	 * frame, the way RTP receivers do.
+	 * 
+	 * @param rtmpEvent audio or video frame
+	 * @param eventTime frame timestamp
+	 */
+	private void recordArrival(IRTMPEvent rtmpEvent, int eventTime) {
+		long arrival = MetricsRegistry.start();
+		if (arrival == 0) {
+			return;
+		}
+		rtmpEvent.setReceivedTime(arrival);
+		if (lastArrival != 0 && eventTime >= lastArrivalTimestamp) {
+			long deviation = Math.abs((arrival - lastArrival) - (eventTime - lastArrivalTimestamp) * 1000000L);
+			jitterTimes.record(deviation);
+			allJitter.record(deviation);
+			jitter += (deviation - jitter) / 16;
+		}
+		lastArrival = arrival;
+		lastArrivalTimestamp = eventTime;
+	}
+
+	/** {@inheritDoc} */
+	public double getJitter() {
+		return jitter / 1000000;
+	}
+
+	/** {@inheritDoc} */
+	public double getJitterPercentile(double percentile) {
+		return jitterTimes.getPercentile(percentile) / 1000;
+	}
+
+	/** {@inheritDoc} */
+	public double getMaxJitter() {
+		return jitterTimes.getMax() / 1000;
+	}
+
+	/**
+	 * Returns the delay of the frames from their arrival until they were handed to a subscriber,
+	 * recorded by all subscribers of the stream.
+	 * 
+	 * @return live delay histogram
+	 */
+	public Histogram getLiveDelay() {
+		return liveDelay;
+	}
+
 	/** {@inheritDoc} */
 	public int getCurrentTimestamp() {
 		return (int) latestTimeStamp;
@@ -45,6 +45,8 @@ import org.red5.server.api.stream.OperationNotSupportedException;
 import org.red5.server.api.stream.StreamState;
 import org.red5.server.api.stream.support.DynamicPlayItem;
 import org.red5.server.messaging.AbstractMessage;
+import org.red5.server.metrics.Histogram;
+import org.red5.server.metrics.MetricsRegistry;
 import org.red5.server.messaging.IFilter;
 import org.red5.server.messaging.IMessage;
 import org.red5.server.messaging.IMessageComponent;
@@ -57,6 +59,8 @@ import org.red5.server.messaging.IProvider;
 import org.red5.server.messaging.IPushableConsumer;
 import org.red5.server.messaging.OOBControlMessage;
 import org.red5.server.messaging.PipeConnectionEvent;
+import org.red5.server.net.rtmp.FlightRecorder;
+import org.red5.server.net.rtmp.RTMPConnection;
 import org.red5.server.net.rtmp.event.Aggregate;
 import org.red5.server.net.rtmp.event.AudioData;
 import org.red5.server.net.rtmp.event.IRTMPEvent;
@@ -88,6 +92,36 @@ public final class PlayEngine implements IFilter, IPushableConsumer, IPipeConnec
 
 	private static final Logger log = Red5LoggerFactory.getLogger(PlayEngine.class);
 
+	/**
+	 * Time taken to push a message to the subscriber
+	 */
+	private static final Histogram sendTimes = MetricsRegistry.getInstance().getHistogram("stream.play.send");
+
+	/**
+	 * Returned as the live delay while no live stream is played
+	 */
+	private static final Histogram NO_LIVE_DELAY = new Histogram("liveDelay");
+
+	/**
+	 * Recorder of the subscriber's connection, null for other connections
+	 */
+	private FlightRecorder flightRecorder;
+
+	/**
+	 * Connection of the subscriber if it is an RTMP connection, used to look up pending video messages
+	 */
+	private RTMPConnection rtmpConnection;
+
+	/**
+	 * Live stream being played, looked up once from the input instead of for every frame
+	 */
+	private volatile IBroadcastStream liveStream;
+
+	/**
+	 * Input the live stream was looked up from
+	 */
+	private IMessageInput liveStreamInput;
+
 	private IMessageInput msgIn;
 
 	private IMessageOutput msgOut;
@@ -289,6 +323,10 @@ public final class PlayEngine implements IFilter, IPushableConsumer, IPipeConnec
 					msgOut = consumerService.getConsumerOutput(subscriberStream);
 					msgOut.subscribe(this, null);
 				}
+				if (subscriberStream.getConnection() instanceof RTMPConnection) {
+					rtmpConnection = (RTMPConnection) subscriberStream.getConnection();
+					flightRecorder = rtmpConnection.getFlightRecorder();
+				}
 				break;
 			default:
 				throw new IllegalStateException("Cannot start in current state");
@@ -501,7 +539,7 @@ public final class PlayEngine implements IFilter, IPushableConsumer, IPipeConnec
 		streamOffset = 0;
 		streamStartTS = -1;
 		//get the stream so that we can grab any metadata and decoder configs
-		IBroadcastStream stream = (IBroadcastStream) ((IBroadcastScope) msgIn).getAttribute(IBroadcastScope.STREAM_ATTRIBUTE);
+		IBroadcastStream stream = getLiveStream();
 		//prevent an NPE when a play list is created and then immediately flushed
 		if (stream != null) {
 			Notify metaData = stream.getMetaData();
@@ -845,7 +883,9 @@ public final class PlayEngine implements IFilter, IPushableConsumer, IPipeConnec
 			final long buffer = subscriberStream.getClientBufferDuration();
 			// Expected amount of data present in client buffer
 			final long buffered = lastMessageTs - delta;
-			log.trace("isClientBufferFull: timestamp {} delta {} buffered {} buffer {}", new Object[] { lastMessageTs, delta, buffered, buffer });
+			if (log.isTraceEnabled()) {
+				log.trace("isClientBufferFull: timestamp {} delta {} buffered {} buffer {}", new Object[] { lastMessageTs, delta, buffered, buffer });
+			}
 			//Fix for SN-122, this sends double the size of the client buffer
 			if (buffer > 0 && buffered > (buffer * 2)) {
 				// Client is likely to have enough data in the buffer
@@ -903,9 +943,17 @@ public final class PlayEngine implements IFilter, IPushableConsumer, IPipeConnec
 	 */
 	private void doPushMessage(AbstractMessage message) {
 		try {
+			long start = MetricsRegistry.start();
 			msgOut.pushMessage(message);
+			sendTimes.recordSince(start);
 			if (message instanceof RTMPMessage) {
 				IRTMPEvent body = ((RTMPMessage) message).getBody();
+				if (body.getReceivedTime() != 0) {
+					IBroadcastStream stream = getLiveStream();
+					if (stream instanceof ClientBroadcastStream) {
+						((ClientBroadcastStream) stream).getLiveDelay().recordSince(body.getReceivedTime());
+					}
+				}
 				//update the last message sent's timestamp
 				lastMessageTs = body.getTimestamp();
 				IoBuffer streamData = null;
@@ -926,6 +974,7 @@ public final class PlayEngine implements IFilter, IPushableConsumer, IPipeConnec
 		//copy patch from Andy Shaules
 		IRTMPEvent event;
 		IoBuffer dataReference;
+		StreamPayload payload;
 		switch (messageIn.getBody().getDataType()) {
 			case Constants.TYPE_AGGREGATE:
 				dataReference = ((Aggregate) messageIn.getBody()).getData();
@@ -933,18 +982,20 @@ public final class PlayEngine implements IFilter, IPushableConsumer, IPipeConnec
 				event.setTimestamp(messageIn.getBody().getTimestamp());
 				break;
 			case Constants.TYPE_AUDIO_DATA:
-				dataReference = ((AudioData) messageIn.getBody()).getData();
-				event = new AudioData(dataReference);
+				payload = ((AudioData) messageIn.getBody()).getPayload();
+				event = payload != null ? new AudioData(payload.retain()) : new AudioData();
 				event.setTimestamp(messageIn.getBody().getTimestamp());
+				event.setReceivedTime(messageIn.getBody().getReceivedTime());
 				break;
 			case Constants.TYPE_VIDEO_DATA:
-				dataReference = ((VideoData) messageIn.getBody()).getData();
-				event = new VideoData(dataReference);
+				payload = ((VideoData) messageIn.getBody()).getPayload();
+				event = payload != null ? new VideoData(payload.retain()) : new VideoData();
 				event.setTimestamp(messageIn.getBody().getTimestamp());
+				event.setReceivedTime(messageIn.getBody().getReceivedTime());
 				break;
 			default:
 				dataReference = ((Notify) messageIn.getBody()).getData();
-				event = new Notify(dataReference);
+				event = new Notify(dataReference != null ? dataReference.asReadOnlyBuffer() : null);
 				event.setTimestamp(messageIn.getBody().getTimestamp());
 				break;
 		}
@@ -977,12 +1028,26 @@ public final class PlayEngine implements IFilter, IPushableConsumer, IPipeConnec
 			int duration = ts - streamStartTS;
 			if (duration - streamOffset >= currentItem.getLength()) {
 				// Sent enough data to client
+				releaseCopy(event);
 				stop();
 				return;
 			}
 		}
 
 		doPushMessage(messageOut);
+		releaseCopy(event);
+	}
+
+	/**
+	 * Releases the copy made by {@link #sendMessage(RTMPMessage)}; the connection consumer keeps its
+	 * own reference to stream data until it is written and writes aggregates as they are.
+	 * 
+	 * @param event copy
+	 */
+	private void releaseCopy(IRTMPEvent event) {
+		if (!(event instanceof Aggregate)) {
+			event.release();
+		}
 	}
 
 	/**
@@ -1278,6 +1343,8 @@ public final class PlayEngine implements IFilter, IPushableConsumer, IPipeConnec
 		switch (event.getType()) {
 			case PipeConnectionEvent.PROVIDER_CONNECT_PUSH:
 				if (event.getProvider() != this) {
+					// a new publisher, look the stream up again
+					liveStream = null;
 					if (waiting) {
 						schedulingService.removeScheduledJob(waitLiveJob);
 						waitLiveJob = null;
@@ -1287,6 +1354,7 @@ public final class PlayEngine implements IFilter, IPushableConsumer, IPipeConnec
 				}
 				break;
 			case PipeConnectionEvent.PROVIDER_DISCONNECT:
+				liveStream = null;
 				if (pullMode) {
 					sendStopStatus(currentItem);
 				} else {
@@ -1316,16 +1384,15 @@ public final class PlayEngine implements IFilter, IPushableConsumer, IPipeConnec
 				// the subscriber paused 
 				if (subscriberStream.getState() == StreamState.PAUSED) {
 					log.debug("Dropping packet because we are paused");
+					recordDrop(FlightRecorder.DROPPED_PAUSED, body, 0);
 					videoFrameDropper.dropPacket(rtmpMessage);
 					return;
 				}
 				if (body instanceof VideoData) {
 					IVideoStreamCodec videoCodec = null;
-					if (msgIn instanceof IBroadcastScope) {
-						IBroadcastStream stream = (IBroadcastStream) ((IBroadcastScope) msgIn).getAttribute(IBroadcastScope.STREAM_ATTRIBUTE);
-						if (stream != null && stream.getCodecInfo() != null) {
-							videoCodec = stream.getCodecInfo().getVideoCodec();
-						}
+					IBroadcastStream stream = getLiveStream();
+					if (stream != null && stream.getCodecInfo() != null) {
+						videoCodec = stream.getCodecInfo().getVideoCodec();
 					}
 					//dont try to drop frames if video codec is null - related to SN-77
 					if (videoCodec != null && videoCodec.canDropFrames()) {
@@ -1333,6 +1400,7 @@ public final class PlayEngine implements IFilter, IPushableConsumer, IPipeConnec
 							// The client disabled video or the app doesn't have enough bandwidth
 							// allowed for this stream.
 							log.debug("Dropping packet because we cant receive video or token acquire failed");
+							recordDrop(FlightRecorder.DROPPED_DISABLED, body, 0);
 							videoFrameDropper.dropPacket(rtmpMessage);
 							return;
 						}
@@ -1341,6 +1409,7 @@ public final class PlayEngine implements IFilter, IPushableConsumer, IPipeConnec
 						if (!videoFrameDropper.canSendPacket(rtmpMessage, pendingVideos)) {
 							// Drop frame as it depends on other frames that were dropped before.
 							log.debug("Dropping packet because frame dropper says we cant send it");
+							recordDrop(FlightRecorder.DROPPED_DEPENDENCY, body, pendingVideos);
 							return;
 						}
 						// increment the number of times we had pending video frames sequentially
@@ -1351,7 +1420,10 @@ public final class PlayEngine implements IFilter, IPushableConsumer, IPipeConnec
 							numSequentialPendingVideoFrames = 0;
 						}
 						if (pendingVideos > maxPendingVideoFramesThreshold || numSequentialPendingVideoFrames > maxSequentialPendingVideoFrames) {
-							log.debug("Pending: {} Threshold: {} Sequential: {}", new Object[] { pendingVideos, maxPendingVideoFramesThreshold, numSequentialPendingVideoFrames });
+							if (log.isDebugEnabled()) {
+								log.debug("Pending: {} Threshold: {} Sequential: {}", new Object[] { pendingVideos, maxPendingVideoFramesThreshold,
+										numSequentialPendingVideoFrames });
+							}
 							// We drop because the client has insufficient bandwidth.
 							long now = System.currentTimeMillis();
 							if (bufferCheckInterval > 0 && now >= nextCheckBufferUnderrun) {
@@ -1359,6 +1431,7 @@ public final class PlayEngine implements IFilter, IPushableConsumer, IPipeConnec
 								sendInsufficientBandwidthStatus(currentItem);
 								nextCheckBufferUnderrun = now + bufferCheckInterval;
 							}
+							recordDrop(FlightRecorder.DROPPED_BANDWIDTH, body, pendingVideos);
 							videoFrameDropper.dropPacket(rtmpMessage);
 							return;
 						}
@@ -1375,10 +1448,15 @@ public final class PlayEngine implements IFilter, IPushableConsumer, IPipeConnec
 						}
 						rtmpMessage = RTMPMessage.build(body);
 					} else if (!receiveAudio) {
+						recordDrop(FlightRecorder.DROPPED_DISABLED, body, 0);
 						return;
 					}
 				}
 				sendMessage(rtmpMessage);
+				if (rtmpMessage != message) {
+					// release the blank audio packet created above
+					body.release();
+				}
 			} else {
 				throw new RuntimeException(String.format("Expected IStreamData but got %s (type %s)", body.getClass(), body.getDataType()));
 			}
@@ -1389,11 +1467,49 @@ public final class PlayEngine implements IFilter, IPushableConsumer, IPipeConnec
 		}
 	}
 
+	/**
+	 * Records a dropped frame in the flight recorder of the connection.
+	 * 
+	 * @param kind drop reason
+	 * @param body dropped frame
+	 * @param pending pending video messages
+	 */
+	private void recordDrop(byte kind, IRTMPEvent body, long pending) {
+		if (flightRecorder != null && FlightRecorder.isEnabled()) {
+			IoBuffer data = ((IStreamData<?>) body).getData();
+			flightRecorder.record(kind, body.getDataType(), data != null ? data.limit() : 0, body.getTimestamp(), (int) pending);
+		}
+	}
+
+	/**
+	 * Returns the live stream being played. The stream is looked up when the input changes or a new
+	 * publisher connects, the codec is read through it as it is only known once the first frames arrive.
+	 * 
+	 * @return stream or null if the input is not a live stream
+	 */
+	private IBroadcastStream getLiveStream() {
+		IBroadcastStream stream = liveStream;
+		IMessageInput input = msgIn;
+		if (stream == null || liveStreamInput != input) {
+			stream = null;
+			if (input instanceof IBroadcastScope) {
+				stream = (IBroadcastStream) ((IBroadcastScope) input).getAttribute(IBroadcastScope.STREAM_ATTRIBUTE);
+			}
+			liveStreamInput = input;
+			liveStream = stream;
+		}
+		return stream;
+	}
+
 	/**
 	 * Get number of pending video messages
 	 * @return          Number of pending video messages
 	 */
 	private long pendingVideoMessages() {
+		if (rtmpConnection != null) {
+			// ask the connection directly rather than sending a control message through the pipe for every frame
+			return rtmpConnection.getPendingVideoMessages(streamId);
+		}
 		OOBControlMessage pendingRequest = new OOBControlMessage();
 		pendingRequest.setTarget("ConnectionConsumer");
 		pendingRequest.setServiceName("pendingVideoCount");
@@ -1430,6 +1546,17 @@ public final class PlayEngine implements IFilter, IPushableConsumer, IPipeConnec
 		return lastMessageTs;
 	}
 
+	/**
+	 * Returns the delay of live frames from their arrival until they were handed to a subscriber.
+	 * The histogram belongs to the live stream being played and is shared by all its subscribers.
+	 * 
+	 * @return live delay histogram, empty if no live stream is played
+	 */
+	public Histogram getLiveDelay() {
+		IBroadcastStream stream = getLiveStream();
+		return stream instanceof ClientBroadcastStream ? ((ClientBroadcastStream) stream).getLiveDelay() : NO_LIVE_DELAY;
+	}
+
 	public long getPlaybackStart() {
 		return playbackStart;
 	}
@@ -1492,10 +1619,7 @@ public final class PlayEngine implements IFilter, IPushableConsumer, IPipeConnec
 	 */
 	private void releasePendingMessage() {
 		if (pendingMessage != null) {
-			IRTMPEvent body = pendingMessage.getBody();
-			if (body instanceof IStreamData && ((IStreamData<?>) body).getData() != null) {
-				((IStreamData<?>) body).getData().free();
-			}
+			pendingMessage.getBody().release();
 			pendingMessage = null;
 		}
 	}
@@ -1504,30 +1628,28 @@ public final class PlayEngine implements IFilter, IPushableConsumer, IPipeConnec
 	 * Check if sending the given message was enabled by the client.
 	 * 
 	 * @param message the message to check
-	 * @return <code>true</code> if the message should be sent, <code>false</code> otherwise (and the message is discarded)
+	 * @return <code>true</code> if the message should be sent, <code>false</code> otherwise (and the message is released)
 	 */
 	protected boolean checkSendMessageEnabled(RTMPMessage message) {
 		IRTMPEvent body = message.getBody();
 		if (!receiveAudio && body instanceof AudioData) {
 			// The user doesn't want to get audio packets
-			((IStreamData<?>) body).getData().free();
+			recordDrop(FlightRecorder.DROPPED_DISABLED, body, 0);
+			body.release();
 			if (sendBlankAudio) {
 				// Send reset audio packet
 				sendBlankAudio = false;
 				body = new AudioData();
-				// We need a zero timestamp
-				if (lastMessageTs >= 0) {
-					body.setTimestamp(lastMessageTs - timestampOffset);
-				} else {
-					body.setTimestamp(-timestampOffset);
-				}
-				message = RTMPMessage.build(body);
-			} else {
-				return false;
+				// sent right away, so the timestamp is not adjusted by the offset
+				body.setTimestamp(Math.max(lastMessageTs, 0));
+				sendMessage(RTMPMessage.build(body));
+				body.release();
 			}
+			return false;
 		} else if (!receiveVideo && body instanceof VideoData) {
 			// The user doesn't want to get video packets
-			((IStreamData<?>) body).getData().free();
+			recordDrop(FlightRecorder.DROPPED_DISABLED, body, 0);
+			body.release();
 			return false;
 		}
 		return true;
@@ -1604,6 +1726,7 @@ public final class PlayEngine implements IFilter, IPushableConsumer, IPipeConnec
 									lastMessageTs = body.getTimestamp();
 									break;
 								}
+								body.release();
 							}
 						} while (msg != null);
 					}
@@ -1648,6 +1771,7 @@ public final class PlayEngine implements IFilter, IPushableConsumer, IPipeConnec
 									continue;
 								}
 								sendMessage(rtmpMessage);
+								body.release();
 							}
 						} catch (Throwable err) {
 							log.error("Error while pulling message", err);
@@ -1728,7 +1852,7 @@ public final class PlayEngine implements IFilter, IPushableConsumer, IPipeConnec
 										if (okayToSendMessage(body)) {
 											log.trace("ts: {}", rtmpMessage.getBody().getTimestamp());
 											sendMessage(rtmpMessage);
-											((IStreamData<?>) body).getData().free();
+											body.release();
 										} else {
 											pendingMessage = rtmpMessage;
 										}
@@ -815,6 +815,21 @@ public class PlaylistSubscriberStream extends AbstractClientStream implements IP
 		return (buffered * 100.0) / buffer;
 	}
 
+	/** {@inheritDoc} */
+	public double getAverageLiveDelay() {
+		return engine.getLiveDelay().getMean() / 1000;
+	}
+
+	/** {@inheritDoc} */
+	public double getLiveDelayPercentile(double percentile) {
+		return engine.getLiveDelay().getPercentile(percentile) / 1000;
+	}
+
+	/** {@inheritDoc} */
+	public double getMaxLiveDelay() {
+		return engine.getLiveDelay().getMax() / 1000;
+	}
+
 	/** {@inheritDoc} */
 	@Override
 	public StreamState getState() {
@@ -0,0 +1,215 @@
+package org.red5.server.stream;
+
+/*
+ * RED5 Open Source Flash Server - http://code.google.com/p/red5/
+ *
+ * Copyright (c) 2006-2011 by respective authors (see below). All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation; either version 2.1 of the License, or (at your option) any later
+ * version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along
+ * with this library; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.mina.core.buffer.IoBuffer;
+import org.red5.server.metrics.Counter;
+import org.red5.server.metrics.MetricsRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Reference counted buffer holding the data of an audio or video frame. Every event sharing the
+ * frame holds one reference and reads it through its own read-only view; the buffer is freed when
+ * the last reference is released, so pooled or direct buffers are neither leaked nor handed back
+ * while a subscriber still sends from them.
+ * <br />
+ * Components receiving a frame through a pipe do not own it; to keep it beyond the call they
+ * create their own event with a {@link #retain() retained} payload.
+ * <br />
+ * Leak detection samples every n-th allocation, set with the system property
+ * <code>red5.payload.leakDetection</code> or {@link #setLeakDetectionInterval(int)}; payloads
+ * collected without being released are logged with the stack of their allocation.
+ * 
+ * @author The Red5 Project (red5@osflash.org)
+ */
+public final class StreamPayload {
+
+	private static final Logger log = LoggerFactory.getLogger(StreamPayload.class);
+
+	private static volatile int leakDetectionInterval = Integer.getInteger("red5.payload.leakDetection", 0);
+
+	private static final AtomicLong allocations = new AtomicLong();
+
+	private static final ReferenceQueue<StreamPayload> collected = new ReferenceQueue<StreamPayload>();
+
+	private static final Set<Tracker> trackers = Collections.newSetFromMap(new ConcurrentHashMap<Tracker, Boolean>());
+
+	private static final Counter leaks = MetricsRegistry.getInstance().getCounter("payload.leaks");
+
+	private final IoBuffer buffer;
+
+	private final AtomicInteger refCount = new AtomicInteger(1);
+
+	private final Tracker tracker;
+
+	private StreamPayload(IoBuffer buffer) {
+		this.buffer = buffer;
+		this.tracker = track(this);
+	}
+
+	/**
+	 * Takes ownership of a buffer; the returned payload holds one reference.
+	 * 
+	 * @param buffer frame data
+	 * @return payload
+	 */
+	public static StreamPayload wrap(IoBuffer buffer) {
+		return new StreamPayload(buffer);
+	}
+
+	/**
+	 * Returns the owned buffer; callers must not change its position or limit.
+	 * 
+	 * @return buffer
+	 */
+	public IoBuffer getBuffer() {
+		return buffer;
+	}
+
+	/**
+	 * Creates a read-only view on the data with its own position and limit.
+	 * 
+	 * @return view
+	 */
+	public IoBuffer view() {
+		if (refCount.get() <= 0) {
+			throw new IllegalStateException("Payload has already been released");
+		}
+		return buffer.asReadOnlyBuffer();
+	}
+
+	/**
+	 * Adds a reference.
+	 * 
+	 * @return this payload
+	 */
+	public StreamPayload retain() {
+		for (;;) {
+			int count = refCount.get();
+			if (count <= 0) {
+				throw new IllegalStateException("Payload has already been released");
+			}
+			if (refCount.compareAndSet(count, count + 1)) {
+				return this;
+			}
+		}
+	}
+
+	/**
+	 * Drops a reference and frees the buffer with the last one.
+	 * 
+	 * @return true if the buffer was freed
+	 */
+	public boolean release() {
+		int count = refCount.decrementAndGet();
+		if (count == 0) {
+			if (tracker != null) {
+				tracker.close();
+			}
+			buffer.free();
+			return true;
+		} else if (count < 0) {
+			refCount.incrementAndGet();
+			throw new IllegalStateException("Payload has already been released");
+		}
+		return false;
+	}
+
+	public int getRefCount() {
+		return refCount.get();
+	}
+
+	/**
+	 * Sets how often allocations are tracked for leak detection.
+	 * 
+	 * @param interval track every n-th allocation, 0 to disable
+	 */
+	public static void setLeakDetectionInterval(int interval) {
+		leakDetectionInterval = interval;
+	}
+
+	public static int getLeakDetectionInterval() {
+		return leakDetectionInterval;
+	}
+
+	/**
+	 * Returns the number of tracked payloads that were collected without being released.
+	 * 
+	 * @return leak count
+	 */
+	public static long getLeakCount() {
+		return leaks.get();
+	}
+
+	private static Tracker track(StreamPayload payload) {
+		int interval = leakDetectionInterval;
+		if (interval <= 0) {
+			return null;
+		}
+		reportLeaks();
+		if (allocations.incrementAndGet() % interval != 0) {
+			return null;
+		}
+		Tracker tracker = new Tracker(payload);
+		trackers.add(tracker);
+		return tracker;
+	}
+
+	/**
+	 * Logs tracked payloads which have been collected since the last call.
+	 */
+	static void reportLeaks() {
+		Tracker tracker;
+		while ((tracker = (Tracker) collected.poll()) != null) {
+			if (trackers.remove(tracker)) {
+				leaks.increment();
+				log.warn("Stream payload was garbage collected without being released", tracker.site);
+			}
+		}
+	}
+
+	/**
+	 * Allocation site of a sampled payload, enqueued once the payload is collected.
+	 */
+	private static final class Tracker extends WeakReference<StreamPayload> {
+
+		private final Throwable site = new Throwable("Payload allocated here");
+
+		Tracker(StreamPayload payload) {
+			super(payload, collected);
+		}
+
+		void close() {
+			trackers.remove(this);
+			clear();
+		}
+
+	}
+
+}
@@ -19,7 +19,6 @@ package org.red5.server.stream.consumer;
  * 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA 
  */
 
-import org.apache.mina.core.buffer.IoBuffer;
 import org.red5.server.api.stream.IClientStream;
 import org.red5.server.messaging.IMessage;
 import org.red5.server.messaging.IMessageComponent;
@@ -28,18 +27,19 @@ import org.red5.server.messaging.IPipeConnectionListener;
 import org.red5.server.messaging.IPushableConsumer;
 import org.red5.server.messaging.OOBControlMessage;
 import org.red5.server.messaging.PipeConnectionEvent;
+import org.red5.server.metrics.Histogram;
+import org.red5.server.metrics.MetricsRegistry;
 import org.red5.server.net.rtmp.Channel;
 import org.red5.server.net.rtmp.RTMPConnection;
-import org.red5.server.net.rtmp.event.AudioData;
 import org.red5.server.net.rtmp.event.BytesRead;
 import org.red5.server.net.rtmp.event.ChunkSize;
 import org.red5.server.net.rtmp.event.FlexStreamSend;
 import org.red5.server.net.rtmp.event.IRTMPEvent;
 import org.red5.server.net.rtmp.event.Notify;
 import org.red5.server.net.rtmp.event.Ping;
-import org.red5.server.net.rtmp.event.VideoData;
 import org.red5.server.net.rtmp.message.Constants;
 import org.red5.server.net.rtmp.message.Header;
+import org.red5.server.stream.IStreamData;
 import org.red5.server.stream.message.RTMPMessage;
 import org.red5.server.stream.message.ResetMessage;
 import org.red5.server.stream.message.StatusMessage;
@@ -56,6 +56,11 @@ public class ConnectionConsumer implements IPushableConsumer, IPipeConnectionLis
 	 */
 	private static final Logger log = LoggerFactory.getLogger(ConnectionConsumer.class);
 
+	/**
+	 * Delay of live frames from their arrival until they are written to the subscriber
+	 */
+	private static final Histogram liveDelay = MetricsRegistry.getInstance().getHistogram("stream.live.delay");
+
 	/**
 	 * Connection consumer class name
 	 */
@@ -125,53 +130,43 @@ public class ConnectionConsumer implements IPushableConsumer, IPipeConnectionLis
 			IRTMPEvent msg = rtmpMsg.getBody();
 			// get timestamp
 			int eventTime = msg.getTimestamp();
-			log.debug("Message timestamp: {}", eventTime);
+			if (log.isDebugEnabled()) {
+				log.debug("Message timestamp: {}", eventTime);
+			}
 			if (eventTime < 0) {
-				log.debug("Message has negative timestamp: {}", eventTime);
+				if (log.isDebugEnabled()) {
+					log.debug("Message has negative timestamp: {}", eventTime);
+				}
 				return;
 			}
 			// get the data type
 			byte dataType = msg.getDataType();
 			log.trace("Data type: {}", dataType);
+			if (dataType == Constants.TYPE_AUDIO_DATA || dataType == Constants.TYPE_VIDEO_DATA) {
+				// the event is the copy the play engine made for this subscriber, so the channel
+				// takes a reference to it instead of another copy; the encoder releases it
+				if (((IStreamData<?>) msg).getData() != null) {
+					msg.retain();
+					if (dataType == Constants.TYPE_AUDIO_DATA) {
+						audio.write(msg);
+					} else {
+						video.write(msg);
+					}
+					liveDelay.recordSince(msg.getReceivedTime());
+				} else {
+					log.warn("Stream data was not found");
+				}
+				return;
+			}
 
 			//create a new header for the consumer
 			final Header header = new Header();
 			header.setTimerBase(eventTime);
-			//data buffer
-			IoBuffer buf = null;
 			switch (dataType) {
 				case Constants.TYPE_AGGREGATE:
 					log.trace("Aggregate data");
 					data.write(msg);
 					break;
-				case Constants.TYPE_AUDIO_DATA:
-					log.trace("Audio data");
-					buf = ((AudioData) msg).getData();
-					if (buf != null) {
-						AudioData audioData = new AudioData(buf.asReadOnlyBuffer());
-						audioData.setHeader(header);
-						audioData.setTimestamp(header.getTimer());
-						log.trace("Source type: {}", ((AudioData) msg).getSourceType());
-						audioData.setSourceType(((AudioData) msg).getSourceType());
-						audio.write(audioData);
-					} else {
-						log.warn("Audio data was not found");
-					}
-					break;
-				case Constants.TYPE_VIDEO_DATA:
-					log.trace("Video data");
-					buf = ((VideoData) msg).getData();
-					if (buf != null) {
-						VideoData videoData = new VideoData(buf.asReadOnlyBuffer());
-						videoData.setHeader(header);
-						videoData.setTimestamp(header.getTimer());
-						log.trace("Source type: {}", ((VideoData) msg).getSourceType());
-						videoData.setSourceType(((VideoData) msg).getSourceType());
-						video.write(videoData);
-					} else {
-						log.warn("Video data was not found");
-					}
-					break;
 				case Constants.TYPE_PING:
 					log.trace("Ping");
 					Ping ping = new Ping((Ping) msg);
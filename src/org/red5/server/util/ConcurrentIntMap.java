@@ -0,0 +1,343 @@
+package org.red5.server.util;
+
+/*
+ * RED5 Open Source Flash Server - http://code.google.com/p/red5/
+ *
+ * Copyright (c) 2006-2011 by respective authors (see below). All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation; either version 2.1 of the License, or (at your option) any later
+ * version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along
+ * with this library; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Concurrent map with primitive <code>int</code> keys, so looking up an entry doesn't box the key.
+ * <br />
+ * The map is split into segments by key hash, writes lock their segment only and reads don't 
+ * lock at all. Each segment is an open addressing table. A slot is bound to its key until the
+ * table is rebuilt, removed entries leave a marker which is dropped when the table grows or is
+ * compacted. Values may not be <code>null</code>.
+ * 
+ * @author The Red5 Project (red5@osflash.org)
+ * @param <V> type of values
+ */
+public class ConcurrentIntMap<V> {
+
+	private static final int SEGMENTS = 16;
+
+	/**
+	 * Marks a removed entry
+	 */
+	private static final Object REMOVED = new Object();
+
+	/**
+	 * Segments by the top bits of the key hash, a generic array can't be created directly
+	 */
+	@SuppressWarnings("unchecked")
+	private final Segment<V>[] segments = (Segment<V>[]) new Segment<?>[SEGMENTS];
+
+	public ConcurrentIntMap() {
+		for (int i = 0; i < SEGMENTS; i++) {
+			segments[i] = new Segment<V>();
+		}
+	}
+
+	private static int hash(int key) {
+		int h = key * 0x9e3779b9;
+		return h ^ (h >>> 16);
+	}
+
+	private Segment<V> segmentFor(int hash) {
+		return segments[hash >>> 28];
+	}
+
+	/**
+	 * Returns the value for a key.
+	 * 
+	 * @param key key
+	 * @return value or null if there is none
+	 */
+	public V get(int key) {
+		int hash = hash(key);
+		return segmentFor(hash).get(key, hash);
+	}
+
+	/**
+	 * Whether the map contains a key.
+	 * 
+	 * @param key key
+	 * @return true if the key has a value
+	 */
+	public boolean containsKey(int key) {
+		return get(key) != null;
+	}
+
+	/**
+	 * Sets the value for a key.
+	 * 
+	 * @param key key
+	 * @param value value
+	 * @return previous value or null
+	 */
+	public V put(int key, V value) {
+		if (value == null) {
+			throw new NullPointerException();
+		}
+		int hash = hash(key);
+		return segmentFor(hash).put(key, hash, value, false);
+	}
+
+	/**
+	 * Sets the value for a key unless it already has one.
+	 * 
+	 * @param key key
+	 * @param value value
+	 * @return current value or null if the value was set
+	 */
+	public V putIfAbsent(int key, V value) {
+		if (value == null) {
+			throw new NullPointerException();
+		}
+		int hash = hash(key);
+		return segmentFor(hash).put(key, hash, value, true);
+	}
+
+	/**
+	 * Removes a key.
+	 * 
+	 * @param key key
+	 * @return removed value or null
+	 */
+	public V remove(int key) {
+		int hash = hash(key);
+		return segmentFor(hash).remove(key, hash, null);
+	}
+
+	/**
+	 * Removes a key if it has the given value.
+	 * 
+	 * @param key key
+	 * @param value expected value
+	 * @return true if removed
+	 */
+	public boolean remove(int key, V value) {
+		if (value == null) {
+			return false;
+		}
+		int hash = hash(key);
+		return segmentFor(hash).remove(key, hash, value) != null;
+	}
+
+	/**
+	 * Returns the number of entries.
+	 * 
+	 * @return size
+	 */
+	public int size() {
+		int size = 0;
+		for (Segment<V> segment : segments) {
+			size += segment.count;
+		}
+		return size;
+	}
+
+	/**
+	 * Whether the map has no entries.
+	 * 
+	 * @return true if empty
+	 */
+	public boolean isEmpty() {
+		for (Segment<V> segment : segments) {
+			if (segment.count != 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Returns the values present while iterating the segments.
+	 * 
+	 * @return new list of values
+	 */
+	public List<V> values() {
+		List<V> result = new ArrayList<V>(size());
+		for (Segment<V> segment : segments) {
+			segment.addValues(result);
+		}
+		return result;
+	}
+
+	/**
+	 * Removes all entries.
+	 */
+	public void clear() {
+		for (Segment<V> segment : segments) {
+			segment.clear();
+		}
+	}
+
+	/**
+	 * Slots of a segment. The key of a slot is written before its value is published, a slot
+	 * without value is free.
+	 */
+	private static final class Table {
+
+		final AtomicIntegerArray keys;
+
+		final AtomicReferenceArray<Object> values;
+
+		final int mask;
+
+		Table(int capacity) {
+			keys = new AtomicIntegerArray(capacity);
+			values = new AtomicReferenceArray<Object>(capacity);
+			mask = capacity - 1;
+		}
+
+	}
+
+	private static final class Segment<V> {
+
+		private volatile Table table = new Table(8);
+
+		/**
+		 * Number of entries
+		 */
+		volatile int count;
+
+		/**
+		 * Number of used slots, including removed entries
+		 */
+		private int used;
+
+		@SuppressWarnings("unchecked")
+		V get(int key, int hash) {
+			Table t = table;
+			for (int i = hash & t.mask;; i = (i + 1) & t.mask) {
+				Object value = t.values.get(i);
+				if (value == null) {
+					return null;
+				}
+				if (t.keys.get(i) == key) {
+					return value == REMOVED ? null : (V) value;
+				}
+			}
+		}
+
+		@SuppressWarnings("unchecked")
+		synchronized V put(int key, int hash, V value, boolean onlyIfAbsent) {
+			Table t = table;
+			int i = hash & t.mask;
+			for (;; i = (i + 1) & t.mask) {
+				Object current = t.values.get(i);
+				if (current == null) {
+					break;
+				}
+				if (t.keys.get(i) == key) {
+					if (current == REMOVED) {
+						t.values.set(i, value);
+						count++;
+						return null;
+					}
+					if (!onlyIfAbsent) {
+						t.values.set(i, value);
+					}
+					return (V) current;
+				}
+			}
+			if ((used + 1) * 4 > (t.mask + 1) * 3) {
+				t = rebuild();
+				for (i = hash & t.mask; t.values.get(i) != null; i = (i + 1) & t.mask) {
+				}
+			}
+			t.keys.set(i, key);
+			t.values.set(i, value);
+			used++;
+			count++;
+			return null;
+		}
+
+		@SuppressWarnings("unchecked")
+		synchronized V remove(int key, int hash, V expected) {
+			Table t = table;
+			for (int i = hash & t.mask;; i = (i + 1) & t.mask) {
+				Object current = t.values.get(i);
+				if (current == null) {
+					return null;
+				}
+				if (t.keys.get(i) == key) {
+					if (current == REMOVED || (expected != null && !expected.equals(current))) {
+						return null;
+					}
+					t.values.set(i, REMOVED);
+					count--;
+					return (V) current;
+				}
+			}
+		}
+
+		/**
+		 * Copies the entries into a new table sized for them, dropping removed entries.
+		 * 
+		 * @return new table
+		 */
+		private Table rebuild() {
+			Table old = table;
+			int capacity = 8;
+			while (capacity * 3 < (count + 1) * 8) {
+				// at most 3/8 full after rebuilding
+				capacity <<= 1;
+			}
+			Table t = new Table(capacity);
+			for (int j = 0; j <= old.mask; j++) {
+				Object value = old.values.get(j);
+				if (value != null && value != REMOVED) {
+					int key = old.keys.get(j);
+					int i = hash(key) & t.mask;
+					while (t.values.get(i) != null) {
+						i = (i + 1) & t.mask;
+					}
+					t.keys.set(i, key);
+					t.values.set(i, value);
+				}
+			}
+			used = count;
+			table = t;
+			return t;
+		}
+
+		@SuppressWarnings("unchecked")
+		void addValues(List<V> result) {
+			Table t = table;
+			for (int i = 0; i <= t.mask; i++) {
+				Object value = t.values.get(i);
+				if (value != null && value != REMOVED) {
+					result.add((V) value);
+				}
+			}
+		}
+
+		synchronized void clear() {
+			table = new Table(8);
+			used = 0;
+			count = 0;
+		}
+
+	}
+
+}
@@ -26,6 +26,7 @@ import org.apache.http.HttpHost;
 import org.apache.http.HttpResponse;
 import org.apache.http.ParseException;
 import org.apache.http.client.params.ClientPNames;
+import org.apache.http.conn.ClientConnectionManager;
 import org.apache.http.conn.params.ConnRoutePNames;
 import org.apache.http.impl.client.DefaultHttpClient;
 import org.apache.http.impl.client.DefaultHttpRequestRetryHandler;
@@ -67,8 +68,19 @@ public class HttpConnectionUtil {
 	 * @return client
 	 */
 	public static final DefaultHttpClient getClient() {
+		return getClient(connectionManager);
+	}
+
+	/**
+	 * Returns a client with all our selected properties / params, which uses the given
+	 * connection manager instead of the shared one.
+	 * 
+	 * @param manager connection manager
+	 * @return client
+	 */
+	public static final DefaultHttpClient getClient(ClientConnectionManager manager) {
 		// create a singular HttpClient object
-		DefaultHttpClient client = new DefaultHttpClient(connectionManager);
+		DefaultHttpClient client = new DefaultHttpClient(manager);
 		// dont retry
 		client.setHttpRequestRetryHandler(new DefaultHttpRequestRetryHandler(0, false));
 		// get the params for the client
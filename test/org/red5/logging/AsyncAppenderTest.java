@@ -0,0 +1,150 @@
+package org.red5.logging;
+
+/*
+ * RED5 Open Source Flash Server - http://code.google.com/p/red5/
+ *
+ * Copyright (c) 2006-2011 by respective authors (see below). All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation; either version 2.1 of the License, or (at your option) any later
+ * version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along
+ * with this library; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.read.ListAppender;
+
+/**
+ * @author The Red5 Project (red5@osflash.org)
+ */
+public class AsyncAppenderTest {
+
+	@Test
+	public void testFlushOnStop() {
+		LoggerContext context = new LoggerContext();
+		ListAppender<ILoggingEvent> list = new ListAppender<ILoggingEvent>();
+		list.setContext(context);
+		list.start();
+		AsyncAppender async = createAppender(context, list, 16);
+		Logger log = context.getLogger(AsyncAppenderTest.class);
+		log.setLevel(Level.DEBUG);
+		for (int i = 0; i < 100; i++) {
+			log.debug("Event {}", i);
+		}
+		async.stop();
+		assertEquals(100, list.list.size() + async.getDiscarded());
+		// formatted on the calling thread
+		assertEquals("Event 0", list.list.get(0).getFormattedMessage());
+		assertEquals(Thread.currentThread().getName(), list.list.get(0).getThreadName());
+	}
+
+	@Test
+	public void testDiscardWhenFull() throws InterruptedException {
+		LoggerContext context = new LoggerContext();
+		final CountDownLatch release = new CountDownLatch(1);
+		final CountDownLatch blocked = new CountDownLatch(1);
+		ListAppender<ILoggingEvent> slow = new ListAppender<ILoggingEvent>() {
+			@Override
+			protected void append(ILoggingEvent e) {
+				blocked.countDown();
+				try {
+					release.await(10, TimeUnit.SECONDS);
+				} catch (InterruptedException ie) {
+					Thread.currentThread().interrupt();
+				}
+				super.append(e);
+			}
+		};
+		slow.setContext(context);
+		slow.start();
+		AsyncAppender async = createAppender(context, slow, 4);
+		Logger log = context.getLogger(AsyncAppenderTest.class);
+		log.setLevel(Level.DEBUG);
+		log.info("first");
+		assertTrue(blocked.await(10, TimeUnit.SECONDS));
+		long start = System.nanoTime();
+		for (int i = 0; i < 10; i++) {
+			log.debug("filler {}", i);
+		}
+		log.warn("kept");
+		// the caller was never held up by the blocked worker
+		assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(5));
+		// the warning replaced the oldest filler
+		assertEquals(7, async.getDiscarded());
+		assertEquals(4, async.getQueued());
+		release.countDown();
+		async.stop();
+		assertEquals(5, slow.list.size());
+		assertEquals("filler 1", slow.list.get(1).getFormattedMessage());
+		assertEquals("kept", slow.list.get(4).getMessage());
+		assertFalse(async.isStarted());
+	}
+
+	@Test
+	public void testBoundedForWarnings() throws InterruptedException {
+		LoggerContext context = new LoggerContext();
+		final CountDownLatch release = new CountDownLatch(1);
+		final CountDownLatch blocked = new CountDownLatch(1);
+		ListAppender<ILoggingEvent> slow = new ListAppender<ILoggingEvent>() {
+			@Override
+			protected void append(ILoggingEvent e) {
+				blocked.countDown();
+				try {
+					release.await(10, TimeUnit.SECONDS);
+				} catch (InterruptedException ie) {
+					Thread.currentThread().interrupt();
+				}
+				super.append(e);
+			}
+		};
+		slow.setContext(context);
+		slow.start();
+		AsyncAppender async = createAppender(context, slow, 4);
+		Logger log = context.getLogger(AsyncAppenderTest.class);
+		log.error("first");
+		assertTrue(blocked.await(10, TimeUnit.SECONDS));
+		for (int i = 0; i < 100; i++) {
+			log.error("error {}", i);
+		}
+		assertEquals(4, async.getQueued());
+		assertEquals(96, async.getDiscarded());
+		release.countDown();
+		async.stop();
+		// the newest errors are kept
+		assertEquals(5, slow.list.size());
+		assertEquals("error 96", slow.list.get(1).getFormattedMessage());
+		assertEquals("error 99", slow.list.get(4).getFormattedMessage());
+	}
+
+	private AsyncAppender createAppender(LoggerContext context, ListAppender<ILoggingEvent> target, int queueSize) {
+		AsyncAppender async = new AsyncAppender();
+		async.setContext(context);
+		async.setName("async");
+		async.setQueueSize(queueSize);
+		async.addAppender(target);
+		async.start();
+		context.getLogger(Logger.ROOT_LOGGER_NAME).addAppender(async);
+		return async;
+	}
+
+}
@@ -23,6 +23,8 @@ import static org.junit.Assert.*;
 import org.junit.Test;
 import org.slf4j.Logger;
 
+import ch.qos.logback.classic.Level;
+
 /**
  * @author aclarke
  *
@@ -50,4 +52,63 @@ public class Red5LoggerFactoryTest {
 		  assertNotNull("should fall back to default logger", log);
 	}
 
+	@Test
+	public void testCachedLogger() {
+		Logger first = Red5LoggerFactory.getLogger(this.getClass());
+		assertSame(first, Red5LoggerFactory.getLogger(this.getClass()));
+		assertSame(first, Red5LoggerFactory.getLogger(this.getClass(), "doesnotexist"));
+		assertEquals(this.getClass().getName(), first.getName());
+		Red5LoggerFactory.removeLoggers(((ch.qos.logback.classic.Logger) first).getLoggerContext().getName());
+		// logback keeps its own instance per name, so a fresh resolution yields the same logger
+		assertSame(first, Red5LoggerFactory.getLogger(this.getClass()));
+	}
+
+	/**
+	 * Benchmark of the logger lookup and of a disabled debug call with and without a level guard.
+	 */
+	@Test
+	public void testLookupAndDisabledLogCost() {
+		final int iterations = 1000000;
+		long sink = 0;
+		for (int w = 0; w < 2; w++) {
+			long start = System.nanoTime();
+			for (int i = 0; i < iterations; i++) {
+				sink += Red5LoggerFactory.getLogger(Red5LoggerFactoryTest.class).hashCode();
+			}
+			long lookup = System.nanoTime() - start;
+			if (w == 1) {
+				System.out.printf("Logger lookup: %.1f ns%n", (double) lookup / iterations);
+			}
+		}
+		Logger log = Red5LoggerFactory.getLogger(Red5LoggerFactoryTest.class);
+		ch.qos.logback.classic.Logger logger = (ch.qos.logback.classic.Logger) log;
+		Level level = logger.getLevel();
+		logger.setLevel(Level.INFO);
+		try {
+			assertFalse(log.isDebugEnabled());
+			for (int w = 0; w < 2; w++) {
+				long start = System.nanoTime();
+				for (int i = 0; i < iterations; i++) {
+					long ts = i + 1000L;
+					log.debug("Packet timestamp: {}; tardiness: {}; now: {}", new Object[] { ts, ts - 1000L, ts + 1000L });
+				}
+				long unguarded = System.nanoTime() - start;
+				start = System.nanoTime();
+				for (int i = 0; i < iterations; i++) {
+					long ts = i + 1000L;
+					if (log.isDebugEnabled()) {
+						log.debug("Packet timestamp: {}; tardiness: {}; now: {}", new Object[] { ts, ts - 1000L, ts + 1000L });
+					}
+				}
+				long guarded = System.nanoTime() - start;
+				if (w == 1) {
+					System.out.printf("Disabled debug with varargs: %.1f ns, guarded: %.1f ns%n", (double) unguarded / iterations, (double) guarded / iterations);
+				}
+			}
+		} finally {
+			logger.setLevel(level);
+		}
+		assertTrue(sink != 0);
+	}
+
 }
@@ -0,0 +1,154 @@
+package org.red5.server;
+
+/*
+ * RED5 Open Source Flash Server - http://code.google.com/p/red5/
+ *
+ * Copyright (c) 2006-2011 by respective authors (see below). All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation; either version 2.1 of the License, or (at your option) any later
+ * version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along
+ * with this library; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.junit.Test;
+import org.red5.server.api.TestConnection;
+
+/**
+ * @author The Red5 Project (red5@osflash.org)
+ */
+public class AttributeMapTest {
+
+	private static int connections = 50000;
+
+	@Test
+	public void testSmallAndGrown() {
+		ConcurrentMap<String, Object> map = new AttributeMap();
+		Map<String, Object> expected = new HashMap<String, Object>();
+		for (int i = 0; i < AttributeMap.THRESHOLD * 2; i++) {
+			assertNull(map.put("key" + i, i));
+			expected.put("key" + i, i);
+			assertEquals(expected, map);
+			assertEquals(i, map.put("key" + i, i));
+		}
+		assertEquals(0, map.putIfAbsent("key0", "other"));
+		assertTrue(map.replace("key1", 1, "one"));
+		assertFalse(map.replace("key1", 1, "two"));
+		assertFalse(map.remove("key1", "two"));
+		assertTrue(map.remove("key1", "one"));
+		assertEquals(AttributeMap.THRESHOLD * 2 - 1, map.size());
+		map.clear();
+		assertTrue(map.isEmpty());
+	}
+
+	@Test
+	public void testArrayOperations() {
+		ConcurrentMap<String, Object> map = new AttributeMap();
+		map.put("a", 1);
+		map.put("b", 2);
+		map.put("c", 3);
+		assertEquals(2, map.remove("b"));
+		assertNull(map.remove("b"));
+		assertNull(map.replace("b", 4));
+		assertFalse(map.containsKey("b"));
+		assertEquals(1, map.replace("a", 5));
+		Iterator<Map.Entry<String, Object>> it = map.entrySet().iterator();
+		while (it.hasNext()) {
+			Map.Entry<String, Object> entry = it.next();
+			if (entry.getKey().equals("a")) {
+				it.remove();
+			} else {
+				entry.setValue(6);
+			}
+		}
+		assertEquals(1, map.size());
+		assertEquals(6, map.get("c"));
+		assertTrue(map.keySet().contains("c"));
+
+		// a value changed after the entry was read is not removed
+		it = map.entrySet().iterator();
+		it.next();
+		map.put("c", 7);
+		it.remove();
+		assertEquals(7, map.get("c"));
+	}
+
+	/**
+	 * Benchmark, only logs the heap used per connection as the measurement depends on the VM.
+	 */
+	@Test
+	public void testFootprint() {
+		// two attributes per connection, as set by most applications
+		Factory compactFactory = new Factory() {
+			public Object create(int n) {
+				TestConnection conn = new TestConnection("localhost", "/app", null);
+				conn.setAttribute("name", "user");
+				conn.setAttribute("id", n);
+				return conn;
+			}
+		};
+		Factory concurrentFactory = new Factory() {
+			public Object create(int n) {
+				TestConnection conn = new TestConnection("localhost", "/app", null);
+				ConcurrentMap<String, Object> attributes = new ConcurrentHashMap<String, Object>(1);
+				attributes.put("name", "user");
+				attributes.put("id", n);
+				conn.attributes = attributes;
+				return conn;
+			}
+		};
+		// warm up so class loading doesn't count
+		measure(compactFactory);
+		measure(concurrentFactory);
+		long compact = measure(compactFactory);
+		long concurrent = measure(concurrentFactory);
+		System.out.println("Heap per connection with compact attributes: " + compact + " bytes, with hash map: "
+				+ concurrent + " bytes");
+	}
+
+	private Object retained;
+
+	private long measure(Factory factory) {
+		Object[] objects = new Object[connections];
+		long before = usedMemory();
+		for (int i = 0; i < connections; i++) {
+			objects[i] = factory.create(i);
+		}
+		long after = usedMemory();
+		// keep the objects alive until measured
+		retained = objects;
+		return (after - before) / connections;
+	}
+
+	private long usedMemory() {
+		Runtime runtime = Runtime.getRuntime();
+		for (int i = 0; i < 4; i++) {
+			System.gc();
+		}
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+
+	private interface Factory {
+		Object create(int n);
+	}
+
+}
@@ -123,6 +123,22 @@ public class ClientRegistryTest {
 		Assert.assertNull(client2);
 	}
 
+	@Test
+	public void testNamedClient() {
+		Client client = new Client("publisher", reg);
+		reg.addClient(client);
+		Assert.assertSame(client, reg.getClient("publisher"));
+		Assert.assertTrue(reg.getClientList().contains(client));
+		// only plain numbers are numeric ids
+		Assert.assertFalse(reg.hasClient("01"));
+		Assert.assertEquals(-1, ClientRegistry.parseId("01"));
+		Assert.assertEquals(-1, ClientRegistry.parseId("4294967296"));
+		Assert.assertEquals(Integer.MAX_VALUE, ClientRegistry.parseId("2147483647"));
+		reg.removeClient(client);
+		Assert.assertFalse(reg.hasClient("publisher"));
+		Assert.assertFalse(reg.getClientList().contains(client));
+	}
+
 	// this should run last or it may affect the other tests
 	@Test
 	public void testLifecycle() throws Throwable {
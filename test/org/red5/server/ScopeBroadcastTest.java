@@ -0,0 +1,153 @@
+package org.red5.server;
+
+/*
+ * RED5 Open Source Flash Server - http://code.google.com/p/red5/
+ *
+ * Copyright (c) 2006-2011 by respective authors (see below). All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation; either version 2.1 of the License, or (at your option) any later
+ * version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along
+ * with this library; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+import org.red5.server.api.TestConnection;
+import org.red5.server.api.event.IEvent;
+import org.red5.server.api.event.IEventListener;
+
+/**
+ * @author The Red5 Project (red5@osflash.org)
+ */
+public class ScopeBroadcastTest {
+
+	private static int connections = 1000;
+
+	@Test
+	public void testBroadcastEvent() throws Exception {
+		Scope app = new Scope("app");
+		app.setBroadcastBatchSize(100);
+		ClientRegistry registry = new ClientRegistry();
+		final AtomicInteger received = new AtomicInteger();
+		TestConnection source = null;
+		for (int i = 0; i < connections; i++) {
+			TestConnection conn = new TestConnection("localhost", "/app", null) {
+				@Override
+				public void dispatchEvent(IEvent event) {
+					received.incrementAndGet();
+				}
+			};
+			conn.setClient(registry.newClient(null));
+			assertTrue(conn.connect(app));
+			if (source == null) {
+				source = conn;
+			}
+		}
+		ScopeBroadcast broadcast = app.broadcastEvent(new TestEvent(source));
+		// every connection gets the event like with a serial dispatch, including the source
+		assertEquals(connections, broadcast.get(10, TimeUnit.SECONDS).intValue());
+		assertEquals(connections, received.get());
+		assertTrue(broadcast.isDone());
+		assertTrue(broadcast.getLatency() >= 0);
+		assertEquals(1, app.getBroadcastCount());
+
+		// dispatching in parallel only returns before delivery
+		app.setParallelDispatch(true);
+		app.dispatchEvent(new TestEvent(null));
+		long deadline = System.currentTimeMillis() + 10000;
+		while (app.getBroadcastCount() < 2 && System.currentTimeMillis() < deadline) {
+			Thread.sleep(10);
+		}
+		assertEquals(2, app.getBroadcastCount());
+		assertEquals(2 * connections, received.get());
+	}
+
+	@Test
+	public void testEventOrder() throws Exception {
+		final int events = 200;
+		Scope app = new Scope("app");
+		app.setBroadcastBatchSize(10);
+		app.setParallelDispatch(true);
+		ClientRegistry registry = new ClientRegistry();
+		final AtomicInteger outOfOrder = new AtomicInteger();
+		final AtomicInteger received = new AtomicInteger();
+		for (int i = 0; i < 100; i++) {
+			TestConnection conn = new TestConnection("localhost", "/app", null) {
+				private int last = -1;
+
+				@Override
+				public void dispatchEvent(IEvent event) {
+					int sequence = ((SequenceEvent) event).sequence;
+					if (sequence != last + 1) {
+						outOfOrder.incrementAndGet();
+					}
+					last = sequence;
+					received.incrementAndGet();
+				}
+			};
+			conn.setClient(registry.newClient(null));
+			assertTrue(conn.connect(app));
+		}
+		for (int i = 0; i < events; i++) {
+			app.dispatchEvent(new SequenceEvent(i));
+		}
+		long deadline = System.currentTimeMillis() + 10000;
+		while (received.get() < 100 * events && System.currentTimeMillis() < deadline) {
+			Thread.sleep(10);
+		}
+		assertEquals(100 * events, received.get());
+		assertEquals(0, outOfOrder.get());
+	}
+
+	private static class SequenceEvent extends TestEvent {
+
+		private final int sequence;
+
+		SequenceEvent(int sequence) {
+			super(null);
+			this.sequence = sequence;
+		}
+
+	}
+
+	private static class TestEvent implements IEvent {
+
+		private final IEventListener source;
+
+		TestEvent(IEventListener source) {
+			this.source = source;
+		}
+
+		public Type getType() {
+			return Type.CLIENT;
+		}
+
+		public Object getObject() {
+			return null;
+		}
+
+		public boolean hasSource() {
+			return source != null;
+		}
+
+		public IEventListener getSource() {
+			return source;
+		}
+
+	}
+
+}
@@ -0,0 +1,160 @@
+package org.red5.server;
+
+/*
+ * RED5 Open Source Flash Server - http://code.google.com/p/red5/
+ *
+ * Copyright (c) 2006-2011 by respective authors (see below). All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation; either version 2.1 of the License, or (at your option) any later
+ * version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along
+ * with this library; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import net.sourceforge.groboutils.junit.v1.MultiThreadedTestRunner;
+import net.sourceforge.groboutils.junit.v1.TestRunnable;
+
+import org.junit.Test;
+import org.red5.server.api.IClient;
+import org.red5.server.api.IConnection;
+import org.red5.server.api.IScope;
+import org.red5.server.api.TestConnection;
+
+/**
+ * Connect / disconnect storm against one application scope: many simulated connections join
+ * and leave a set of rooms concurrently.
+ * 
+ * @author The Red5 Project (red5@osflash.org)
+ */
+public class ScopeConnectStormTest {
+
+	private static int threads = 8;
+
+	private static int connections = 20000;
+
+	private static int rooms = 50;
+
+	@Test
+	public void testConnectDisconnectStorm() throws Throwable {
+		final Scope app = new Scope("app");
+		final ClientRegistry registry = new ClientRegistry();
+		final TestConnection[] conns = new TestConnection[connections];
+		final AtomicInteger next = new AtomicInteger();
+		// every connection joins a room and stays
+		long elapsed = run(new TestRunnable() {
+			public void runTest() throws Throwable {
+				int n;
+				while ((n = next.getAndIncrement()) < connections) {
+					String room = "room" + (n % rooms);
+					TestConnection conn = new TestConnection("localhost", "/app/" + room, null);
+					conn.setClient(registry.newClient(null));
+					if (!app.hasChildScope(room)) {
+						app.createChildScope(room);
+					}
+					assertTrue(conn.connect(app.getScope(room)));
+					conns[n] = conn;
+				}
+			}
+		});
+		System.out.println("Runtime for " + connections + " connects on " + threads + " threads: " + (elapsed / 1000000)
+				+ "ms");
+		assertEquals(connections, app.getActiveClients());
+		assertEquals(connections, app.getActiveConnections());
+		assertEquals(rooms, app.getActiveSubscopes());
+
+		// and then they all leave again
+		next.set(0);
+		elapsed = run(new TestRunnable() {
+			public void runTest() throws Throwable {
+				int n;
+				while ((n = next.getAndIncrement()) < connections) {
+					conns[n].close();
+				}
+			}
+		});
+		System.out.println("Runtime for " + connections + " disconnects on " + threads + " threads: "
+				+ (elapsed / 1000000) + "ms");
+		assertEquals(0, app.getActiveClients());
+		assertEquals(0, app.getActiveConnections());
+		assertFalse(app.hasEventListeners());
+	}
+
+	@Test
+	public void testJoinAndLeaveOncePerClient() throws Throwable {
+		final Scope app = new Scope("app");
+		final AtomicInteger joined = new AtomicInteger();
+		final AtomicInteger left = new AtomicInteger();
+		app.setHandler(new CoreHandler() {
+			@Override
+			public boolean connect(IConnection conn, IScope scope, Object[] params) {
+				return true;
+			}
+
+			@Override
+			public boolean join(IClient client, IScope scope) {
+				joined.incrementAndGet();
+				return true;
+			}
+
+			@Override
+			public void leave(IClient client, IScope scope) {
+				left.incrementAndGet();
+			}
+		});
+		final IClient client = new ClientRegistry().newClient(null);
+		final TestConnection[] conns = new TestConnection[100];
+		final AtomicInteger next = new AtomicInteger();
+		run(new TestRunnable() {
+			public void runTest() throws Throwable {
+				int n;
+				while ((n = next.getAndIncrement()) < conns.length) {
+					TestConnection conn = new TestConnection("localhost", "/app", null);
+					conn.setClient(client);
+					assertTrue(conn.connect(app));
+					conns[n] = conn;
+				}
+			}
+		});
+		assertEquals(1, joined.get());
+		assertEquals(0, left.get());
+		assertEquals(1, app.getActiveClients());
+		for (TestConnection conn : conns) {
+			conn.close();
+		}
+		assertEquals(1, left.get());
+		assertEquals(0, app.getActiveClients());
+		// joins again with a new connection
+		TestConnection conn = new TestConnection("localhost", "/app", null);
+		conn.setClient(client);
+		assertTrue(conn.connect(app));
+		assertEquals(2, joined.get());
+		conn.close();
+		assertEquals(2, left.get());
+	}
+
+	private long run(TestRunnable worker) throws Throwable {
+		TestRunnable[] trs = new TestRunnable[threads];
+		for (int t = 0; t < threads; t++) {
+			trs[t] = worker;
+		}
+		MultiThreadedTestRunner mttr = new MultiThreadedTestRunner(trs);
+		long start = System.nanoTime();
+		mttr.runTestRunnables();
+		return System.nanoTime() - start;
+	}
+
+}
@@ -24,6 +24,9 @@ import junit.framework.JUnit4TestAdapter;
 
 import org.junit.Test;
 import org.red5.server.Scope;
+import org.red5.server.ScopeLookupCache;
+import org.red5.server.api.so.ISharedObjectService;
+import org.red5.server.so.SharedObjectService;
 
 public class ScopeTest extends BaseTest {
 
@@ -101,6 +104,54 @@ public class ScopeTest extends BaseTest {
 		//client.disconnect();
 	}
 
+	@Test
+	public void cachedLookups() {
+		Scope testApp = (Scope) context.resolveScope(path_app);
+		long hits = testApp.getLookupCacheHits();
+		assertNull(ScopeUtils.resolveScope(testApp, "cached"));
+		assertNull(ScopeUtils.resolveScope(testApp, "cached"));
+		// paths which don't resolve are not cached
+		assertEquals(hits, testApp.getLookupCacheHits());
+
+		// adding a scope invalidates the cache
+		assertTrue(testApp.createChildScope("cached"));
+		IScope room = ScopeUtils.resolveScope(testApp, "cached");
+		assertNotNull(room);
+		hits = testApp.getLookupCacheHits();
+		assertTrue(room == ScopeUtils.resolveScope(testApp, "cached"));
+		assertEquals(hits + 1, testApp.getLookupCacheHits());
+		assertTrue(room == ScopeUtils.resolveScope(testApp, "./cached/"));
+		assertTrue(testApp == ScopeUtils.resolveScope(room, ".."));
+
+		Object service = ScopeUtils.getScopeService(testApp, ISharedObjectService.class, SharedObjectService.class);
+		assertNotNull(service);
+		hits = testApp.getLookupCacheHits();
+		assertTrue(service == ScopeUtils.getScopeService(testApp, ISharedObjectService.class, SharedObjectService.class));
+		assertEquals(hits + 1, testApp.getLookupCacheHits());
+
+		// a change outside the application keeps its resolved paths
+		Scope parent = (Scope) testApp.getParent();
+		assertTrue(parent.createChildScope("sibling"));
+		hits = testApp.getLookupCacheHits();
+		assertTrue(room == ScopeUtils.resolveScope(testApp, "cached"));
+		assertEquals(hits + 1, testApp.getLookupCacheHits());
+		// but not those going through the parent
+		assertNotNull(ScopeUtils.resolveScope(testApp, "../sibling"));
+		parent.removeChildScope(parent.getScope("sibling"));
+		assertNull(ScopeUtils.resolveScope(testApp, "../sibling"));
+
+		// the number of cached paths is bounded
+		String path = "cached";
+		for (int i = 0; i <= ScopeLookupCache.MAX_SCOPES; i++) {
+			path = "./" + path;
+			assertTrue(room == ScopeUtils.resolveScope(testApp, path));
+		}
+		assertTrue(testApp.getLookupCache().getScopeCount() <= ScopeLookupCache.MAX_SCOPES);
+
+		testApp.removeChildScope(room);
+		assertNull(ScopeUtils.resolveScope(testApp, "cached"));
+	}
+
 	@Test
 	public void scopeResolver() {
 
@@ -0,0 +1,146 @@
+package org.red5.server.api.service;
+
+/*
+ * RED5 Open Source Flash Server - http://code.google.com/p/red5/
+ *
+ * Copyright (c) 2006-2011 by respective authors (see below). All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation; either version 2.1 of the License, or (at your option) any later
+ * version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along
+ * with this library; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.mina.core.buffer.IoBuffer;
+import org.junit.Test;
+import org.red5.server.ClientRegistry;
+import org.red5.server.Scope;
+import org.red5.server.net.rtmp.RTMPConnection;
+import org.red5.server.net.rtmp.event.Invoke;
+import org.red5.server.net.rtmp.event.Notify;
+import org.red5.server.net.rtmp.message.Constants;
+import org.red5.server.net.rtmp.message.Packet;
+import org.red5.server.service.BroadcastCall;
+import org.red5.server.service.BroadcastPendingCall;
+
+/**
+ * @author The Red5 Project (red5@osflash.org)
+ */
+public class ServiceUtilsTest {
+
+	@Test
+	public void testNotifyBatch() {
+		Scope scope = new Scope("room");
+		List<BatchConnection> conns = connect(scope, 2);
+		IServiceCall[] calls = new IServiceCall[] { new BroadcastCall("first", new Object[] { 1 }), new BroadcastCall("second", null) };
+		ServiceUtils.notifyOnAllConnections(scope, calls);
+		for (BatchConnection conn : conns) {
+			// all calls in one write
+			assertEquals(0, conn.single);
+			assertEquals(1, conn.batches.size());
+			Packet[] packets = conn.batches.get(0);
+			assertEquals(calls.length, packets.length);
+			for (int i = 0; i < packets.length; i++) {
+				assertEquals(3, packets[i].getHeader().getChannelId());
+				assertEquals(Constants.TYPE_NOTIFY, packets[i].getHeader().getDataType());
+				// notifications share the call
+				assertSame(calls[i], ((Notify) packets[i].getMessage()).getCall());
+			}
+		}
+	}
+
+	@Test
+	public void testInvokeBatch() {
+		Scope scope = new Scope("room");
+		List<BatchConnection> conns = connect(scope, 2);
+		IServiceCall[] calls = new IServiceCall[] { new BroadcastCall("first", new Object[] { 1 }), new BroadcastCall("second", null) };
+		ServiceUtils.invokeOnAllConnections(scope, calls);
+		for (BatchConnection conn : conns) {
+			assertEquals(0, conn.single);
+			assertEquals(1, conn.batches.size());
+			Packet[] packets = conn.batches.get(0);
+			assertEquals(calls.length, packets.length);
+			Set<Integer> invokeIds = new HashSet<Integer>();
+			for (int i = 0; i < packets.length; i++) {
+				assertEquals(Constants.TYPE_INVOKE, packets[i].getHeader().getDataType());
+				Invoke invoke = (Invoke) packets[i].getMessage();
+				assertTrue(invokeIds.add(invoke.getInvokeId()));
+				// invokes get a pending call per connection, tracked by the connection
+				BroadcastPendingCall call = (BroadcastPendingCall) invoke.getCall();
+				assertSame(calls[i], call.getBroadcastCall());
+				assertSame(call, conn.getPendingCall(invoke.getInvokeId()));
+			}
+		}
+	}
+
+	private List<BatchConnection> connect(Scope scope, int count) {
+		ClientRegistry registry = new ClientRegistry();
+		List<BatchConnection> conns = new ArrayList<BatchConnection>(count);
+		for (int i = 0; i < count; i++) {
+			BatchConnection conn = new BatchConnection();
+			conn.setId(i + 1);
+			conn.setup("localhost", "/room", "session" + i, new HashMap<String, Object>());
+			conn.initialize(registry.newClient(null));
+			assertTrue(conn.connect(scope));
+			conns.add(conn);
+		}
+		return conns;
+	}
+
+	/**
+	 * Connection keeping what is written to it.
+	 */
+	private static class BatchConnection extends RTMPConnection {
+
+		final List<Packet[]> batches = new ArrayList<Packet[]>();
+
+		int single;
+
+		BatchConnection() {
+			super(PERSISTENT);
+		}
+
+		@Override
+		public void rawWrite(IoBuffer out) {
+		}
+
+		@Override
+		public void write(Packet out) {
+			single++;
+		}
+
+		@Override
+		public void write(Packet[] packets) {
+			batches.add(packets);
+		}
+
+		@Override
+		protected IPendingServiceCall getPendingCall(int invokeId) {
+			return super.getPendingCall(invokeId);
+		}
+
+		@Override
+		protected void onInactive() {
+		}
+
+	}
+
+}
@@ -0,0 +1,107 @@
+package org.red5.server.metrics;
+
+/*
+ * RED5 Open Source Flash Server - http://code.google.com/p/red5/
+ *
+ * Copyright (c) 2006-2011 by respective authors (see below). All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation; either version 2.1 of the License, or (at your option) any later
+ * version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along
+ * with this library; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+public class HistogramTest {
+
+	@Test
+	public void testBuckets() {
+		for (long value : new long[] { 0, 1, 7, 8, 9, 15, 16, 17, 1000, 123456789, Long.MAX_VALUE }) {
+			int bucket = Histogram.bucket(value);
+			assertTrue(value <= Histogram.highestValue(bucket));
+			if (bucket > 0) {
+				assertTrue(value > Histogram.highestValue(bucket - 1));
+			}
+		}
+	}
+
+	@Test
+	public void testPercentiles() {
+		Histogram histogram = new Histogram("test");
+		// nothing recorded yet
+		assertEquals(0, histogram.getCount());
+		assertEquals(0, histogram.getPercentile(99), 0.01);
+		assertEquals(0, histogram.getSnapshot().getMedian(), 0.01);
+		histogram.reset();
+		// 1 to 1000 microseconds
+		for (int i = 1; i <= 1000; i++) {
+			histogram.record(i * 1000L);
+		}
+		HistogramSnapshot snapshot = histogram.getSnapshot();
+		assertEquals(1000, snapshot.getCount());
+		assertEquals(500.5, snapshot.getMean(), 0.01);
+		assertEquals(1000, snapshot.getMax(), 0.01);
+		assertWithin(500, snapshot.getMedian());
+		assertWithin(900, snapshot.getPercentile90());
+		assertWithin(990, snapshot.getPercentile99());
+		assertWithin(999, snapshot.getPercentile999());
+		assertEquals(1000, histogram.getCount());
+		assertEquals(snapshot.getMean(), histogram.getMean(), 0.01);
+		assertEquals(snapshot.getPercentile99(), histogram.getPercentile(99), 0.01);
+		assertEquals(snapshot.getMax(), histogram.getMax(), 0.01);
+		histogram.reset();
+		assertEquals(0, histogram.getSnapshot().getCount());
+	}
+
+	private void assertWithin(double expected, double actual) {
+		assertTrue(actual + " for " + expected, actual >= expected && actual <= expected * 1.125);
+	}
+
+	@Test
+	public void testGroupLimit() {
+		HistogramGroup group = MetricsRegistry.getInstance().getHistogramGroup("test.group", 2);
+		Histogram a = group.get("a");
+		assertSame(a, group.get("a"));
+		group.get("b");
+		Histogram other = group.get("c");
+		assertEquals("test.group.other", other.getName());
+		assertSame(other, group.get("d"));
+		assertSame(a, MetricsRegistry.getInstance().getHistogram("test.group.a"));
+	}
+
+	@Test
+	public void testRecordingCost() {
+		Histogram histogram = new Histogram("cost");
+		Random random = new Random(42);
+		long[] values = new long[1024];
+		for (int i = 0; i < values.length; i++) {
+			values[i] = random.nextInt(10000000);
+		}
+		int count = 5000000;
+		for (int round = 0; round < 3; round++) {
+			long start = System.nanoTime();
+			for (int i = 0; i < count; i++) {
+				histogram.recordSince(MetricsRegistry.start() - values[i & 1023]);
+			}
+			long elapsed = System.nanoTime() - start;
+			System.out.printf("Timed record: %.1f ns\n", elapsed / (double) count);
+		}
+		assertEquals(count * 3, histogram.getSnapshot().getCount());
+	}
+
+}
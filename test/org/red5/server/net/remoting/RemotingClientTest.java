@@ -0,0 +1,176 @@
+package org.red5.server.net.remoting;
+
+/*
+ * RED5 Open Source Flash Server - http://www.osflash.org/red5
+ *
+ * Copyright (c) 2006-2011 by respective authors. All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation; either version 2.1 of the License, or (at your option) any later
+ * version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along
+ * with this library; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+*/
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.mina.core.buffer.IoBuffer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.red5.io.amf.Input;
+import org.red5.io.amf.Output;
+import org.red5.io.object.Serializer;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Runs the remoting client against a minimal embedded gateway which answers every call with
+ * the name of the called method.
+ *
+ * @author The Red5 Project (red5@osflash.org)
+ */
+public class RemotingClientTest {
+
+	private HttpServer server;
+
+	private String url;
+
+	private final AtomicInteger requests = new AtomicInteger();
+
+	/** Holds back the first request so that the following calls are queued */
+	private final CountDownLatch release = new CountDownLatch(1);
+
+	@Before
+	public void setUp() throws Exception {
+		server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		server.createContext("/gateway", new GatewayHandler());
+		server.start();
+		url = "http://127.0.0.1:" + server.getAddress().getPort() + "/gateway";
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		server.stop(0);
+	}
+
+	@Test
+	public void testInvokeMethod() throws Exception {
+		release.countDown();
+		RemotingClient client = new RemotingClient(url);
+		assertEquals("echo", client.invokeMethod("echo", new Object[] { "hello" }));
+		assertEquals("echo", client.invokeMethod("echo", null));
+		assertEquals(2, requests.get());
+		client.destroy();
+	}
+
+	@Test
+	public void testBatchedInvoke() throws Exception {
+		RemotingClient client = new RemotingClient(url);
+		client.setPoolSize(1);
+		client.setBatchSize(4);
+		client.afterPropertiesSet();
+		final int calls = 8;
+		final CountDownLatch done = new CountDownLatch(calls);
+		final Map<String, Object> results = new ConcurrentHashMap<String, Object>();
+		IRemotingCallback callback = new IRemotingCallback() {
+			public void resultReceived(RemotingClient client, String method, Object[] params, Object result) {
+				results.put(method, result);
+				done.countDown();
+			}
+
+			public void errorReceived(RemotingClient client, String method, Object[] params, Throwable error) {
+				results.put(method, error);
+				done.countDown();
+			}
+		};
+		for (int i = 0; i < calls; i++) {
+			client.invokeMethod("method" + i, new Object[] { i }, callback);
+		}
+		release.countDown();
+		assertTrue(done.await(10, TimeUnit.SECONDS));
+		for (int i = 0; i < calls; i++) {
+			assertEquals("method" + i, results.get("method" + i));
+		}
+		// the first call goes out alone, the remaining seven are sent in batches of four
+		assertTrue(requests.get() <= 3);
+		assertEquals(0, client.getQueuedCalls());
+		client.destroy();
+	}
+
+	private class GatewayHandler implements HttpHandler {
+
+		public void handle(HttpExchange exchange) throws IOException {
+			requests.incrementAndGet();
+			try {
+				release.await(10, TimeUnit.SECONDS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			IoBuffer in = IoBuffer.wrap(readFully(exchange.getRequestBody()));
+			IoBuffer out = IoBuffer.allocate(256);
+			out.setAutoExpand(true);
+			// version and headers
+			in.getShort();
+			assertEquals(0, in.getShort());
+			out.putShort((short) 0);
+			out.putShort((short) 0);
+			int count = in.getShort();
+			out.putShort((short) count);
+			Output output = new Output(out);
+			Serializer serializer = new Serializer();
+			for (int i = 0; i < count; i++) {
+				String method = Input.getString(in);
+				String responseUri = Input.getString(in);
+				// skip the arguments
+				in.skip(in.getInt());
+				Output.putString(out, responseUri + "/onResult");
+				Output.putString(out, "null");
+				out.putInt(-1);
+				serializer.serialize(output, method);
+			}
+			out.flip();
+			byte[] response = new byte[out.limit()];
+			out.get(response);
+			exchange.getResponseHeaders().add("Content-Type", "application/x-amf");
+			exchange.sendResponseHeaders(200, response.length);
+			OutputStream os = exchange.getResponseBody();
+			os.write(response);
+			os.close();
+		}
+
+		private byte[] readFully(InputStream in) throws IOException {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			byte[] chunk = new byte[1024];
+			int read;
+			while ((read = in.read(chunk)) != -1) {
+				bytes.write(chunk, 0, read);
+			}
+			in.close();
+			return bytes.toByteArray();
+		}
+
+	}
+
+}
@@ -0,0 +1,119 @@
+package org.red5.server.net.rtmp;
+
+/*
+ * RED5 Open Source Flash Server - http://code.google.com/p/red5/
+ *
+ * Copyright (c) 2006-2011 by respective authors (see below). All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation; either version 2.1 of the License, or (at your option) any later
+ * version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along
+ * with this library; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+import org.red5.server.ClientRegistry;
+import org.red5.server.Scope;
+import org.red5.server.api.IScope;
+import org.red5.server.api.TestConnection;
+import org.red5.server.api.listeners.IHandlerTimingListener;
+import org.red5.server.metrics.MetricsRegistry;
+
+public class ConnectTraceTest {
+
+	@Test
+	public void testPhases() throws InterruptedException {
+		ConnectTrace trace = new ConnectTrace();
+		Thread.sleep(5);
+		trace.mark(ConnectTrace.HANDSHAKE);
+		trace.mark(ConnectTrace.REQUEST);
+		// the application's handlers run within the scope phase
+		trace.add(ConnectTrace.APP, 2000000000L);
+		trace.mark(ConnectTrace.SCOPE);
+		assertTrue(trace.getTime(ConnectTrace.HANDSHAKE) >= 5000000L);
+		assertEquals(2000000000L, trace.getTime(ConnectTrace.APP));
+		assertTrue(trace.getTime(ConnectTrace.SCOPE) <= 0);
+		assertEquals(0, trace.getTime(ConnectTrace.RESULT));
+		assertTrue(trace.toString(), trace.toString().startsWith("total="));
+	}
+
+	@Test
+	public void testHandlerTime() {
+		Scope global = new Scope("global");
+		global.createChildScope("app");
+		IScope app = global.getScope("app");
+		TimingConnection conn = new TimingConnection();
+		conn.setClient(new ClientRegistry().newClient(null));
+		assertTrue(conn.connect(app));
+		// the scope and its parent report their handlers
+		assertEquals(2, conn.scopes.size());
+		assertSame(global, conn.scopes.get(0));
+		assertSame(app, conn.scopes.get(1));
+		assertEquals(conn.nanos, conn.trace.getTime(ConnectTrace.APP));
+	}
+
+	@Test
+	public void testFinish() {
+		MetricsRegistry metrics = MetricsRegistry.getInstance();
+		long totals = metrics.getHistogram("connect.total").getCount();
+		long slow = metrics.getCounter("connect.slow").get();
+		long threshold = ConnectTrace.getThreshold();
+		ConnectTrace.setThreshold(0);
+		try {
+			ConnectTrace trace = new ConnectTrace();
+			trace.mark(ConnectTrace.HANDSHAKE);
+			trace.mark(ConnectTrace.RESULT);
+			assertFalse(trace.isFinished());
+			trace.finish(true, new TestConnection("localhost", "/app", null));
+			assertTrue(trace.isFinished());
+			long total = trace.getTotal();
+			// later marks and finishes are ignored
+			trace.mark(ConnectTrace.BANDWIDTH);
+			trace.finish(true, new TestConnection("localhost", "/app", null));
+			assertEquals(0, trace.getTime(ConnectTrace.BANDWIDTH));
+			assertEquals(total, trace.getTotal());
+			assertEquals(totals + 1, metrics.getHistogram("connect.total").getCount());
+			assertEquals(totals + 1, metrics.getHistogram("connect.bandwidth").getCount());
+			assertEquals(slow + 1, metrics.getCounter("connect.slow").get());
+		} finally {
+			ConnectTrace.setThreshold(threshold);
+		}
+	}
+
+	private static class TimingConnection extends TestConnection implements IHandlerTimingListener {
+
+		final ConnectTrace trace = new ConnectTrace();
+
+		final List<IScope> scopes = new ArrayList<IScope>();
+
+		long nanos;
+
+		TimingConnection() {
+			super("localhost", "/app", null);
+		}
+
+		public void notifyHandlerTime(IScope scope, long nanos) {
+			scopes.add(scope);
+			this.nanos += nanos;
+			trace.add(ConnectTrace.APP, nanos);
+		}
+
+	}
+
+}
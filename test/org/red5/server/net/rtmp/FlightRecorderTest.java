@@ -0,0 +1,88 @@
+package org.red5.server.net.rtmp;
+
+/*
+ * RED5 Open Source Flash Server - http://code.google.com/p/red5/
+ *
+ * Copyright (c) 2006-2011 by respective authors (see below). All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation; either version 2.1 of the License, or (at your option) any later
+ * version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along
+ * with this library; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import org.junit.Test;
+import org.red5.server.net.rtmp.message.Constants;
+
+public class FlightRecorderTest {
+
+	@Test
+	public void testDump() {
+		FlightRecorder recorder = new FlightRecorder();
+		assertTrue(recorder.dump().isEmpty());
+		recorder.record(FlightRecorder.RECEIVED, Constants.TYPE_VIDEO_DATA, 1000, 40, 1);
+		recorder.record(FlightRecorder.DROPPED_BANDWIDTH, Constants.TYPE_VIDEO_DATA, 1000, 80, 12);
+		List<String> lines = recorder.dump();
+		assertEquals(2, lines.size());
+		assertTrue(lines.get(0), lines.get(0).contains("RECEIVED") && lines.get(0).contains("ts=40"));
+		assertTrue(lines.get(1), lines.get(1).contains("DROPPED_BANDWIDTH") && lines.get(1).contains("detail=12"));
+	}
+
+	@Test
+	public void testDisabled() {
+		FlightRecorder recorder = new FlightRecorder();
+		FlightRecorder.setEnabled(false);
+		try {
+			recorder.record(FlightRecorder.RECEIVED, Constants.TYPE_VIDEO_DATA, 1000, 40, 1);
+		} finally {
+			FlightRecorder.setEnabled(true);
+		}
+		assertEquals(0, recorder.getRecorded());
+		assertTrue(recorder.dump().isEmpty());
+		recorder.record(FlightRecorder.SENT, Constants.TYPE_AUDIO_DATA, 10, 80, 1);
+		assertEquals(1, recorder.dump().size());
+	}
+
+	@Test
+	public void testWrapAround() {
+		FlightRecorder recorder = new FlightRecorder();
+		int count = FlightRecorder.CAPACITY * 2 + 3;
+		for (int i = 0; i < count; i++) {
+			recorder.record(FlightRecorder.SENT, Constants.TYPE_AUDIO_DATA, 10, i, 0);
+		}
+		assertEquals(count, recorder.getRecorded());
+		List<String> lines = recorder.dump();
+		assertEquals(FlightRecorder.CAPACITY, lines.size());
+		// oldest kept event first, newest last
+		assertTrue(lines.get(0), lines.get(0).contains("ts=" + (count - FlightRecorder.CAPACITY) + " "));
+		assertTrue(lines.get(lines.size() - 1), lines.get(lines.size() - 1).contains("ts=" + (count - 1) + " "));
+	}
+
+	@Test
+	public void testRecordingCost() {
+		FlightRecorder recorder = new FlightRecorder();
+		int count = 10000000;
+		for (int round = 0; round < 3; round++) {
+			long start = System.nanoTime();
+			for (int i = 0; i < count; i++) {
+				recorder.record(FlightRecorder.QUEUED, Constants.TYPE_VIDEO_DATA, i & 0xffff, i, 3);
+			}
+			long elapsed = System.nanoTime() - start;
+			System.out.printf("Flight recorder event: %.1f ns\n", elapsed / (double) count);
+		}
+	}
+
+}
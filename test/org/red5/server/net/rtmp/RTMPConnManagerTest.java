@@ -0,0 +1,84 @@
+package org.red5.server.net.rtmp;
+
+/*
+ * RED5 Open Source Flash Server - http://code.google.com/p/red5/
+ *
+ * Copyright (c) 2006-2011 by respective authors (see below). All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation; either version 2.1 of the License, or (at your option) any later
+ * version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along
+ * with this library; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+
+import org.junit.Test;
+import org.red5.server.ClientRegistry;
+import org.red5.server.jmx.mxbeans.ConnectionInfo;
+
+public class RTMPConnManagerTest {
+
+	private RTMPConnManager manager = new RTMPConnManager() {
+		@Override
+		public RTMPConnection createConnectionInstance(Class<?> cls) throws Exception {
+			return new RTMPMinaConnection();
+		}
+	};
+
+	@Test
+	public void testPagedQueries() {
+		int first = -1;
+		for (int i = 0; i < 30; i++) {
+			RTMPConnection conn = manager.createConnection(RTMPMinaConnection.class);
+			conn.setup("localhost:1935", i % 3 == 0 ? "vod" : "live", "session" + i, new HashMap<String, Object>());
+			if (first == -1) {
+				first = conn.getId();
+			}
+		}
+		assertEquals(30, manager.getConnectionCount());
+		assertEquals(30, manager.countConnections(null));
+		assertEquals(10, manager.countConnections("vod"));
+		List<ConnectionInfo> page = manager.getConnections(5, 10, null);
+		assertEquals(10, page.size());
+		assertEquals(first + 5, page.get(0).getClientId());
+		assertEquals(first + 14, page.get(9).getClientId());
+		page = manager.getConnections(8, 10, "vod");
+		assertEquals(2, page.size());
+		assertEquals("vod", page.get(0).getPath());
+		assertEquals(first + 24, page.get(0).getClientId());
+		assertEquals(first + 27, page.get(1).getClientId());
+		assertEquals(0, manager.getConnections(30, 10, null).size());
+	}
+
+	@Test
+	public void testInspection() {
+		RTMPConnection conn = manager.createConnection(RTMPMinaConnection.class);
+		conn.setup("localhost:1935", "live", "session", new HashMap<String, Object>());
+		// nothing to register before the connection has a client
+		assertFalse(manager.inspectConnection(conn.getId()));
+		conn.initialize(new ClientRegistry().newClient(null));
+		assertTrue(manager.inspectConnection(conn.getId()));
+		assertEquals(Collections.singletonList(conn.getId()), manager.getInspectedConnections());
+		assertTrue(manager.getConnections(0, 1, null).get(0).isInspected());
+		assertTrue(manager.releaseConnection(conn.getId()));
+		assertFalse(manager.releaseConnection(conn.getId()));
+		assertTrue(manager.getInspectedConnections().isEmpty());
+		assertFalse(manager.inspectConnection(-1));
+	}
+
+}
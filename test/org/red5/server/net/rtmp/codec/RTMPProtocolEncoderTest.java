@@ -1,9 +1,30 @@
 package org.red5.server.net.rtmp.codec;
 
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.fail;
 
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.mina.core.buffer.IoBuffer;
 import org.junit.Ignore;
 import org.junit.Test;
+import org.red5.io.object.Serializer;
+import org.red5.server.api.IConnection.Encoding;
+import org.red5.server.net.rtmp.event.Invoke;
+import org.red5.server.net.rtmp.event.Notify;
+import org.red5.server.net.rtmp.message.Header;
+import org.red5.server.net.rtmp.message.Packet;
+import org.red5.server.service.BroadcastCall;
+import org.red5.server.service.Call;
+import org.red5.server.service.PendingCall;
+import org.red5.server.so.BroadcastSharedObjectMessage;
+import org.red5.server.so.FlexSharedObjectMessage;
+import org.red5.server.so.ISharedObjectEvent;
+import org.red5.server.so.SharedObjectMessage;
 
 /**
  * Created initially to address 
@@ -73,4 +94,101 @@ public class RTMPProtocolEncoderTest {
 		fail("Not yet implemented");
 	}
 
+	@Test
+	public void testEncodeBroadcastCall() {
+		RTMPProtocolEncoder encoder = new RTMPProtocolEncoder();
+		encoder.setSerializer(new Serializer());
+		Map<String, Object> map = new HashMap<String, Object>();
+		map.put("room", "lobby");
+		map.put("count", 3);
+		Object[] args = new Object[] { "hello", 42, map };
+		BroadcastCall broadcast = new BroadcastCall("onMessage", args);
+		for (Encoding encoding : Encoding.values()) {
+			RTMP rtmp = new RTMP(RTMP.MODE_SERVER);
+			rtmp.setEncoding(encoding);
+			// invokes, encoded twice to use the cached form the second time
+			for (int invokeId = 5; invokeId < 7; invokeId++) {
+				Invoke expected = new Invoke();
+				expected.setCall(new PendingCall("onMessage", args));
+				expected.setInvokeId(invokeId);
+				Invoke shared = new Invoke();
+				shared.setCall(broadcast.newPendingCall());
+				shared.setInvokeId(invokeId);
+				assertArrayEquals(toBytes(encoder.encodeInvoke(expected, rtmp)), toBytes(encoder.encodeInvoke(shared, rtmp)));
+			}
+			// notifications
+			Notify expected = new Notify();
+			expected.setCall(new Call("onMessage", args));
+			Notify shared = new Notify();
+			shared.setCall(broadcast);
+			assertArrayEquals(toBytes(encoder.encodeNotify(expected, rtmp)), toBytes(encoder.encodeNotify(shared, rtmp)));
+		}
+	}
+
+	@Test
+	public void testEncodePackets() {
+		RTMPProtocolEncoder encoder = new RTMPProtocolEncoder();
+		encoder.setSerializer(new Serializer());
+		BroadcastCall broadcast = new BroadcastCall("onMessage", new Object[] { "hello" });
+		Packet[] packets = new Packet[3];
+		for (int i = 0; i < packets.length; i++) {
+			Notify notify = new Notify();
+			notify.setCall(broadcast);
+			Header header = new Header();
+			header.setChannelId(3);
+			header.setDataType(notify.getDataType());
+			packets[i] = new Packet(header, notify);
+		}
+		// the batch is the packets encoded one after another, header compression included
+		RTMP rtmp = new RTMP(RTMP.MODE_SERVER);
+		IoBuffer expected = IoBuffer.allocate(256);
+		expected.setAutoExpand(true);
+		for (Packet packet : packets) {
+			expected.put(encoder.encodePacket(rtmp, packet));
+		}
+		expected.flip();
+		IoBuffer batch = encoder.encodePackets(new RTMP(RTMP.MODE_SERVER), packets);
+		assertArrayEquals(toBytes(expected), toBytes(batch));
+	}
+
+	@Test
+	public void testEncodeBroadcastSharedObject() {
+		RTMPProtocolEncoder encoder = new RTMPProtocolEncoder();
+		encoder.setSerializer(new Serializer());
+		Map<String, Object> map = new HashMap<String, Object>();
+		map.put("x", 10);
+		map.put("y", 20.5);
+		for (Encoding encoding : Encoding.values()) {
+			RTMP rtmp = new RTMP(RTMP.MODE_SERVER);
+			rtmp.setEncoding(encoding);
+			SharedObjectMessage expected = encoding == Encoding.AMF3 ? new FlexSharedObjectMessage(null, "lobby", 7, false) : new SharedObjectMessage(null, "lobby", 7, false);
+			BroadcastSharedObjectMessage shared = new BroadcastSharedObjectMessage("lobby", 7, false, encoding);
+			for (SharedObjectMessage message : new SharedObjectMessage[] { expected, shared }) {
+				message.addEvent(ISharedObjectEvent.Type.CLIENT_UPDATE_DATA, "cursor", map);
+				message.addEvent(ISharedObjectEvent.Type.CLIENT_DELETE_DATA, "old", null);
+			}
+			assertEquals(expected.getDataType(), shared.getDataType());
+			byte[] bytes = toBytes(encoding == Encoding.AMF3 ? encoder.encodeFlexSharedObject(expected, rtmp) : encoder.encodeSharedObject(expected, rtmp));
+			Header header = new Header();
+			header.setDataType(shared.getDataType());
+			// encoded twice to use the cached form the second time
+			for (int i = 0; i < 2; i++) {
+				assertArrayEquals(bytes, toBytes(encoder.encodeMessage(rtmp, header, shared)));
+			}
+			assertNotNull(shared.getEncoded());
+			// the body is dropped with the last reference
+			shared.release();
+			assertNull(shared.getEncoded());
+		}
+	}
+
+	private static byte[] toBytes(IoBuffer buf) {
+		if (buf.position() != 0) {
+			buf.flip();
+		}
+		byte[] bytes = new byte[buf.limit()];
+		buf.get(bytes);
+		return bytes;
+	}
+
 }
@@ -0,0 +1,238 @@
+package org.red5.server.net.rtmp.load;
+
+/*
+ * RED5 Open Source Flash Server - http://code.google.com/p/red5/
+ *
+ * Copyright (c) 2006-2011 by respective authors (see below). All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation; either version 2.1 of the License, or (at your option) any later
+ * version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along
+ * with this library; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+import org.red5.io.utils.ObjectMap;
+import org.red5.server.api.event.IEvent;
+import org.red5.server.messaging.IMessage;
+import org.red5.server.net.rtmp.INetStreamEventHandler;
+import org.red5.server.net.rtmp.RTMPClient;
+import org.red5.server.net.rtmp.event.IRTMPEvent;
+import org.red5.server.net.rtmp.event.Notify;
+import org.red5.server.net.rtmp.status.StatusCodes;
+import org.red5.server.service.Call;
+import org.red5.server.stream.message.RTMPMessage;
+
+public class LoadGeneratorTest {
+
+	private static final String FIXTURE = "fixtures/test.flv";
+
+	@Test
+	public void testFixture() throws Exception {
+		LoadFixture fixture = new LoadFixture(new File(FIXTURE));
+		assertTrue(fixture.size() > 0);
+		for (int i = 1; i < fixture.size(); i++) {
+			assertTrue(fixture.getTimestamp(i) >= fixture.getTimestamp(i - 1));
+		}
+		assertTrue(fixture.getDuration() > fixture.getTimestamp(fixture.size() - 1));
+		IRTMPEvent first = fixture.createEvent(0, 1234);
+		IRTMPEvent second = fixture.createEvent(0, 5678);
+		assertEquals(1234, first.getTimestamp());
+		assertEquals(5678, second.getTimestamp());
+	}
+
+	@Test
+	public void testPublishOnce() throws Exception {
+		// a fixture without duration has to be published once instead of looping forever
+		LoadFixture fixture = new ImmediateFixture(0);
+		LoadGenerator generator = new LoadGenerator();
+		ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+		generator.setExecutor(executor);
+		StubClient client = new StubClient(0);
+		LoadPublisher publisher = new LoadPublisher(generator, "load0", fixture, false, client);
+		publisher.connected = true;
+		publisher.streamCreated(1);
+		executor.shutdown();
+		assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+		assertTrue(publisher.isPublishing());
+		assertTrue(publisher.isStopped());
+		assertEquals(fixture.size(), publisher.getFramesSent());
+		assertEquals(fixture.size(), client.published);
+	}
+
+	@Test
+	public void testPublishLoop() throws Exception {
+		LoadFixture fixture = new ImmediateFixture(1);
+		LoadGenerator generator = new LoadGenerator();
+		ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+		generator.setExecutor(executor);
+		StubClient client = new StubClient(0);
+		LoadPublisher publisher = new LoadPublisher(generator, "load0", fixture, true, client);
+		publisher.connected = true;
+		publisher.streamCreated(1);
+		long deadline = System.currentTimeMillis() + 10000;
+		while (publisher.getFramesSent() <= fixture.size() && System.currentTimeMillis() < deadline) {
+			Thread.sleep(10);
+		}
+		publisher.stop();
+		executor.shutdown();
+		assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+		assertTrue(publisher.getFramesSent() > fixture.size());
+		assertEquals(publisher.getFramesSent(), client.published);
+		long sent = publisher.getFramesSent();
+		publisher.run();
+		assertEquals(sent, publisher.getFramesSent());
+	}
+
+	@Test
+	public void testSubscribeAndDrop() throws Exception {
+		LoadFixture fixture = new ImmediateFixture(0);
+		LoadGenerator generator = new LoadGenerator();
+		ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+		generator.setExecutor(executor);
+		StubClient publisherClient = new StubClient(4);
+		LoadPublisher publisher = new LoadPublisher(generator, "load0", fixture, false, publisherClient);
+		StubClient subscriberClient = new StubClient(0);
+		LoadSubscriber subscriber = new LoadSubscriber(generator, "load0", publisher, subscriberClient);
+		subscriber.connected = true;
+		subscriber.streamCreated(2);
+		assertEquals("load0", subscriberClient.played);
+		assertEquals(-1, subscriberClient.playStart);
+		assertEquals(0, subscriber.getFramesDropped());
+		publisherClient.subscriber = subscriber;
+		publisher.connected = true;
+		publisher.streamCreated(1);
+		executor.shutdown();
+		assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+		publisherClient.flush();
+		int size = fixture.size();
+		// the first frame sets the baseline, every fourth one after it is lost
+		assertEquals(size, publisher.getFramesSent());
+		assertEquals(size - (size - 1) / 4, subscriber.getFramesReceived());
+		assertEquals((size - 1) / 4, subscriber.getFramesDropped());
+		assertTrue(subscriber.isLive());
+	}
+
+	@Test
+	public void testUnreachableServer() throws Exception {
+		ServerSocket socket = new ServerSocket(0);
+		int port = socket.getLocalPort();
+		socket.close();
+		LoadGenerator generator = new LoadGenerator();
+		generator.setPort(port);
+		generator.setFixture(FIXTURE);
+		generator.setPublishers(2);
+		generator.setLiveSubscribers(2);
+		generator.setRampInterval(0);
+		generator.setDuration(0);
+		generator.setDrainTime(0);
+		LoadReport report = generator.run();
+		System.out.print(report);
+		assertEquals(4, report.getClients());
+		assertEquals(0, report.getConnected());
+		assertEquals(4, report.getFailed());
+		assertEquals(0, report.getFramesSent());
+		assertEquals(0, report.getConnectLatency().getCount());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testNegativeDuration() {
+		new LoadGenerator().setDuration(-1);
+	}
+
+	/**
+	 * Fixture whose frames are all due at once.
+	 */
+	private static class ImmediateFixture extends LoadFixture {
+
+		private final int duration;
+
+		ImmediateFixture(int duration) throws IOException {
+			super(new File(FIXTURE));
+			this.duration = duration;
+		}
+
+		@Override
+		public int getTimestamp(int index) {
+			return 0;
+		}
+
+		@Override
+		public int getDuration() {
+			return duration;
+		}
+
+	}
+
+	/**
+	 * Client that accepts every publish and hands published frames to a subscriber one frame
+	 * late, like a network would, dropping every n-th frame after the first.
+	 */
+	private static class StubClient extends RTMPClient {
+
+		private final int dropEvery;
+
+		volatile LoadSubscriber subscriber;
+
+		volatile int published;
+
+		volatile String played;
+
+		volatile int playStart;
+
+		private IEvent pending;
+
+		StubClient(int dropEvery) {
+			this.dropEvery = dropEvery;
+		}
+
+		@Override
+		public void publish(int streamId, String name, String mode, INetStreamEventHandler handler) {
+			ObjectMap<String, Object> status = new ObjectMap<String, Object>();
+			status.put("code", StatusCodes.NS_PUBLISH_START);
+			handler.onStreamEvent(new Notify(new Call(null, "onStatus", new Object[] { status })));
+		}
+
+		@Override
+		public void publishStreamData(int streamId, IMessage message) {
+			flush();
+			if (dropEvery == 0 || published == 0 || published % dropEvery != 0) {
+				pending = ((RTMPMessage) message).getBody();
+			}
+			published++;
+		}
+
+		@Override
+		public void play(int streamId, String name, int start, int length) {
+			played = name;
+			playStart = start;
+		}
+
+		void flush() {
+			if (pending != null && subscriber != null) {
+				subscriber.dispatchEvent(pending);
+			}
+			pending = null;
+		}
+
+	}
+
+}
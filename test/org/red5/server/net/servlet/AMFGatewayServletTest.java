@@ -0,0 +1,202 @@
+package org.red5.server.net.servlet;
+
+/*
+ * RED5 Open Source Flash Server - http://code.google.com/p/red5/
+ *
+ * Copyright (c) 2006-2011 by respective authors (see below). All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation; either version 2.1 of the License, or (at your option) any later
+ * version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along
+ * with this library; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.red5.io.object.Deserializer;
+import org.red5.io.object.Serializer;
+import org.red5.server.Context;
+import org.red5.server.api.IScope;
+import org.red5.server.api.Red5;
+import org.red5.server.api.service.IServiceCall;
+import org.red5.server.api.service.IServiceInvoker;
+import org.red5.server.net.remoting.RemotingConnection;
+import org.red5.server.net.remoting.codec.RemotingCodecFactory;
+import org.red5.server.net.remoting.message.RemotingCall;
+import org.red5.server.net.remoting.message.RemotingPacket;
+import org.red5.server.net.servlet.AMFGatewayServlet.BatchCall;
+import org.red5.server.net.servlet.AMFGatewayServlet.ParallelBatch;
+import org.red5.server.service.Call;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+/**
+ * @author The Red5 Project (red5@osflash.org)
+ */
+public class AMFGatewayServletTest {
+
+	private AMFGatewayServlet servlet;
+
+	private final CountDownLatch release = new CountDownLatch(1);
+
+	private final AtomicInteger invoked = new AtomicInteger();
+
+	@Before
+	public void setUp() {
+		servlet = new AMFGatewayServlet();
+		RemotingCodecFactory codecFactory = new RemotingCodecFactory();
+		codecFactory.setSerializer(new Serializer());
+		codecFactory.setDeserializer(new Deserializer());
+		codecFactory.init();
+		servlet.codecFactory = codecFactory;
+		// a single thread, so a call queued behind a slow one has not started at the deadline
+		servlet.executor = new ThreadPoolExecutor(1, 1, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>());
+		servlet.parallelServices = Collections.singleton("service");
+	}
+
+	@After
+	public void tearDown() {
+		Red5.setConnectionLocal(null);
+		release.countDown();
+		servlet.destroy();
+	}
+
+	@Test
+	public void testParallelBatch() throws Exception {
+		RemotingPacket packet = newPacket("fast", "fast", "fast");
+		CleanupConnection conn = new CleanupConnection(packet);
+		Red5.setConnectionLocal(conn);
+		ParallelBatch batch = new ParallelBatch(conn, packet.getCalls().size());
+		List<BatchCall> results = servlet.submitRemotingCalls(batch, newContext(), null, packet);
+		MockHttpServletResponse resp = new MockHttpServletResponse();
+		servlet.sendStreamedResponse(resp, packet, results);
+		batch.release();
+		assertEquals(3, invoked.get());
+		for (RemotingCall call : packet.getCalls()) {
+			assertEquals(Call.STATUS_SUCCESS_RESULT, call.getStatus());
+		}
+		assertTrue(resp.getContentAsByteArray().length > 0);
+		// cleaned up with the last release
+		assertEquals(0, conn.cleanups.getCount());
+	}
+
+	@Test
+	public void testDeadline() throws Exception {
+		servlet.callTimeout = 100;
+		RemotingPacket packet = newPacket("slow", "fast");
+		CleanupConnection conn = new CleanupConnection(packet);
+		Red5.setConnectionLocal(conn);
+		ParallelBatch batch = new ParallelBatch(conn, packet.getCalls().size());
+		List<BatchCall> results = servlet.submitRemotingCalls(batch, newContext(), null, packet);
+		servlet.sendStreamedResponse(new MockHttpServletResponse(), packet, results);
+		batch.release();
+		RemotingCall slow = packet.getCalls().get(0);
+		RemotingCall fast = packet.getCalls().get(1);
+		// the running call was answered with a fault without touching it
+		assertEquals(Call.STATUS_PENDING, slow.getStatus());
+		// the queued call was skipped
+		assertEquals(Call.STATUS_GENERAL_EXCEPTION, fast.getStatus());
+		// the connection stays until the running call returns
+		assertEquals(1, conn.cleanups.getCount());
+		release.countDown();
+		assertTrue(conn.cleanups.await(10, TimeUnit.SECONDS));
+		assertEquals(Call.STATUS_SUCCESS_RESULT, slow.getStatus());
+		assertEquals(1, invoked.get());
+	}
+
+	@Test
+	public void testOrderedCalls() throws Exception {
+		RemotingPacket packet = newPacket("session.fail", "session.fast", "fast");
+		CleanupConnection conn = new CleanupConnection(packet);
+		Red5.setConnectionLocal(conn);
+		ParallelBatch batch = new ParallelBatch(conn, packet.getCalls().size());
+		List<BatchCall> results = servlet.submitRemotingCalls(batch, newContext(), null, packet);
+		servlet.sendStreamedResponse(new MockHttpServletResponse(), packet, results);
+		batch.release();
+		// calls of a service not configured as independent stop at the first failure
+		assertEquals(Call.STATUS_GENERAL_EXCEPTION, packet.getCalls().get(0).getStatus());
+		assertEquals(Call.STATUS_PENDING, packet.getCalls().get(1).getStatus());
+		assertEquals(Call.STATUS_SUCCESS_RESULT, packet.getCalls().get(2).getStatus());
+		assertEquals(2, invoked.get());
+		assertEquals(0, conn.cleanups.getCount());
+	}
+
+	private RemotingPacket newPacket(String... methods) {
+		List<RemotingCall> calls = new ArrayList<RemotingCall>();
+		for (int i = 0; i < methods.length; i++) {
+			int dot = methods[i].indexOf('.');
+			String service = dot > 0 ? methods[i].substring(0, dot) : "service";
+			calls.add(new RemotingCall(service, methods[i].substring(dot + 1), null, "/" + i, false, false));
+		}
+		return new RemotingPacket(new HashMap<String, Object>(), calls);
+	}
+
+	private Context newContext() {
+		Context context = new Context();
+		context.setServiceInvoker(new IServiceInvoker() {
+
+			public boolean invoke(IServiceCall call, IScope scope) {
+				if ("slow".equals(call.getServiceMethodName())) {
+					try {
+						release.await(10, TimeUnit.SECONDS);
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+					}
+				}
+				invoked.incrementAndGet();
+				if ("fail".equals(call.getServiceMethodName())) {
+					call.setStatus(Call.STATUS_GENERAL_EXCEPTION);
+					return false;
+				}
+				((RemotingCall) call).setResult(call.getServiceMethodName());
+				call.setStatus(Call.STATUS_SUCCESS_RESULT);
+				return true;
+			}
+
+			public boolean invoke(IServiceCall call, Object service) {
+				return false;
+			}
+
+		});
+		return context;
+	}
+
+	private static class CleanupConnection extends RemotingConnection {
+
+		final CountDownLatch cleanups = new CountDownLatch(1);
+
+		CleanupConnection(RemotingPacket packet) {
+			super(new MockHttpServletRequest(), null, packet);
+		}
+
+		@Override
+		public void cleanup() {
+			super.cleanup();
+			cleanups.countDown();
+		}
+
+	}
+
+}
@@ -0,0 +1,213 @@
+package org.red5.server.persistence;
+
+/*
+ * RED5 Open Source Flash Server - http://www.osflash.org/red5
+ *
+ * Copyright (c) 2006-2011 by respective authors. All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation; either version 2.1 of the License, or (at your option) any later
+ * version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along
+ * with this library; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+*/
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertNotNull;
+import static junit.framework.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.red5.server.so.SharedObject;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.support.PathMatchingResourcePatternResolver;
+import org.springframework.core.io.support.ResourcePatternResolver;
+
+/**
+ * @author The Red5 Project (red5@osflash.org)
+ */
+public class JournalPersistenceTest {
+
+	private static final String ID = "SharedObject/app/game";
+
+	private File root;
+
+	private ResourcePatternResolver resolver;
+
+	@Before
+	public void setUp() throws Exception {
+		root = File.createTempFile("journal", "");
+		root.delete();
+		root.mkdirs();
+		resolver = new PathMatchingResourcePatternResolver() {
+			@Override
+			public Resource getResource(String location) {
+				return new FileSystemResource(new File(root, location));
+			}
+		};
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		JournalPersistenceThread.getInstance().setCompactionThreshold(4 * 1024 * 1024);
+		delete(root);
+	}
+
+	@Test
+	public void testReplayLog() throws Exception {
+		JournalPersistence store = new JournalPersistence(resolver);
+		SharedObject so = new SharedObject(new HashMap<String, Object>(), "game", "/app", true, store);
+		store.save(so);
+		so.setAttribute("a", 1);
+		so.setAttribute("b", "x");
+		store.flush();
+		File log = new File(root, "persistence/journal/store.log");
+		long size = log.length();
+		assertTrue(size > 0);
+		so.setAttribute("a", 2);
+		so.removeAttribute("b");
+		so.setAttribute("a", 3);
+		assertTrue(store.isDirty());
+		store.flush();
+		assertFalse(store.isDirty());
+		store.notifyClose();
+		// an incomplete record at the end is dropped
+		FileOutputStream out = new FileOutputStream(log, true);
+		out.write(new byte[] { 0, 0, 1 });
+		out.close();
+
+		store = new JournalPersistence(resolver);
+		SharedObject recovered = (SharedObject) store.load(ID);
+		assertNotNull(recovered);
+		assertEquals(3, recovered.getAttribute("a"));
+		assertFalse(recovered.hasAttribute("b"));
+		assertTrue(log.length() > size);
+		store.notifyClose();
+	}
+
+	@Test
+	public void testCompaction() throws Exception {
+		JournalPersistenceThread.getInstance().setCompactionThreshold(0);
+		JournalPersistence store = new JournalPersistence(resolver);
+		SharedObject so = new SharedObject(new HashMap<String, Object>(), "game", "/app", true, store);
+		store.save(so);
+		so.setAttribute("a", "first");
+		so.setAttribute("b", "second");
+		store.flush();
+		assertEquals(0, new File(root, "persistence/journal/store.log").length());
+		assertTrue(new File(root, "persistence/journal/store.snapshot").length() > 0);
+		store.notifyClose();
+
+		store = new JournalPersistence(resolver);
+		SharedObject recovered = (SharedObject) store.load(ID);
+		assertEquals("first", recovered.getAttribute("a"));
+		assertEquals("second", recovered.getAttribute("b"));
+		store.remove(recovered);
+		store.notifyClose();
+
+		store = new JournalPersistence(resolver);
+		assertEquals(null, store.load(ID));
+		store.notifyClose();
+	}
+
+	@Test
+	public void testFailedWrite() throws Exception {
+		FailingJournalPersistence store = new FailingJournalPersistence(resolver);
+		SharedObject other = new SharedObject(new HashMap<String, Object>(), "other", "/app", true, store);
+		store.save(other);
+		other.setAttribute("kept", "yes");
+		SharedObject so = new SharedObject(new HashMap<String, Object>(), "game", "/app", true, store);
+		store.save(so);
+		so.setAttribute("a", 1);
+		store.flush();
+		File log = new File(root, "persistence/journal/store.log");
+		long size = log.length();
+
+		// half of the records reach the log, compaction must not run on the failed flush
+		JournalPersistenceThread.getInstance().setCompactionThreshold(0);
+		so.setAttribute("a", 2);
+		so.setAttribute("b", "x");
+		store.fail = true;
+		store.flush();
+		assertTrue(store.isDirty());
+		assertEquals(size, log.length());
+		assertFalse(new File(root, "persistence/journal/store.snapshot").exists());
+
+		// the next flush compacts, keeping the object that did not change since the failure
+		store.flush();
+		assertFalse(store.isDirty());
+		assertEquals(0, log.length());
+		store.notifyClose();
+
+		JournalPersistenceThread.getInstance().setCompactionThreshold(4 * 1024 * 1024);
+		store = new FailingJournalPersistence(resolver);
+		SharedObject recovered = (SharedObject) store.load(ID);
+		assertEquals(2, recovered.getAttribute("a"));
+		assertEquals("x", recovered.getAttribute("b"));
+		assertEquals("yes", ((SharedObject) store.load("SharedObject/app/other")).getAttribute("kept"));
+
+		// records appended after a failure replay in line
+		recovered.setAttribute("a", 3);
+		store.fail = true;
+		store.flush();
+		recovered.setAttribute("c", "y");
+		store.flush();
+		store.notifyClose();
+		store = new FailingJournalPersistence(resolver);
+		recovered = (SharedObject) store.load(ID);
+		assertEquals(3, recovered.getAttribute("a"));
+		assertEquals("y", recovered.getAttribute("c"));
+		store.notifyClose();
+	}
+
+	private static void delete(File file) {
+		File[] children = file.listFiles();
+		if (children != null) {
+			for (File child : children) {
+				delete(child);
+			}
+		}
+		file.delete();
+	}
+
+	/**
+	 * Store whose next log write stops halfway with an exception.
+	 */
+	private static class FailingJournalPersistence extends JournalPersistence {
+
+		boolean fail;
+
+		FailingJournalPersistence(ResourcePatternResolver resolver) {
+			super(resolver);
+		}
+
+		@Override
+		protected void writeLog(ByteBuffer data) throws IOException {
+			if (fail) {
+				fail = false;
+				data.limit(data.position() + data.remaining() / 2);
+				super.writeLog(data);
+				throw new IOException("Disk full");
+			}
+			super.writeLog(data);
+		}
+
+	}
+
+}
@@ -0,0 +1,184 @@
+package org.red5.server.persistence;
+
+/*
+ * RED5 Open Source Flash Server - http://www.osflash.org/red5
+ *
+ * Copyright (c) 2006-2011 by respective authors. All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation; either version 2.1 of the License, or (at your option) any later
+ * version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along
+ * with this library; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+*/
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertNotNull;
+import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertTrue;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.HashMap;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.red5.server.api.persistence.IPersistable;
+import org.red5.server.so.SharedObject;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.support.PathMatchingResourcePatternResolver;
+import org.springframework.core.io.support.ResourcePatternResolver;
+
+/**
+ * @author The Red5 Project (red5@osflash.org)
+ */
+public class MappedPersistenceTest {
+
+	private static final int COUNT = 5000;
+
+	private File root;
+
+	private ResourcePatternResolver resolver;
+
+	@Before
+	public void setUp() throws Exception {
+		root = File.createTempFile("mapped", "");
+		root.delete();
+		root.mkdirs();
+		resolver = new PathMatchingResourcePatternResolver() {
+			@Override
+			public Resource getResource(String location) {
+				return new FileSystemResource(new File(root, location));
+			}
+		};
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		delete(root);
+	}
+
+	@Test
+	public void testSaveAndReopen() throws Exception {
+		MappedPersistence store = new MappedPersistence(resolver);
+		for (int i = 0; i < COUNT; i++) {
+			SharedObject so = new SharedObject(new HashMap<String, Object>(), "so" + i, "/app", true, store);
+			so.setAttribute("value", i);
+			store.save(so);
+		}
+		assertEquals(COUNT, store.getObjectNames().size());
+		assertTrue(store.remove("SharedObject/app/so7"));
+		assertFalse(store.remove("SharedObject/app/so7"));
+		store.notifyClose();
+		assertTrue(new File(root, "persistence/mapped/store.dat").isFile());
+
+		store = new MappedPersistence(resolver);
+		assertEquals(COUNT - 1, store.getObjectNames().size());
+		assertNull(store.load("SharedObject/app/so7"));
+		IPersistable loaded = store.load("SharedObject/app/so42");
+		assertNotNull(loaded);
+		assertEquals("so42", loaded.getName());
+		assertEquals(42, ((SharedObject) loaded).getAttribute("value"));
+		// loading again returns the same instance while it is referenced
+		assertTrue(loaded == store.load("SharedObject/app/so42"));
+		int count = 0;
+		for (IPersistable object : store.getObjects()) {
+			assertNotNull(object);
+			count++;
+		}
+		assertEquals(COUNT - 1, count);
+		store.notifyClose();
+	}
+
+	@Test
+	public void testGrowAndReuse() throws Exception {
+		MappedPersistence store = new MappedPersistence(resolver);
+		SharedObject so = new SharedObject(new HashMap<String, Object>(), "big", "/app", true, store);
+		store.save(so);
+		StringBuilder value = new StringBuilder();
+		for (int i = 0; i < 1000; i++) {
+			value.append(i);
+		}
+		// starts small
+		assertEquals(4096, new File(root, "persistence/mapped/store.dat").length());
+		so.setAttribute("text", value.toString());
+		// no longer fits in its pages, so it is moved
+		store.save(so);
+		long size = 0;
+		for (int i = 0; i < 100; i++) {
+			if (i == 1) {
+				size = new File(root, "persistence/mapped/store.dat").length();
+			}
+			SharedObject other = new SharedObject(new HashMap<String, Object>(), "other", "/app", true, store);
+			other.setAttribute("text", value.toString());
+			store.save(other);
+			assertTrue(store.remove("SharedObject/app/other"));
+		}
+		assertEquals(size, new File(root, "persistence/mapped/store.dat").length());
+		store.notifyClose();
+
+		store = new MappedPersistence(resolver);
+		SharedObject loaded = (SharedObject) store.load("SharedObject/app/big");
+		assertEquals(value.toString(), loaded.getAttribute("text"));
+		assertEquals(1, store.getObjectNames().size());
+		store.notifyClose();
+	}
+
+	@Test
+	public void testInterruptedSave() throws Exception {
+		MappedPersistence store = new MappedPersistence(resolver);
+		SharedObject so = new SharedObject(new HashMap<String, Object>(), "so", "/app", true, store);
+		so.setAttribute("value", 1);
+		store.save(so);
+		so.setAttribute("value", 2);
+		store.save(so);
+		store.notifyClose();
+		// make it look like the server stopped before the first version was released
+		RandomAccessFile file = new RandomAccessFile(new File(root, "persistence/mapped/store.dat"), "rw");
+		try {
+			file.seek(256);
+			assertEquals(0, file.readInt());
+			int count = file.readInt();
+			file.seek(256);
+			file.writeInt(1);
+			file.seek(256 * (1 + count));
+			assertEquals(1, file.readInt());
+			file.seek(256 * (1 + count));
+			file.writeInt(2);
+		} finally {
+			file.close();
+		}
+		store = new MappedPersistence(resolver);
+		assertEquals(1, store.getObjectNames().size());
+		SharedObject loaded = (SharedObject) store.load("SharedObject/app/so");
+		assertEquals(2, loaded.getAttribute("value"));
+		store.notifyClose();
+		// the recovered state is stored
+		store = new MappedPersistence(resolver);
+		assertEquals(1, store.getObjectNames().size());
+		loaded = (SharedObject) store.load("SharedObject/app/so");
+		assertEquals(2, loaded.getAttribute("value"));
+		store.notifyClose();
+	}
+
+	private void delete(File file) {
+		File[] children = file.listFiles();
+		if (children != null) {
+			for (File child : children) {
+				delete(child);
+			}
+		}
+		file.delete();
+	}
+
+}
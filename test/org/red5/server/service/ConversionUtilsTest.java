@@ -20,11 +20,16 @@ package org.red5.server.service;
 */
 
 import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertNotSame;
 import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertSame;
+import static junit.framework.Assert.assertTrue;
 import static junit.framework.Assert.fail;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import org.apache.commons.beanutils.ConversionException;
@@ -40,6 +45,30 @@ public class ConversionUtilsTest {
 
 	}
 
+	public static class TestPropertyBean {
+
+		private int count;
+
+		private String name;
+
+		public int getCount() {
+			return count;
+		}
+
+		public void setCount(int count) {
+			this.count = count;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public void setName(String name) {
+			this.name = name;
+		}
+
+	}
+
 	//private static final Logger log = LoggerFactory.getLogger(ConversionUtilsTest.class);
 
 	@Test
@@ -164,4 +193,48 @@ public class ConversionUtilsTest {
 		ConversionUtils.convert(new TestJavaBean(), null);
 	}
 
+	@Test
+	public void testConverterIsCached() {
+		TypeConverter converter = ConversionUtils.getConverter(Double.class, int.class);
+		assertSame(converter, ConversionUtils.getConverter(Double.class, int.class));
+		assertEquals(Integer.valueOf(3), converter.convert(Double.valueOf(3.7d)));
+		// NaN is passed through unconverted
+		assertTrue(((Double) converter.convert(Double.NaN)).isNaN());
+	}
+
+	@Test
+	public void testClearConvertersForClassLoader() {
+		TypeConverter converter = ConversionUtils.getConverter(Double.class, TestPropertyBean.class);
+		TypeConverter system = ConversionUtils.getConverter(Double.class, int.class);
+		ConversionUtils.clearConverters(TestPropertyBean.class.getClassLoader());
+		assertNotSame(converter, ConversionUtils.getConverter(Double.class, TestPropertyBean.class));
+		// converters between bootstrap classes are kept
+		assertSame(system, ConversionUtils.getConverter(Double.class, int.class));
+	}
+
+	@Test
+	public void testNumberNarrowing() {
+		assertEquals(Short.valueOf((short) 12), ConversionUtils.convert(Double.valueOf(12d), Short.class));
+		assertEquals(Byte.valueOf((byte) 7), ConversionUtils.convert(Integer.valueOf(7), byte.class));
+		assertEquals(Long.valueOf(42L), ConversionUtils.convert("42", long.class));
+	}
+
+	@Test(expected = ConversionException.class)
+	public void testNonNumericString() {
+		ConversionUtils.convert("forty two", Integer.class);
+	}
+
+	@Test
+	public void testConvertMapToBean() {
+		Map<String, Object> source = new HashMap<String, Object>();
+		source.put("count", Double.valueOf(5d));
+		source.put("name", "bean");
+		source.put("unknown", "ignored");
+		Object result = ConversionUtils.convert(source, TestPropertyBean.class);
+		assertTrue(result instanceof TestPropertyBean);
+		TestPropertyBean bean = (TestPropertyBean) result;
+		assertEquals(5, bean.getCount());
+		assertEquals("bean", bean.getName());
+	}
+
 }
@@ -19,6 +19,8 @@ package org.red5.server.service;
  * 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
  */
 
+import java.net.URL;
+import java.net.URLClassLoader;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Random;
@@ -122,6 +124,74 @@ public class ServiceInvokerTest extends AbstractJUnit4SpringContextTests {
 		Assert.assertEquals(params[0], call.getResult());
 	}
 
+	@Test
+	public void testCachedMethodResolution() {
+		ServiceInvoker invoker = new ServiceInvoker();
+		Object service = applicationContext.getBean("echoService");
+		PendingCall call = new PendingCall("echoService", "echoNumber", new Object[] { 42d });
+		invoker.invoke(call, service);
+		Assert.assertEquals(true, call.isSuccess());
+		Assert.assertEquals(0, invoker.getCacheHits());
+		Assert.assertEquals(1, invoker.getCacheMisses());
+		// same argument types must be served from the cache
+		call = new PendingCall("echoService", "echoNumber", new Object[] { 7d });
+		invoker.invoke(call, service);
+		Assert.assertEquals(true, call.isSuccess());
+		Assert.assertEquals(7d, call.getResult());
+		Assert.assertEquals(1, invoker.getCacheHits());
+		// a string argument requires conversion, resolved once then cached
+		call = new PendingCall("echoService", "echoNumber", new Object[] { "12" });
+		invoker.invoke(call, service);
+		Assert.assertEquals(12d, call.getResult());
+		call = new PendingCall("echoService", "echoNumber", new Object[] { "13" });
+		invoker.invoke(call, service);
+		Assert.assertEquals(13d, call.getResult());
+		Assert.assertEquals(2, invoker.getCacheHits());
+		// a cached entry whose values cannot be converted must still fail cleanly
+		call = new PendingCall("echoService", "echoNumber", new Object[] { "not a number" });
+		invoker.invoke(call, service);
+		Assert.assertEquals(false, call.isSuccess());
+		Assert.assertEquals(Call.STATUS_METHOD_NOT_FOUND, call.getStatus());
+	}
+
+	@Test
+	public void testBoundedMethodCache() {
+		ServiceInvoker invoker = new ServiceInvoker();
+		invoker.setMethodSignatureLimit(1);
+		Object service = applicationContext.getBean("echoService");
+		invoker.invoke(new PendingCall("echoService", "echoNumber", new Object[] { 42d }), service);
+		// a second signature of the same method is not cached
+		invoker.invoke(new PendingCall("echoService", "echoNumber", new Object[] { "12" }), service);
+		invoker.invoke(new PendingCall("echoService", "echoNumber", new Object[] { "13" }), service);
+		Assert.assertEquals(0, invoker.getCacheHits());
+		invoker.invoke(new PendingCall("echoService", "echoNumber", new Object[] { 43d }), service);
+		Assert.assertEquals(1, invoker.getCacheHits());
+		// a full cache is emptied to admit new resolutions
+		invoker.setMethodCacheSize(1);
+		invoker.invoke(new PendingCall("echoService", "echoString", new Object[] { "test" }), service);
+		invoker.invoke(new PendingCall("echoService", "echoString", new Object[] { "test" }), service);
+		Assert.assertEquals(2, invoker.getCacheHits());
+		invoker.invoke(new PendingCall("echoService", "echoNumber", new Object[] { 44d }), service);
+		Assert.assertEquals(2, invoker.getCacheHits());
+		Assert.assertEquals(5, invoker.getCacheMisses());
+	}
+
+	@Test
+	public void testClearMethodCacheForClassLoader() {
+		ServiceInvoker invoker = new ServiceInvoker();
+		Object service = applicationContext.getBean("echoService");
+		invoker.invoke(new PendingCall("echoService", "echoNumber", new Object[] { 42d }), service);
+		// an unrelated class loader keeps the entry
+		invoker.clearMethodCache(new URLClassLoader(new URL[0], null));
+		invoker.invoke(new PendingCall("echoService", "echoNumber", new Object[] { 43d }), service);
+		Assert.assertEquals(1, invoker.getCacheHits());
+		// the loader of the service class, or one of its parents, removes it
+		invoker.clearMethodCache(service.getClass().getClassLoader());
+		invoker.invoke(new PendingCall("echoService", "echoNumber", new Object[] { 44d }), service);
+		Assert.assertEquals(1, invoker.getCacheHits());
+		Assert.assertEquals(2, invoker.getCacheMisses());
+	}
+
 	/**
 	 * Test for memory leak bug #631
 	 * http://trac.red5.org/ticket/631
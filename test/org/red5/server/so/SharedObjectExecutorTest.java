@@ -0,0 +1,160 @@
+package org.red5.server.so;
+
+/*
+ * RED5 Open Source Flash Server - http://code.google.com/p/red5/
+ *
+ * Copyright (c) 2006-2011 by respective authors (see below). All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation; either version 2.1 of the License, or (at your option) any later
+ * version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along
+ * with this library; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertTrue;
+import static junit.framework.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Test;
+import org.red5.server.Scope;
+
+/**
+ * @author The Red5 Project (red5@osflash.org)
+ */
+public class SharedObjectExecutorTest {
+
+	private ExecutorService workers = Executors.newFixedThreadPool(2);
+
+	@After
+	public void tearDown() {
+		workers.shutdownNow();
+	}
+
+	@Test
+	public void testOrderPerConnection() throws Exception {
+		SharedObjectExecutor executor = new SharedObjectExecutor("ordered", workers, 4);
+		int connections = 16;
+		int tasks = 2000;
+		final List<List<Integer>> received = new ArrayList<List<Integer>>();
+		for (int c = 0; c < connections; c++) {
+			received.add(new ArrayList<Integer>());
+		}
+		final CountDownLatch done = new CountDownLatch(connections * tasks);
+		for (int i = 0; i < tasks; i++) {
+			for (int c = 0; c < connections; c++) {
+				final List<Integer> list = received.get(c);
+				final int sequence = i;
+				executor.execute(c, new Runnable() {
+					public void run() {
+						list.add(sequence);
+						done.countDown();
+					}
+				});
+			}
+		}
+		assertTrue(done.await(10, TimeUnit.SECONDS));
+		// a task counts as completed just after it has run
+		awaitCompleted(executor, connections * tasks);
+		for (List<Integer> list : received) {
+			assertEquals(tasks, list.size());
+			for (int i = 0; i < tasks; i++) {
+				assertEquals(i, list.get(i).intValue());
+			}
+		}
+		assertEquals(connections * tasks, executor.getCompletedTasks());
+		assertEquals(0, executor.getQueueDepth());
+	}
+
+	@Test
+	public void testApplicationIsolation() throws Exception {
+		SharedObjectExecutor chat = new SharedObjectExecutor("chat", workers, 2);
+		SharedObjectExecutor other = new SharedObjectExecutor("other", workers, 2);
+		Runnable slow = new Runnable() {
+			public void run() {
+				try {
+					Thread.sleep(1);
+				} catch (InterruptedException e) {
+				}
+			}
+		};
+		// keeps both worker threads busy for about a second
+		for (int i = 0; i < 1000; i++) {
+			chat.execute(i, slow);
+		}
+		final CountDownLatch done = new CountDownLatch(1);
+		long start = System.nanoTime();
+		other.execute(1, new Runnable() {
+			public void run() {
+				done.countDown();
+			}
+		});
+		assertTrue(done.await(10, TimeUnit.SECONDS));
+		long latency = (System.nanoTime() - start) / 1000000;
+		System.out.printf("Sync latency during storm: %d ms, storm queue depth: %d\n", latency, chat.getQueueDepth());
+		// waits for the running batches only, not the whole storm
+		assertTrue(chat.getQueueDepth() > 0);
+	}
+
+	@Test
+	public void testExecutorPerApplication() throws Exception {
+		Scope global = new Scope("global");
+		Scope app = new Scope("chat");
+		app.setParent(global);
+		Scope room = new Scope("lobby");
+		room.setParent(app);
+		Scope other = new Scope("other");
+		other.setParent(global);
+		// an application of the same name in another host
+		Scope otherGlobal = new Scope("vhost");
+		Scope otherApp = new Scope("chat");
+		otherApp.setParent(otherGlobal);
+		SharedObjectExecutor executor = SharedObjectService.getExecutor(room);
+		assertEquals("/global/chat", executor.getApplication());
+		assertTrue(executor == SharedObjectService.getExecutor(app));
+		assertFalse(executor == SharedObjectService.getExecutor(other));
+		SharedObjectExecutor otherExecutor = SharedObjectService.getExecutor(otherApp);
+		assertFalse(executor == otherExecutor);
+		assertEquals("/vhost/chat", otherExecutor.getApplication());
+		// stopping the application shuts its executor down
+		SharedObjectService.releaseExecutor(app);
+		assertTrue(executor.isShutdown());
+		assertFalse(otherExecutor.isShutdown());
+		executor.execute(1, new Runnable() {
+			public void run() {
+				fail("Task of stopped application was run");
+			}
+		});
+		assertEquals(0, executor.getSubmittedTasks());
+		SharedObjectExecutor restarted = SharedObjectService.getExecutor(room);
+		assertFalse(executor == restarted);
+		assertFalse(restarted.isShutdown());
+		SharedObjectService.releaseExecutor(app);
+		SharedObjectService.releaseExecutor(other);
+		SharedObjectService.releaseExecutor(otherApp);
+	}
+
+	private void awaitCompleted(SharedObjectExecutor executor, long tasks) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + 10000;
+		while (executor.getCompletedTasks() < tasks && System.currentTimeMillis() < deadline) {
+			Thread.sleep(10);
+		}
+	}
+
+}
@@ -0,0 +1,85 @@
+package org.red5.server.so;
+
+/*
+ * RED5 Open Source Flash Server - http://www.osflash.org/red5
+ *
+ * Copyright (c) 2006-2011 by respective authors. All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation; either version 2.1 of the License, or (at your option) any later
+ * version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along
+ * with this library; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+*/
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertTrue;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.red5.server.api.event.IEventListener;
+import org.red5.server.so.ISharedObjectEvent.Type;
+
+/**
+ * @author The Red5 Project (red5@osflash.org)
+ */
+public class SharedObjectTest {
+
+	@BeforeClass
+	public static void setUpScheduler() {
+		if (SharedObjectService.SHAREDOBJECT_SCHEDULER == null) {
+			SharedObjectService.SHAREDOBJECT_SCHEDULER = Executors.newSingleThreadScheduledExecutor();
+		}
+	}
+
+	@Test
+	public void testCoalescedUpdates() throws Exception {
+		final CountDownLatch sent = new CountDownLatch(1);
+		final Object[] sync = new Object[2];
+		SharedObject so = new SharedObject(new HashMap<String, Object>(), "cursors", "/test", false) {
+			@Override
+			protected void sendSyncEvents(List<ISharedObjectEvent> events, int currentVersion, IEventListener skip) {
+				if (!events.isEmpty()) {
+					sync[0] = events;
+					sync[1] = currentVersion;
+					sent.countDown();
+				}
+			}
+		};
+		so.setUpdateInterval(50);
+		int version = so.getVersion();
+		so.setAttribute("x", 1);
+		so.setAttribute("x", 2);
+		so.setAttribute("y", "a");
+		so.removeAttribute("y");
+		so.setAttribute("x", 3);
+		// nothing is sent before the interval is over
+		assertEquals(version, so.getVersion());
+		assertTrue(sent.await(5, TimeUnit.SECONDS));
+		@SuppressWarnings("unchecked")
+		List<ISharedObjectEvent> events = (List<ISharedObjectEvent>) sync[0];
+		assertEquals(2, events.size());
+		assertEquals(Type.CLIENT_DELETE_DATA, events.get(0).getType());
+		assertEquals("y", events.get(0).getKey());
+		assertEquals(Type.CLIENT_UPDATE_DATA, events.get(1).getType());
+		assertEquals("x", events.get(1).getKey());
+		assertEquals(3, events.get(1).getValue());
+		// one version increase for the whole interval
+		assertEquals(version + 1, sync[1]);
+		assertEquals(version + 1, so.getVersion());
+	}
+
+}
@@ -0,0 +1,170 @@
+package org.red5.server.statistics;
+
+/*
+ * RED5 Open Source Flash Server - http://code.google.com/p/red5/
+ *
+ * Copyright (c) 2006-2011 by respective authors (see below). All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation; either version 2.1 of the License, or (at your option) any later
+ * version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along
+ * with this library; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Map;
+
+import org.junit.Test;
+import org.red5.server.ClientRegistry;
+import org.red5.server.Scope;
+import org.red5.server.api.IScope;
+import org.red5.server.api.TestConnection;
+import org.red5.server.exception.ScopeNotFoundException;
+import org.red5.server.persistence.RamPersistence;
+import org.red5.server.so.SharedObjectScope;
+import org.red5.server.stream.BroadcastScope;
+
+/**
+ * @author The Red5 Project (red5@osflash.org)
+ */
+public class StatisticsEngineTest {
+
+	@Test
+	public void testSnapshots() throws Exception {
+		Scope global = new Scope("global");
+		global.createChildScope("app");
+		Scope app = (Scope) global.getScope("app");
+		app.createChildScope("room1");
+		app.createChildScope("room2");
+		Scope room1 = (Scope) app.getScope("room1");
+		Scope room2 = (Scope) app.getScope("room2");
+		ClientRegistry registry = new ClientRegistry();
+		TestConnection[] conns = new TestConnection[3];
+		for (int i = 0; i < conns.length; i++) {
+			conns[i] = new ByteCountingConnection(1000, 100);
+			conns[i].setClient(registry.newClient(null));
+			assertTrue(conns[i].connect(i == 0 ? room1 : room2));
+		}
+		BroadcastScope stream = new BroadcastScope(room1, "stream1");
+		room1.addChildScope(stream);
+		room2.addChildScope(new BroadcastScope(room2, "stream2"));
+		app.addChildScope(new SharedObjectScope(app, "chat", false, new RamPersistence(app)));
+		// streams and shared objects are not subscopes
+		assertEquals(2, app.getActiveSubscopes());
+		assertEquals(2, app.getActiveStreams());
+		assertEquals(1, app.getActiveSharedObjects());
+
+		StatisticsEngine engine = new StatisticsEngine(global);
+		engine.setMaxAge(60000);
+		ScopeStatisticsSnapshot snapshot = engine.getSnapshot();
+		assertEquals(3, snapshot.getActiveConnections());
+		assertEquals(2, snapshot.getActiveStreams());
+		assertEquals(1, snapshot.getActiveSharedObjects());
+		assertEquals(3000, snapshot.getReadBytes());
+		ScopeStatisticsSnapshot appSnapshot = engine.getSnapshot("app");
+		assertEquals(2, appSnapshot.getChildNames().size());
+		assertEquals(1, appSnapshot.getSharedObjects().size());
+		assertEquals(300, appSnapshot.getWrittenBytes());
+		ScopeStatisticsSnapshot roomSnapshot = engine.getSnapshot("/app/room2");
+		assertEquals(2, roomSnapshot.getActiveConnections());
+		assertEquals(1, roomSnapshot.getActiveStreams());
+		assertEquals(2000, roomSnapshot.getReadBytes());
+
+		// changes show up with the next snapshot only
+		conns[0].close();
+		room1.removeChildScope(stream);
+		assertSame(snapshot, engine.getSnapshot());
+		assertEquals(3, engine.getSnapshot("app/room1").getActiveConnections() + engine.getSnapshot("app/room2").getActiveConnections());
+		engine.refresh();
+		assertNotSame(snapshot, engine.getSnapshot());
+		// the room went away with its last connection
+		assertEquals(1, engine.getSnapshot("app").getChildNames().size());
+		assertEquals(2, engine.getSnapshot("app").getActiveConnections());
+		assertEquals(1, engine.getSnapshot("app").getActiveStreams());
+		// bytes of the closed connection are kept
+		assertEquals(3000, engine.getSnapshot("app").getReadBytes());
+
+		XmlRpcScopeStatistics xmlRpc = new XmlRpcScopeStatistics(engine);
+		assertEquals("room2", xmlRpc.getScopes("app")[0]);
+		Map<String, Object> statistics = xmlRpc.getScopeStatistics("app");
+		assertEquals(2, statistics.get("activeConnections"));
+		// longs are passed as strings
+		assertEquals("3000", statistics.get("readBytes"));
+		Object[] chat = (Object[]) xmlRpc.getSharedObjectStatistics("app").get("chat");
+		assertEquals(Boolean.FALSE, chat[0]);
+	}
+
+	@Test
+	public void testMaxAge() throws Exception {
+		Scope global = new Scope("global");
+		StatisticsEngine engine = new StatisticsEngine(global);
+		engine.setMaxAge(60000);
+		ScopeStatisticsSnapshot snapshot = engine.getSnapshot();
+		global.createChildScope("app");
+		// nothing is taken until a read finds the snapshot too old
+		assertSame(snapshot, engine.getSnapshot());
+		assertTrue(engine.getSnapshot().getChildNames().isEmpty());
+		engine.setMaxAge(0);
+		assertNotSame(snapshot, engine.getSnapshot());
+		assertEquals(1, engine.getSnapshot().getChildNames().size());
+	}
+
+	@Test
+	public void testScopeAttributes() throws Exception {
+		Scope global = new Scope("global");
+		global.createChildScope("app");
+		IScope app = global.getScope("app");
+		app.setAttribute("title", "Lobby");
+		app.setAttribute("visitors", 12L);
+		// attributes are read from the live scope, not from the statistics
+		XmlRpcScopeStatistics xmlRpc = new XmlRpcScopeStatistics(global);
+		Map<String, Object> attributes = xmlRpc.getScopeAttributes("app");
+		assertEquals(2, attributes.size());
+		assertEquals("Lobby", attributes.get("title"));
+		assertEquals("12", attributes.get("visitors"));
+		assertEquals(0, xmlRpc.getScopeStatistics("app").get("activeConnections"));
+	}
+
+	@Test(expected = ScopeNotFoundException.class)
+	public void testUnknownScope() {
+		Scope global = new Scope("global");
+		new StatisticsEngine(global).getSnapshot("missing");
+	}
+
+	private static class ByteCountingConnection extends TestConnection {
+
+		private final long read;
+
+		private final long written;
+
+		ByteCountingConnection(long read, long written) {
+			super("localhost", "/app", null);
+			this.read = read;
+			this.written = written;
+		}
+
+		@Override
+		public long getReadBytes() {
+			return read;
+		}
+
+		@Override
+		public long getWrittenBytes() {
+			return written;
+		}
+
+	}
+
+}
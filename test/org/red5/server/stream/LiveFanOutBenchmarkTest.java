@@ -0,0 +1,252 @@
+package org.red5.server.stream;
+
+/*
+ * RED5 Open Source Flash Server - http://code.google.com/p/red5/
+ *
+ * Copyright (c) 2006-2011 by respective authors (see below). All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation; either version 2.1 of the License, or (at your option) any later
+ * version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along
+ * with this library; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+import org.apache.mina.core.buffer.IoBuffer;
+import org.junit.Test;
+import org.red5.server.Context;
+import org.red5.server.Scope;
+import org.red5.server.api.IScope;
+import org.red5.server.api.stream.IBroadcastStream;
+import org.red5.server.api.stream.IClientStream;
+import org.red5.server.api.stream.support.SimplePlayItem;
+import org.red5.server.messaging.IMessageInput;
+import org.red5.server.messaging.InMemoryPushPushPipe;
+import org.red5.server.net.rtmp.RTMPMinaConnection;
+import org.red5.server.net.rtmp.event.AudioData;
+import org.red5.server.net.rtmp.event.VideoData;
+import org.red5.server.net.rtmp.message.Packet;
+import org.red5.server.stream.codec.AVCVideo;
+import org.red5.server.stream.codec.StreamCodecInfo;
+import org.red5.server.stream.consumer.ConnectionConsumer;
+import org.red5.server.stream.message.RTMPMessage;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.support.StaticApplicationContext;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+
+/**
+ * Benchmark of the live fan out path: one publisher pushing audio and video frames through
+ * {@link PlayEngine} and {@link ConnectionConsumer} to many subscribers, measuring the bytes
+ * allocated on the publishing thread per frame.
+ *
+ * @author The Red5 Project (red5@osflash.org)
+ */
+public class LiveFanOutBenchmarkTest {
+
+	private static final int SUBSCRIBERS = 1000;
+
+	private static final int FRAMES = 1000;
+
+	@Test
+	public void testAllocationPerFrame() throws Exception {
+		System.setProperty("red5.deployment.type", "junit");
+		Context context = new Context();
+		context.setApplicationContext(new StaticApplicationContext());
+		Scope room = new Scope("room");
+		room.setContext(context);
+		BroadcastScope broadcastScope = new BroadcastScope(room, "live");
+		ClientBroadcastStream publisher = new ClientBroadcastStream();
+		StreamCodecInfo codecInfo = new StreamCodecInfo();
+		codecInfo.setHasVideo(true);
+		codecInfo.setVideoCodec(new AVCVideo());
+		publisher.setCodecInfo(codecInfo);
+		broadcastScope.setAttribute(IBroadcastScope.STREAM_ATTRIBUTE, publisher);
+		IProviderService providerService = new LiveProviderService(broadcastScope);
+		List<SinkConnection> conns = new ArrayList<SinkConnection>(SUBSCRIBERS);
+		for (int i = 0; i < SUBSCRIBERS; i++) {
+			conns.add(subscribe(room, providerService));
+		}
+		assertEquals(SUBSCRIBERS, broadcastScope.getConsumers().size());
+		// per frame logging is at debug level, measure with the level a server runs at
+		Logger root = (Logger) LoggerFactory.getLogger(Logger.ROOT_LOGGER_NAME);
+		Level level = root.getLevel();
+		root.setLevel(Level.INFO);
+		try {
+			measure(broadcastScope, conns);
+		} finally {
+			root.setLevel(level);
+		}
+	}
+
+	private void measure(BroadcastScope broadcastScope, List<SinkConnection> conns) throws Exception {
+		// warm up, the first frame is a keyframe
+		publish(broadcastScope, 0, FRAMES);
+		long sent = sentMessages(conns);
+		ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+		long threadId = Thread.currentThread().getId();
+		long allocated = allocatedBytes(threads, threadId);
+		long start = System.nanoTime();
+		publish(broadcastScope, FRAMES, FRAMES);
+		long elapsed = System.nanoTime() - start;
+		allocated = allocatedBytes(threads, threadId) - allocated;
+		// nothing was dropped
+		assertEquals(2L * FRAMES * SUBSCRIBERS, sentMessages(conns) - sent);
+		System.out.printf("Live fan out to %d subscribers: %d ns per frame%n", SUBSCRIBERS, elapsed / (2 * FRAMES));
+		if (allocated >= 0) {
+			// includes the frames of the publisher
+			System.out.printf("Allocated %d bytes per frame, %d bytes per subscriber frame%n", allocated / (2 * FRAMES), allocated / (2L * FRAMES * SUBSCRIBERS));
+		}
+	}
+
+	private long allocatedBytes(ThreadMXBean threads, long threadId) {
+		if (threads instanceof com.sun.management.ThreadMXBean) {
+			return ((com.sun.management.ThreadMXBean) threads).getThreadAllocatedBytes(threadId);
+		}
+		return -1;
+	}
+
+	private SinkConnection subscribe(IScope room, IProviderService providerService) throws Exception {
+		SinkConnection conn = new SinkConnection();
+		conn.setup("localhost", "live", "room", new HashMap<String, Object>());
+		PlaylistSubscriberStream stream = new PlaylistSubscriberStream();
+		stream.setStreamId(1);
+		stream.setScope(room);
+		stream.setConnection(conn);
+		conn.scope = room;
+		conn.stream = stream;
+		OutputStream out = conn.createOutputStream(1);
+		InMemoryPushPushPipe pipe = new InMemoryPushPushPipe();
+		pipe.subscribe(new ConnectionConsumer(conn, out.getVideo().getId(), out.getAudio().getId(), out.getData().getId()), null);
+		PlayEngine engine = new PlayEngine.Builder(stream, null, null, providerService).build();
+		engine.setMessageOut(pipe);
+		engine.start();
+		engine.play(SimplePlayItem.build("live", -1000, -1));
+		return conn;
+	}
+
+	private void publish(BroadcastScope broadcastScope, int first, int count) throws Exception {
+		byte[] frame = new byte[512];
+		for (int i = first; i < first + count; i++) {
+			frame[0] = (byte) (i == 0 ? 0x17 : 0x27);
+			VideoData video = new VideoData(IoBuffer.wrap(frame));
+			video.setTimestamp(i * 40);
+			AudioData audio = new AudioData(IoBuffer.wrap(frame, 0, 128));
+			audio.setTimestamp(i * 40);
+			StreamPayload videoPayload = video.getPayload();
+			StreamPayload audioPayload = audio.getPayload();
+			broadcastScope.pushMessage(RTMPMessage.build(video));
+			broadcastScope.pushMessage(RTMPMessage.build(audio));
+			video.release();
+			audio.release();
+			// every copy was released once written
+			assertEquals(0, videoPayload.getRefCount());
+			assertEquals(0, audioPayload.getRefCount());
+		}
+	}
+
+	private long sentMessages(List<SinkConnection> conns) {
+		long sent = 0;
+		for (SinkConnection conn : conns) {
+			sent += conn.sent;
+		}
+		return sent;
+	}
+
+	/**
+	 * Connection which releases stream data as soon as it is written, like the encoder does.
+	 */
+	private static class SinkConnection extends RTMPMinaConnection {
+
+		IScope scope;
+
+		IClientStream stream;
+
+		long sent;
+
+		@Override
+		public IScope getScope() {
+			return scope;
+		}
+
+		@Override
+		public IClientStream getStreamByChannelId(int channelId) {
+			return channelId < 4 ? null : stream;
+		}
+
+		@Override
+		public void write(Packet out) {
+			writingMessage(out);
+			messageSent(out);
+			if (out.getMessage() instanceof IStreamData) {
+				sent++;
+			}
+			out.getMessage().release();
+		}
+
+	}
+
+	private static class LiveProviderService implements IProviderService {
+
+		private final IMessageInput input;
+
+		LiveProviderService(IMessageInput input) {
+			this.input = input;
+		}
+
+		public INPUT_TYPE lookupProviderInput(IScope scope, String name, int type) {
+			return INPUT_TYPE.LIVE;
+		}
+
+		public IMessageInput getProviderInput(IScope scope, String name) {
+			return input;
+		}
+
+		public IMessageInput getLiveProviderInput(IScope scope, String name, boolean needCreate) {
+			return input;
+		}
+
+		public IMessageInput getVODProviderInput(IScope scope, String name) {
+			return null;
+		}
+
+		public File getVODProviderFile(IScope scope, String name) {
+			return null;
+		}
+
+		public boolean registerBroadcastStream(IScope scope, String name, IBroadcastStream stream) {
+			return false;
+		}
+
+		public List<String> getBroadcastStreamNames(IScope scope) {
+			return null;
+		}
+
+		public boolean unregisterBroadcastStream(IScope scope, String name) {
+			return false;
+		}
+
+		public boolean unregisterBroadcastStream(IScope scope, String name, IBroadcastStream stream) {
+			return false;
+		}
+
+	}
+
+}
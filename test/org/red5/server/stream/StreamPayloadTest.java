@@ -0,0 +1,92 @@
+package org.red5.server.stream;
+
+/*
+ * RED5 Open Source Flash Server - http://code.google.com/p/red5/
+ *
+ * Copyright (c) 2006-2011 by respective authors (see below). All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation; either version 2.1 of the License, or (at your option) any later
+ * version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along
+ * with this library; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.apache.mina.core.buffer.IoBuffer;
+import org.junit.After;
+import org.junit.Test;
+import org.red5.server.net.rtmp.event.VideoData;
+
+public class StreamPayloadTest {
+
+	@After
+	public void tearDown() {
+		StreamPayload.setLeakDetectionInterval(0);
+	}
+
+	@Test
+	public void testRetainRelease() {
+		StreamPayload payload = StreamPayload.wrap(IoBuffer.wrap(new byte[] { 0x17, 1, 2, 3 }));
+		assertEquals(1, payload.getRefCount());
+		assertFalse(payload.retain().release());
+		assertTrue(payload.release());
+		try {
+			payload.release();
+			fail("Released twice");
+		} catch (IllegalStateException e) {
+		}
+		try {
+			payload.retain();
+			fail("Retained after release");
+		} catch (IllegalStateException e) {
+		}
+	}
+
+	@Test
+	public void testSharedByEvents() {
+		VideoData source = new VideoData(IoBuffer.wrap(new byte[] { 0x17, 1, 2, 3 }));
+		StreamPayload payload = source.getPayload();
+		VideoData copy = new VideoData(payload.retain());
+		assertEquals(VideoData.FrameType.KEYFRAME, copy.getFrameType());
+		assertEquals(4, copy.getData().remaining());
+		// reading the copy leaves the source untouched
+		copy.getData().get();
+		assertEquals(0, source.getData().position());
+		assertEquals(2, payload.getRefCount());
+		source.release();
+		assertNull(source.getData());
+		assertEquals(1, payload.getRefCount());
+		copy.release();
+		assertEquals(0, payload.getRefCount());
+	}
+
+	@Test
+	public void testLeakDetection() throws Exception {
+		StreamPayload.setLeakDetectionInterval(1);
+		long leaks = StreamPayload.getLeakCount();
+		StreamPayload.wrap(IoBuffer.allocate(16)).release();
+		for (int i = 0; i < 4; i++) {
+			StreamPayload.wrap(IoBuffer.allocate(16));
+		}
+		for (int i = 0; i < 50 && StreamPayload.getLeakCount() - leaks < 4; i++) {
+			System.gc();
+			Thread.sleep(20);
+			StreamPayload.reportLeaks();
+		}
+		assertEquals(4, StreamPayload.getLeakCount() - leaks);
+	}
+
+}
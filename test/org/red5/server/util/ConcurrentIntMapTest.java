@@ -0,0 +1,128 @@
+package org.red5.server.util;
+
+/*
+ * RED5 Open Source Flash Server - http://code.google.com/p/red5/
+ *
+ * Copyright (c) 2006-2011 by respective authors (see below). All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation; either version 2.1 of the License, or (at your option) any later
+ * version.
+ *
+ * This library is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along
+ * with this library; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+public class ConcurrentIntMapTest {
+
+	@Test
+	public void testMapOperations() {
+		ConcurrentIntMap<String> map = new ConcurrentIntMap<String>();
+		assertTrue(map.isEmpty());
+		for (int i = -500; i < 500; i++) {
+			assertNull(map.put(i, "v" + i));
+		}
+		assertEquals(1000, map.size());
+		assertEquals("v-3", map.get(-3));
+		assertEquals("v499", map.put(499, "x"));
+		assertEquals("x", map.putIfAbsent(499, "y"));
+		assertFalse(map.remove(499, "y"));
+		assertTrue(map.remove(499, "x"));
+		assertNull(map.get(499));
+		assertNull(map.putIfAbsent(499, "z"));
+		for (int i = -500; i < 0; i++) {
+			assertEquals("v" + i, map.remove(i));
+		}
+		assertEquals(500, map.size());
+		assertFalse(map.containsKey(-1));
+		assertTrue(map.containsKey(0));
+		Set<String> values = new HashSet<String>(map.values());
+		assertEquals(500, values.size());
+		assertTrue(values.contains("z"));
+		map.clear();
+		assertTrue(map.isEmpty());
+		assertNull(map.get(0));
+	}
+
+	@Test
+	public void testConcurrentChurn() throws Exception {
+		final ConcurrentIntMap<Integer> map = new ConcurrentIntMap<Integer>();
+		final AtomicInteger failures = new AtomicInteger();
+		final int threads = 8;
+		final CountDownLatch done = new CountDownLatch(threads);
+		for (int t = 0; t < threads; t++) {
+			final int offset = t * 1000000;
+			new Thread() {
+				public void run() {
+					for (int round = 0; round < 20; round++) {
+						for (int i = 0; i < 5000; i++) {
+							map.put(offset + i, i);
+						}
+						for (int i = 0; i < 5000; i++) {
+							Integer value = map.get(offset + i);
+							if (value == null || value != i || !map.remove(offset + i, value)) {
+								failures.incrementAndGet();
+							}
+						}
+					}
+					done.countDown();
+				}
+			}.start();
+		}
+		done.await();
+		assertEquals(0, failures.get());
+		assertTrue(map.isEmpty());
+	}
+
+	@Test
+	public void testLookupSpeed() {
+		int count = 100000;
+		ConcurrentIntMap<Object> intMap = new ConcurrentIntMap<Object>();
+		ConcurrentMap<Integer, Object> boxedMap = new ConcurrentHashMap<Integer, Object>();
+		Object value = new Object();
+		for (int i = 0; i < count; i++) {
+			// ids above the small integer cache, like long running servers hand out
+			intMap.put(1000 + i, value);
+			boxedMap.put(1000 + i, value);
+		}
+		for (int round = 0; round < 3; round++) {
+			long start = System.nanoTime();
+			for (int r = 0; r < 20; r++) {
+				for (int i = 0; i < count; i++) {
+					assertSame(value, intMap.get(1000 + i));
+				}
+			}
+			long intTime = System.nanoTime() - start;
+			start = System.nanoTime();
+			for (int r = 0; r < 20; r++) {
+				for (int i = 0; i < count; i++) {
+					assertSame(value, boxedMap.get(1000 + i));
+				}
+			}
+			long boxedTime = System.nanoTime() - start;
+			System.out.printf("Int keys: %d ms boxed keys: %d ms\n", intTime / 1000000, boxedTime / 1000000);
+		}
+	}
+
+}